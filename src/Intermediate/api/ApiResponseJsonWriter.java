@@ -0,0 +1,419 @@
+package Intermediate.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Hand-rolled streaming JSON writer for ApiResponse and its payloads
+ *
+ * Replaces reflection-based mappers (Jackson etc.) on the hot path. Everything is written
+ * straight into a byte buffer that is reused between responses, so once the buffer has
+ * grown to the largest response size, serializing a response does not allocate:
+ * - field names and the status/statusCode prefix of every known status are pre-encoded
+ * - strings are escaped and UTF-8 encoded char by char instead of via getBytes
+ * - numbers are written digit by digit; prices with at most two decimals avoid Double.toString
+ * - the formatted timestamp is cached and only rebuilt when the millisecond changes
+ *
+ * A writer is not thread-safe; use forCurrentThread() to get one per thread.
+ *
+ * Example output:
+ * {"status":"SUCCESS","statusCode":200,"message":"...","timestamp":"2024-01-01T12:00:00.000","data":{...}}
+ */
+class ApiResponseJsonWriter {
+    private static final ThreadLocal<ApiResponseJsonWriter> PER_THREAD =
+            ThreadLocal.withInitial(ApiResponseJsonWriter::new);
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int TIMESTAMP_LENGTH = 23; // yyyy-MM-ddTHH:mm:ss.SSS
+    private static final byte[] HEX = ascii("0123456789abcdef");
+    private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+
+    private static final StatusPrefix[] KNOWN_STATUSES = {
+            new StatusPrefix("SUCCESS", 200),
+            new StatusPrefix("CREATED", 201),
+            new StatusPrefix("BAD_REQUEST", 400),
+            new StatusPrefix("NOT_FOUND", 404),
+            new StatusPrefix("METHOD_NOT_ALLOWED", 405),
+            new StatusPrefix("CONFLICT", 409),
+            new StatusPrefix("ERROR", 500),
+            new StatusPrefix("SERVICE_UNAVAILABLE", 503)
+    };
+
+    private static final byte[] STATUS = ascii("{\"status\":");
+    private static final byte[] STATUS_CODE = ascii(",\"statusCode\":");
+    private static final byte[] MESSAGE = ascii(",\"message\":");
+    private static final byte[] TIMESTAMP = ascii(",\"timestamp\":\"");
+    private static final byte[] DATA = ascii("\",\"data\":");
+    private static final byte[] ID = ascii("{\"id\":");
+    private static final byte[] NAME = ascii(",\"name\":");
+    private static final byte[] DESCRIPTION = ascii(",\"description\":");
+    private static final byte[] PRICE = ascii(",\"price\":");
+    private static final byte[] CATEGORY = ascii(",\"category\":");
+    private static final byte[] VERSION = ascii(",\"version\":");
+    private static final byte[] ITEMS = ascii("{\"items\":");
+    private static final byte[] NEXT_CURSOR = ascii(",\"nextCursor\":");
+    private static final byte[] STATUSES = ascii("{\"statuses\":");
+    private static final byte[] IDS = ascii(",\"ids\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    private final ZoneRules zoneRules = ZoneId.systemDefault().getRules();
+    private long offsetMinute = Long.MIN_VALUE;
+    private long offsetMillis;
+    private long cachedMillis = Long.MIN_VALUE;
+    private final byte[] cachedTimestamp = new byte[TIMESTAMP_LENGTH];
+
+    static ApiResponseJsonWriter forCurrentThread() {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Serialize the response into the buffer, replacing whatever was written before
+     */
+    public ApiResponseJsonWriter write(ApiResponse<?> response) {
+        size = 0;
+        writeStatus(response.getStatus(), response.getStatusCode());
+        write(MESSAGE);
+        writeString(response.getMessage());
+        write(TIMESTAMP);
+        writeTimestamp(response.getTimestampMillis());
+        write(DATA);
+        writeValue(response.getData());
+        writeByte('}');
+        return this;
+    }
+
+    /**
+     * Serialize a bare payload (e.g. one chunk of a streamed listing), replacing whatever was written before
+     */
+    public ApiResponseJsonWriter writeData(Object data) {
+        size = 0;
+        writeValue(data);
+        return this;
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    /**
+     * Decode the buffer into a String; meant for logging and demos, not the hot path
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private void writeStatus(String status, int statusCode) {
+        for (StatusPrefix known : KNOWN_STATUSES) {
+            if (known.statusCode == statusCode && known.status.equals(status)) {
+                write(known.encoded);
+                return;
+            }
+        }
+        write(STATUS);
+        writeString(status);
+        write(STATUS_CODE);
+        writeLong(statusCode);
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            write(NULL);
+        } else if (value instanceof Product) {
+            writeProduct((Product) value);
+        } else if (value instanceof List) {
+            writeList((List<?>) value);
+        } else if (value instanceof ProductPage) {
+            ProductPage page = (ProductPage) value;
+            write(ITEMS);
+            writeList(page.getItems());
+            write(NEXT_CURSOR);
+            writeString(page.getNextCursor());
+            writeByte('}');
+        } else if (value instanceof BulkResult) {
+            BulkResult result = (BulkResult) value;
+            write(STATUSES);
+            byte[] statuses = result.getStatuses();
+            writeByte('[');
+            for (int i = 0; i < statuses.length; i++) {
+                if (i > 0) {
+                    writeByte(',');
+                }
+                writeLong(statuses[i]);
+            }
+            writeByte(']');
+            write(IDS);
+            long[] ids = result.getIds();
+            writeByte('[');
+            for (int i = 0; i < ids.length; i++) {
+                if (i > 0) {
+                    writeByte(',');
+                }
+                writeLong(ids[i]);
+            }
+            writeByte(']');
+            writeByte('}');
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            write((Boolean) value ? TRUE : FALSE);
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeList(List<?> list) {
+        writeByte('[');
+        if (list instanceof RandomAccess) {
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    writeByte(',');
+                }
+                writeValue(list.get(i));
+            }
+        } else {
+            boolean first = true;
+            for (Object item : list) {
+                if (!first) {
+                    writeByte(',');
+                }
+                writeValue(item);
+                first = false;
+            }
+        }
+        writeByte(']');
+    }
+
+    private void writeProduct(Product product) {
+        write(ID);
+        if (product.getId() == null) {
+            write(NULL);
+        } else {
+            writeLong(product.getId());
+        }
+        write(NAME);
+        writeString(product.getName());
+        write(DESCRIPTION);
+        writeString(product.getDescription());
+        write(PRICE);
+        writeDouble(product.getPrice());
+        write(CATEGORY);
+        writeString(product.getCategory());
+        write(VERSION);
+        if (product.getVersion() == null) {
+            write(NULL);
+        } else {
+            writeLong(product.getVersion());
+        }
+        writeByte('}');
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            write(NULL);
+            return;
+        }
+        // Worst case is a 6-byte unicode escape per char
+        ensureCapacity(value.length() * 6 + 2);
+        byte[] out = buffer;
+        int pos = size;
+        out[pos++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out[pos++] = '\\';
+                out[pos++] = (byte) c;
+            } else if (c < 0x20) {
+                out[pos++] = '\\';
+                out[pos++] = 'u';
+                out[pos++] = '0';
+                out[pos++] = '0';
+                out[pos++] = HEX[c >> 4];
+                out[pos++] = HEX[c & 0xF];
+            } else if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        out[pos++] = '"';
+        size = pos;
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(MIN_LONG);
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int pos = size + digits;
+        size = pos;
+        do {
+            buffer[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+    }
+
+    /**
+     * Write a double; values with at most two decimals (prices) are written without allocating
+     */
+    private void writeDouble(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            write(NULL);
+            return;
+        }
+        if (Math.abs(value) < 1e15) {
+            long cents = Math.round(value * 100);
+            if (cents / 100.0 == value) {
+                if (cents < 0) {
+                    writeByte('-');
+                    cents = -cents;
+                }
+                writeLong(cents / 100);
+                writeByte('.');
+                writeByte('0' + (int) (cents % 100 / 10));
+                writeByte('0' + (int) (cents % 10));
+                return;
+            }
+        }
+        String text = Double.toString(value);
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[size++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Write the local date-time of the given epoch millis, re-formatting only when the
+     * millisecond changes and looking up the zone offset at most once per minute
+     */
+    private void writeTimestamp(long epochMillis) {
+        if (epochMillis != cachedMillis) {
+            long minute = Math.floorDiv(epochMillis, 60_000L);
+            if (minute != offsetMinute) {
+                offsetMillis = zoneRules.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+                offsetMinute = minute;
+            }
+            formatTimestamp(epochMillis + offsetMillis);
+            cachedMillis = epochMillis;
+        }
+        write(cachedTimestamp);
+    }
+
+    private void formatTimestamp(long localMillis) {
+        long days = Math.floorDiv(localMillis, 86_400_000L);
+        long millisOfDay = Math.floorMod(localMillis, 86_400_000L);
+
+        // Civil-from-days conversion (proleptic Gregorian calendar)
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        byte[] out = cachedTimestamp;
+        putDigits(out, 0, year, 4);
+        out[4] = '-';
+        putDigits(out, 5, month, 2);
+        out[7] = '-';
+        putDigits(out, 8, day, 2);
+        out[10] = 'T';
+        putDigits(out, 11, (int) (millisOfDay / 3_600_000), 2);
+        out[13] = ':';
+        putDigits(out, 14, (int) (millisOfDay / 60_000 % 60), 2);
+        out[16] = ':';
+        putDigits(out, 17, (int) (millisOfDay / 1000 % 60), 2);
+        out[19] = '.';
+        putDigits(out, 20, (int) (millisOfDay % 1000), 3);
+    }
+
+    private static void putDigits(byte[] out, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Pre-encoded {"status":"...","statusCode":NNN for one known status
+     */
+    private static final class StatusPrefix {
+        private final String status;
+        private final int statusCode;
+        private final byte[] encoded;
+
+        private StatusPrefix(String status, int statusCode) {
+            this.status = status;
+            this.statusCode = statusCode;
+            this.encoded = ascii("{\"status\":\"" + status + "\",\"statusCode\":" + statusCode);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package Intermediate.api;
+
+/**
+ * Compact per-item outcome of a bulk request
+ *
+ * Instead of one ApiResponse per product, a bulk call returns one status byte and one
+ * product ID per input item, in input order. The status codes are the constants below.
+ */
+class BulkResult {
+    static final byte OK = 0;
+    static final byte CREATED = 1;
+    static final byte NOT_FOUND = 2;
+    static final byte INVALID_NAME = 3;
+    static final byte INVALID_PRICE = 4;
+    static final byte MISSING_ID = 5;
+    static final byte CONFLICT = 6;
+
+    private final byte[] statuses;
+    private final long[] ids;
+
+    BulkResult(byte[] statuses, long[] ids) {
+        this.statuses = statuses;
+        this.ids = ids;
+    }
+
+    /**
+     * Status code of every item, in input order
+     */
+    public byte[] getStatuses() {
+        return statuses;
+    }
+
+    /**
+     * Product ID of every item, in input order (0 when the item has no ID)
+     */
+    public long[] getIds() {
+        return ids;
+    }
+
+    public int getSucceeded() {
+        int succeeded = 0;
+        for (byte status : statuses) {
+            if (status == OK || status == CREATED) {
+                succeeded++;
+            }
+        }
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return statuses.length - getSucceeded();
+    }
+
+    static String describe(byte status) {
+        switch (status) {
+            case OK:
+                return "OK";
+            case CREATED:
+                return "CREATED";
+            case NOT_FOUND:
+                return "NOT_FOUND";
+            case INVALID_NAME:
+                return "INVALID_NAME";
+            case INVALID_PRICE:
+                return "INVALID_PRICE";
+            case MISSING_ID:
+                return "MISSING_ID";
+            case CONFLICT:
+                return "CONFLICT";
+            default:
+                return "UNKNOWN(" + status + ")";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResult [items=" + statuses.length + ", succeeded=" + getSucceeded()
+                + ", failed=" + getFailed() + "]";
+    }
+}
@@ -0,0 +1,508 @@
+package Intermediate.api;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Read-through caching decorator for ProductService
+ *
+ * findById, findByCategory and search results are cached with a TTL in LRU caches that are
+ * bounded both by entry count and by estimated size in bytes. Everything else (findAll,
+ * price ranges and the paged/streaming reads) goes straight to the delegate.
+ *
+ * save, deleteById and their bulk variants invalidate only the keys the write can affect:
+ * - the product's own ID
+ * - its new category, and the category it had in any cached category list
+ * - every cached search whose result contained the product or whose query now matches it
+ *
+ * A load that races with a write is not cached: every write bumps a write epoch, and
+ * a loaded value is only stored if the epoch did not change while it was being loaded.
+ * The epoch check and the store happen under the cache lock, so a write either sees the
+ * stored entry when it invalidates, or the load sees the new epoch and drops its value.
+ *
+ * In a real Spring application this would be @Cacheable / @CacheEvict on top of Caffeine.
+ */
+class CachingProductService implements ProductService {
+    private final ProductService delegate;
+
+    private final BoundedCache<Long, Optional<Product>> byId;
+    private final BoundedCache<String, List<Product>> byCategory;
+    private final BoundedCache<SearchKey, List<Product>> bySearch;
+
+    // Category each product had when it was last put into a cached category list
+    private final Map<Long, String> cachedCategoryOf = new ConcurrentHashMap<>();
+    private final AtomicLong writeEpoch = new AtomicLong();
+
+    public CachingProductService(ProductService delegate, Duration ttl, int maxEntries, long maxWeightBytes) {
+        this.delegate = delegate;
+        this.byId = new BoundedCache<>(ttl, maxEntries, maxWeightBytes,
+                product -> product.map(ProductWeigher::weigh).orElse(ProductWeigher.OBJECT_OVERHEAD), null);
+        this.byCategory = new BoundedCache<>(ttl, maxEntries, maxWeightBytes, ProductWeigher::weigh,
+                new BoundedCache.Listener<String, List<Product>>() {
+                    @Override
+                    public void onStored(String category, List<Product> products) {
+                        for (Product product : products) {
+                            cachedCategoryOf.put(product.getId(), category);
+                        }
+                    }
+
+                    @Override
+                    public void onRemoved(String category, List<Product> products) {
+                        for (Product product : products) {
+                            cachedCategoryOf.remove(product.getId(), category);
+                        }
+                    }
+                });
+        this.bySearch = new BoundedCache<>(ttl, maxEntries, maxWeightBytes, ProductWeigher::weigh, null);
+    }
+
+    @Override
+    public Optional<Product> findById(Long id) {
+        Optional<Product> cached = byId.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long epoch = writeEpoch.get();
+        Optional<Product> loaded = delegate.findById(id);
+        byId.putIfUnchanged(id, loaded, writeEpoch, epoch);
+        return loaded;
+    }
+
+    @Override
+    public List<Product> findByCategory(String category) {
+        String key = categoryKey(category);
+        List<Product> cached = byCategory.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long epoch = writeEpoch.get();
+        List<Product> loaded = List.copyOf(delegate.findByCategory(category));
+        byCategory.putIfUnchanged(key, loaded, writeEpoch, epoch);
+        return loaded;
+    }
+
+    @Override
+    public List<Product> search(String query) {
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Product> search(String query, int limit) {
+        SearchKey key = new SearchKey(query.toLowerCase(Locale.ROOT), limit);
+        List<Product> cached = bySearch.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long epoch = writeEpoch.get();
+        List<Product> loaded = List.copyOf(delegate.search(query, limit));
+        bySearch.putIfUnchanged(key, loaded, writeEpoch, epoch);
+        return loaded;
+    }
+
+    @Override
+    public Product save(Product product) {
+        Product saved;
+        try {
+            saved = delegate.save(product);
+        } catch (OptimisticLockException e) {
+            // The client saw an old version; make sure the next read does not serve it again
+            byId.invalidate(product.getId());
+            throw e;
+        }
+        writeEpoch.incrementAndGet();
+        invalidate(Collections.singletonMap(saved.getId(), saved));
+        return saved;
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        delegate.deleteById(id);
+        writeEpoch.incrementAndGet();
+        invalidate(Collections.singletonMap(id, null));
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        List<Product> saved;
+        try {
+            saved = delegate.saveAll(products);
+        } catch (OptimisticLockException e) {
+            e.getProductIds().forEach(byId::invalidate);
+            throw e;
+        }
+        writeEpoch.incrementAndGet();
+        Map<Long, Product> written = new HashMap<>();
+        for (Product product : saved) {
+            written.put(product.getId(), product);
+        }
+        invalidate(written);
+        return saved;
+    }
+
+    @Override
+    public boolean[] deleteAllById(List<Long> ids) {
+        boolean[] existed = delegate.deleteAllById(ids);
+        writeEpoch.incrementAndGet();
+        Map<Long, Product> deleted = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (existed[i]) {
+                deleted.put(ids.get(i), null);
+            }
+        }
+        invalidate(deleted);
+        return existed;
+    }
+
+    /**
+     * Invalidate every cached entry the writes of these products could have changed
+     *
+     * The cached searches are scanned once for the whole batch, not once per product.
+     *
+     * @param written each product as saved by ID, or null when it was deleted
+     */
+    private void invalidate(Map<Long, Product> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        List<String> texts = new ArrayList<>();
+        for (Map.Entry<Long, Product> entry : written.entrySet()) {
+            Long id = entry.getKey();
+            Product current = entry.getValue();
+            byId.invalidate(id);
+
+            String previousCategory = cachedCategoryOf.remove(id);
+            if (previousCategory != null) {
+                byCategory.invalidate(previousCategory);
+            }
+            if (current != null) {
+                byCategory.invalidate(categoryKey(current.getCategory()));
+                texts.add(lower(current.getName()));
+                texts.add(lower(current.getDescription()));
+            }
+        }
+
+        Set<Long> ids = written.keySet();
+        bySearch.invalidateIf((key, products) -> containsAnyId(products, ids) || containsQuery(texts, key.query));
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public ProductPage findPage(String cursor, int limit) {
+        return delegate.findPage(cursor, limit);
+    }
+
+    @Override
+    public ProductPage findPageByCategory(String category, String cursor, int limit) {
+        return delegate.findPageByCategory(category, cursor, limit);
+    }
+
+    @Override
+    public ProductPage searchPage(String query, String cursor, int limit) {
+        return delegate.searchPage(query, cursor, limit);
+    }
+
+    @Override
+    public List<Product> findByPriceRange(String category, double minPrice, double maxPrice,
+                                          boolean descending, int offset, int limit) {
+        return delegate.findByPriceRange(category, minPrice, maxPrice, descending, offset, limit);
+    }
+
+    public Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("findById", byId.stats());
+        stats.put("findByCategory", byCategory.stats());
+        stats.put("search", bySearch.stats());
+        return stats;
+    }
+
+    private static boolean containsAnyId(List<Product> products, Set<Long> ids) {
+        for (Product product : products) {
+            if (ids.contains(product.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsQuery(List<String> texts, String query) {
+        for (String text : texts) {
+            if (text.contains(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String categoryKey(String category) {
+        return CategoryIndex.normalize(category);
+    }
+
+    private static String lower(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Cache key for a search: the normalized query plus the result limit
+     */
+    private static final class SearchKey {
+        private final String query;
+        private final int limit;
+
+        private SearchKey(String query, int limit) {
+            this.query = query;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SearchKey)) return false;
+            SearchKey other = (SearchKey) o;
+            return limit == other.limit && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * query.hashCode() + limit;
+        }
+    }
+}
+
+/**
+ * Rough estimate of the heap size of cached products, used for byte-weighted eviction
+ */
+final class ProductWeigher {
+    static final long OBJECT_OVERHEAD = 16;
+    private static final long PRODUCT_SHALLOW = 48;
+    private static final long STRING_OVERHEAD = 40;
+    private static final long REFERENCE = 8;
+
+    private ProductWeigher() {
+    }
+
+    static long weigh(Product product) {
+        return PRODUCT_SHALLOW + weigh(product.getName()) + weigh(product.getDescription())
+                + weigh(product.getCategory());
+    }
+
+    static long weigh(List<Product> products) {
+        long weight = OBJECT_OVERHEAD;
+        for (Product product : products) {
+            weight += REFERENCE + weigh(product);
+        }
+        return weight;
+    }
+
+    private static long weigh(String text) {
+        return text == null ? 0 : STRING_OVERHEAD + text.length();
+    }
+}
+
+/**
+ * LRU cache with per-entry TTL, bounded by entry count and by total estimated weight
+ *
+ * A single lock guards an access-ordered LinkedHashMap. That keeps the LRU order exact,
+ * and the critical sections are a few pointer updates long.
+ */
+class BoundedCache<K, V> {
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final Listener<K, V> listener;
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    BoundedCache(Duration ttl, int maxEntries, long maxWeight, ToLongFunction<V> weigher,
+                 Listener<K, V> listener) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.listener = listener;
+    }
+
+    /**
+     * Return the cached value, or null on a miss or an expired entry
+     */
+    V get(K key) {
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+                hits.increment();
+                return entry.value;
+            }
+            if (entry != null) {
+                remove(key);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store a loaded value unless a write happened since the load started
+     */
+    synchronized void putIfUnchanged(K key, V value, AtomicLong epoch, long expectedEpoch) {
+        if (epoch.get() != expectedEpoch) {
+            return;
+        }
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxWeight) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry<>(value, weight, System.nanoTime() + ttlNanos));
+        totalWeight += weight;
+        if (listener != null) {
+            listener.onStored(key, value);
+        }
+
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalWeight > maxWeight) && eldest.hasNext()) {
+            Map.Entry<K, Entry<V>> victim = eldest.next();
+            eldest.remove();
+            totalWeight -= victim.getValue().weight;
+            evictions.increment();
+            notifyRemoval(victim.getKey(), victim.getValue().value);
+        }
+    }
+
+    synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    synchronized void invalidateIf(BiPredicate<K, V> predicate) {
+        Set<K> doomed = new HashSet<>();
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            if (predicate.test(entry.getKey(), entry.getValue().value)) {
+                doomed.add(entry.getKey());
+            }
+        }
+        for (K key : doomed) {
+            remove(key);
+        }
+    }
+
+    synchronized CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(),
+                entries.size(), totalWeight);
+    }
+
+    private void remove(K key) {
+        Entry<V> removed = entries.remove(key);
+        if (removed != null) {
+            totalWeight -= removed.weight;
+            notifyRemoval(key, removed.value);
+        }
+    }
+
+    private void notifyRemoval(K key, V value) {
+        if (listener != null) {
+            listener.onRemoved(key, value);
+        }
+    }
+
+    /**
+     * Callbacks run under the cache lock whenever an entry is stored or leaves the cache
+     */
+    interface Listener<K, V> {
+        void onStored(K key, V value);
+        void onRemoved(K key, V value);
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        private Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
+
+/**
+ * Point-in-time counters of one cache
+ */
+class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final int size;
+    private final long weightBytes;
+
+    CacheStats(long hits, long misses, long evictions, long expirations, int size, long weightBytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.size = size;
+        this.weightBytes = weightBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getWeightBytes() {
+        return weightBytes;
+    }
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats [hits=" + hits + ", misses=" + misses + ", hitRate="
+                + String.format("%.2f", getHitRate()) + ", evictions=" + evictions
+                + ", expirations=" + expirations + ", size=" + size + ", weightBytes=" + weightBytes + "]";
+    }
+}
@@ -0,0 +1,278 @@
+package Intermediate.api;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * ProductController that records latency, status codes and in-flight requests per endpoint
+ *
+ * Every endpoint's EndpointMetrics is looked up once in the constructor, so a request only
+ * touches atomic counters: no map lookups, no locks and no allocation on the request path.
+ *
+ * In a real Spring application this would be a HandlerInterceptor or a Micrometer @Timed aspect.
+ */
+class InstrumentedProductController extends ProductController {
+    private final RequestMetrics metrics;
+    private final EndpointMetrics getAll;
+    private final EndpointMetrics getById;
+    private final EndpointMetrics create;
+    private final EndpointMetrics update;
+    private final EndpointMetrics delete;
+    private final EndpointMetrics createBulk;
+    private final EndpointMetrics updateBulk;
+    private final EndpointMetrics deleteBulk;
+    private final EndpointMetrics byCategory;
+    private final EndpointMetrics byPriceRange;
+    private final EndpointMetrics search;
+    private final EndpointMetrics searchTop;
+    private final EndpointMetrics page;
+    private final EndpointMetrics categoryPage;
+    private final EndpointMetrics searchPage;
+    private final EndpointMetrics stream;
+    private final EndpointMetrics categoryStream;
+    private final EndpointMetrics searchStream;
+
+    public InstrumentedProductController(ProductService productService, RequestMetrics metrics) {
+        super(productService);
+        this.metrics = metrics;
+        getAll = metrics.endpoint("GET /api/products");
+        getById = metrics.endpoint("GET /api/products/{id}");
+        create = metrics.endpoint("POST /api/products");
+        update = metrics.endpoint("PUT /api/products/{id}");
+        delete = metrics.endpoint("DELETE /api/products/{id}");
+        createBulk = metrics.endpoint("POST /api/products/bulk");
+        updateBulk = metrics.endpoint("PUT /api/products/bulk");
+        deleteBulk = metrics.endpoint("DELETE /api/products/bulk");
+        byCategory = metrics.endpoint("GET /api/products/category/{category}");
+        byPriceRange = metrics.endpoint("GET /api/products/price");
+        search = metrics.endpoint("GET /api/products/search");
+        searchTop = metrics.endpoint("GET /api/products/search?limit");
+        page = metrics.endpoint("GET /api/products?cursor");
+        categoryPage = metrics.endpoint("GET /api/products/category/{category}?cursor");
+        searchPage = metrics.endpoint("GET /api/products/search?cursor");
+        stream = metrics.endpoint("GET /api/products/stream");
+        categoryStream = metrics.endpoint("GET /api/products/category/{category}/stream");
+        searchStream = metrics.endpoint("GET /api/products/search/stream");
+    }
+
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public ApiResponse<List<Product>> getAllProducts() {
+        long start = getAll.begin();
+        ApiResponse<List<Product>> response = null;
+        try {
+            response = super.getAllProducts();
+            return response;
+        } finally {
+            getAll.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<Product> getProductById(Long id) {
+        long start = getById.begin();
+        ApiResponse<Product> response = null;
+        try {
+            response = super.getProductById(id);
+            return response;
+        } finally {
+            getById.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<Product> createProduct(Product product) {
+        long start = create.begin();
+        ApiResponse<Product> response = null;
+        try {
+            response = super.createProduct(product);
+            return response;
+        } finally {
+            create.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<Product> updateProduct(Long id, Product productDetails) {
+        long start = update.begin();
+        ApiResponse<Product> response = null;
+        try {
+            response = super.updateProduct(id, productDetails);
+            return response;
+        } finally {
+            update.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<Void> deleteProduct(Long id) {
+        long start = delete.begin();
+        ApiResponse<Void> response = null;
+        try {
+            response = super.deleteProduct(id);
+            return response;
+        } finally {
+            delete.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<BulkResult> createProducts(List<Product> products) {
+        long start = createBulk.begin();
+        ApiResponse<BulkResult> response = null;
+        try {
+            response = super.createProducts(products);
+            return response;
+        } finally {
+            createBulk.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<BulkResult> updateProducts(List<Product> productDetails) {
+        long start = updateBulk.begin();
+        ApiResponse<BulkResult> response = null;
+        try {
+            response = super.updateProducts(productDetails);
+            return response;
+        } finally {
+            updateBulk.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<BulkResult> deleteProducts(List<Long> ids) {
+        long start = deleteBulk.begin();
+        ApiResponse<BulkResult> response = null;
+        try {
+            response = super.deleteProducts(ids);
+            return response;
+        } finally {
+            deleteBulk.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<List<Product>> getProductsByCategory(String category) {
+        long start = byCategory.begin();
+        ApiResponse<List<Product>> response = null;
+        try {
+            response = super.getProductsByCategory(category);
+            return response;
+        } finally {
+            byCategory.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<List<Product>> getProductsByPriceRange(String category, double minPrice, double maxPrice,
+                                                              String sort, int offset, int limit) {
+        long start = byPriceRange.begin();
+        ApiResponse<List<Product>> response = null;
+        try {
+            response = super.getProductsByPriceRange(category, minPrice, maxPrice, sort, offset, limit);
+            return response;
+        } finally {
+            byPriceRange.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<List<Product>> searchProducts(String query) {
+        long start = search.begin();
+        ApiResponse<List<Product>> response = null;
+        try {
+            response = super.searchProducts(query);
+            return response;
+        } finally {
+            search.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<List<Product>> searchProducts(String query, int limit) {
+        long start = searchTop.begin();
+        ApiResponse<List<Product>> response = null;
+        try {
+            response = super.searchProducts(query, limit);
+            return response;
+        } finally {
+            searchTop.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<ProductPage> getAllProducts(String cursor, int limit) {
+        long start = page.begin();
+        ApiResponse<ProductPage> response = null;
+        try {
+            response = super.getAllProducts(cursor, limit);
+            return response;
+        } finally {
+            page.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<ProductPage> getProductsByCategory(String category, String cursor, int limit) {
+        long start = categoryPage.begin();
+        ApiResponse<ProductPage> response = null;
+        try {
+            response = super.getProductsByCategory(category, cursor, limit);
+            return response;
+        } finally {
+            categoryPage.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<ProductPage> searchProducts(String query, String cursor, int limit) {
+        long start = searchPage.begin();
+        ApiResponse<ProductPage> response = null;
+        try {
+            response = super.searchProducts(query, cursor, limit);
+            return response;
+        } finally {
+            searchPage.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<Long> streamAllProducts(int chunkSize, Consumer<List<Product>> consumer) {
+        long start = stream.begin();
+        ApiResponse<Long> response = null;
+        try {
+            response = super.streamAllProducts(chunkSize, consumer);
+            return response;
+        } finally {
+            stream.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<Long> streamProductsByCategory(String category, int chunkSize, Consumer<List<Product>> consumer) {
+        long start = categoryStream.begin();
+        ApiResponse<Long> response = null;
+        try {
+            response = super.streamProductsByCategory(category, chunkSize, consumer);
+            return response;
+        } finally {
+            categoryStream.end(start, response);
+        }
+    }
+
+    @Override
+    public ApiResponse<Long> streamSearchResults(String query, int chunkSize, Consumer<List<Product>> consumer) {
+        long start = searchStream.begin();
+        ApiResponse<Long> response = null;
+        try {
+            response = super.streamSearchResults(query, chunkSize, consumer);
+            return response;
+        } finally {
+            searchStream.end(start, response);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package Intermediate.api;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention benchmark for versioned product updates
+ *
+ * Every thread repeatedly reads a random product from a small hot set, raises its price
+ * by one and saves it. With optimistic locking the save is a compare-and-set on the version
+ * and a conflict means re-reading and retrying; the baseline serializes the whole
+ * read-modify-write behind one global lock. Both must end with no lost updates: the total
+ * price increase has to equal the number of successful updates.
+ *
+ * java Intermediate.api.OptimisticLockBenchmark [secondsPerRun] [hotProducts]
+ */
+class OptimisticLockBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        Duration runTime = Duration.ofSeconds(args.length > 0 ? Integer.parseInt(args[0]) : 2);
+        int hotProducts = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Cores: " + cores + ", hot products: " + hotProducts + ", " + runTime.getSeconds() + "s per run");
+        System.out.printf("%8s %20s %14s %20s %12s%n",
+                "threads", "optimistic upd/s", "conflicts/upd", "global lock upd/s", "lost upd");
+        for (int threads = 1; threads <= Math.max(8, cores * 2); threads *= 2) {
+            Result optimistic = run(threads, hotProducts, runTime, true);
+            Result locked = run(threads, hotProducts, runTime, false);
+            System.out.printf("%8d %20.0f %14.3f %20.0f %12d%n", threads,
+                    optimistic.updatesPerSecond(runTime), optimistic.conflictsPerUpdate(),
+                    locked.updatesPerSecond(runTime), optimistic.lostUpdates + locked.lostUpdates);
+        }
+    }
+
+    private static Result run(int threads, int hotProducts, Duration runTime, boolean optimistic)
+            throws InterruptedException {
+        ProductServiceImpl service = new ProductServiceImpl();
+        List<Product> seeded = new ArrayList<>(hotProducts);
+        for (int i = 0; i < hotProducts; i++) {
+            Product product = new Product();
+            product.setName("Hot Product " + i);
+            product.setPrice(1);
+            product.setCategory("Benchmark");
+            seeded.add(product);
+        }
+        service.saveAll(seeded);
+        long[] ids = new long[hotProducts];
+        for (int i = 0; i < hotProducts; i++) {
+            ids[i] = seeded.get(i).getId();
+        }
+
+        LongAdder updates = new LongAdder();
+        LongAdder conflicts = new LongAdder();
+        Object globalLock = new Object();
+        long deadline = System.nanoTime() + runTime.toNanos();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                Random random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    long id = ids[random.nextInt(ids.length)];
+                    if (optimistic) {
+                        while (true) {
+                            Product current = service.findById(id).orElseThrow();
+                            try {
+                                service.save(withPriceIncreased(current, current.getVersion()));
+                                break;
+                            } catch (OptimisticLockException e) {
+                                conflicts.increment();
+                            }
+                        }
+                    } else {
+                        synchronized (globalLock) {
+                            Product current = service.findById(id).orElseThrow();
+                            service.save(withPriceIncreased(current, null));
+                        }
+                    }
+                    updates.increment();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(runTime.toMillis() + 10_000, TimeUnit.MILLISECONDS);
+
+        double totalIncrease = 0;
+        for (long id : ids) {
+            totalIncrease += service.findById(id).orElseThrow().getPrice() - 1;
+        }
+        return new Result(updates.sum(), conflicts.sum(), updates.sum() - Math.round(totalIncrease));
+    }
+
+    private static Product withPriceIncreased(Product current, Long expectedVersion) {
+        Product product = new Product();
+        product.setId(current.getId());
+        product.setName(current.getName());
+        product.setDescription(current.getDescription());
+        product.setPrice(current.getPrice() + 1);
+        product.setCategory(current.getCategory());
+        product.setVersion(expectedVersion);
+        return product;
+    }
+
+    private static final class Result {
+        private final long updates;
+        private final long conflicts;
+        private final long lostUpdates;
+
+        private Result(long updates, long conflicts, long lostUpdates) {
+            this.updates = updates;
+            this.conflicts = conflicts;
+            this.lostUpdates = lostUpdates;
+        }
+
+        double updatesPerSecond(Duration runTime) {
+            return updates / (runTime.toMillis() / 1000.0);
+        }
+
+        double conflictsPerUpdate() {
+            return updates == 0 ? 0 : (double) conflicts / updates;
+        }
+    }
+}
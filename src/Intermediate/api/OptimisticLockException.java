@@ -0,0 +1,39 @@
+package Intermediate.api;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when a versioned write is based on a product version that is no longer current
+ *
+ * In a real Spring application this would be Spring's OptimisticLockingFailureException,
+ * raised by JPA for an entity with a @Version field.
+ */
+class OptimisticLockException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Long> productIds;
+
+    /**
+     * @param currentVersion the stored version, or null if the product no longer exists
+     */
+    public OptimisticLockException(long productId, long expectedVersion, Long currentVersion) {
+        super(currentVersion == null
+                ? "Product " + productId + " was deleted by another request"
+                : "Product " + productId + " was modified by another request (expected version "
+                        + expectedVersion + ", current version " + currentVersion + ")");
+        this.productIds = Collections.singletonList(productId);
+    }
+
+    public OptimisticLockException(List<Long> productIds) {
+        super("Products " + productIds + " were modified by another request");
+        this.productIds = Collections.unmodifiableList(productIds);
+    }
+
+    /**
+     * IDs of every product whose version did not match
+     */
+    public List<Long> getProductIds() {
+        return productIds;
+    }
+}
@@ -0,0 +1,90 @@
+package Intermediate.api;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted index on product price, overall and per category
+ *
+ * Entries are (price, id) pairs in a ConcurrentSkipListSet, so a price range is a
+ * subSet view, descending order is the descendingSet of that view, and limit/offset
+ * only walk offset + limit entries instead of sorting every match per request.
+ * The per-category sets make "category X between A and B" as cheap as a global range.
+ */
+class PriceIndex implements ProductIndex {
+    private final NavigableSet<PriceKey> all = new ConcurrentSkipListSet<>();
+    private final Map<String, NavigableSet<PriceKey>> byCategory = new ConcurrentHashMap<>();
+
+    /**
+     * Entries with minPrice <= price <= maxPrice, in price order (then ID order for equal prices)
+     *
+     * @param normalizedCategory category key from CategoryIndex.normalize, or null for all categories
+     */
+    NavigableSet<PriceKey> range(String normalizedCategory, double minPrice, double maxPrice, boolean descending) {
+        NavigableSet<PriceKey> source = normalizedCategory == null ? all : byCategory.get(normalizedCategory);
+        if (source == null || Double.compare(minPrice, maxPrice) > 0) {
+            return Collections.emptyNavigableSet();
+        }
+        NavigableSet<PriceKey> range = source.subSet(
+                new PriceKey(minPrice, Long.MIN_VALUE), true, new PriceKey(maxPrice, Long.MAX_VALUE), true);
+        return descending ? range.descendingSet() : range;
+    }
+
+    @Override
+    public void add(long id, ProductSnapshot snapshot) {
+        PriceKey key = new PriceKey(snapshot.price, id);
+        all.add(key);
+        // Add inside compute so a concurrent remove cannot drop the set we are adding to
+        byCategory.compute(CategoryIndex.normalize(snapshot.category), (category, keys) -> {
+            NavigableSet<PriceKey> target = keys == null ? new ConcurrentSkipListSet<>() : keys;
+            target.add(key);
+            return target;
+        });
+    }
+
+    @Override
+    public void remove(long id, ProductSnapshot snapshot) {
+        PriceKey key = new PriceKey(snapshot.price, id);
+        all.remove(key);
+        byCategory.computeIfPresent(CategoryIndex.normalize(snapshot.category), (category, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+}
+
+/**
+ * Position of one product in PriceIndex: ordered by price, then by ID
+ */
+final class PriceKey implements Comparable<PriceKey> {
+    final double price;
+    final long id;
+
+    PriceKey(double price, long id) {
+        this.price = price;
+        this.id = id;
+    }
+
+    @Override
+    public int compareTo(PriceKey other) {
+        int byPrice = Double.compare(price, other.price);
+        return byPrice != 0 ? byPrice : Long.compare(id, other.id);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof PriceKey)) {
+            return false;
+        }
+        PriceKey key = (PriceKey) other;
+        return Double.compare(price, key.price) == 0 && id == key.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(price) * 31 + Long.hashCode(id);
+    }
+}
@@ -0,0 +1,352 @@
+package Intermediate.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Embedded HTTP front end that routes /api/products/** to a ProductController
+ *
+ * Built on the JDK's com.sun.net.httpserver, so it needs no dependencies. Connections are
+ * kept alive between requests (HTTP/1.1 persistent connections) as long as the client
+ * allows it. The server's dispatcher thread only hands each request to a bounded worker
+ * pool. When all workers are busy and the queue is full, the request is answered right
+ * away with 503 Service Unavailable and Retry-After (load shedding instead of unbounded
+ * queueing), so the dispatcher thread is never held up by a slow request.
+ *
+ * Loading this class sets the system property sun.net.httpserver.nodelay to true unless it
+ * is already set. The property is JVM-wide: it turns on TCP_NODELAY for every
+ * com.sun.net.httpserver server in the process, not just this one. Set it before this class
+ * is loaded to choose otherwise.
+ *
+ * Streaming endpoints answer with chunked newline-delimited JSON: one array of products
+ * per chunk, then the final ApiResponse on the last line.
+ *
+ * In a real Spring application the embedded Tomcat/Netty server and the
+ * DispatcherServlet do all of this.
+ */
+class ProductHttpServer {
+    static final String BASE_PATH = "/api/products";
+
+    static {
+        // Headers and body are written separately; without TCP_NODELAY, Nagle's algorithm
+        // and delayed ACKs add ~40ms to every keep-alive response
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final ProductController controller;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * @param port    port to listen on, or 0 to pick a free one
+     * @param threads number of worker threads handling requests
+     */
+    public ProductHttpServer(ProductController controller, int port, int threads) throws IOException {
+        this.controller = controller;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), runnable -> {
+                    Thread thread = new Thread(runnable, "product-http-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        // No executor: the handler runs on the dispatcher thread and passes the exchange on
+        server.createContext(BASE_PATH, this::dispatch);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests and wait up to delaySeconds for running ones to finish
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        workers.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Runs on the server's dispatcher thread, so it must not block
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try {
+            workers.execute(() -> handle(exchange));
+        } catch (RejectedExecutionException e) {
+            // The unread request body is not worth draining; the client opens a new connection
+            exchange.getResponseHeaders().set("Connection", "close");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            try {
+                send(exchange, ApiResponse.serviceUnavailable("Server is overloaded, try again later"));
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            respond(exchange);
+        } catch (IOException e) {
+            // The client went away; there is no one left to answer
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        try {
+            String body = readBody(exchange);
+            ApiResponse<?> response;
+            try {
+                response = route(exchange, body);
+            } catch (IllegalArgumentException e) {
+                response = ApiResponse.badRequest(e.getMessage());
+            }
+            if (response != null) {
+                send(exchange, response);
+            }
+        } catch (RuntimeException e) {
+            if (exchange.getResponseCode() == -1) {
+                send(exchange, ApiResponse.error("Error handling request: " + e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Dispatch to the controller; returns null when the response was already streamed
+     */
+    private ApiResponse<?> route(HttpExchange exchange, String body) throws IOException {
+        String method = exchange.getRequestMethod();
+        List<String> path = pathSegments(exchange.getRequestURI().getRawPath());
+        Map<String, String> query = queryParameters(exchange.getRequestURI().getRawQuery());
+
+        if (path.isEmpty()) {
+            if (method.equals("GET")) {
+                return query.containsKey("limit")
+                        ? controller.getAllProducts(query.get("cursor"), intParam(query, "limit", 0))
+                        : controller.getAllProducts();
+            }
+            if (method.equals("POST")) {
+                return controller.createProduct(ProductJsonReader.readProduct(body));
+            }
+            return methodNotAllowed(exchange, method, "GET, POST");
+        }
+
+        String first = path.get(0);
+        if (path.size() == 1 && first.equals("bulk")) {
+            switch (method) {
+                case "POST":
+                    return controller.createProducts(ProductJsonReader.readProducts(body));
+                case "PUT":
+                    return controller.updateProducts(ProductJsonReader.readProducts(body));
+                case "DELETE":
+                    return controller.deleteProducts(ProductJsonReader.readIds(body));
+                default:
+                    return methodNotAllowed(exchange, method, "POST, PUT, DELETE");
+            }
+        }
+        if (path.size() == 1 && !isListing(first)) {
+            return byId(exchange, method, first, body);
+        }
+        if (!method.equals("GET")) {
+            return methodNotAllowed(exchange, method, "GET");
+        }
+
+        if (path.size() == 1) {
+            switch (first) {
+                case "stream":
+                    return stream(exchange, consumer ->
+                            controller.streamAllProducts(intParam(query, "chunkSize", 100), consumer));
+                case "search":
+                    if (query.containsKey("cursor")) {
+                        return controller.searchProducts(query.get("query"), query.get("cursor"),
+                                intParam(query, "limit", 0));
+                    }
+                    if (query.containsKey("limit")) {
+                        return controller.searchProducts(query.get("query"), intParam(query, "limit", 0));
+                    }
+                    return controller.searchProducts(query.get("query"));
+                case "price":
+                    return controller.getProductsByPriceRange(query.get("category"),
+                            doubleParam(query, "min", 0), doubleParam(query, "max", Double.MAX_VALUE),
+                            query.get("sort"), intParam(query, "offset", 0),
+                            intParam(query, "limit", ProductController.MAX_PAGE_SIZE));
+                default:
+                    break;
+            }
+        }
+        if (path.size() == 2 && first.equals("search") && path.get(1).equals("stream")) {
+            return stream(exchange, consumer ->
+                    controller.streamSearchResults(query.get("query"), intParam(query, "chunkSize", 100), consumer));
+        }
+        if (path.size() == 2 && first.equals("category")) {
+            return query.containsKey("limit")
+                    ? controller.getProductsByCategory(path.get(1), query.get("cursor"), intParam(query, "limit", 0))
+                    : controller.getProductsByCategory(path.get(1));
+        }
+        if (path.size() == 3 && first.equals("category") && path.get(2).equals("stream")) {
+            return stream(exchange, consumer ->
+                    controller.streamProductsByCategory(path.get(1), intParam(query, "chunkSize", 100), consumer));
+        }
+        return ApiResponse.notFound("No endpoint for " + method + " " + exchange.getRequestURI().getPath());
+    }
+
+    private static boolean isListing(String segment) {
+        return segment.equals("stream") || segment.equals("search") || segment.equals("price");
+    }
+
+    private ApiResponse<?> byId(HttpExchange exchange, String method, String segment, String body) {
+        Long id;
+        try {
+            id = Long.parseLong(segment);
+        } catch (NumberFormatException e) {
+            return ApiResponse.notFound("No endpoint for " + BASE_PATH + "/" + segment);
+        }
+        switch (method) {
+            case "GET":
+                return controller.getProductById(id);
+            case "PUT":
+                return controller.updateProduct(id, ProductJsonReader.readProduct(body));
+            case "DELETE":
+                return controller.deleteProduct(id);
+            default:
+                return methodNotAllowed(exchange, method, "GET, PUT, DELETE");
+        }
+    }
+
+    /**
+     * 405 Method Not Allowed, with the methods the resource does support in the Allow header
+     */
+    private static ApiResponse<?> methodNotAllowed(HttpExchange exchange, String method, String allowed) {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        return ApiResponse.methodNotAllowed("Method " + method + " is not supported here");
+    }
+
+    /**
+     * Run a streaming endpoint, sending each chunk as soon as the controller hands it over.
+     * If nothing was streamed (e.g. validation failed), the caller sends the response as usual.
+     */
+    private ApiResponse<?> stream(HttpExchange exchange,
+                                  Function<Consumer<List<Product>>, ApiResponse<Long>> endpoint)
+            throws IOException {
+        OutputStream[] out = new OutputStream[1];
+        ApiResponse<Long> response = endpoint.apply(chunk -> {
+            try {
+                if (out[0] == null) {
+                    exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+                    exchange.sendResponseHeaders(200, 0);
+                    out[0] = exchange.getResponseBody();
+                }
+                ApiResponseJsonWriter.forCurrentThread().writeData(chunk).writeTo(out[0]);
+                out[0].write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (out[0] == null) {
+            return response;
+        }
+        ApiResponseJsonWriter.forCurrentThread().write(response).writeTo(out[0]);
+        out[0].write('\n');
+        return null;
+    }
+
+    private static void send(HttpExchange exchange, ApiResponse<?> response) throws IOException {
+        ApiResponseJsonWriter writer = ApiResponseJsonWriter.forCurrentThread().write(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.getStatusCode(), writer.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            writer.writeTo(out);
+        }
+    }
+
+    /**
+     * Read the whole request body; it must be consumed for the connection to be reused
+     */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readAllBytes();
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<String> pathSegments(String rawPath) {
+        String rest = rawPath.substring(BASE_PATH.length());
+        if (!rest.isEmpty() && rest.charAt(0) != '/') {
+            // e.g. /api/productsX, which the context prefix match lets through
+            throw new IllegalArgumentException("Unknown path: " + rawPath);
+        }
+        List<String> segments = new ArrayList<>();
+        for (String segment : rest.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+            }
+        }
+        return segments;
+    }
+
+    private static Map<String, String> queryParameters(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter '" + name + "' must be an integer");
+        }
+    }
+
+    private static double doubleParam(Map<String, String> query, String name, double defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter '" + name + "' must be a number");
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package Intermediate.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal JSON reader for request bodies of the embedded HTTP server
+ *
+ * Reads exactly the shapes ProductController accepts: a product object, an array of
+ * product objects and an array of IDs. Unknown fields are skipped. Malformed input throws
+ * IllegalArgumentException, which the server turns into a 400 response.
+ *
+ * In a real Spring application Jackson would do this via @RequestBody.
+ */
+final class ProductJsonReader {
+    private final String json;
+    private int pos;
+
+    private ProductJsonReader(String json) {
+        this.json = json;
+    }
+
+    static Product readProduct(String json) {
+        ProductJsonReader reader = new ProductJsonReader(json);
+        Product product = reader.product();
+        reader.end();
+        return product;
+    }
+
+    static List<Product> readProducts(String json) {
+        ProductJsonReader reader = new ProductJsonReader(json);
+        List<Product> products = new ArrayList<>();
+        reader.expect('[');
+        if (!reader.consume(']')) {
+            do {
+                products.add(reader.product());
+            } while (reader.consume(','));
+            reader.expect(']');
+        }
+        reader.end();
+        return products;
+    }
+
+    static List<Long> readIds(String json) {
+        ProductJsonReader reader = new ProductJsonReader(json);
+        List<Long> ids = new ArrayList<>();
+        reader.expect('[');
+        if (!reader.consume(']')) {
+            do {
+                ids.add(reader.longValue());
+            } while (reader.consume(','));
+            reader.expect(']');
+        }
+        reader.end();
+        return ids;
+    }
+
+    private Product product() {
+        Product product = new Product();
+        expect('{');
+        if (consume('}')) {
+            return product;
+        }
+        do {
+            String field = string();
+            expect(':');
+            switch (field) {
+                case "id":
+                    product.setId(nullOr() ? null : longValue());
+                    break;
+                case "name":
+                    product.setName(nullOr() ? null : string());
+                    break;
+                case "description":
+                    product.setDescription(nullOr() ? null : string());
+                    break;
+                case "price":
+                    product.setPrice(number());
+                    break;
+                case "category":
+                    product.setCategory(nullOr() ? null : string());
+                    break;
+                case "version":
+                    product.setVersion(nullOr() ? null : longValue());
+                    break;
+                default:
+                    skipValue();
+            }
+        } while (consume(','));
+        expect('}');
+        return product;
+    }
+
+    private boolean nullOr() {
+        skipWhitespace();
+        if (json.startsWith("null", pos)) {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    private String string() {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (pos < json.length()) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos >= json.length()) {
+                break;
+            }
+            char escaped = json.charAt(pos++);
+            switch (escaped) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > json.length()) {
+                        throw error("truncated unicode escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("invalid unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private double number() {
+        String text = numberText();
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw error("invalid number " + text);
+        }
+    }
+
+    private long longValue() {
+        String text = numberText();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw error("invalid integer " + text);
+        }
+    }
+
+    private String numberText() {
+        skipWhitespace();
+        int start = pos;
+        while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) >= 0) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("expected a number");
+        }
+        return json.substring(start, pos);
+    }
+
+    private void skipValue() {
+        skipWhitespace();
+        if (pos >= json.length()) {
+            throw error("expected a value");
+        }
+        char c = json.charAt(pos);
+        if (c == '"') {
+            string();
+        } else if (c == '{' || c == '[') {
+            char close = c == '{' ? '}' : ']';
+            pos++;
+            if (consume(close)) {
+                return;
+            }
+            do {
+                if (close == '}') {
+                    string();
+                    expect(':');
+                }
+                skipValue();
+            } while (consume(','));
+            expect(close);
+        } else if (json.startsWith("true", pos) || json.startsWith("null", pos)) {
+            pos += 4;
+        } else if (json.startsWith("false", pos)) {
+            pos += 5;
+        } else {
+            numberText();
+        }
+    }
+
+    private void expect(char expected) {
+        if (!consume(expected)) {
+            throw error("expected '" + expected + "'");
+        }
+    }
+
+    private boolean consume(char expected) {
+        skipWhitespace();
+        if (pos < json.length() && json.charAt(pos) == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void end() {
+        skipWhitespace();
+        if (pos != json.length()) {
+            throw error("unexpected trailing content");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String problem) {
+        return new IllegalArgumentException("Invalid JSON at position " + pos + ": " + problem);
+    }
+}
@@ -0,0 +1,198 @@
+package Intermediate.api;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Closed-loop HTTP load generator for ProductHttpServer
+ *
+ * Each of the configured connections is one thread sending a request, waiting for the
+ * response and sending the next one over the same keep-alive connection. Latency and status
+ * codes are recorded per endpoint in a RequestMetrics, so the report shows sustained
+ * requests per second and p50/p99/p999 latency as seen by the client.
+ *
+ * Run main to start an embedded server with a seeded catalog and load it:
+ * java Intermediate.api.ProductLoadGenerator [seconds] [connections] [products]
+ */
+class ProductLoadGenerator {
+    private final HttpClient client;
+    private final URI baseUri;
+    private final int connections;
+    private final List<Workload> workloads = new ArrayList<>();
+    private int totalWeight;
+
+    public ProductLoadGenerator(URI baseUri, int connections) {
+        this.baseUri = baseUri;
+        this.connections = connections;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * Add a request type to the mix; it is picked with probability weight / total weight
+     */
+    public ProductLoadGenerator add(String endpoint, int weight, Function<Random, HttpRequest.Builder> request) {
+        workloads.add(new Workload(endpoint, weight, request));
+        totalWeight += weight;
+        return this;
+    }
+
+    /**
+     * The default mix: mostly reads by ID, some searches, category and price listings, a few writes
+     */
+    public ProductLoadGenerator addDefaultWorkloads(long productCount) {
+        return add("GET /api/products/{id}", 60,
+                random -> get("/" + (1 + random.nextInt((int) productCount))))
+                .add("GET /api/products/search?limit", 15,
+                        random -> get("/search?query=model+" + random.nextInt(100) + "&limit=10"))
+                .add("GET /api/products/category/{category}?cursor", 10,
+                        random -> get("/category/Category" + random.nextInt(10) + "?limit=20"))
+                .add("GET /api/products/price", 10, random -> {
+                    int min = random.nextInt(900);
+                    return get("/price?min=" + min + "&max=" + (min + 100) + "&sort=desc&limit=20");
+                })
+                .add("POST /api/products", 5, random -> HttpRequest.newBuilder(baseUri)
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"Load Product "
+                                + random.nextInt(1_000_000) + "\",\"description\":\"Created by the load generator\","
+                                + "\"price\":" + (1 + random.nextInt(999)) + ".99,\"category\":\"Category"
+                                + random.nextInt(10) + "\"}")));
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUri + path)).GET();
+    }
+
+    /**
+     * Run the workload mix for the given time and return what was measured
+     */
+    public RequestMetrics run(Duration duration) throws InterruptedException {
+        RequestMetrics metrics = new RequestMetrics();
+        EndpointMetrics[] endpoints = new EndpointMetrics[workloads.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            endpoints[i] = metrics.endpoint(workloads.get(i).endpoint);
+        }
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService threads = Executors.newFixedThreadPool(connections);
+        for (int c = 0; c < connections; c++) {
+            threads.execute(() -> {
+                Random random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int pick = pick(random.nextInt(totalWeight));
+                    HttpRequest request = workloads.get(pick).request.apply(random)
+                            .timeout(Duration.ofSeconds(10)).build();
+                    long start = endpoints[pick].begin();
+                    int status = 0;
+                    try {
+                        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (IOException e) {
+                        // Recorded as status 0: the request never got an HTTP response
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } finally {
+                        endpoints[pick].end(start, status);
+                    }
+                }
+            });
+        }
+        threads.shutdown();
+        threads.awaitTermination(duration.toMillis() + 30_000, TimeUnit.MILLISECONDS);
+        return metrics;
+    }
+
+    private int pick(int ticket) {
+        for (int i = 0; i < workloads.size(); i++) {
+            ticket -= workloads.get(i).weight;
+            if (ticket < 0) {
+                return i;
+            }
+        }
+        return workloads.size() - 1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int productCount = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        ProductService productService = new CachingProductService(
+                new ProductServiceImpl(), Duration.ofMinutes(5), 10_000, 64L * 1024 * 1024);
+        seed(productService, productCount);
+        RequestMetrics serverMetrics = new RequestMetrics();
+        ProductHttpServer server = new ProductHttpServer(
+                new InstrumentedProductController(productService, serverMetrics), 0,
+                Runtime.getRuntime().availableProcessors() * 2);
+        server.start();
+        try {
+            URI baseUri = URI.create("http://localhost:" + server.getPort() + ProductHttpServer.BASE_PATH);
+            ProductLoadGenerator generator = new ProductLoadGenerator(baseUri, connections)
+                    .addDefaultWorkloads(productCount);
+
+            System.out.println("Warming up for " + Math.max(1, seconds / 5) + "s...");
+            generator.run(Duration.ofSeconds(Math.max(1, seconds / 5)));
+
+            System.out.println("Running " + connections + " keep-alive connections for " + seconds + "s against "
+                    + baseUri);
+            RequestMetrics clientMetrics = generator.run(Duration.ofSeconds(seconds));
+            long total = 0;
+            for (EndpointSnapshot endpoint : clientMetrics.snapshot()) {
+                total += endpoint.requests;
+            }
+            System.out.println("\nClient-side latency per endpoint:");
+            System.out.print(clientMetrics.export());
+            System.out.printf("Total: %d requests, %.0f requests/s%n", total, total / (double) seconds);
+            System.out.println("\nServer-side latency per endpoint (including warm-up):");
+            System.out.print(serverMetrics.export());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void seed(ProductService productService, int count) {
+        List<Product> batch = new ArrayList<>(10_000);
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            Product product = new Product();
+            product.setName("Model " + (i % 100) + " Item " + i);
+            product.setDescription("Seeded product number " + i);
+            product.setPrice(1 + random.nextInt(999) + 0.99);
+            product.setCategory("Category" + (i % 10));
+            batch.add(product);
+            if (batch.size() == 10_000 || i == count - 1) {
+                productService.saveAll(batch);
+                batch = new ArrayList<>(10_000);
+            }
+        }
+    }
+
+    /**
+     * One request type in the mix
+     */
+    private static final class Workload {
+        private final String endpoint;
+        private final int weight;
+        private final Function<Random, HttpRequest.Builder> request;
+
+        private Workload(String endpoint, int weight, Function<Random, HttpRequest.Builder> request) {
+            this.endpoint = endpoint;
+            this.weight = weight;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package Intermediate.api;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated product listing
+ *
+ * The cursor is opaque to clients: they pass nextCursor back to get the following page.
+ * A null nextCursor means there are no more results.
+ */
+class ProductPage {
+    private final List<Product> items;
+    private final String nextCursor;
+
+    public ProductPage(List<Product> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Product> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductPage [items=" + items.size() + ", nextCursor=" + nextCursor + "]";
+    }
+}
+
+/**
+ * Encoding and decoding of page cursors
+ *
+ * ID-ordered listings use the last product ID seen; ranked search uses the score and ID
+ * of the last hit seen, because the ID alone does not define a position in ranked order.
+ */
+final class ProductCursor {
+    private static final char SEPARATOR = '.';
+
+    private ProductCursor() {
+    }
+
+    static String ofId(long id) {
+        return Long.toString(id);
+    }
+
+    static Long parseId(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    static String ofHit(SearchHit hit) {
+        return hit.score + String.valueOf(SEPARATOR) + hit.id;
+    }
+
+    static SearchHit parseHit(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        int separator = cursor.indexOf(SEPARATOR);
+        try {
+            if (separator > 0) {
+                return new SearchHit(Long.parseLong(cursor.substring(separator + 1)),
+                        Integer.parseInt(cursor.substring(0, separator)));
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+}
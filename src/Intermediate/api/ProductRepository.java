@@ -0,0 +1,619 @@
+package Intermediate.api;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistence behind ProductServiceImpl
+ *
+ * In a real Spring application this would be a Spring Data interface:
+ * public interface ProductRepository extends JpaRepository<Product, Long> { }
+ */
+interface ProductRepository extends Closeable {
+    /**
+     * Hand every persisted product to the sink, in batches, once at startup
+     *
+     * @return the highest product ID ever written, including deleted products
+     */
+    long recover(Consumer<List<Product>> sink) throws IOException;
+
+    /**
+     * Durably record changes; called before they become visible in the store
+     */
+    void append(List<ProductChange> changes);
+
+    /**
+     * Called once recovery is done; the repository may use the source to write snapshots
+     */
+    void attach(ProductSnapshotSource source);
+}
+
+/**
+ * Repository that keeps nothing; the product store in memory is the only copy
+ */
+class InMemoryProductRepository implements ProductRepository {
+    @Override
+    public long recover(Consumer<List<Product>> sink) {
+        return 0;
+    }
+
+    @Override
+    public void append(List<ProductChange> changes) {
+        // Nothing to persist
+    }
+
+    @Override
+    public void attach(ProductSnapshotSource source) {
+        // No snapshots to take
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
+
+/**
+ * File-backed repository: an append-only write-ahead log plus periodic compacted snapshots
+ *
+ * Layout of the data directory:
+ * - wal-<first LSN>.log                 log segments, rolled when they reach segmentBytes
+ * - snapshot-<LSN>-<part>.dat          snapshot parts, products split by ID over the parts
+ * - snapshot-<LSN>.done                marker written once all parts of a snapshot are in place; holds the
+ *                                      highest product ID ever written, so IDs of deleted products are not reused
+ *
+ * Every record carries a log sequence number (LSN) and the full state of the product (or a
+ * delete marker), so replaying is idempotent and the newest record per ID wins no matter
+ * in which order records are read. That lets recovery read the snapshot parts and all log
+ * segments in parallel, through memory-mapped buffers, and merge the results by LSN.
+ *
+ * A checkpoint rolls the log while the store is quiesced, writes a snapshot of the store
+ * tagged with the last LSN before the roll, and then deletes older segments and snapshots.
+ * Snapshot parts and marker are fsynced and renamed into place, and the directory is fsynced,
+ * before anything is deleted, so a crash at any point leaves either the old files or the new ones.
+ * An append that fails part-way is cut off the segment again before the error is reported,
+ * so the records appended after it are not hidden behind a torn record on replay. If it
+ * cannot be cut off, the repository stops accepting writes until it is recovered on restart.
+ *
+ * Record format (big-endian):
+ * int bodyLength, int crc32(body), body = long lsn, byte type, long id,
+ * and for PUT: long version, double price, then name, description and category as (int length, UTF-8 bytes),
+ * length -1 meaning null. A torn or corrupt record ends the replay of its file.
+ */
+class FileProductRepository implements ProductRepository {
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final String SNAPSHOT_DONE_SUFFIX = ".done";
+    private static final int SNAPSHOT_MAGIC = 0x50524F44; // "PROD"
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER = 8;
+    private static final int RECOVERY_BATCH = 10_000;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean syncOnWrite;
+    private final Duration checkpointInterval;
+    private final int parallelism;
+
+    // Guarded by appendLock
+    private final Object appendLock = new Object();
+    private FileChannel segment;
+    private long segmentSize;
+    private long nextLsn = 1;
+    private long highestId;
+    // Set once a failed append could not be undone; the log then takes no more writes
+    private IOException failure;
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(64 * 1024);
+
+    private final Object checkpointLock = new Object();
+    private ScheduledExecutorService checkpointScheduler;
+
+    /**
+     * @param segmentBytes       roll the log to a new segment after this many bytes
+     * @param syncOnWrite        fsync after every append instead of leaving it to the OS
+     * @param checkpointInterval how often to write a compacted snapshot (null to only snapshot on demand)
+     */
+    public FileProductRepository(Path directory, long segmentBytes, boolean syncOnWrite, Duration checkpointInterval)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.syncOnWrite = syncOnWrite;
+        this.checkpointInterval = checkpointInterval;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public long recover(Consumer<List<Product>> sink) throws IOException {
+        long snapshotLsn = latestCompleteSnapshot();
+        List<Path> files = new ArrayList<>();
+        long snapshotHighestId = 0;
+        if (snapshotLsn > 0) {
+            files.addAll(list(SNAPSHOT_PREFIX + snapshotLsn + "-", SNAPSHOT_SUFFIX));
+            Path marker = directory.resolve(SNAPSHOT_PREFIX + snapshotLsn + SNAPSHOT_DONE_SUFFIX);
+            byte[] highest = Files.readAllBytes(marker);
+            if (highest.length != 8) {
+                throw new IOException("Corrupt snapshot marker: " + marker);
+            }
+            snapshotHighestId = ByteBuffer.wrap(highest).getLong();
+        }
+        files.addAll(list(SEGMENT_PREFIX, SEGMENT_SUFFIX));
+
+        // Decode every file on its own thread, then keep the newest record per ID
+        Map<Long, LogRecord> latest = new ConcurrentHashMap<>();
+        long[] maxLsnAndId = {snapshotLsn, snapshotHighestId};
+        ExecutorService replay = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, files.size())));
+        try {
+            List<Callable<long[]>> tasks = new ArrayList<>();
+            for (Path file : files) {
+                tasks.add(() -> replayFile(file, latest));
+            }
+            for (Future<long[]> result : replay.invokeAll(tasks)) {
+                long[] seen = result.get();
+                maxLsnAndId[0] = Math.max(maxLsnAndId[0], seen[0]);
+                maxLsnAndId[1] = Math.max(maxLsnAndId[1], seen[1]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Recovery interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Recovery failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            replay.shutdown();
+        }
+
+        List<Product> batch = new ArrayList<>(RECOVERY_BATCH);
+        for (Map.Entry<Long, LogRecord> entry : latest.entrySet()) {
+            if (entry.getValue().snapshot != null) {
+                batch.add(entry.getValue().snapshot.toProduct(entry.getKey()));
+                if (batch.size() == RECOVERY_BATCH) {
+                    sink.accept(batch);
+                    batch = new ArrayList<>(RECOVERY_BATCH);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+
+        synchronized (appendLock) {
+            nextLsn = maxLsnAndId[0] + 1;
+            highestId = maxLsnAndId[1];
+            openSegment();
+        }
+        return maxLsnAndId[1];
+    }
+
+    @Override
+    public void append(List<ProductChange> changes) {
+        synchronized (appendLock) {
+            ensureOpen();
+            long startSize = segmentSize;
+            long startLsn = nextLsn;
+            try {
+                encodeBuffer.clear();
+                for (ProductChange change : changes) {
+                    encodeBuffer = encode(encodeBuffer, nextLsn++, change.id, change.current);
+                }
+                encodeBuffer.flip();
+                while (encodeBuffer.hasRemaining()) {
+                    segmentSize += segment.write(encodeBuffer);
+                }
+                if (syncOnWrite) {
+                    segment.force(false);
+                }
+            } catch (IOException e) {
+                discardFailedAppend(startSize, startLsn, e);
+                throw new UncheckedIOException("Could not append to the product log", e);
+            }
+            for (ProductChange change : changes) {
+                highestId = Math.max(highestId, change.id);
+            }
+            if (segmentSize >= segmentBytes) {
+                try {
+                    openSegment();
+                } catch (IOException e) {
+                    // The changes are written; the current segment just keeps growing
+                    System.err.println("Could not roll the product log: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Cut a partly written append off the segment; caller holds appendLock
+     *
+     * If that fails, complete records of the failed append may remain in the segment, where
+     * replay cannot tell them from committed ones. Their LSNs stay used and the log is closed
+     * for writes, so nothing is appended behind them; recovery on restart decides what was written.
+     */
+    private void discardFailedAppend(long startSize, long startLsn, IOException e) {
+        try {
+            segment.truncate(startSize);
+            segmentSize = startSize;
+            nextLsn = startLsn;
+            return;
+        } catch (IOException truncateFailure) {
+            e.addSuppressed(truncateFailure);
+        }
+        closeQuietly(segment);
+        segment = null;
+        failure = e;
+    }
+
+    // Caller holds appendLock
+    private void ensureOpen() {
+        if (failure != null) {
+            throw new IllegalStateException("The product log failed and must be recovered by a restart", failure);
+        }
+        if (segment == null) {
+            throw new IllegalStateException("The product log is not open");
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already failed; nothing more to do with it
+        }
+    }
+
+    @Override
+    public void attach(ProductSnapshotSource source) {
+        if (checkpointInterval == null) {
+            return;
+        }
+        checkpointScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = checkpointInterval.toMillis();
+        checkpointScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint(source);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Product checkpoint failed: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write a compacted snapshot of the source and drop the log segments it covers
+     */
+    public void checkpoint(ProductSnapshotSource source) throws IOException {
+        synchronized (checkpointLock) {
+            // With no write in flight, every record up to snapshotLsn is already visible in the store
+            long[] highestIdAtRoll = new long[1];
+            long snapshotLsn = source.quiesce(() -> {
+                synchronized (appendLock) {
+                    ensureOpen();
+                    long last = nextLsn - 1;
+                    highestIdAtRoll[0] = highestId;
+                    try {
+                        openSegment();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return last;
+                }
+            });
+
+            int parts = Math.max(1, parallelism);
+            List<Path> temporary = new ArrayList<>(parts);
+            List<OutputStream> outputs = new ArrayList<>(parts);
+            try {
+                for (int part = 0; part < parts; part++) {
+                    Path file = directory.resolve(SNAPSHOT_PREFIX + snapshotLsn + "-" + part + SNAPSHOT_SUFFIX + ".tmp");
+                    temporary.add(file);
+                    OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+                    out.write(ByteBuffer.allocate(12).putInt(SNAPSHOT_MAGIC).putLong(snapshotLsn).array());
+                    outputs.add(out);
+                }
+
+                ByteBuffer[] buffers = new ByteBuffer[] {ByteBuffer.allocate(4096)};
+                source.forEachSnapshot((id, snapshot) -> {
+                    buffers[0].clear();
+                    buffers[0] = encode(buffers[0], snapshotLsn, id, snapshot);
+                    try {
+                        outputs.get((int) Math.floorMod(id, (long) parts))
+                                .write(buffers[0].array(), 0, buffers[0].position());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                for (OutputStream out : outputs) {
+                    out.close();
+                }
+            }
+
+            for (Path file : temporary) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                String name = file.getFileName().toString();
+                Files.move(file, file.resolveSibling(name.substring(0, name.length() - ".tmp".length())),
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            // The segments with the deletes of the highest IDs may go below, so the marker keeps the highest ID
+            Path marker = directory.resolve(SNAPSHOT_PREFIX + snapshotLsn + SNAPSHOT_DONE_SUFFIX);
+            Path markerTemporary = marker.resolveSibling(marker.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(markerTemporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer highest = ByteBuffer.allocate(8).putLong(0, highestIdAtRoll[0]);
+                while (highest.hasRemaining()) {
+                    channel.write(highest);
+                }
+                channel.force(true);
+            }
+            Files.move(markerTemporary, marker, StandardCopyOption.ATOMIC_MOVE);
+
+            // The renamed snapshot and marker must survive a crash before the files they replace are deleted
+            syncDirectory();
+            deleteCoveredFiles(snapshotLsn);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (checkpointScheduler != null) {
+            checkpointScheduler.shutdownNow();
+        }
+        synchronized (appendLock) {
+            if (segment != null) {
+                segment.force(true);
+                segment.close();
+                segment = null;
+            }
+        }
+    }
+
+    /**
+     * Replay one snapshot part or log segment into the shared map
+     *
+     * @return the highest LSN and the highest product ID found in the file
+     */
+    private long[] replayFile(Path file, Map<Long, LogRecord> latest) throws IOException {
+        long maxLsn = 0;
+        long maxId = 0;
+        Map<Long, LogRecord> local = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (file.getFileName().toString().startsWith(SNAPSHOT_PREFIX)) {
+                if (buffer.remaining() < 12 || buffer.getInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a product snapshot: " + file);
+                }
+                buffer.getLong();
+            }
+
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= RECORD_HEADER) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break; // Torn write at the end of the file
+                }
+                ByteBuffer body = buffer.slice();
+                body.limit(length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+
+                long lsn = body.getLong();
+                byte type = body.get();
+                long id = body.getLong();
+                ProductSnapshot snapshot = null;
+                if (type == PUT) {
+                    long version = body.getLong();
+                    double price = body.getDouble();
+                    snapshot = ProductSnapshot.of(readString(body), readString(body), price, readString(body), version);
+                }
+                LogRecord record = new LogRecord(lsn, snapshot);
+                local.merge(id, record, LogRecord::newer);
+                maxLsn = Math.max(maxLsn, lsn);
+                maxId = Math.max(maxId, id);
+            }
+        }
+        for (Map.Entry<Long, LogRecord> entry : local.entrySet()) {
+            latest.merge(entry.getKey(), entry.getValue(), LogRecord::newer);
+        }
+        return new long[] {maxLsn, maxId};
+    }
+
+    /**
+     * Encode one record at the buffer's position, growing the buffer if needed
+     */
+    private static ByteBuffer encode(ByteBuffer buffer, long lsn, long id, ProductSnapshot snapshot) {
+        byte[] name = snapshot == null ? null : utf8(snapshot.name);
+        byte[] description = snapshot == null ? null : utf8(snapshot.description);
+        byte[] category = snapshot == null ? null : utf8(snapshot.category);
+        int bodyLength = 8 + 1 + 8;
+        if (snapshot != null) {
+            bodyLength += 8 + 8 + 12 + length(name) + length(description) + length(category);
+        }
+
+        if (buffer.remaining() < RECORD_HEADER + bodyLength) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2,
+                    buffer.position() + RECORD_HEADER + bodyLength));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        int start = buffer.position();
+        buffer.putInt(bodyLength).putInt(0);
+        buffer.putLong(lsn).put(snapshot == null ? DELETE : PUT).putLong(id);
+        if (snapshot != null) {
+            buffer.putLong(snapshot.version).putDouble(snapshot.price);
+            writeString(buffer, name);
+            writeString(buffer, description);
+            writeString(buffer, category);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), start + RECORD_HEADER, bodyLength);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        return buffer;
+    }
+
+    private static byte[] utf8(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Start a new log segment named after the next LSN; caller holds appendLock
+     *
+     * The new segment is opened before the old one is closed, so a failure leaves a usable segment.
+     */
+    private void openSegment() throws IOException {
+        Path file = directory.resolve(SEGMENT_PREFIX + String.format("%020d", nextLsn) + SEGMENT_SUFFIX);
+        FileChannel next = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileChannel previous = segment;
+        segment = next;
+        segmentSize = next.size();
+        next.position(segmentSize);
+        if (previous != null) {
+            try {
+                previous.force(true);
+            } finally {
+                previous.close();
+            }
+        }
+    }
+
+    /**
+     * fsync the data directory, so files created or renamed in it survive a crash
+     *
+     * Windows cannot open a directory as a channel; NTFS journals renames on its own.
+     */
+    private void syncDirectory() throws IOException {
+        if (System.getProperty("os.name").startsWith("Windows")) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private long latestCompleteSnapshot() throws IOException {
+        long latest = 0;
+        for (Path marker : list(SNAPSHOT_PREFIX, SNAPSHOT_DONE_SUFFIX)) {
+            String name = marker.getFileName().toString();
+            latest = Math.max(latest, Long.parseLong(
+                    name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_DONE_SUFFIX.length())));
+        }
+        return latest;
+    }
+
+    /**
+     * Delete snapshots older than the given one and every log segment it fully covers
+     */
+    private void deleteCoveredFiles(long snapshotLsn) throws IOException {
+        for (Path file : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            String name = file.getFileName().toString();
+            long firstLsn = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            if (firstLsn <= snapshotLsn) {
+                Files.deleteIfExists(file);
+            }
+        }
+        for (Path file : list(SNAPSHOT_PREFIX, "")) {
+            String name = file.getFileName().toString();
+            int end = name.indexOf('-', SNAPSHOT_PREFIX.length());
+            if (end < 0) {
+                end = name.indexOf('.', SNAPSHOT_PREFIX.length());
+            }
+            if (Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), end)) < snapshotLsn) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private List<Path> list(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(suffix);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * State of one product as of one LSN; a null snapshot marks a delete
+     */
+    private static final class LogRecord {
+        private final long lsn;
+        private final ProductSnapshot snapshot;
+
+        private LogRecord(long lsn, ProductSnapshot snapshot) {
+            this.lsn = lsn;
+            this.snapshot = snapshot;
+        }
+
+        private static LogRecord newer(LogRecord a, LogRecord b) {
+            return a.lsn >= b.lsn ? a : b;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package Intermediate.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incremental full-text index over product name and description
+ *
+ * Every word of a product is broken into trigrams (3-character n-grams) and each trigram
+ * points to the IDs of the products that contain it. A query is tokenized the same way and
+ * the candidates are the intersection of the posting lists of all its trigrams, starting
+ * from the shortest one. Candidates are then verified against the lowercase text that was
+ * captured at index time, so search keeps the old "name or description contains the query"
+ * semantics without lowercasing the whole catalog on every call.
+ *
+ * Queries whose words are all shorter than three characters have no trigrams and fall back
+ * to checking every indexed document.
+ */
+class ProductSearchIndex implements ProductIndex {
+    private static final int NGRAM = 3;
+
+    // Ranking weights - a hit in the name counts more than a hit in the description
+    private static final int NAME_HIT = 4;
+    private static final int DESCRIPTION_HIT = 1;
+    private static final int WORD_START_BONUS = 2;
+
+    private final Map<Long, IndexedDocument> documents = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    @Override
+    public void add(long id, ProductSnapshot snapshot) {
+        IndexedDocument document = new IndexedDocument(lower(snapshot.name), lower(snapshot.description));
+        for (Long gram : document.grams()) {
+            postings.compute(gram, (key, ids) -> {
+                Set<Long> target = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                target.add(id);
+                return target;
+            });
+        }
+        documents.put(id, document);
+    }
+
+    @Override
+    public void remove(long id, ProductSnapshot snapshot) {
+        IndexedDocument document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        for (Long gram : document.grams()) {
+            postings.computeIfPresent(gram, (key, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /**
+     * Apply a whole batch with one posting-list update per distinct trigram,
+     * instead of one per trigram per product
+     */
+    @Override
+    public void applyBatch(List<ProductChange> changes) {
+        Map<Long, List<Long>> removals = new HashMap<>();
+        Map<Long, List<Long>> additions = new HashMap<>();
+        for (ProductChange change : changes) {
+            IndexedDocument previous = change.previous == null ? null : documents.remove(change.id);
+            if (previous != null) {
+                for (Long gram : previous.grams()) {
+                    removals.computeIfAbsent(gram, key -> new ArrayList<>()).add(change.id);
+                }
+            }
+            if (change.current != null) {
+                IndexedDocument current = new IndexedDocument(lower(change.current.name),
+                        lower(change.current.description));
+                for (Long gram : current.grams()) {
+                    additions.computeIfAbsent(gram, key -> new ArrayList<>()).add(change.id);
+                }
+                documents.put(change.id, current);
+            }
+        }
+
+        Set<Long> touched = new HashSet<>(removals.keySet());
+        touched.addAll(additions.keySet());
+        for (Long gram : touched) {
+            List<Long> removed = removals.getOrDefault(gram, Collections.emptyList());
+            List<Long> added = additions.getOrDefault(gram, Collections.emptyList());
+            postings.compute(gram, (key, ids) -> {
+                Set<Long> target = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                for (Long id : removed) {
+                    target.remove(id);
+                }
+                target.addAll(added);
+                return target.isEmpty() ? null : target;
+            });
+        }
+    }
+
+    /**
+     * Find products whose name or description contains the query, best matches first,
+     * returning at most limit hits
+     */
+    public List<SearchHit> search(String query, int limit) {
+        return searchAfter(query, null, limit);
+    }
+
+    /**
+     * Keyset variant of search: only hits ranked strictly after the given hit are returned,
+     * so a caller can page through the results by passing the last hit of the previous page
+     */
+    public List<SearchHit> searchAfter(String query, SearchHit after, int limit) {
+        String lowerQuery = lower(query);
+        if (lowerQuery.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        // Keep the best `limit` hits in a min-heap so we never sort the full candidate set
+        PriorityQueue<SearchHit> best = new PriorityQueue<>(SearchHit.WORST_FIRST);
+        for (Long id : candidates(lowerQuery)) {
+            IndexedDocument document = documents.get(id);
+            int score = document == null ? 0 : document.score(lowerQuery);
+            if (score == 0) {
+                continue;
+            }
+            SearchHit hit = new SearchHit(id, score);
+            if (after != null && SearchHit.WORST_FIRST.compare(hit, after) >= 0) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(hit);
+            } else if (SearchHit.WORST_FIRST.compare(hit, best.peek()) > 0) {
+                best.poll();
+                best.add(hit);
+            }
+        }
+
+        List<SearchHit> ranked = new ArrayList<>(best);
+        ranked.sort(SearchHit.WORST_FIRST.reversed());
+        return ranked;
+    }
+
+    int indexedDocuments() {
+        return documents.size();
+    }
+
+    private Set<Long> candidates(String lowerQuery) {
+        Set<Long> queryGrams = grams(lowerQuery);
+        if (queryGrams.isEmpty()) {
+            return documents.keySet();
+        }
+
+        List<Set<Long>> lists = new ArrayList<>(queryGrams.size());
+        for (Long gram : queryGrams) {
+            Set<Long> ids = postings.get(gram);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        Set<Long> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    private static String lower(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Trigrams of every word in the text; a trigram is packed into a long (16 bits per char)
+     */
+    static Set<Long> grams(String lowerText) {
+        Set<Long> grams = new HashSet<>();
+        int wordStart = -1;
+        for (int i = 0; i <= lowerText.length(); i++) {
+            boolean wordChar = i < lowerText.length() && Character.isLetterOrDigit(lowerText.charAt(i));
+            if (wordChar && wordStart < 0) {
+                wordStart = i;
+            } else if (!wordChar && wordStart >= 0) {
+                for (int j = wordStart; j + NGRAM <= i; j++) {
+                    grams.add(((long) lowerText.charAt(j) << 32)
+                            | ((long) lowerText.charAt(j + 1) << 16)
+                            | lowerText.charAt(j + 2));
+                }
+                wordStart = -1;
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Lowercase text of one product, captured when it was indexed
+     */
+    private static final class IndexedDocument {
+        private final String name;
+        private final String description;
+
+        private IndexedDocument(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        private Set<Long> grams() {
+            Set<Long> grams = ProductSearchIndex.grams(name);
+            grams.addAll(ProductSearchIndex.grams(description));
+            return grams;
+        }
+
+        /**
+         * Relevance of this document for the query, or 0 if it does not match
+         */
+        private int score(String lowerQuery) {
+            return fieldScore(name, lowerQuery, NAME_HIT) + fieldScore(description, lowerQuery, DESCRIPTION_HIT);
+        }
+
+        private static int fieldScore(String field, String lowerQuery, int weight) {
+            int index = field.indexOf(lowerQuery);
+            if (index < 0) {
+                return 0;
+            }
+            boolean wordStart = index == 0 || !Character.isLetterOrDigit(field.charAt(index - 1));
+            return wordStart ? weight + WORD_START_BONUS : weight;
+        }
+    }
+}
+
+/**
+ * A scored search result; the (score, id) pair also serves as the keyset cursor for search pages
+ */
+final class SearchHit {
+    // Lower score is worse; on equal score the higher ID is worse, so older products win ties
+    static final Comparator<SearchHit> WORST_FIRST = Comparator.<SearchHit>comparingInt(hit -> hit.score)
+            .thenComparing(hit -> hit.id, Comparator.reverseOrder());
+
+    final long id;
+    final int score;
+
+    SearchHit(long id, int score) {
+        this.id = id;
+        this.score = score;
+    }
+}
@@ -0,0 +1,582 @@
+package Intermediate.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe in-memory storage engine for products
+ *
+ * IDs are allocated lock-free from an AtomicLong. Every write for a given ID runs inside
+ * ConcurrentHashMap.compute, so the primary map and all secondary indexes are updated
+ * together for that ID while writes to other IDs proceed in parallel.
+ *
+ * Products are mutable and callers typically modify the instance they got from findById
+ * before saving it again. The store therefore remembers a snapshot of the fields it indexed,
+ * so it can always remove the old index entries, even when the instance already changed.
+ *
+ * IDs are also kept in ascending order (globally and per category) so pages can be read
+ * with keyset pagination: "the next N IDs after the last one you saw". Prices are kept
+ * sorted in a PriceIndex for price-range queries.
+ *
+ * Bulk writes (saveAll/deleteAllById) apply the whole batch to each index in one pass.
+ * Single writes share the read side of batchLock and a batch takes the write side, so no
+ * single write can interleave with a batch's index update. Readers never take the lock.
+ *
+ * Every stored product has a version that each write increments. A write that carries the
+ * version it was based on is applied only if that is still the stored version, so concurrent
+ * read-modify-write cycles on the same product cannot silently overwrite each other.
+ *
+ * An optional change listener (the repository's write-ahead log) is told about every net
+ * change before the change is applied, while the same locks are held.
+ */
+class ProductStore implements ProductSnapshotSource {
+    private final Map<Long, StoredProduct> products = new ConcurrentHashMap<>();
+    private final NavigableSet<Long> orderedIds = new ConcurrentSkipListSet<>();
+    private final AtomicLong nextId = new AtomicLong(1L);
+    private final CategoryIndex categoryIndex = new CategoryIndex();
+    private final PriceIndex priceIndex = new PriceIndex();
+    private final List<ProductIndex> indexes = new CopyOnWriteArrayList<>();
+    private final ReadWriteLock batchLock = new ReentrantReadWriteLock();
+    private volatile ProductChangeListener changeListener;
+
+    public ProductStore() {
+        indexes.add(categoryIndex);
+        indexes.add(priceIndex);
+    }
+
+    /**
+     * Register an additional secondary index that is kept in sync on every write.
+     * Call this while wiring the service, before concurrent writes start.
+     */
+    public void addIndex(ProductIndex index) {
+        for (StoredProduct stored : products.values()) {
+            index.add(stored.product.getId(), stored.snapshot);
+        }
+        indexes.add(index);
+    }
+
+    public Optional<Product> findById(Long id) {
+        StoredProduct stored = products.get(id);
+        return stored == null ? Optional.empty() : Optional.of(stored.product);
+    }
+
+    public List<Product> findAll() {
+        List<Product> result = new ArrayList<>(products.size());
+        for (StoredProduct stored : products.values()) {
+            result.add(stored.product);
+        }
+        return result;
+    }
+
+    /**
+     * Keyset page over all products in ID order, starting after afterId (null for the first page)
+     */
+    public List<Product> findAfter(Long afterId, int limit) {
+        NavigableSet<Long> ids = afterId == null ? orderedIds : orderedIds.tailSet(afterId, false);
+        return collect(ids, null, limit);
+    }
+
+    /**
+     * Keyset page over one category in ID order, starting after afterId (null for the first page)
+     */
+    public List<Product> findByCategoryAfter(String category, Long afterId, int limit) {
+        String key = CategoryIndex.normalize(category);
+        NavigableSet<Long> ids = categoryIndex.idsFor(key);
+        if (afterId != null) {
+            ids = ids.tailSet(afterId, false);
+        }
+        return collect(ids, key, limit);
+    }
+
+    private List<Product> collect(NavigableSet<Long> ids, String categoryKey, int limit) {
+        List<Product> result = new ArrayList<>(Math.min(limit, 64));
+        for (Long id : ids) {
+            if (result.size() >= limit) {
+                break;
+            }
+            StoredProduct stored = products.get(id);
+            if (stored != null && (categoryKey == null
+                    || categoryKey.equals(CategoryIndex.normalize(stored.snapshot.category)))) {
+                result.add(stored.product);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Look up products through the category index - O(matches) instead of a full scan
+     */
+    public List<Product> findByCategory(String category) {
+        String key = CategoryIndex.normalize(category);
+        NavigableSet<Long> ids = categoryIndex.idsFor(key);
+        List<Product> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            StoredProduct stored = products.get(id);
+            // The index may briefly run ahead of the primary map during a concurrent write
+            if (stored != null && key.equals(CategoryIndex.normalize(stored.snapshot.category))) {
+                result.add(stored.product);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Products priced between minPrice and maxPrice (inclusive), optionally in one category,
+     * sorted by price; walks only offset + limit index entries
+     */
+    public List<Product> findByPriceRange(String category, double minPrice, double maxPrice,
+                                          boolean descending, int offset, int limit) {
+        String key = category == null ? null : CategoryIndex.normalize(category);
+        List<Product> result = new ArrayList<>(Math.min(limit, 64));
+        int skipped = 0;
+        for (PriceKey entry : priceIndex.range(key, minPrice, maxPrice, descending)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            StoredProduct stored = products.get(entry.id);
+            // Skip entries the index still holds for a product that is being updated or deleted
+            if (stored == null || Double.compare(stored.snapshot.price, entry.price) != 0
+                    || (key != null && !key.equals(CategoryIndex.normalize(stored.snapshot.category)))) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result.add(stored.product);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Insert or update a product. If the product carries a version, the update only happens
+     * when it matches the stored version (compare-and-set); otherwise OptimisticLockException
+     * is thrown and nothing changes. On success the product gets the next version.
+     */
+    public Product save(Product product) {
+        if (product.getId() == null) {
+            product.setId(nextId.getAndIncrement());
+            // A new product has no earlier version to compare against
+            product.setVersion(null);
+        } else {
+            // Keep the generator ahead of explicitly assigned IDs
+            long id = product.getId();
+            nextId.accumulateAndGet(id + 1, Math::max);
+        }
+
+        Long expectedVersion = product.getVersion();
+        batchLock.readLock().lock();
+        try {
+            products.compute(product.getId(), (id, previous) -> {
+                long currentVersion = previous == null ? 0 : previous.snapshot.version;
+                if (expectedVersion != null && (previous == null || expectedVersion != currentVersion)) {
+                    throw new OptimisticLockException(id, expectedVersion, previous == null ? null : currentVersion);
+                }
+                ProductSnapshot snapshot = ProductSnapshot.of(product, currentVersion + 1);
+                // Log first: if the listener fails, neither the map nor the indexes have changed
+                notifyListener(Collections.singletonList(
+                        new ProductChange(id, previous == null ? null : previous.snapshot, snapshot)));
+                product.setVersion(snapshot.version);
+                for (ProductIndex index : indexes) {
+                    if (previous != null) {
+                        index.remove(id, previous.snapshot);
+                    }
+                    index.add(id, snapshot);
+                }
+                if (previous == null) {
+                    orderedIds.add(id);
+                }
+                return new StoredProduct(product, snapshot);
+            });
+        } finally {
+            batchLock.readLock().unlock();
+        }
+        return product;
+    }
+
+    public void deleteById(Long id) {
+        batchLock.readLock().lock();
+        try {
+            products.computeIfPresent(id, (key, previous) -> {
+                notifyListener(Collections.singletonList(new ProductChange(key, previous.snapshot, null)));
+                for (ProductIndex index : indexes) {
+                    index.remove(key, previous.snapshot);
+                }
+                orderedIds.remove(key);
+                return null;
+            });
+        } finally {
+            batchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert or update a batch atomically, updating every index once for the whole batch
+     *
+     * Products that carry a version are compared against the stored version first; if any of
+     * them is out of date, OptimisticLockException lists every conflicting ID and nothing in
+     * the batch is applied. IDs for the new products are reserved with a single getAndAdd.
+     */
+    public List<Product> saveAll(List<Product> batch) {
+        return write(batch, false);
+    }
+
+    /**
+     * Load products exactly as given, versions included, e.g. when recovering from a repository
+     */
+    public List<Product> restore(List<Product> batch) {
+        return write(batch, true);
+    }
+
+    private List<Product> write(List<Product> batch, boolean restore) {
+        int unassigned = 0;
+        long maxExplicitId = 0;
+        for (Product product : batch) {
+            if (product.getId() == null) {
+                unassigned++;
+            } else {
+                maxExplicitId = Math.max(maxExplicitId, product.getId());
+            }
+        }
+        nextId.accumulateAndGet(maxExplicitId + 1, Math::max);
+        long id = nextId.getAndAdd(unassigned);
+        for (Product product : batch) {
+            if (product.getId() == null) {
+                product.setId(id++);
+                product.setVersion(null);
+            }
+        }
+
+        // Collapse repeated IDs so each index sees one net change per product
+        Map<Long, ProductChange> changes = new LinkedHashMap<>();
+        Map<Long, StoredProduct> updates = new LinkedHashMap<>();
+        batchLock.writeLock().lock();
+        try {
+            List<Long> conflicts = null;
+            ProductSnapshot[] snapshots = new ProductSnapshot[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                Product product = batch.get(i);
+                ProductChange earlier = changes.get(product.getId());
+                ProductSnapshot before;
+                ProductSnapshot latest;
+                if (earlier != null) {
+                    before = earlier.previous;
+                    latest = earlier.current;
+                } else {
+                    StoredProduct previous = products.get(product.getId());
+                    before = previous == null ? null : previous.snapshot;
+                    latest = before;
+                }
+
+                long currentVersion = latest == null ? 0 : latest.version;
+                Long expectedVersion = product.getVersion();
+                if (!restore && expectedVersion != null && (latest == null || expectedVersion != currentVersion)) {
+                    if (conflicts == null) {
+                        conflicts = new ArrayList<>();
+                    }
+                    conflicts.add(product.getId());
+                }
+                long version = restore && expectedVersion != null ? expectedVersion : currentVersion + 1;
+                snapshots[i] = ProductSnapshot.of(product, version);
+                changes.put(product.getId(), new ProductChange(product.getId(), before, snapshots[i]));
+                updates.put(product.getId(), new StoredProduct(product, snapshots[i]));
+            }
+            if (conflicts != null) {
+                throw new OptimisticLockException(conflicts);
+            }
+
+            List<ProductChange> netChanges = new ArrayList<>(changes.values());
+            notifyListener(netChanges);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).setVersion(snapshots[i].version);
+            }
+            for (Map.Entry<Long, StoredProduct> update : updates.entrySet()) {
+                if (products.put(update.getKey(), update.getValue()) == null) {
+                    orderedIds.add(update.getKey());
+                }
+            }
+            applyToIndexes(netChanges);
+        } finally {
+            batchLock.writeLock().unlock();
+        }
+        return batch;
+    }
+
+    /**
+     * Delete a batch of products and update every index once for the whole batch
+     *
+     * @return for each ID, whether a product with that ID existed
+     */
+    public boolean[] deleteAllById(List<Long> ids) {
+        boolean[] existed = new boolean[ids.size()];
+        Map<Long, ProductChange> changes = new LinkedHashMap<>();
+        batchLock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                Long id = ids.get(i);
+                StoredProduct previous = changes.containsKey(id) ? null : products.get(id);
+                if (previous != null) {
+                    existed[i] = true;
+                    changes.put(id, new ProductChange(id, previous.snapshot, null));
+                }
+            }
+
+            List<ProductChange> netChanges = new ArrayList<>(changes.values());
+            notifyListener(netChanges);
+            for (Long id : changes.keySet()) {
+                products.remove(id);
+                orderedIds.remove(id);
+            }
+            applyToIndexes(netChanges);
+        } finally {
+            batchLock.writeLock().unlock();
+        }
+        return existed;
+    }
+
+    private void applyToIndexes(List<ProductChange> changes) {
+        for (ProductIndex index : indexes) {
+            index.applyBatch(changes);
+        }
+    }
+
+    private void notifyListener(List<ProductChange> changes) {
+        ProductChangeListener listener = changeListener;
+        if (listener != null && !changes.isEmpty()) {
+            listener.onChanges(changes);
+        }
+    }
+
+    /**
+     * Register the listener that is told about every write before it becomes visible,
+     * e.g. a write-ahead log. Changes for one ID reach the listener in the order they are
+     * applied, and a listener exception aborts the write.
+     */
+    public void setChangeListener(ProductChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Make sure future generated IDs are greater than the given one, e.g. after recovery
+     * when the highest ID ever used belonged to a product that has since been deleted
+     */
+    public void reserveIdsUpTo(long id) {
+        nextId.accumulateAndGet(id + 1, Math::max);
+    }
+
+    /**
+     * Run the action while no write is in progress, and return its result.
+     * Every write that started before the action has completed.
+     */
+    @Override
+    public long quiesce(LongSupplier action) {
+        batchLock.writeLock().lock();
+        try {
+            return action.getAsLong();
+        } finally {
+            batchLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Visit the indexed state of every stored product; concurrent writes may or may not be seen
+     */
+    @Override
+    public void forEachSnapshot(BiConsumer<Long, ProductSnapshot> visitor) {
+        for (Map.Entry<Long, StoredProduct> entry : products.entrySet()) {
+            visitor.accept(entry.getKey(), entry.getValue().snapshot);
+        }
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    /**
+     * A product together with the field values that were indexed when it was saved
+     */
+    private static final class StoredProduct {
+        private final Product product;
+        private final ProductSnapshot snapshot;
+
+        private StoredProduct(Product product, ProductSnapshot snapshot) {
+            this.product = product;
+            this.snapshot = snapshot;
+        }
+    }
+}
+
+/**
+ * Immutable copy of the indexed fields of a product, and its version, at the time it was saved
+ */
+final class ProductSnapshot {
+    final String name;
+    final String description;
+    final double price;
+    final String category;
+    final long version;
+
+    private ProductSnapshot(String name, String description, double price, String category, long version) {
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.category = category;
+        this.version = version;
+    }
+
+    static ProductSnapshot of(Product product, long version) {
+        return new ProductSnapshot(product.getName(), product.getDescription(),
+                product.getPrice(), product.getCategory(), version);
+    }
+
+    static ProductSnapshot of(String name, String description, double price, String category, long version) {
+        return new ProductSnapshot(name, description, price, category, version);
+    }
+
+    Product toProduct(long id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setDescription(description);
+        product.setPrice(price);
+        product.setCategory(category);
+        product.setVersion(version);
+        return product;
+    }
+}
+
+/**
+ * One net change to a product in a bulk write; previous is null for an insert
+ * and current is null for a delete
+ */
+final class ProductChange {
+    final long id;
+    final ProductSnapshot previous;
+    final ProductSnapshot current;
+
+    ProductChange(long id, ProductSnapshot previous, ProductSnapshot current) {
+        this.id = id;
+        this.previous = previous;
+        this.current = current;
+    }
+}
+
+/**
+ * Receives every write of ProductStore before it becomes visible to readers
+ */
+interface ProductChangeListener {
+    void onChanges(List<ProductChange> changes);
+}
+
+/**
+ * Consistent read access to the stored products, used to write snapshots
+ */
+interface ProductSnapshotSource {
+    long quiesce(LongSupplier action);
+    void forEachSnapshot(BiConsumer<Long, ProductSnapshot> visitor);
+}
+
+/**
+ * Secondary index maintained by ProductStore
+ *
+ * add and remove are called while the store holds the per-ID write slot, so an
+ * implementation only needs to be safe against writes for other IDs. applyBatch is
+ * called while no other write is running; indexes can override it to group the
+ * work per index key instead of per product.
+ */
+interface ProductIndex {
+    void add(long id, ProductSnapshot snapshot);
+    void remove(long id, ProductSnapshot snapshot);
+
+    default void applyBatch(List<ProductChange> changes) {
+        for (ProductChange change : changes) {
+            if (change.previous != null) {
+                remove(change.id, change.previous);
+            }
+            if (change.current != null) {
+                add(change.id, change.current);
+            }
+        }
+    }
+}
+
+/**
+ * Case-insensitive index from category to product IDs, kept in ascending ID order
+ */
+class CategoryIndex implements ProductIndex {
+    private final Map<String, NavigableSet<Long>> idsByCategory = new ConcurrentHashMap<>();
+
+    static String normalize(String category) {
+        return category == null ? "" : category.toLowerCase(Locale.ROOT);
+    }
+
+    NavigableSet<Long> idsFor(String normalizedCategory) {
+        NavigableSet<Long> ids = idsByCategory.get(normalizedCategory);
+        return ids == null ? Collections.emptyNavigableSet() : ids;
+    }
+
+    @Override
+    public void add(long id, ProductSnapshot snapshot) {
+        // Add inside compute so a concurrent remove cannot drop the set we are adding to
+        idsByCategory.compute(normalize(snapshot.category), (key, ids) -> {
+            NavigableSet<Long> target = ids == null ? new ConcurrentSkipListSet<>() : ids;
+            target.add(id);
+            return target;
+        });
+    }
+
+    @Override
+    public void applyBatch(List<ProductChange> changes) {
+        // Net effect per category, applied with one compute per category
+        Map<String, List<Long>> removals = new HashMap<>();
+        Map<String, List<Long>> additions = new HashMap<>();
+        for (ProductChange change : changes) {
+            if (change.previous != null) {
+                removals.computeIfAbsent(normalize(change.previous.category), key -> new ArrayList<>()).add(change.id);
+            }
+            if (change.current != null) {
+                additions.computeIfAbsent(normalize(change.current.category), key -> new ArrayList<>()).add(change.id);
+            }
+        }
+
+        Set<String> touched = new HashSet<>(removals.keySet());
+        touched.addAll(additions.keySet());
+        for (String category : touched) {
+            List<Long> removed = removals.getOrDefault(category, Collections.emptyList());
+            List<Long> added = additions.getOrDefault(category, Collections.emptyList());
+            idsByCategory.compute(category, (key, ids) -> {
+                NavigableSet<Long> target = ids == null ? new ConcurrentSkipListSet<>() : ids;
+                for (Long id : removed) {
+                    target.remove(id);
+                }
+                target.addAll(added);
+                return target.isEmpty() ? null : target;
+            });
+        }
+    }
+
+    @Override
+    public void remove(long id, ProductSnapshot snapshot) {
+        idsByCategory.computeIfPresent(normalize(snapshot.category), (key, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
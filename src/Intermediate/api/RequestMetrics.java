@@ -0,0 +1,211 @@
+package Intermediate.api;
+
+import Intermediate.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registry of per-endpoint request metrics
+ *
+ * Endpoints are registered once, up front; recording into an EndpointMetrics afterwards
+ * uses only atomic counters and never locks or allocates (apart from creating the
+ * histogram the first time a status code is seen on an endpoint).
+ *
+ * In a real Spring application this would be a Micrometer MeterRegistry with
+ * a Timer per endpoint and status tag.
+ */
+class RequestMetrics {
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final long startedNanos = System.nanoTime();
+
+    /**
+     * Metrics for one endpoint, e.g. "GET /api/products/{id}"; created on first use
+     */
+    public EndpointMetrics endpoint(String name) {
+        return endpoints.computeIfAbsent(name, EndpointMetrics::new);
+    }
+
+    /**
+     * Point-in-time copy of every endpoint's counters and latency percentiles
+     */
+    public List<EndpointSnapshot> snapshot() {
+        double elapsedSeconds = Math.max(1, System.nanoTime() - startedNanos) / 1e9;
+        List<EndpointSnapshot> snapshots = new ArrayList<>(endpoints.size());
+        for (EndpointMetrics endpoint : endpoints.values()) {
+            snapshots.add(endpoint.snapshot(elapsedSeconds));
+        }
+        snapshots.sort((a, b) -> a.name.compareTo(b.name));
+        return snapshots;
+    }
+
+    /**
+     * Text export of snapshot(), one line per endpoint and status code, skipping idle endpoints
+     */
+    public String export() {
+        StringBuilder out = new StringBuilder();
+        for (EndpointSnapshot endpoint : snapshot()) {
+            if (endpoint.requests == 0 && endpoint.inFlight == 0) {
+                continue;
+            }
+            out.append(endpoint).append('\n');
+            for (LatencySnapshot latency : endpoint.latencies) {
+                out.append("    ").append(latency).append('\n');
+            }
+        }
+        return out.toString();
+    }
+}
+
+/**
+ * Counters and per-status latency histograms of one endpoint
+ */
+final class EndpointMetrics {
+    // Index = HTTP status code; anything outside 100-599 is recorded under 0
+    private static final int STATUS_SLOTS = 600;
+    // Every power of two split into 64 buckets: percentiles within about 1.6%
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private final String name;
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong clientErrors = new AtomicLong();
+    private final AtomicLong serverErrors = new AtomicLong();
+    private final AtomicReferenceArray<LatencyHistogram> byStatus = new AtomicReferenceArray<>(STATUS_SLOTS);
+
+    EndpointMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Mark a request as started and return its start time, to be passed to end
+     */
+    public long begin() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Record a finished request; a null response (the handler threw) counts as a 500
+     */
+    public void end(long startNanos, ApiResponse<?> response) {
+        end(startNanos, response == null ? 500 : response.getStatusCode());
+    }
+
+    /**
+     * Record a finished request by its HTTP status code; 0 (no response at all) counts as a server error
+     */
+    public void end(long startNanos, int status) {
+        long latency = System.nanoTime() - startNanos;
+        inFlight.decrementAndGet();
+        requests.incrementAndGet();
+
+        if (status >= 500 || status < 100) {
+            serverErrors.incrementAndGet();
+        } else if (status >= 400) {
+            clientErrors.incrementAndGet();
+        }
+        histogramFor(status).record(latency);
+    }
+
+    private LatencyHistogram histogramFor(int status) {
+        int slot = status >= 100 && status < STATUS_SLOTS ? status : 0;
+        LatencyHistogram histogram = byStatus.get(slot);
+        if (histogram == null) {
+            byStatus.compareAndSet(slot, null, new LatencyHistogram(SUB_BUCKET_BITS));
+            histogram = byStatus.get(slot);
+        }
+        return histogram;
+    }
+
+    EndpointSnapshot snapshot(double elapsedSeconds) {
+        List<LatencySnapshot> latencies = new ArrayList<>();
+        for (int status = 0; status < STATUS_SLOTS; status++) {
+            LatencyHistogram histogram = byStatus.get(status);
+            if (histogram != null) {
+                latencies.add(LatencySnapshot.of(status, histogram));
+            }
+        }
+        long total = requests.get();
+        return new EndpointSnapshot(name, total, inFlight.get(), clientErrors.get(), serverErrors.get(),
+                total / elapsedSeconds, latencies);
+    }
+}
+
+/**
+ * Counters of one endpoint at the time of a snapshot
+ */
+final class EndpointSnapshot {
+    final String name;
+    final long requests;
+    final long inFlight;
+    final long clientErrors;
+    final long serverErrors;
+    final double requestsPerSecond;
+    final List<LatencySnapshot> latencies;
+
+    EndpointSnapshot(String name, long requests, long inFlight, long clientErrors, long serverErrors,
+                     double requestsPerSecond, List<LatencySnapshot> latencies) {
+        this.name = name;
+        this.requests = requests;
+        this.inFlight = inFlight;
+        this.clientErrors = clientErrors;
+        this.serverErrors = serverErrors;
+        this.requestsPerSecond = requestsPerSecond;
+        this.latencies = latencies;
+    }
+
+    public double getErrorRate() {
+        return requests == 0 ? 0 : (double) (clientErrors + serverErrors) / requests;
+    }
+
+    public double getServerErrorRate() {
+        return requests == 0 ? 0 : (double) serverErrors / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [requests=%d, inFlight=%d, throughput=%.1f/s, errorRate=%.3f, serverErrorRate=%.3f]",
+                name, requests, inFlight, requestsPerSecond, getErrorRate(), getServerErrorRate());
+    }
+}
+
+/**
+ * Latency distribution of one endpoint and status code, in nanoseconds
+ */
+final class LatencySnapshot {
+    final int statusCode;
+    final long count;
+    final long meanNanos;
+    final long p50Nanos;
+    final long p99Nanos;
+    final long p999Nanos;
+    final long maxNanos;
+
+    LatencySnapshot(int statusCode, long count, long meanNanos, long p50Nanos, long p99Nanos,
+                    long p999Nanos, long maxNanos) {
+        this.statusCode = statusCode;
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    static LatencySnapshot of(int statusCode, LatencyHistogram histogram) {
+        return new LatencySnapshot(statusCode, histogram.count(), (long) histogram.meanNanos(),
+                histogram.percentileNanos(0.50), histogram.percentileNanos(0.99), histogram.percentileNanos(0.999),
+                histogram.maxNanos());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("status=%d count=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                statusCode, count, meanNanos / 1e3, p50Nanos / 1e3, p99Nanos / 1e3, p999Nanos / 1e3, maxNanos / 1e3);
+    }
+}
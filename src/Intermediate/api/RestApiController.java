@@ -1,12 +1,20 @@
 package Intermediate.api;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * A demonstration of a RESTful API controller with CRUD operations
@@ -22,12 +30,79 @@ public class RestApiController {
         System.out.println("=== REST API Controller Demonstration ===\n");
         System.out.println("Note: This is a code example without the actual Spring framework.\n");
 
-        // Initialize service and controller
-        ProductService productService = new ProductServiceImpl();
-        ProductController controller = new ProductController(productService);
+        // Initialize service (behind a read-through cache) and controller
+        CachingProductService productService = new CachingProductService(
+                new ProductServiceImpl(), Duration.ofMinutes(5), 10_000, 64L * 1024 * 1024);
+        RequestMetrics metrics = new RequestMetrics();
+        ProductController controller = new InstrumentedProductController(productService, metrics);
+
+        // "--serve [port]" exposes the controller over HTTP instead of running the demo
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(controller, args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            return;
+        }
 
         // Simulate HTTP requests to our REST endpoints
         simulateApiRequests(controller);
+
+        System.out.println("\nJSON serialization of a response:");
+        ApiResponse<Product> response = controller.getProductById(1L);
+        System.out.println(ApiResponseJsonWriter.forCurrentThread().write(response));
+
+        System.out.println("\nCache statistics:");
+        productService.getStats().forEach((cache, stats) -> System.out.println("  " + cache + ": " + stats));
+
+        System.out.println("\nRequest metrics:");
+        System.out.print(metrics.export());
+
+        demonstratePersistence();
+    }
+
+    /**
+     * Run the embedded HTTP server until the process is stopped
+     */
+    private static void serve(ProductController controller, int port) {
+        try {
+            ProductHttpServer server = new ProductHttpServer(controller, port,
+                    Runtime.getRuntime().availableProcessors() * 2);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            System.out.println("Serving http://localhost:" + server.getPort() + ProductHttpServer.BASE_PATH);
+        } catch (IOException e) {
+            System.out.println("Could not start the HTTP server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write products through a file-backed repository, then restart the service from disk
+     */
+    private static void demonstratePersistence() {
+        System.out.println("\nPersistence with a write-ahead log:");
+        try {
+            Path dataDirectory = Files.createTempDirectory("products");
+            try (FileProductRepository repository =
+                         new FileProductRepository(dataDirectory, 4 * 1024 * 1024, false, null)) {
+                ProductServiceImpl service = new ProductServiceImpl(repository);
+                Product headphones = new Product();
+                headphones.setName("Noise Cancelling Headphones");
+                headphones.setDescription("Wireless over-ear headphones");
+                headphones.setPrice(249.99);
+                headphones.setCategory("Electronics");
+                service.save(headphones);
+                service.deleteById(2L);
+                repository.checkpoint(service.getSnapshotSource());
+                service.deleteById(3L);
+            }
+
+            try (FileProductRepository repository =
+                         new FileProductRepository(dataDirectory, 4 * 1024 * 1024, false, null)) {
+                ProductServiceImpl service = new ProductServiceImpl(repository);
+                System.out.println("  Recovered " + service.findAll().size() + " products from " + dataDirectory);
+                service.findAll().forEach(product -> System.out.println("  " + product));
+            }
+        } catch (IOException e) {
+            System.out.println("  Persistence demo failed: " + e.getMessage());
+        }
     }
 
     /**
@@ -76,6 +151,58 @@ public class RestApiController {
         System.out.println("\n8. GET /api/products/search?query=laptop - Search products");
         ApiResponse<List<Product>> searchResults = controller.searchProducts("laptop");
         printResponse(searchResults);
+
+        System.out.println("\n9. GET /api/products/search?query=pro&limit=2 - Ranked search with a limit");
+        ApiResponse<List<Product>> topResults = controller.searchProducts("pro", 2);
+        printResponse(topResults);
+
+        System.out.println("\n10. GET /api/products?limit=2 - Keyset pagination");
+        ApiResponse<ProductPage> firstPage = controller.getAllProducts(null, 2);
+        printResponse(firstPage);
+        ApiResponse<ProductPage> secondPage = controller.getAllProducts(firstPage.getData().getNextCursor(), 2);
+        printResponse(secondPage);
+
+        System.out.println("\n11. GET /api/products/stream?chunkSize=1 - Stream products in chunks");
+        ApiResponse<Long> streamed = controller.streamAllProducts(1,
+                chunk -> System.out.println("  chunk: " + chunk));
+        printResponse(streamed);
+
+        System.out.println("\n12. POST /api/products/bulk - Create products in one batch");
+        List<Product> batch = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Product bulkProduct = new Product();
+            bulkProduct.setName(i == 2 ? "" : "Headphones Model " + i);
+            bulkProduct.setDescription("Wireless headphones");
+            bulkProduct.setPrice(49.99 * i);
+            bulkProduct.setCategory("Audio");
+            batch.add(bulkProduct);
+        }
+        ApiResponse<BulkResult> bulkCreated = controller.createProducts(batch);
+        printResponse(bulkCreated);
+
+        System.out.println("\n13. DELETE /api/products/bulk - Delete products in one batch");
+        List<Long> idsToDelete = new ArrayList<>();
+        for (long id : bulkCreated.getData().getIds()) {
+            idsToDelete.add(id);
+        }
+        ApiResponse<BulkResult> bulkDeleted = controller.deleteProducts(idsToDelete);
+        printResponse(bulkDeleted);
+
+        System.out.println("\n14. GET /api/products/price?category=Electronics&min=100&max=1500&sort=desc - Price range");
+        ApiResponse<List<Product>> priceRange = controller.getProductsByPriceRange("Electronics", 100, 1500, "desc", 0, 10);
+        printResponse(priceRange);
+
+        System.out.println("\n15. PUT /api/products/1 twice based on the same version - Optimistic locking");
+        long readVersion = controller.getProductById(1L).getData().getVersion();
+        for (String client : new String[] {"first", "second"}) {
+            Product details = new Product();
+            details.setName("Ultrabook Pro (" + client + " edit)");
+            details.setDescription("Powerful laptop with 16GB RAM and 512GB SSD");
+            details.setPrice(1199.99);
+            details.setCategory("Electronics");
+            details.setVersion(readVersion);
+            printResponse(controller.updateProduct(1L, details));
+        }
     }
 
     /**
@@ -98,6 +225,18 @@ public class RestApiController {
                         System.out.println("  " + item);
                     }
                 }
+            } else if (response.getData() instanceof ProductPage) {
+                ProductPage page = (ProductPage) response.getData();
+                for (Product item : page.getItems()) {
+                    System.out.println("  " + item);
+                }
+                System.out.println("  next cursor: " + page.getNextCursor());
+            } else if (response.getData() instanceof BulkResult) {
+                BulkResult result = (BulkResult) response.getData();
+                for (int i = 0; i < result.getStatuses().length; i++) {
+                    System.out.println("  item " + i + ": id=" + result.getIds()[i]
+                            + ", status=" + BulkResult.describe(result.getStatuses()[i]));
+                }
             } else {
                 System.out.println("  " + response.getData());
             }
@@ -113,6 +252,12 @@ public class RestApiController {
  * @RequestMapping("/api/products")
  */
 class ProductController {
+    // Upper bound for page and chunk sizes, so one request cannot materialize the whole catalog
+    static final int MAX_PAGE_SIZE = 1000;
+
+    // Upper bound for the number of items in one bulk request
+    static final int MAX_BATCH_SIZE = 10_000;
+
     // In a real Spring application:
     // @Autowired
     private final ProductService productService;
@@ -195,18 +340,15 @@ class ProductController {
             Optional<Product> existingProduct = productService.findById(id);
 
             if (existingProduct.isPresent()) {
-                // Update the existing product with new details
-                Product product = existingProduct.get();
-                product.setName(productDetails.getName());
-                product.setDescription(productDetails.getDescription());
-                product.setPrice(productDetails.getPrice());
-                product.setCategory(productDetails.getCategory());
-
+                // Save a copy with the new details; the stored instance is shared with readers
+                Product product = updatedCopy(existingProduct.get(), productDetails);
                 Product updatedProduct = productService.save(product);
                 return ApiResponse.success(updatedProduct, "Product updated successfully");
             } else {
                 return ApiResponse.notFound("Product not found with id: " + id);
             }
+        } catch (OptimisticLockException e) {
+            return ApiResponse.conflict(e.getMessage());
         } catch (Exception e) {
             return ApiResponse.error("Error updating product: " + e.getMessage());
         }
@@ -235,6 +377,164 @@ class ProductController {
         }
     }
 
+    /**
+     * POST /api/products/bulk
+     * Create many products in one call
+     * 
+     * All items are validated in one pass; the valid ones are saved as a single batch
+     * and the result carries one status per item instead of one ApiResponse per product.
+     * 
+     * In a real Spring application:
+     * @PostMapping("/bulk")
+     */
+    public ApiResponse<BulkResult> createProducts(List<Product> products) {
+        try {
+            if (products == null || products.isEmpty() || products.size() > MAX_BATCH_SIZE) {
+                return ApiResponse.badRequest("Batch must contain between 1 and " + MAX_BATCH_SIZE + " products");
+            }
+
+            byte[] statuses = new byte[products.size()];
+            long[] ids = new long[products.size()];
+            List<Product> valid = new ArrayList<>(products.size());
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.get(i);
+                statuses[i] = validate(product);
+                if (statuses[i] == BulkResult.OK) {
+                    product.setId(null);
+                    valid.add(product);
+                    statuses[i] = BulkResult.CREATED;
+                }
+            }
+
+            productService.saveAll(valid);
+            for (int i = 0; i < products.size(); i++) {
+                if (statuses[i] == BulkResult.CREATED) {
+                    ids[i] = products.get(i).getId();
+                }
+            }
+
+            BulkResult result = new BulkResult(statuses, ids);
+            return ApiResponse.created(result, result.getSucceeded() + " of " + products.size() + " products created");
+        } catch (Exception e) {
+            return ApiResponse.error("Error creating products: " + e.getMessage());
+        }
+    }
+
+    /**
+     * PUT /api/products/bulk
+     * Update many existing products in one call; every item must carry its ID
+     * 
+     * In a real Spring application:
+     * @PutMapping("/bulk")
+     */
+    public ApiResponse<BulkResult> updateProducts(List<Product> productDetails) {
+        try {
+            if (productDetails == null || productDetails.isEmpty() || productDetails.size() > MAX_BATCH_SIZE) {
+                return ApiResponse.badRequest("Batch must contain between 1 and " + MAX_BATCH_SIZE + " products");
+            }
+
+            byte[] statuses = new byte[productDetails.size()];
+            long[] ids = new long[productDetails.size()];
+            List<Product> changed = new ArrayList<>(productDetails.size());
+            for (int i = 0; i < productDetails.size(); i++) {
+                Product details = productDetails.get(i);
+                if (details.getId() == null) {
+                    statuses[i] = BulkResult.MISSING_ID;
+                    continue;
+                }
+                ids[i] = details.getId();
+                statuses[i] = validate(details);
+                if (statuses[i] != BulkResult.OK) {
+                    continue;
+                }
+
+                Optional<Product> existingProduct = productService.findById(details.getId());
+                if (existingProduct.isPresent()) {
+                    changed.add(updatedCopy(existingProduct.get(), details));
+                } else {
+                    statuses[i] = BulkResult.NOT_FOUND;
+                }
+            }
+
+            // A batch with stale versions is rejected as a whole; drop the conflicting items and retry
+            while (true) {
+                try {
+                    productService.saveAll(changed);
+                    break;
+                } catch (OptimisticLockException e) {
+                    Set<Long> conflicting = new HashSet<>(e.getProductIds());
+                    for (int i = 0; i < statuses.length; i++) {
+                        if (statuses[i] == BulkResult.OK && conflicting.contains(ids[i])) {
+                            statuses[i] = BulkResult.CONFLICT;
+                        }
+                    }
+                    changed.removeIf(product -> conflicting.contains(product.getId()));
+                }
+            }
+
+            BulkResult result = new BulkResult(statuses, ids);
+            return ApiResponse.success(result, result.getSucceeded() + " of " + productDetails.size() + " products updated");
+        } catch (Exception e) {
+            return ApiResponse.error("Error updating products: " + e.getMessage());
+        }
+    }
+
+    /**
+     * DELETE /api/products/bulk
+     * Delete many products in one call
+     * 
+     * In a real Spring application:
+     * @DeleteMapping("/bulk")
+     */
+    public ApiResponse<BulkResult> deleteProducts(List<Long> ids) {
+        try {
+            if (ids == null || ids.isEmpty() || ids.size() > MAX_BATCH_SIZE) {
+                return ApiResponse.badRequest("Batch must contain between 1 and " + MAX_BATCH_SIZE + " IDs");
+            }
+
+            boolean[] existed = productService.deleteAllById(ids);
+            byte[] statuses = new byte[ids.size()];
+            long[] deletedIds = new long[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                statuses[i] = existed[i] ? BulkResult.OK : BulkResult.NOT_FOUND;
+                deletedIds[i] = ids.get(i) == null ? 0 : ids.get(i);
+            }
+
+            BulkResult result = new BulkResult(statuses, deletedIds);
+            return ApiResponse.success(result, result.getSucceeded() + " of " + ids.size() + " products deleted");
+        } catch (Exception e) {
+            return ApiResponse.error("Error deleting products: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copy of the stored product with the client's details applied. The copy expects the
+     * version the client sent or, if it sent none, the version that was just read.
+     */
+    private static Product updatedCopy(Product existing, Product details) {
+        Product product = new Product();
+        product.setId(existing.getId());
+        product.setName(details.getName());
+        product.setDescription(details.getDescription());
+        product.setPrice(details.getPrice());
+        product.setCategory(details.getCategory());
+        product.setVersion(details.getVersion() != null ? details.getVersion() : existing.getVersion());
+        return product;
+    }
+
+    /**
+     * Same rules as createProduct/updateProduct, reported as a bulk status code
+     */
+    private static byte validate(Product product) {
+        if (product.getName() == null || product.getName().trim().isEmpty()) {
+            return BulkResult.INVALID_NAME;
+        }
+        if (product.getPrice() <= 0) {
+            return BulkResult.INVALID_PRICE;
+        }
+        return BulkResult.OK;
+    }
+
     /**
      * GET /api/products/category/{category}
      * Get products by category
@@ -254,6 +554,41 @@ class ProductController {
         }
     }
 
+    /**
+     * GET /api/products/price?category={category}&min={minPrice}&max={maxPrice}&sort={asc|desc}&offset={offset}&limit={limit}
+     * Get products in a price range, optionally in one category, sorted by price
+     * 
+     * In a real Spring application:
+     * @GetMapping("/price")
+     */
+    public ApiResponse<List<Product>> getProductsByPriceRange(String category, double minPrice, double maxPrice,
+                                                              String sort, int offset, int limit) {
+        try {
+            if (Double.isNaN(minPrice) || Double.isNaN(maxPrice) || minPrice > maxPrice) {
+                return ApiResponse.badRequest("Minimum price must not be greater than maximum price");
+            }
+
+            if (sort != null && !sort.equalsIgnoreCase("asc") && !sort.equalsIgnoreCase("desc")) {
+                return ApiResponse.badRequest("Sort order must be 'asc' or 'desc'");
+            }
+
+            if (offset < 0) {
+                return ApiResponse.badRequest("Offset cannot be negative");
+            }
+
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                return ApiResponse.badRequest("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+
+            boolean descending = "desc".equalsIgnoreCase(sort);
+            List<Product> products = productService.findByPriceRange(category, minPrice, maxPrice, descending, offset, limit);
+            return ApiResponse.success(products, products.size() + " products priced between $"
+                    + minPrice + " and $" + maxPrice + " retrieved successfully");
+        } catch (Exception e) {
+            return ApiResponse.error("Error retrieving products by price: " + e.getMessage());
+        }
+    }
+
     /**
      * GET /api/products/search?query={query}
      * Search products
@@ -273,6 +608,161 @@ class ProductController {
             return ApiResponse.error("Error searching products: " + e.getMessage());
         }
     }
+
+    /**
+     * GET /api/products/search?query={query}&limit={limit}
+     * Search products, best matches first, returning at most limit results
+     * 
+     * In a real Spring application:
+     * @GetMapping(value = "/search", params = "limit")
+     */
+    public ApiResponse<List<Product>> searchProducts(String query, int limit) {
+        try {
+            if (query == null || query.trim().isEmpty()) {
+                return ApiResponse.badRequest("Search query cannot be empty");
+            }
+
+            if (limit <= 0) {
+                return ApiResponse.badRequest("Search limit must be greater than zero");
+            }
+
+            List<Product> products = productService.search(query, limit);
+            return ApiResponse.success(products, "Top " + products.size() + " search results for '" + query + "'");
+        } catch (Exception e) {
+            return ApiResponse.error("Error searching products: " + e.getMessage());
+        }
+    }
+
+    /**
+     * GET /api/products?cursor={cursor}&limit={limit}
+     * Get one page of products in ID order
+     * 
+     * In a real Spring application:
+     * @GetMapping(params = "limit")
+     */
+    public ApiResponse<ProductPage> getAllProducts(String cursor, int limit) {
+        try {
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                return ApiResponse.badRequest("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+
+            ProductPage page = productService.findPage(cursor, limit);
+            return ApiResponse.success(page, "Page of " + page.getItems().size() + " products retrieved successfully");
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.badRequest(e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("Error retrieving products: " + e.getMessage());
+        }
+    }
+
+    /**
+     * GET /api/products/category/{category}?cursor={cursor}&limit={limit}
+     * Get one page of products in a category, in ID order
+     * 
+     * In a real Spring application:
+     * @GetMapping(value = "/category/{category}", params = "limit")
+     */
+    public ApiResponse<ProductPage> getProductsByCategory(String category, String cursor, int limit) {
+        try {
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                return ApiResponse.badRequest("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+
+            ProductPage page = productService.findPageByCategory(category, cursor, limit);
+            return ApiResponse.success(page, "Page of " + page.getItems().size()
+                    + " products in category '" + category + "' retrieved successfully");
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.badRequest(e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("Error retrieving products by category: " + e.getMessage());
+        }
+    }
+
+    /**
+     * GET /api/products/search?query={query}&cursor={cursor}&limit={limit}
+     * Get one page of ranked search results
+     * 
+     * In a real Spring application:
+     * @GetMapping(value = "/search", params = {"cursor", "limit"})
+     */
+    public ApiResponse<ProductPage> searchProducts(String query, String cursor, int limit) {
+        try {
+            if (query == null || query.trim().isEmpty()) {
+                return ApiResponse.badRequest("Search query cannot be empty");
+            }
+
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                return ApiResponse.badRequest("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+
+            ProductPage page = productService.searchPage(query, cursor, limit);
+            return ApiResponse.success(page, "Page of " + page.getItems().size() + " search results for '" + query + "'");
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.badRequest(e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("Error searching products: " + e.getMessage());
+        }
+    }
+
+    /**
+     * GET /api/products/stream?chunkSize={chunkSize}
+     * Stream all products to the consumer in chunks, one page in memory at a time
+     * 
+     * In a real Spring application this would return a StreamingResponseBody
+     */
+    public ApiResponse<Long> streamAllProducts(int chunkSize, Consumer<List<Product>> consumer) {
+        return streamPages(chunkSize, consumer, cursor -> productService.findPage(cursor, chunkSize),
+                "Error streaming products: ");
+    }
+
+    /**
+     * GET /api/products/category/{category}/stream?chunkSize={chunkSize}
+     * Stream the products of a category to the consumer in chunks
+     */
+    public ApiResponse<Long> streamProductsByCategory(String category, int chunkSize, Consumer<List<Product>> consumer) {
+        return streamPages(chunkSize, consumer,
+                cursor -> productService.findPageByCategory(category, cursor, chunkSize),
+                "Error streaming products by category: ");
+    }
+
+    /**
+     * GET /api/products/search/stream?query={query}&chunkSize={chunkSize}
+     * Stream ranked search results to the consumer in chunks
+     */
+    public ApiResponse<Long> streamSearchResults(String query, int chunkSize, Consumer<List<Product>> consumer) {
+        if (query == null || query.trim().isEmpty()) {
+            return ApiResponse.badRequest("Search query cannot be empty");
+        }
+        return streamPages(chunkSize, consumer, cursor -> productService.searchPage(query, cursor, chunkSize),
+                "Error streaming search results: ");
+    }
+
+    /**
+     * Walk the pages of a listing and hand each one to the consumer as soon as it is read
+     */
+    private ApiResponse<Long> streamPages(int chunkSize, Consumer<List<Product>> consumer,
+                                          Function<String, ProductPage> pageReader, String errorPrefix) {
+        try {
+            if (chunkSize <= 0 || chunkSize > MAX_PAGE_SIZE) {
+                return ApiResponse.badRequest("Chunk size must be between 1 and " + MAX_PAGE_SIZE);
+            }
+
+            long streamed = 0;
+            String cursor = null;
+            do {
+                ProductPage page = pageReader.apply(cursor);
+                if (!page.getItems().isEmpty()) {
+                    consumer.accept(page.getItems());
+                    streamed += page.getItems().size();
+                }
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+
+            return ApiResponse.success(streamed, "Streamed " + streamed + " products");
+        } catch (Exception e) {
+            return ApiResponse.error(errorPrefix + e.getMessage());
+        }
+    }
 }
 
 /**
@@ -298,6 +788,10 @@ class Product {
 
     private String category;
 
+    // @Version
+    // Incremented on every save; null until the product is first saved
+    private Long version;
+
     // Getters and setters
     public Long getId() {
         return id;
@@ -339,9 +833,18 @@ class Product {
         this.category = category;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
-        return "Product [id=" + id + ", name=" + name + ", price=$" + price + ", category=" + category + "]";
+        return "Product [id=" + id + ", name=" + name + ", price=$" + price + ", category=" + category
+                + ", version=" + version + "]";
     }
 }
 
@@ -353,8 +856,16 @@ interface ProductService {
     Optional<Product> findById(Long id);
     Product save(Product product);
     void deleteById(Long id);
+    List<Product> saveAll(List<Product> products);
+    boolean[] deleteAllById(List<Long> ids);
     List<Product> findByCategory(String category);
     List<Product> search(String query);
+    List<Product> search(String query, int limit);
+    ProductPage findPage(String cursor, int limit);
+    ProductPage findPageByCategory(String category, String cursor, int limit);
+    ProductPage searchPage(String query, String cursor, int limit);
+    List<Product> findByPriceRange(String category, double minPrice, double maxPrice,
+                                   boolean descending, int offset, int limit);
 }
 
 /**
@@ -364,16 +875,49 @@ interface ProductService {
  * @Service
  */
 class ProductServiceImpl implements ProductService {
-    // In a real application this would use a repository
+    // In a real Spring application:
     // @Autowired
-    // private ProductRepository productRepository;
+    private final ProductRepository productRepository;
 
-    // For this demo, we'll use an in-memory map
-    private final Map<Long, Product> productMap = new HashMap<>();
-    private Long nextId = 1L;
+    // Reads are served from a thread-safe in-memory store; the repository only persists writes
+    private final ProductStore productStore = new ProductStore();
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex();
 
-    // Initialize with some sample products
     public ProductServiceImpl() {
+        this(new InMemoryProductRepository());
+    }
+
+    /**
+     * Load the store from the repository, then log every write to it before applying the write
+     */
+    public ProductServiceImpl(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+        productStore.addIndex(searchIndex);
+
+        long highestId;
+        try {
+            highestId = productRepository.recover(productStore::restore);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not recover products", e);
+        }
+        productStore.reserveIdsUpTo(highestId);
+        productStore.setChangeListener(productRepository::append);
+        productRepository.attach(productStore);
+
+        if (productStore.size() == 0 && highestId == 0) {
+            addSampleProducts();
+        }
+    }
+
+    /**
+     * The backing store, for taking repository checkpoints on demand
+     */
+    ProductSnapshotSource getSnapshotSource() {
+        return productStore;
+    }
+
+    // Initialize with some sample products
+    private void addSampleProducts() {
         // Laptop
         Product laptop = new Product();
         laptop.setName("Ultrabook Pro");
@@ -401,46 +945,92 @@ class ProductServiceImpl implements ProductService {
 
     @Override
     public List<Product> findAll() {
-        return new ArrayList<>(productMap.values());
+        return productStore.findAll();
     }
 
     @Override
     public Optional<Product> findById(Long id) {
-        return Optional.ofNullable(productMap.get(id));
+        return productStore.findById(id);
     }
 
     @Override
     public Product save(Product product) {
-        if (product.getId() == null) {
-            // New product
-            product.setId(nextId++);
-        }
-        productMap.put(product.getId(), product);
-        return product;
+        return productStore.save(product);
     }
 
     @Override
     public void deleteById(Long id) {
-        productMap.remove(id);
+        productStore.deleteById(id);
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        return productStore.saveAll(products);
+    }
+
+    @Override
+    public boolean[] deleteAllById(List<Long> ids) {
+        return productStore.deleteAllById(ids);
     }
 
     @Override
     public List<Product> findByCategory(String category) {
-        return productMap.values().stream()
-                .filter(product -> category.equalsIgnoreCase(product.getCategory()))
-                .collect(Collectors.toList());
+        return productStore.findByCategory(category);
     }
 
     @Override
     public List<Product> search(String query) {
-        String lowerQuery = query.toLowerCase();
-        return productMap.values().stream()
-                .filter(product -> 
-                    product.getName().toLowerCase().contains(lowerQuery) ||
-                    (product.getDescription() != null && 
-                     product.getDescription().toLowerCase().contains(lowerQuery))
-                )
-                .collect(Collectors.toList());
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Product> search(String query, int limit) {
+        List<SearchHit> hits = searchIndex.search(query, limit);
+        List<Product> products = new ArrayList<>(hits.size());
+        for (SearchHit hit : hits) {
+            productStore.findById(hit.id).ifPresent(products::add);
+        }
+        return products;
+    }
+
+    @Override
+    public ProductPage findPage(String cursor, int limit) {
+        // Read one extra row to find out whether there is a next page
+        List<Product> products = productStore.findAfter(ProductCursor.parseId(cursor), limit + 1);
+        return toIdPage(products, limit);
+    }
+
+    @Override
+    public List<Product> findByPriceRange(String category, double minPrice, double maxPrice,
+                                          boolean descending, int offset, int limit) {
+        return productStore.findByPriceRange(category, minPrice, maxPrice, descending, offset, limit);
+    }
+
+    @Override
+    public ProductPage findPageByCategory(String category, String cursor, int limit) {
+        List<Product> products = productStore.findByCategoryAfter(category, ProductCursor.parseId(cursor), limit + 1);
+        return toIdPage(products, limit);
+    }
+
+    @Override
+    public ProductPage searchPage(String query, String cursor, int limit) {
+        List<SearchHit> hits = searchIndex.searchAfter(query, ProductCursor.parseHit(cursor), limit + 1);
+        List<Product> products = new ArrayList<>(Math.min(hits.size(), limit));
+        SearchHit last = null;
+        for (SearchHit hit : hits.subList(0, Math.min(hits.size(), limit))) {
+            productStore.findById(hit.id).ifPresent(products::add);
+            last = hit;
+        }
+        String nextCursor = hits.size() > limit ? ProductCursor.ofHit(last) : null;
+        return new ProductPage(products, nextCursor);
+    }
+
+    private static ProductPage toIdPage(List<Product> products, int limit) {
+        if (products.size() <= limit) {
+            return new ProductPage(products, null);
+        }
+        List<Product> items = products.subList(0, limit);
+        return new ProductPage(items, ProductCursor.ofId(items.get(limit - 1).getId()));
     }
 }
 
@@ -451,14 +1041,15 @@ class ApiResponse<T> {
     private String status;
     private int statusCode;
     private String message;
-    private LocalDateTime timestamp;
+    // Epoch millis; reading the clock is cheap, building a LocalDateTime per response is not
+    private long timestampMillis;
     private T data;
 
     private ApiResponse(String status, int statusCode, String message, T data) {
         this.status = status;
         this.statusCode = statusCode;
         this.message = message;
-        this.timestamp = LocalDateTime.now();
+        this.timestampMillis = System.currentTimeMillis();
         this.data = data;
     }
 
@@ -482,6 +1073,21 @@ class ApiResponse<T> {
         return new ApiResponse<>("NOT_FOUND", 404, message, null);
     }
 
+    // Conflict response - 409 Conflict
+    public static <T> ApiResponse<T> conflict(String message) {
+        return new ApiResponse<>("CONFLICT", 409, message, null);
+    }
+
+    // Method not allowed response - 405 Method Not Allowed; the Allow header is up to the caller
+    public static <T> ApiResponse<T> methodNotAllowed(String message) {
+        return new ApiResponse<>("METHOD_NOT_ALLOWED", 405, message, null);
+    }
+
+    // Service unavailable response - 503 Service Unavailable
+    public static <T> ApiResponse<T> serviceUnavailable(String message) {
+        return new ApiResponse<>("SERVICE_UNAVAILABLE", 503, message, null);
+    }
+
     // Error response - 500 Internal Server Error
     public static <T> ApiResponse<T> error(String message) {
         return new ApiResponse<>("ERROR", 500, message, null);
@@ -501,7 +1107,11 @@ class ApiResponse<T> {
     }
 
     public LocalDateTime getTimestamp() {
-        return timestamp;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault());
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
     }
 
     public T getData() {
@@ -0,0 +1,156 @@
+package Intermediate.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking facade over EmployeeRepository: every call returns a CompletableFuture
+ *
+ * Calls run on as many worker threads as the connection pool has connections, since no more
+ * queries than that can run at once anyway. Calls beyond that wait in the queue as tasks, not
+ * as blocked threads, so a caller can fan out thousands of lookups without running out of
+ * threads. (On JDK 21 the same limit would be a Semaphore of the pool's size around a virtual
+ * thread per call.)
+ *
+ * Each call has a timeout that covers both its wait in the queue and its execution. When the
+ * timeout expires or the future is cancelled, a call that has not started is dropped. A call
+ * that is already running is left to finish and its result is discarded, because interrupting
+ * a thread inside a JDBC driver can leave the connection unusable. A failed call completes its
+ * future exceptionally, with the repository's SQLException as the cause.
+ */
+class AsyncEmployeeRepository implements AutoCloseable {
+    private final EmployeeRepository repository;
+    private final ExecutorService workers;
+    private final long timeoutMillis;
+
+    /**
+     * @param timeoutMillis default timeout of each call; 0 waits indefinitely
+     */
+    AsyncEmployeeRepository(EmployeeRepository repository, int maxConcurrency, long timeoutMillis) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.repository = repository;
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "employee-async-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Employee> getEmployeeById(long id) {
+        return submit(() -> repository.getEmployeeById(id));
+    }
+
+    /**
+     * Look the employees up concurrently; the list holds those found, in the order of ids
+     *
+     * One failed or timed-out lookup fails the whole list at once, and the lookups still
+     * pending are cancelled, as they are when the returned future is cancelled.
+     */
+    public CompletableFuture<List<Employee>> getEmployeesByIds(Collection<Long> ids) {
+        List<CompletableFuture<Employee>> lookups = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            lookups.add(getEmployeeById(id));
+        }
+        CompletableFuture<List<Employee>> employees = CompletableFuture
+                .allOf(lookups.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<Employee> found = new ArrayList<>(lookups.size());
+                    for (CompletableFuture<Employee> lookup : lookups) {
+                        Employee employee = lookup.join();
+                        if (employee != null) {
+                            found.add(employee);
+                        }
+                    }
+                    return found;
+                });
+        for (CompletableFuture<Employee> lookup : lookups) {
+            lookup.whenComplete((employee, failure) -> {
+                if (failure != null) {
+                    employees.completeExceptionally(failure);
+                }
+            });
+        }
+        employees.whenComplete((found, failure) -> {
+            if (failure != null) {
+                lookups.forEach(lookup -> lookup.cancel(false));
+            }
+        });
+        return employees;
+    }
+
+    public CompletableFuture<List<Employee>> getAllEmployees() {
+        return submit(repository::getAllEmployees);
+    }
+
+    public CompletableFuture<List<Employee>> findEmployeesByPosition(String position) {
+        return submit(() -> repository.findEmployeesByPosition(position));
+    }
+
+    public CompletableFuture<Long> insertEmployee(Employee employee) {
+        return submit(() -> repository.insertEmployee(employee));
+    }
+
+    public CompletableFuture<Void> updateEmployee(Employee employee) {
+        return submit(() -> {
+            repository.updateEmployee(employee);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteEmployee(long id) {
+        return submit(() -> {
+            repository.deleteEmployee(id);
+            return null;
+        });
+    }
+
+    /**
+     * Run any repository call with the default timeout
+     */
+    public <T> CompletableFuture<T> submit(SqlCall<T> call) {
+        return submit(call, timeoutMillis);
+    }
+
+    public <T> CompletableFuture<T> submit(SqlCall<T> call, long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            workers.execute(() -> {
+                // Timed out or cancelled while queued
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    result.complete(call.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (timeoutMillis > 0) {
+            result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Stop accepting calls; the ones already submitted still run
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,573 @@
+package Intermediate.jdbc;
+
+import Intermediate.metrics.LatencyHistogram;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process JDBC connection pool, modelled on HikariCP's design
+ *
+ * Borrowing takes the cheapest path that works:
+ * 1. connections this thread returned recently (thread-local list, claimed with a CAS)
+ * 2. any idle connection in the shared list (also a CAS, no lock)
+ * 3. a new physical connection, if the pool is below its maximum size
+ * 4. otherwise wait, in FIFO order, on a fair SynchronousQueue that returning threads hand
+ *    their connection to directly, until the connection timeout expires
+ *
+ * Idle connections are validated before they are handed out if they have been idle for a
+ * while. A housekeeping thread closes connections idle longer than idleTimeout (down to
+ * minimumIdle) and tops the pool back up to minimumIdle.
+ */
+class ConnectionPool implements AutoCloseable {
+    private static final int NOT_IN_USE = 0;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = -1;
+
+    // Connections idle for less than this are handed out without an isValid round trip
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int THREAD_LOCAL_ENTRIES = 16;
+
+    private final PoolConfig config;
+    private final ConnectionFactory connectionFactory;
+    private final CopyOnWriteArrayList<PoolEntry> entries = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<List<WeakReference<PoolEntry>>> recentlyUsed =
+            ThreadLocal.withInitial(() -> new ArrayList<>(THREAD_LOCAL_ENTRIES));
+    private final SynchronousQueue<PoolEntry> handoffQueue = new SynchronousQueue<>(true);
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final BorrowStats borrowStats = new BorrowStats();
+    private final StatementCache.Stats statementCacheStats = new StatementCache.Stats();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(PoolConfig config, ConnectionFactory connectionFactory) throws SQLException {
+        this.config = config;
+        this.connectionFactory = connectionFactory;
+        fillToMinimumIdle();
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, config.getPoolName() + "-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = config.getHousekeepingPeriod();
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection; closing the returned connection gives it back to the pool
+     *
+     * @throws SQLTimeoutException if no connection became available within connectionTimeout
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.getConnectionTimeout());
+        try {
+            PoolEntry entry = borrow(deadline);
+            borrowStats.record(System.nanoTime() - start);
+            return new PooledConnection(entry.connection, this, entry);
+        } catch (SQLTimeoutException e) {
+            borrowStats.timeout();
+            throw e;
+        }
+    }
+
+    private PoolEntry borrow(long deadline) throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool " + config.getPoolName() + " is closed");
+        }
+
+        // 1. Lock-free fast path: entries this thread used last, most recent first
+        List<WeakReference<PoolEntry>> local = recentlyUsed.get();
+        for (int i = local.size() - 1; i >= 0; i--) {
+            PoolEntry entry = local.remove(i).get();
+            if (entry != null && entry.state.compareAndSet(NOT_IN_USE, IN_USE)) {
+                PoolEntry valid = validated(entry);
+                if (valid != null) {
+                    return valid;
+                }
+            }
+        }
+
+        // 2. Any idle entry; 3. a new connection if below the maximum size
+        PoolEntry entry = claimIdleOrCreate();
+        if (entry != null) {
+            return entry;
+        }
+
+        // 4. Wait in FIFO order for a returning thread to hand over its connection
+        waiters.incrementAndGet();
+        try {
+            while (true) {
+                // A connection may have been returned before we registered as a waiter
+                entry = claimIdleOrCreate();
+                if (entry != null) {
+                    return entry;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLTimeoutException(config.getPoolName() + " - connection is not available, request timed out after "
+                            + config.getConnectionTimeout() + "ms (active=" + (totalConnections.get() - idleCount())
+                            + ", waiters=" + waiters.get() + ")");
+                }
+                try {
+                    entry = handoffQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection", e);
+                }
+                if (entry != null && entry.state.compareAndSet(NOT_IN_USE, IN_USE)) {
+                    PoolEntry valid = validated(entry);
+                    if (valid != null) {
+                        return valid;
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("Connection pool " + config.getPoolName() + " is closed");
+                }
+            }
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    private PoolEntry claimIdleOrCreate() throws SQLException {
+        for (PoolEntry entry : entries) {
+            if (entry.state.compareAndSet(NOT_IN_USE, IN_USE)) {
+                PoolEntry valid = validated(entry);
+                if (valid != null) {
+                    return valid;
+                }
+            }
+        }
+        return createEntry(IN_USE);
+    }
+
+    /**
+     * Return the claimed entry if its connection still works, otherwise discard it and return null
+     */
+    private PoolEntry validated(PoolEntry entry) {
+        if (System.nanoTime() - entry.lastAccessedNanos < VALIDATION_BYPASS_NANOS) {
+            return entry;
+        }
+        boolean valid;
+        try {
+            valid = entry.connection.isValid(config.getValidationTimeout());
+        } catch (SQLException e) {
+            valid = false;
+        }
+        if (valid) {
+            return entry;
+        }
+        remove(entry);
+        return null;
+    }
+
+    /**
+     * Open a physical connection if the pool is below its maximum size; null when it is full
+     */
+    private PoolEntry createEntry(int initialState) throws SQLException {
+        int total;
+        do {
+            total = totalConnections.get();
+            if (total >= config.getMaximumPoolSize()) {
+                return null;
+            }
+        } while (!totalConnections.compareAndSet(total, total + 1));
+
+        try {
+            Connection connection = connectionFactory.create();
+            StatementCache statementCache = config.isCachePrepStmts()
+                    ? new StatementCache(config.getPrepStmtCacheSize(), config.getPrepStmtCacheSqlLimit(),
+                    statementCacheStats)
+                    : null;
+            PoolEntry entry = new PoolEntry(connection, statementCache, initialState);
+            entries.add(entry);
+            return entry;
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Called by PooledConnection.close(): make the entry available again
+     */
+    void release(PoolEntry entry) {
+        entry.lastAccessedNanos = System.nanoTime();
+        if (closed) {
+            remove(entry);
+            return;
+        }
+        entry.state.set(NOT_IN_USE);
+
+        // Hand the connection straight to a waiting borrower, if there is one
+        while (waiters.get() > 0) {
+            if (entry.state.get() != NOT_IN_USE || handoffQueue.offer(entry)) {
+                return;
+            }
+            Thread.yield();
+        }
+
+        List<WeakReference<PoolEntry>> local = recentlyUsed.get();
+        if (local.size() >= THREAD_LOCAL_ENTRIES) {
+            local.remove(0);
+        }
+        local.add(new WeakReference<>(entry));
+    }
+
+    /**
+     * Called by PooledConnection.close() when the connection could not be reset: close it instead of reusing it
+     */
+    void evict(PoolEntry entry) {
+        remove(entry);
+        // A waiting borrower would otherwise only notice the free slot when it times out
+        if (!closed && waiters.get() > 0) {
+            try {
+                PoolEntry replacement = createEntry(NOT_IN_USE);
+                if (replacement != null) {
+                    release(replacement);
+                }
+            } catch (SQLException e) {
+                System.err.println("Could not replace an evicted connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private void remove(PoolEntry entry) {
+        entry.state.set(REMOVED);
+        if (entries.remove(entry)) {
+            totalConnections.decrementAndGet();
+        }
+        try {
+            if (entry.statementCache != null) {
+                entry.statementCache.closeAll();
+            }
+            entry.connection.close();
+        } catch (SQLException e) {
+            // Nothing left to do with a broken connection
+        }
+    }
+
+    /**
+     * Close connections idle for longer than idleTimeout (keeping minimumIdle) and refill to minimumIdle
+     */
+    private void houseKeep() {
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeout());
+        long now = System.nanoTime();
+        int idle = idleCount();
+        for (PoolEntry entry : entries) {
+            if (idle <= config.getMinimumIdle()) {
+                break;
+            }
+            if (now - entry.lastAccessedNanos > idleTimeoutNanos
+                    && entry.state.compareAndSet(NOT_IN_USE, REMOVED)) {
+                remove(entry);
+                idle--;
+            }
+        }
+        try {
+            fillToMinimumIdle();
+        } catch (SQLException e) {
+            System.err.println(config.getPoolName() + " - could not create connection: " + e.getMessage());
+        }
+    }
+
+    private void fillToMinimumIdle() throws SQLException {
+        while (!closed && idleCount() < config.getMinimumIdle()) {
+            PoolEntry entry = createEntry(NOT_IN_USE);
+            if (entry == null) {
+                return;
+            }
+        }
+    }
+
+    private int idleCount() {
+        int idle = 0;
+        for (PoolEntry entry : entries) {
+            if (entry.state.get() == NOT_IN_USE) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    public int getMaximumPoolSize() {
+        return config.getMaximumPoolSize();
+    }
+
+    public PoolMetrics getMetrics() {
+        int idle = idleCount();
+        int total = totalConnections.get();
+        return new PoolMetrics(Math.max(0, total - idle), idle, total, waiters.get(), borrowStats,
+                statementCacheStats);
+    }
+
+    /**
+     * Close idle connections now and in-use connections as they are returned
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        for (PoolEntry entry : entries) {
+            if (entry.state.compareAndSet(NOT_IN_USE, REMOVED)) {
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * A physical connection and its pool bookkeeping
+     */
+    static final class PoolEntry {
+        final Connection connection;
+        // Null when cachePrepStmts is off
+        final StatementCache statementCache;
+        final AtomicInteger state;
+        volatile long lastAccessedNanos = System.nanoTime();
+
+        PoolEntry(Connection connection, StatementCache statementCache, int initialState) {
+            this.connection = connection;
+            this.statementCache = statementCache;
+            this.state = new AtomicInteger(initialState);
+        }
+    }
+
+    /**
+     * Borrow latency and timeout counters
+     */
+    static final class BorrowStats extends LatencyHistogram {
+        final LongAdder timeouts = new LongAdder();
+
+        void timeout() {
+            timeouts.increment();
+        }
+    }
+}
+
+/**
+ * Opens a new physical connection for the pool
+ *
+ * In a real application this would be DriverManager.getConnection(jdbcUrl, username, password).
+ */
+@FunctionalInterface
+interface ConnectionFactory {
+    Connection create() throws SQLException;
+}
+
+/**
+ * Pool settings, named after their HikariCP counterparts
+ */
+class PoolConfig {
+    private String poolName = "employee-pool";
+    private int maximumPoolSize = 10;
+    private int minimumIdle = 5;
+    // Milliseconds, except validationTimeout which JDBC's isValid takes in seconds
+    private long idleTimeout = 30_000;
+    private long connectionTimeout = 10_000;
+    private int validationTimeout = 5;
+    private long housekeepingPeriod = 30_000;
+    // Off by default, as in the MySQL driver, which also uses these defaults
+    private boolean cachePrepStmts;
+    private int prepStmtCacheSize = 25;
+    private int prepStmtCacheSqlLimit = 256;
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public void setPoolName(String poolName) {
+        this.poolName = poolName;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        if (maximumPoolSize < 1) {
+            throw new IllegalArgumentException("maximumPoolSize must be at least 1");
+        }
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    public int getMinimumIdle() {
+        return Math.min(minimumIdle, maximumPoolSize);
+    }
+
+    public void setMinimumIdle(int minimumIdle) {
+        if (minimumIdle < 0) {
+            throw new IllegalArgumentException("minimumIdle cannot be negative");
+        }
+        this.minimumIdle = minimumIdle;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(long connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public int getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    public void setValidationTimeout(int validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    public long getHousekeepingPeriod() {
+        return housekeepingPeriod;
+    }
+
+    public void setHousekeepingPeriod(long housekeepingPeriod) {
+        this.housekeepingPeriod = housekeepingPeriod;
+    }
+
+    public boolean isCachePrepStmts() {
+        return cachePrepStmts;
+    }
+
+    public void setCachePrepStmts(boolean cachePrepStmts) {
+        this.cachePrepStmts = cachePrepStmts;
+    }
+
+    public int getPrepStmtCacheSize() {
+        return prepStmtCacheSize;
+    }
+
+    public void setPrepStmtCacheSize(int prepStmtCacheSize) {
+        if (prepStmtCacheSize < 1) {
+            throw new IllegalArgumentException("prepStmtCacheSize must be at least 1");
+        }
+        this.prepStmtCacheSize = prepStmtCacheSize;
+    }
+
+    /**
+     * Longer SQL statements are not cached
+     */
+    public int getPrepStmtCacheSqlLimit() {
+        return prepStmtCacheSqlLimit;
+    }
+
+    public void setPrepStmtCacheSqlLimit(int prepStmtCacheSqlLimit) {
+        this.prepStmtCacheSqlLimit = prepStmtCacheSqlLimit;
+    }
+}
+
+/**
+ * Point-in-time view of a ConnectionPool
+ */
+class PoolMetrics {
+    private final int active;
+    private final int idle;
+    private final int total;
+    private final int waiters;
+    private final long borrows;
+    private final long timeouts;
+    private final double meanBorrowMicros;
+    private final double p99BorrowMicros;
+    private final double maxBorrowMicros;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+    private final long statementCacheEvictions;
+
+    PoolMetrics(int active, int idle, int total, int waiters, ConnectionPool.BorrowStats stats,
+                StatementCache.Stats statementCacheStats) {
+        this.active = active;
+        this.idle = idle;
+        this.total = total;
+        this.waiters = waiters;
+        this.borrows = stats.count();
+        this.timeouts = stats.timeouts.sum();
+        this.meanBorrowMicros = borrows == 0 ? 0 : stats.totalNanos() / 1e3 / borrows;
+        this.p99BorrowMicros = stats.percentileNanos(0.99) / 1e3;
+        this.maxBorrowMicros = stats.maxNanos() / 1e3;
+        this.statementCacheHits = statementCacheStats.hits.sum();
+        this.statementCacheMisses = statementCacheStats.misses.sum();
+        this.statementCacheEvictions = statementCacheStats.evictions.sum();
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getWaiters() {
+        return waiters;
+    }
+
+    public long getBorrows() {
+        return borrows;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public double getMeanBorrowMicros() {
+        return meanBorrowMicros;
+    }
+
+    public double getP99BorrowMicros() {
+        return p99BorrowMicros;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions;
+    }
+
+    /**
+     * Fraction of prepareStatement calls served from a statement cache
+     */
+    public double getStatementCacheHitRatio() {
+        long lookups = statementCacheHits + statementCacheMisses;
+        return lookups == 0 ? 0 : (double) statementCacheHits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PoolMetrics [active=%d, idle=%d, total=%d, waiters=%d, borrows=%d, timeouts=%d, "
+                        + "borrowMean=%.1fus, borrowP99=%.1fus, borrowMax=%.1fus, "
+                        + "stmtCacheHits=%d, stmtCacheMisses=%d, stmtCacheEvictions=%d, stmtCacheHitRatio=%.2f]",
+                active, idle, total, waiters, borrows, timeouts, meanBorrowMicros, p99BorrowMicros, maxBorrowMicros,
+                statementCacheHits, statementCacheMisses, statementCacheEvictions, getStatementCacheHitRatio());
+    }
+}
@@ -2,19 +2,27 @@ package Intermediate.jdbc;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.DoubleSummaryStatistics;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 /**
  * This class demonstrates database operations with connection pooling
  * 
- * Note: This is a demonstration class without actual database connections.
+ * Note: This is a demonstration class without actual database connections; the SQL runs
+ * against an embedded in-memory database (see InMemoryDatabase).
  * In a real application, you would need to include database drivers and connection pool libraries:
  * - Database driver (e.g., mysql-connector-java, postgresql, etc.)
  * - Connection pool (e.g., HikariCP, c3p0, DBCP)
@@ -23,13 +31,17 @@ public class DatabaseConnectionDemo {
 
     public static void main(String[] args) {
         System.out.println("=== Database Connection Demonstration ===\n");
-        System.out.println("Note: This is a code example and doesn't make actual database connections.\n");
+        System.out.println("Note: This is a code example; SQL runs against an in-memory database.\n");
 
         try {
             // Initialize the connection manager
             ConnectionManager connectionManager = new ConnectionManager();
             System.out.println("Connection pool initialized successfully");
 
+            // Time every statement and log the ones slower than 50 ms
+            connectionManager.getQueryMetrics().setSlowQueryThreshold(50);
+            connectionManager.getQueryMetrics().setEnabled(true);
+
             // Create a repository
             EmployeeRepository repository = new EmployeeRepository(connectionManager);
 
@@ -66,6 +78,8 @@ public class DatabaseConnectionDemo {
             System.out.println("\n4. Querying employee with ID " + id2);
             Employee queriedEmployee = repository.getEmployeeById(id2);
             System.out.println("Found: " + queriedEmployee);
+            System.out.println("Querying employee with ID " + id2 + " again");
+            System.out.println("Found: " + repository.getEmployeeById(id2));
 
             // 5. Update an employee
             System.out.println("\n5. Updating employee with ID " + id1);
@@ -100,16 +114,80 @@ public class DatabaseConnectionDemo {
             boolean success = repository.executeTransaction();
             System.out.println("Transaction completed successfully: " + success);
 
-            // 10. Demonstrate batch processing
-            System.out.println("\n10. Executing batch operations...");
+            // 10. Demonstrate group commit of concurrent transactions
+            System.out.println("\n10. Group-committing small transactions from 4 threads...");
+            repository.executeGroupCommit(4, 20);
+            System.out.println(repository.getGroupCommitStats());
+
+            // 11. Demonstrate batch processing
+            System.out.println("\n11. Executing batch operations...");
             repository.executeBatch();
 
-            // 11. Demonstrate parallel queries with connection pool
-            System.out.println("\n11. Executing parallel queries using connection pool...");
+            // 12. Demonstrate bulk loading through the batch pipeline
+            int bulkRows = 200_000;
+            System.out.println("\n12. Bulk loading " + bulkRows + " employees (batches of 1000, 4 connections)...");
+            BatchLoadResult loadResult = repository.insertEmployees(
+                    LongStream.range(0, bulkRows).mapToObj(i ->
+                            new Employee("Employee " + i, "Position " + (i % 50), 50000.0 + (i % 1000) * 50)),
+                    1000, 4, 10);
+            System.out.println(loadResult);
+
+            // 13. Demonstrate streaming a large result set
+            System.out.println("\n13. Streaming all employees (fetch size 1000)...");
+            try (Stream<Employee> employees = repository.streamAllEmployees(1000)) {
+                DoubleSummaryStatistics salaries = employees.mapToDouble(Employee::getSalary).summaryStatistics();
+                System.out.printf("Streamed %d employees, average salary $%.2f%n",
+                        salaries.getCount(), salaries.getAverage());
+            }
+
+            // 14. Demonstrate parallel queries with connection pool
+            System.out.println("\n14. Executing parallel queries using connection pool...");
             repository.executeParallelQueries();
 
-            // 12. Clean up - close the connection pool
-            System.out.println("\n12. Closing connection pool...");
+            // 15. Demonstrate the asynchronous repository facade
+            System.out.println("\n15. Fanning out 100 asynchronous lookups over "
+                    + connectionManager.getMaximumPoolSize() + " connections...");
+            try (AsyncEmployeeRepository asyncRepository = new AsyncEmployeeRepository(repository,
+                    connectionManager.getMaximumPoolSize(), 5000)) {
+                List<Long> ids = LongStream.rangeClosed(1, 100).boxed().collect(Collectors.toList());
+                List<Employee> found = asyncRepository.getEmployeesByIds(ids).join();
+                System.out.println("Found " + found.size() + " of " + ids.size() + " employees");
+
+                try {
+                    asyncRepository.submit(repository::getAllEmployees, 1).join();
+                } catch (CompletionException e) {
+                    System.out.println("Loading all employees within 1 ms failed: " + e.getCause());
+                }
+            }
+            System.out.println(connectionManager.getPoolMetrics());
+            System.out.println(repository.getEmployeeCacheStats());
+            System.out.println(connectionManager.getQueryMetrics().report(5));
+
+            // 16. Demonstrate sharding by id with scatter-gather queries
+            System.out.println("\n16. Sharding employees by id across 4 databases...");
+            List<ConnectionManager> shardManagers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                shardManagers.add(new ConnectionManager());
+            }
+            try (ShardedEmployeeRepository shardedRepository = new ShardedEmployeeRepository(shardManagers)) {
+                shardedRepository.createEmployeeTable();
+                String[] positions = {"Software Engineer", "Product Manager", "QA Engineer", "Data Scientist"};
+                for (int i = 0; i < 20; i++) {
+                    shardedRepository.insertEmployee(new Employee("Sharded Employee " + i,
+                            positions[i % positions.length], 60000.0 + i * 1000));
+                }
+                long shardedId = 7;
+                System.out.println("Employee " + shardedId + " is on shard " + shardedRepository.shardFor(shardedId)
+                        + ": " + shardedRepository.getEmployeeById(shardedId));
+                System.out.println("All employees: " + shardedRepository.getAllEmployees());
+                System.out.println("Software Engineers: "
+                        + shardedRepository.findEmployeesByPosition("Software Engineer"));
+            } finally {
+                shardManagers.forEach(ConnectionManager::close);
+            }
+
+            // 17. Clean up - close the connection pool
+            System.out.println("\n17. Closing connection pool...");
             connectionManager.close();
             System.out.println("Connection pool closed successfully");
 
@@ -126,8 +204,14 @@ public class DatabaseConnectionDemo {
 class ConnectionManager {
     // In a real application, we would use a connection pool like HikariCP
     // private HikariDataSource dataSource;
+    private final ConnectionPool pool;
+    private final QueryMetrics queryMetrics = new QueryMetrics();
+
+    public ConnectionManager() throws SQLException {
+        this(defaultPoolConfig(), new InMemoryDatabase()::connect);
+    }
 
-    public ConnectionManager() {
+    public ConnectionManager(PoolConfig config, ConnectionFactory connectionFactory) throws SQLException {
         // Initialize connection pool
         System.out.println("Initializing connection pool...");
 
@@ -151,6 +235,21 @@ class ConnectionManager {
 
         dataSource = new HikariDataSource(config);
         */
+
+        // For this demo, the same settings drive an in-process pool of connections to an in-memory database
+        pool = new ConnectionPool(config, connectionFactory);
+    }
+
+    private static PoolConfig defaultPoolConfig() {
+        PoolConfig config = new PoolConfig();
+        config.setMaximumPoolSize(10);
+        config.setMinimumIdle(5);
+        config.setIdleTimeout(30000);
+        config.setConnectionTimeout(10000);
+        config.setCachePrepStmts(true);
+        config.setPrepStmtCacheSize(250);
+        config.setPrepStmtCacheSqlLimit(2048);
+        return config;
     }
 
     /**
@@ -160,9 +259,31 @@ class ConnectionManager {
         // In a real application:
         // return dataSource.getConnection();
 
-        // For this demo, we'll simulate a connection
         System.out.println("Getting connection from pool");
-        return createMockConnection();
+        Connection connection = pool.getConnection();
+        // Unwrapped while disabled, so that the timing costs nothing unless it is switched on
+        return queryMetrics.isEnabled() ? queryMetrics.wrap(connection) : connection;
+    }
+
+    /**
+     * Upper bound on connections in use at once
+     */
+    public int getMaximumPoolSize() {
+        return pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Current pool usage and borrow latency
+     */
+    public PoolMetrics getPoolMetrics() {
+        return pool.getMetrics();
+    }
+
+    /**
+     * Timing per SQL template and the slow query log; disabled until setEnabled(true)
+     */
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
     }
 
     /**
@@ -174,15 +295,9 @@ class ConnectionManager {
         //     dataSource.close();
         // }
 
+        pool.close();
         System.out.println("Closing connection pool");
     }
-
-    /**
-     * Create a mock connection for demonstration purposes
-     */
-    private Connection createMockConnection() {
-        return new MockConnection();
-    }
 }
 
 /**
@@ -190,9 +305,43 @@ class ConnectionManager {
  */
 class EmployeeRepository {
     private final ConnectionManager connectionManager;
+    private final EntityCache<Long, Employee> employeeCache;
+    private final TransactionTemplate transactionTemplate;
+    private final GroupCommitter groupCommitter;
 
     public EmployeeRepository(ConnectionManager connectionManager) {
+        this(connectionManager, new EntityCacheConfig());
+    }
+
+    public EmployeeRepository(ConnectionManager connectionManager, EntityCacheConfig cacheConfig) {
         this.connectionManager = connectionManager;
+        this.employeeCache = new EntityCache<>(cacheConfig,
+                employee -> new Employee(employee.getId(), employee.getName(), employee.getPosition(),
+                        employee.getSalary()));
+        this.transactionTemplate = new TransactionTemplate(connectionManager);
+        this.groupCommitter = new GroupCommitter(connectionManager, 64, 0);
+    }
+
+    public EntityCacheStats getEmployeeCacheStats() {
+        return employeeCache.getStats();
+    }
+
+    public GroupCommitStats getGroupCommitStats() {
+        return groupCommitter.getStats();
+    }
+
+    /**
+     * Run the callback as one transaction; the repository methods taking a Transaction join it
+     */
+    public <T> T inTransaction(TransactionCallback<T> callback) throws SQLException {
+        return transactionTemplate.execute(callback);
+    }
+
+    /**
+     * Like inTransaction, but committed together with other threads' transactions (see GroupCommitter)
+     */
+    public <T> T inGroupCommit(TransactionCallback<T> callback) throws SQLException {
+        return groupCommitter.execute(callback);
     }
 
     /**
@@ -212,9 +361,14 @@ class EmployeeRepository {
 
             // Execute the SQL statement
             System.out.println("Executing SQL: " + sql);
-            // stmt.execute(sql);
+            stmt.execute(sql);
             System.out.println("Table created successfully");
 
+            // Index the column findEmployeesByPosition filters on
+            String indexSql = "CREATE INDEX IF NOT EXISTS idx_employees_position ON employees (position)";
+            System.out.println("Executing SQL: " + indexSql);
+            stmt.execute(indexSql);
+
         } catch (SQLException e) {
             System.err.println("Error creating table: " + e.getMessage());
             throw e;
@@ -239,14 +393,12 @@ class EmployeeRepository {
             System.out.println("Executing SQL: " + sql);
             System.out.println("Parameters: " + employee.getName() + ", " + 
                              employee.getPosition() + ", " + employee.getSalary());
-            // pstmt.executeUpdate();
+            pstmt.executeUpdate();
 
-            // Simulate getting generated keys
-            // ResultSet rs = pstmt.getGeneratedKeys();
-            // return rs.next() ? rs.getLong(1) : -1;
-
-            // For this demo, we'll generate a random ID
-            return System.currentTimeMillis() % 1000;
+            // Get the generated key
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
 
         } catch (SQLException e) {
             System.err.println("Error inserting employee: " + e.getMessage());
@@ -254,6 +406,29 @@ class EmployeeRepository {
         }
     }
 
+    /**
+     * Insert a new employee as part of a transaction
+     */
+    public long insertEmployee(Transaction transaction, Employee employee) throws SQLException {
+        String sql = "INSERT INTO employees (name, position, salary) VALUES (?, ?, ?)";
+
+        try (PreparedStatement pstmt = transaction.getConnection().prepareStatement(sql,
+                Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, employee.getName());
+            pstmt.setString(2, employee.getPosition());
+            pstmt.setDouble(3, employee.getSalary());
+            pstmt.executeUpdate();
+
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                long id = rs.next() ? rs.getLong(1) : -1;
+                // The new row is uncommitted but readable; keep it out of the cache until the transaction has ended
+                employeeCache.beginWrite(id);
+                transaction.afterCompletion(() -> employeeCache.endWrite(id));
+                return id;
+            }
+        }
+    }
+
     /**
      * Get all employees
      */
@@ -265,23 +440,16 @@ class EmployeeRepository {
              Statement stmt = conn.createStatement()) {
 
             System.out.println("Executing SQL: " + sql);
-            // ResultSet rs = stmt.executeQuery(sql);
-
-            // For this demo, we'll create some mock data
-            // while (rs.next()) {
-            //     Employee emp = new Employee(
-            //         rs.getLong("id"),
-            //         rs.getString("name"),
-            //         rs.getString("position"),
-            //         rs.getDouble("salary")
-            //     );
-            //     employees.add(emp);
-            // }
-
-            // Mock data
-            if (employees.isEmpty()) {
-                employees.add(new Employee(1L, "John Doe", "Senior Software Engineer", 85000.0D));
-                employees.add(new Employee(2L, "Jane Smith", "Product Manager", 85000.0D));
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    Employee emp = new Employee(
+                        rs.getLong("id"),
+                        rs.getString("name"),
+                        rs.getString("position"),
+                        rs.getDouble("salary")
+                    );
+                    employees.add(emp);
+                }
             }
 
             return employees;
@@ -293,10 +461,55 @@ class EmployeeRepository {
     }
 
     /**
-     * Get employee by ID
+     * Stream all employees, reading fetchSize rows at a time
+     *
+     * The stream holds a pooled connection until it is closed or fully read, so consume it in
+     * a try-with-resources block.
+     */
+    public Stream<Employee> streamAllEmployees(int fetchSize) throws SQLException {
+        String sql = "SELECT id, name, position, salary FROM employees";
+
+        Connection conn = connectionManager.getConnection();
+        PreparedStatement pstmt = null;
+        try {
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // In a real application, MySQL streams only with setFetchSize(Integer.MIN_VALUE)
+            // and PostgreSQL only when auto-commit is off
+            pstmt.setFetchSize(fetchSize);
+            System.out.println("Executing SQL: " + sql);
+            System.out.println("Fetch size: " + fetchSize);
+            ResultSet rs = pstmt.executeQuery();
+
+            return ResultSetStream.of(rs, rows -> new Employee(
+                rows.getLong("id"),
+                rows.getString("name"),
+                rows.getString("position"),
+                rows.getDouble("salary")
+            ), conn, pstmt);
+
+        } catch (SQLException e) {
+            System.err.println("Error streaming employees: " + e.getMessage());
+            if (pstmt != null) {
+                pstmt.close();
+            }
+            conn.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get employee by ID, from the second-level cache when possible
      */
     public Employee getEmployeeById(long id) throws SQLException {
+        Employee cached = employeeCache.get(id);
+        if (cached != null) {
+            System.out.println("Cache hit for employee " + id);
+            return cached;
+        }
+
         String sql = "SELECT id, name, position, salary FROM employees WHERE id = ?";
+        long stamp = employeeCache.stamp(id);
+        Employee employee = null;
 
         try (Connection conn = connectionManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -304,31 +517,48 @@ class EmployeeRepository {
             pstmt.setLong(1, id);
             System.out.println("Executing SQL: " + sql);
             System.out.println("Parameter: " + id);
-            // ResultSet rs = pstmt.executeQuery();
-
-            // For this demo, we'll return mock data
-            // if (rs.next()) {
-            //     return new Employee(
-            //         rs.getLong("id"),
-            //         rs.getString("name"),
-            //         rs.getString("position"),
-            //         rs.getDouble("salary")
-            //     );
-            // }
-
-            // Mock data
-            if (id == 1) {
-                return new Employee(1L, "John Doe", "Senior Software Engineer", 85000.0D);
-            } else if (id == 2) {
-                return new Employee(2L, "Jane Smith", "Product Manager", 85000.0D);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    employee = new Employee(
+                        rs.getLong("id"),
+                        rs.getString("name"),
+                        rs.getString("position"),
+                        rs.getDouble("salary")
+                    );
+                }
             }
 
-            return null;
-
         } catch (SQLException e) {
             System.err.println("Error getting employee by ID: " + e.getMessage());
             throw e;
         }
+
+        if (employee != null) {
+            employeeCache.putIfUnchanged(id, employee, stamp);
+        }
+        return employee;
+    }
+
+    /**
+     * Get employee by ID as part of a transaction, seeing its uncommitted changes (never cached)
+     */
+    public Employee getEmployeeById(Transaction transaction, long id) throws SQLException {
+        String sql = "SELECT id, name, position, salary FROM employees WHERE id = ?";
+
+        try (PreparedStatement pstmt = transaction.getConnection().prepareStatement(sql)) {
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Employee(
+                    rs.getLong("id"),
+                    rs.getString("name"),
+                    rs.getString("position"),
+                    rs.getDouble("salary")
+                );
+            }
+        }
     }
 
     /**
@@ -337,6 +567,7 @@ class EmployeeRepository {
     public void updateEmployee(Employee employee) throws SQLException {
         String sql = "UPDATE employees SET name = ?, position = ?, salary = ? WHERE id = ?";
 
+        employeeCache.beginWrite(employee.getId());
         try (Connection conn = connectionManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
@@ -351,13 +582,33 @@ class EmployeeRepository {
             System.out.println("Parameters: " + employee.getName() + ", " + 
                              employee.getPosition() + ", " + employee.getSalary() + 
                              ", " + employee.getId());
-            // int rowsAffected = pstmt.executeUpdate();
-            // System.out.println(rowsAffected + " row(s) updated");
-            System.out.println("1 row(s) updated");
+            int rowsAffected = pstmt.executeUpdate();
+            System.out.println(rowsAffected + " row(s) updated");
 
         } catch (SQLException e) {
             System.err.println("Error updating employee: " + e.getMessage());
             throw e;
+        } finally {
+            employeeCache.endWrite(employee.getId());
+        }
+    }
+
+    /**
+     * Update an employee as part of a transaction
+     */
+    public void updateEmployee(Transaction transaction, Employee employee) throws SQLException {
+        String sql = "UPDATE employees SET name = ?, position = ?, salary = ? WHERE id = ?";
+
+        long id = employee.getId();
+        // The cached copy stays invalid until the transaction has ended
+        employeeCache.beginWrite(id);
+        transaction.afterCompletion(() -> employeeCache.endWrite(id));
+        try (PreparedStatement pstmt = transaction.getConnection().prepareStatement(sql)) {
+            pstmt.setString(1, employee.getName());
+            pstmt.setString(2, employee.getPosition());
+            pstmt.setDouble(3, employee.getSalary());
+            pstmt.setLong(4, id);
+            pstmt.executeUpdate();
         }
     }
 
@@ -367,6 +618,7 @@ class EmployeeRepository {
     public void deleteEmployee(long id) throws SQLException {
         String sql = "DELETE FROM employees WHERE id = ?";
 
+        employeeCache.beginWrite(id);
         try (Connection conn = connectionManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
@@ -376,13 +628,28 @@ class EmployeeRepository {
             // Execute the delete
             System.out.println("Executing SQL: " + sql);
             System.out.println("Parameter: " + id);
-            // int rowsAffected = pstmt.executeUpdate();
-            // System.out.println(rowsAffected + " row(s) deleted");
-            System.out.println("1 row(s) deleted");
+            int rowsAffected = pstmt.executeUpdate();
+            System.out.println(rowsAffected + " row(s) deleted");
 
         } catch (SQLException e) {
             System.err.println("Error deleting employee: " + e.getMessage());
             throw e;
+        } finally {
+            employeeCache.endWrite(id);
+        }
+    }
+
+    /**
+     * Delete an employee as part of a transaction
+     */
+    public void deleteEmployee(Transaction transaction, long id) throws SQLException {
+        String sql = "DELETE FROM employees WHERE id = ?";
+
+        employeeCache.beginWrite(id);
+        transaction.afterCompletion(() -> employeeCache.endWrite(id));
+        try (PreparedStatement pstmt = transaction.getConnection().prepareStatement(sql)) {
+            pstmt.setLong(1, id);
+            pstmt.executeUpdate();
         }
     }
 
@@ -399,22 +666,16 @@ class EmployeeRepository {
             pstmt.setString(1, position);
             System.out.println("Executing SQL: " + sql);
             System.out.println("Parameter: " + position);
-            // ResultSet rs = pstmt.executeQuery();
-
-            // For this demo, we'll create some mock data
-            // while (rs.next()) {
-            //     Employee emp = new Employee(
-            //         rs.getLong("id"),
-            //         rs.getString("name"),
-            //         rs.getString("position"),
-            //         rs.getDouble("salary")
-            //     );
-            //     employees.add(emp);
-            // }
-
-            // Mock data
-            if (position.equals("Senior Software Engineer")) {
-                employees.add(new Employee(1L, "John Doe", "Senior Software Engineer", 85000.0D));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Employee emp = new Employee(
+                        rs.getLong("id"),
+                        rs.getString("name"),
+                        rs.getString("position"),
+                        rs.getDouble("salary")
+                    );
+                    employees.add(emp);
+                }
             }
 
             return employees;
@@ -429,74 +690,93 @@ class EmployeeRepository {
      * Execute a transaction (multiple operations as a single unit)
      */
     public boolean executeTransaction() throws SQLException {
-        Connection conn = null;
+        System.out.println("Starting transaction (auto-commit disabled)");
         try {
-            // Get connection and disable auto-commit
-            conn = connectionManager.getConnection();
-            conn.setAutoCommit(false);
-
-            System.out.println("Starting transaction (auto-commit disabled)");
-
-            // 1. Insert new employee
-            String insertSql = "INSERT INTO employees (name, position, salary) VALUES (?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
-                pstmt.setString(1, "Alex Wilson");
-                pstmt.setString(2, "DevOps Engineer");
-                pstmt.setDouble(3, 80000.0);
-
-                System.out.println("Transaction - Executing SQL: " + insertSql);
-                System.out.println("Parameters: Alex Wilson, DevOps Engineer, 80000.0");
-                // pstmt.executeUpdate();
-            }
-
-            // 2. Update existing employee salary
-            String updateSql = "UPDATE employees SET salary = salary * 1.1 WHERE position = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
-                pstmt.setString(1, "Senior Software Engineer");
-
-                System.out.println("Transaction - Executing SQL: " + updateSql);
-                System.out.println("Parameter: Senior Software Engineer");
-                // pstmt.executeUpdate();
-            }
-
-            // 3. Delete employees with salary < 50000
-            String deleteSql = "DELETE FROM employees WHERE salary < ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(deleteSql)) {
-                pstmt.setDouble(1, 50000.0);
+            inTransaction(transaction -> {
+                // The UPDATE and DELETE below touch employees whose ids are not known up front
+                employeeCache.beginWriteAll();
+                transaction.afterCompletion(employeeCache::endWriteAll);
+                Connection conn = transaction.getConnection();
+
+                // 1. Insert new employee
+                System.out.println("Transaction - Inserting: Alex Wilson, DevOps Engineer, 80000.0");
+                long id = insertEmployee(transaction, new Employee("Alex Wilson", "DevOps Engineer", 80000.0));
+                System.out.println("Transaction - Inserted employee with ID: " + id);
+
+                // 2. Update existing employee salary
+                String updateSql = "UPDATE employees SET salary = salary * 1.1 WHERE position = ?";
+                try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
+                    pstmt.setString(1, "Senior Software Engineer");
+
+                    System.out.println("Transaction - Executing SQL: " + updateSql);
+                    System.out.println("Parameter: Senior Software Engineer");
+                    System.out.println(pstmt.executeUpdate() + " row(s) updated");
+                }
 
-                System.out.println("Transaction - Executing SQL: " + deleteSql);
-                System.out.println("Parameter: 50000.0");
-                // pstmt.executeUpdate();
-            }
+                // 3. Delete employees with salary < 50000
+                String deleteSql = "DELETE FROM employees WHERE salary < ?";
+                try (PreparedStatement pstmt = conn.prepareStatement(deleteSql)) {
+                    pstmt.setDouble(1, 50000.0);
 
-            // Commit the transaction
-            conn.commit();
+                    System.out.println("Transaction - Executing SQL: " + deleteSql);
+                    System.out.println("Parameter: 50000.0");
+                    System.out.println(pstmt.executeUpdate() + " row(s) deleted");
+                }
+                return id;
+            });
             System.out.println("Transaction committed successfully");
             return true;
 
         } catch (SQLException e) {
-            // Rollback the transaction on error
+            // The template has rolled the transaction back
             System.err.println("Transaction error: " + e.getMessage());
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                    System.out.println("Transaction rolled back");
-                } catch (SQLException ex) {
-                    System.err.println("Error during rollback: " + ex.getMessage());
-                }
-            }
+            System.out.println("Transaction rolled back");
             throw e;
-        } finally {
-            // Restore auto-commit and close connection
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                    System.out.println("Connection closed, auto-commit restored");
-                } catch (SQLException e) {
-                    System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run small transactions from several threads through group commit; every tenth one fails
+     * halfway and is rolled back on its own
+     */
+    public void executeGroupCommit(int threads, int transactionsPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 1; i <= threads; i++) {
+            final int taskId = i;
+            tasks.add(() -> {
+                int committed = 0;
+                for (int j = 1; j <= transactionsPerThread; j++) {
+                    final boolean fail = j % 10 == 0;
+                    String name = "Hire " + taskId + "-" + j;
+                    try {
+                        inGroupCommit(transaction -> {
+                            long id = insertEmployee(transaction, new Employee(name, "Intern", 40000.0));
+                            // Too long for VARCHAR(100): fails after the insert above has run
+                            String position = fail ? "x".repeat(101)
+                                    : "Junior Engineer";
+                            updateEmployee(transaction, new Employee(id, name, position, 60000.0));
+                            return id;
+                        });
+                        committed++;
+                    } catch (SQLException e) {
+                        System.out.println("Transaction for " + name + " rolled back: " + e.getMessage());
+                    }
                 }
+                return committed;
+            });
+        }
+
+        try {
+            int committed = 0;
+            for (Future<Integer> result : executor.invokeAll(tasks)) {
+                committed += result.get();
             }
+            System.out.println(committed + " of " + threads * transactionsPerThread + " transactions committed");
+            System.out.println("Interns left over from rolled back transactions: "
+                    + findEmployeesByPosition("Intern").size());
+        } finally {
+            executor.shutdown();
         }
     }
 
@@ -504,47 +784,42 @@ class EmployeeRepository {
      * Execute batch operations
      */
     public void executeBatch() throws SQLException {
-        String sql = "INSERT INTO employees (name, position, salary) VALUES (?, ?, ?)";
-
-        try (Connection conn = connectionManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        System.out.println("Preparing batch operations...");
+        List<Employee> employees = new ArrayList<>();
+        employees.add(new Employee("Michael Brown", "Backend Developer", 78000.0));
+        employees.add(new Employee("Sarah Lee", "UI/UX Designer", 72000.0));
+        employees.add(new Employee("David Kim", "Data Scientist", 92000.0));
+        for (Employee employee : employees) {
+            System.out.println("Added to batch: " + employee.getName() + ", " + employee.getPosition() + ", "
+                    + employee.getSalary());
+        }
 
-            System.out.println("Preparing batch operations...");
-
-            // Add multiple operations to the batch
-            // 1. Insert employee 1
-            pstmt.setString(1, "Michael Brown");
-            pstmt.setString(2, "Backend Developer");
-            pstmt.setDouble(3, 78000.0);
-            pstmt.addBatch();
-            System.out.println("Added to batch: Michael Brown, Backend Developer, 78000.0");
-
-            // 2. Insert employee 2
-            pstmt.setString(1, "Sarah Lee");
-            pstmt.setString(2, "UI/UX Designer");
-            pstmt.setDouble(3, 72000.0);
-            pstmt.addBatch();
-            System.out.println("Added to batch: Sarah Lee, UI/UX Designer, 72000.0");
-
-            // 3. Insert employee 3
-            pstmt.setString(1, "David Kim");
-            pstmt.setString(2, "Data Scientist");
-            pstmt.setDouble(3, 92000.0);
-            pstmt.addBatch();
-            System.out.println("Added to batch: David Kim, Data Scientist, 92000.0");
-
-            // Execute the batch
+        try {
             System.out.println("Executing batch...");
-            // int[] results = pstmt.executeBatch();
-            // System.out.println("Batch completed with " + results.length + " operations");
-            System.out.println("Batch completed with 3 operations");
-
+            BatchLoadResult result = insertEmployees(employees.stream(), employees.size(), 1, 1);
+            System.out.println("Batch completed with " + result.getRows() + " operations");
         } catch (SQLException e) {
             System.err.println("Error executing batch: " + e.getMessage());
             throw e;
         }
     }
 
+    /**
+     * Bulk insert employees in batches of batchSize, using up to parallelism pooled connections
+     * and committing every batchesPerCommit batches per connection
+     */
+    public BatchLoadResult insertEmployees(Stream<Employee> employees, int batchSize, int parallelism,
+                                           int batchesPerCommit) throws SQLException {
+        return new EmployeeBatchLoader(connectionManager, employeeCache, batchSize, parallelism, batchesPerCommit)
+                .load(employees);
+    }
+
+    public BatchLoadResult insertEmployees(Iterator<Employee> employees, int batchSize, int parallelism,
+                                           int batchesPerCommit) throws SQLException {
+        return new EmployeeBatchLoader(connectionManager, employeeCache, batchSize, parallelism, batchesPerCommit)
+                .load(employees);
+    }
+
     /**
      * Execute parallel queries using the connection pool
      */
@@ -654,83 +929,231 @@ class Employee {
 }
 
 /**
- * Mock Connection class for demonstration purposes
+ * Connection to an InMemoryDatabase, standing in for a real JDBC driver's connection
+ *
+ * Every statement is atomic. With auto-commit off, changes are kept in an undo log until
+ * commit() or rollback(); closing the connection with a transaction open rolls it back.
  */
 class MockConnection implements Connection {
+    private final InMemoryDatabase database;
+    private final UndoLog transaction = new UndoLog();
+    // Active savepoints of the open transaction, oldest first
+    private final List<MockSavepoint> savepoints = new ArrayList<>();
+    private int nextSavepointId = 1;
+    private volatile boolean closed;
+    private volatile boolean autoCommit = true;
+
+    MockConnection(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Run a parsed statement on this connection's transaction
+     */
+    ExecutionResult execute(SqlStatement statement, Object[] params) throws SQLException {
+        checkOpen();
+        if (statement.isQuery()) {
+            return statement.execute(database, params, null);
+        }
+        UndoLog statementUndo = new UndoLog();
+        ExecutionResult result;
+        try {
+            result = statement.execute(database, params, statementUndo);
+        } catch (SQLException | RuntimeException e) {
+            statementUndo.rollback();
+            throw e;
+        }
+        if (autoCommit) {
+            statementUndo.commit();
+        } else {
+            transaction.append(statementUndo);
+        }
+        return result;
+    }
+
+    /**
+     * Open a cursor for a query, or null if it has to be run all at once (see SqlStatement.openCursor)
+     */
+    QueryCursor openCursor(SqlStatement statement, Object[] params, int fetchSize, int maxRows)
+            throws SQLException {
+        checkOpen();
+        // The cursor outlives this call, so it must not see later changes to the parameters
+        return statement.openCursor(database, params.clone(), fetchSize, maxRows);
+    }
+
+    SqlStatement parse(String sql) throws SQLException {
+        return database.parse(sql);
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection is closed", "08003");
+        }
+    }
+
     @Override
-    public Statement createStatement() {
-        return new MockStatement();
+    public Statement createStatement() throws SQLException {
+        checkOpen();
+        return new MockStatement(this);
     }
 
     @Override
-    public PreparedStatement prepareStatement(String sql) {
-        return new MockPreparedStatement(sql);
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepareStatement(sql, Statement.NO_GENERATED_KEYS);
     }
 
     @Override
-    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) {
-        return new MockPreparedStatement(sql);
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        checkOpen();
+        return new MockPreparedStatement(this, database.parse(sql), autoGeneratedKeys);
     }
 
     @Override
-    public void close() {
-        // Do nothing
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        try {
+            savepoints.clear();
+            transaction.rollback();
+        } finally {
+            closed = true;
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean isValid(int timeout) {
+        return !closed;
     }
 
     @Override
     public boolean getAutoCommit() {
-        return true;
+        return autoCommit;
     }
 
     @Override
-    public void setAutoCommit(boolean autoCommit) {
-        // Do nothing
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        checkOpen();
+        if (autoCommit && !this.autoCommit) {
+            // JDBC: switching auto-commit back on commits the open transaction
+            savepoints.clear();
+            transaction.commit();
+        }
+        this.autoCommit = autoCommit;
     }
 
     @Override
-    public void commit() {
-        // Do nothing
+    public void commit() throws SQLException {
+        checkOpen();
+        if (autoCommit) {
+            throw new SQLException("Cannot commit when auto-commit is enabled");
+        }
+        savepoints.clear();
+        transaction.commit();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        checkOpen();
+        if (autoCommit) {
+            throw new SQLException("Cannot roll back when auto-commit is enabled");
+        }
+        savepoints.clear();
+        transaction.rollback();
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return setSavepoint(null);
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        checkOpen();
+        if (autoCommit) {
+            throw new SQLException("Cannot set a savepoint when auto-commit is enabled");
+        }
+        MockSavepoint savepoint = new MockSavepoint(nextSavepointId++, name, transaction.mark());
+        savepoints.add(savepoint);
+        return savepoint;
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        checkOpen();
+        int index = indexOf(savepoint);
+        transaction.rollbackTo(savepoints.get(index).mark);
+        // Savepoints set after this one are gone; this one can be rolled back to again
+        savepoints.subList(index + 1, savepoints.size()).clear();
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        checkOpen();
+        savepoints.subList(indexOf(savepoint), savepoints.size()).clear();
+    }
+
+    private int indexOf(Savepoint savepoint) throws SQLException {
+        int index = savepoints.indexOf(savepoint);
+        if (index < 0) {
+            throw new SQLException("Savepoint is not active on this connection", "3B001");
+        }
+        return index;
     }
 
     @Override
-    public void rollback() {
-        // Do nothing
+    public int getTransactionIsolation() {
+        return TRANSACTION_READ_UNCOMMITTED;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    // Result set type and holdability hints are ignored: every result set is forward-only and read-only
+    @Override public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException { return createStatement(); }
+    @Override public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException { return createStatement(); }
+    @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException { return prepareStatement(sql); }
+    @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException { return prepareStatement(sql); }
+    @Override public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException { return prepareStatement(sql, Statement.RETURN_GENERATED_KEYS); }
+    @Override public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException { return prepareStatement(sql, Statement.RETURN_GENERATED_KEYS); }
+
     // Implementing the rest of Connection methods with no-op
     @Override public CallableStatement prepareCall(String sql) { return null; }
-    @Override public String nativeSQL(String sql) { return null; }
-    @Override public boolean isClosed() { return false; }
+    @Override public String nativeSQL(String sql) { return sql; }
     @Override public DatabaseMetaData getMetaData() { return null; }
     @Override public boolean isReadOnly() { return false; }
     @Override public void setReadOnly(boolean readOnly) {}
     @Override public String getCatalog() { return null; }
     @Override public void setCatalog(String catalog) {}
-    @Override public int getTransactionIsolation() { return 0; }
     @Override public void setTransactionIsolation(int level) {}
     @Override public SQLWarning getWarnings() { return null; }
     @Override public void clearWarnings() {}
-    @Override public Statement createStatement(int resultSetType, int resultSetConcurrency) { return null; }
-    @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) { return null; }
     @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) { return null; }
     @Override public Map<String, Class<?>> getTypeMap() { return null; }
     @Override public void setTypeMap(Map<String, Class<?>> map) {}
-    @Override public int getHoldability() { return 0; }
+    @Override public int getHoldability() { return ResultSet.CLOSE_CURSORS_AT_COMMIT; }
     @Override public void setHoldability(int holdability) {}
-    @Override public Savepoint setSavepoint() { return null; }
-    @Override public Savepoint setSavepoint(String name) { return null; }
-    @Override public void rollback(Savepoint savepoint) {}
-    @Override public void releaseSavepoint(Savepoint savepoint) {}
-    @Override public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) { return null; }
-    @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) { return null; }
     @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) { return null; }
-    @Override public PreparedStatement prepareStatement(String sql, int[] columnIndexes) { return null; }
-    @Override public PreparedStatement prepareStatement(String sql, String[] columnNames) { return null; }
     @Override public Clob createClob() { return null; }
     @Override public Blob createBlob() { return null; }
     @Override public NClob createNClob() { return null; }
     @Override public SQLXML createSQLXML() { return null; }
-    @Override public boolean isValid(int timeout) { return false; }
     @Override public void setClientInfo(String name, String value) {}
     @Override public String getClientInfo(String name) { return null; }
     @Override public Properties getClientInfo() { return null; }
@@ -742,249 +1165,455 @@ class MockConnection implements Connection {
     @Override public void abort(java.util.concurrent.Executor executor) {}
     @Override public void setNetworkTimeout(java.util.concurrent.Executor executor, int milliseconds) {}
     @Override public int getNetworkTimeout() { return 0; }
-    @Override public <T> T unwrap(Class<T> iface) { return null; }
-    @Override public boolean isWrapperFor(Class<?> iface) { return false; }
 }
 
 /**
- * Mock Statement class for demonstration purposes
+ * Savepoint of a MockConnection: a position in its transaction's undo log
+ */
+class MockSavepoint implements Savepoint {
+    final int mark;
+    private final int id;
+    private final String name;
+
+    MockSavepoint(int id, String name, int mark) {
+        this.id = id;
+        this.name = name;
+        this.mark = mark;
+    }
+
+    @Override
+    public int getSavepointId() throws SQLException {
+        if (name != null) {
+            throw new SQLException("Named savepoint has no id");
+        }
+        return id;
+    }
+
+    @Override
+    public String getSavepointName() throws SQLException {
+        if (name == null) {
+            throw new SQLException("Unnamed savepoint has no name");
+        }
+        return name;
+    }
+}
+
+/**
+ * Statement executing plain SQL text on a MockConnection
+ *
+ * With a positive fetch size, queries are read through a QueryCursor fetchSize rows at a
+ * time instead of being materialized, like a server-side cursor in a real driver.
  */
 class MockStatement implements Statement {
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
+    final MockConnection connection;
+    private final List<String> batch = new ArrayList<>();
+    private ResultSet resultSet;
+    private int updateCount = -1;
+    long[] generatedKeys;
+    String generatedKeyColumn;
+    private boolean closed;
+    private int maxRows;
+    private int fetchSize;
+    private int queryTimeout;
+    private boolean poolable;
+    private boolean closeOnCompletion;
+
+    MockStatement(MockConnection connection) {
+        this.connection = connection;
+    }
+
+    void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Statement is closed");
+        }
+    }
+
+    /**
+     * Execute and remember the outcome; true if it produced a result set
+     */
+    boolean run(SqlStatement statement, Object[] params, boolean returnKeys) throws SQLException {
+        checkOpen();
+        closeResultSet();
+        generatedKeys = null;
+        if (fetchSize > 0 && statement.isQuery()) {
+            QueryCursor cursor = connection.openCursor(statement, params, fetchSize, maxRows);
+            if (cursor != null) {
+                resultSet = new InMemoryResultSet(this, cursor, fetchSize);
+                updateCount = -1;
+                return true;
+            }
+        }
+        ExecutionResult result = connection.execute(statement, params);
+        if (result.isQuery()) {
+            List<Object[]> rows = maxRows > 0 && result.rows.size() > maxRows
+                    ? result.rows.subList(0, maxRows) : result.rows;
+            resultSet = new InMemoryResultSet(this, result.columnNames, rows);
+            resultSet.setFetchSize(fetchSize);
+            updateCount = -1;
+            return true;
+        }
+        updateCount = result.updateCount;
+        if (returnKeys) {
+            generatedKeys = result.generatedKeys;
+            generatedKeyColumn = result.generatedKeyColumn;
+        }
+        return false;
+    }
+
+    private void closeResultSet() throws SQLException {
+        if (resultSet != null) {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+
     @Override
-    public ResultSet executeQuery(String sql) {
-        return null;
+    public ResultSet executeQuery(String sql) throws SQLException {
+        if (!run(connection.parse(sql), NO_PARAMETERS, false)) {
+            throw new SQLException("Statement did not return a result set: " + sql);
+        }
+        return resultSet;
     }
 
     @Override
-    public int executeUpdate(String sql) {
-        return 1;
+    public int executeUpdate(String sql) throws SQLException {
+        return executeUpdate(sql, NO_GENERATED_KEYS);
     }
 
     @Override
-    public int executeUpdate(String sql, int autoGeneratedKeys) {
-        return 1;
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        if (run(connection.parse(sql), NO_PARAMETERS, autoGeneratedKeys == RETURN_GENERATED_KEYS)) {
+            throw new SQLException("Statement returned a result set; use executeQuery: " + sql);
+        }
+        return updateCount;
     }
 
     @Override
-    public int executeUpdate(String sql, int[] columnIndexes) {
-        return 1;
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return executeUpdate(sql, RETURN_GENERATED_KEYS);
     }
 
     @Override
-    public int executeUpdate(String sql, String[] columnNames) {
-        return 1;
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return executeUpdate(sql, RETURN_GENERATED_KEYS);
     }
 
     @Override
-    public boolean execute(String sql) {
-        return true;
+    public boolean execute(String sql) throws SQLException {
+        return run(connection.parse(sql), NO_PARAMETERS, false);
     }
 
     @Override
-    public boolean execute(String sql, int autoGeneratedKeys) {
-        return true;
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return run(connection.parse(sql), NO_PARAMETERS, autoGeneratedKeys == RETURN_GENERATED_KEYS);
     }
 
     @Override
-    public boolean execute(String sql, int[] columnIndexes) {
-        return true;
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return execute(sql, RETURN_GENERATED_KEYS);
     }
 
     @Override
-    public boolean execute(String sql, String[] columnNames) {
-        return true;
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return execute(sql, RETURN_GENERATED_KEYS);
     }
 
     @Override
-    public void close() {
-        // Do nothing
+    public void addBatch(String sql) throws SQLException {
+        checkOpen();
+        batch.add(sql);
     }
 
     @Override
-    public boolean isClosed() {
+    public void clearBatch() {
+        batch.clear();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        int[] counts = new int[batch.size()];
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                try {
+                    counts[i] = executeUpdate(batch.get(i));
+                } catch (SQLException e) {
+                    throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(),
+                            Arrays.copyOf(counts, i), e);
+                }
+            }
+            return counts;
+        } finally {
+            batch.clear();
+        }
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        checkOpen();
+        List<Object[]> rows = new ArrayList<>();
+        if (generatedKeys != null) {
+            for (long key : generatedKeys) {
+                rows.add(new Object[]{key});
+            }
+        }
+        return new InMemoryResultSet(this, new String[]{generatedKeyColumn == null ? "GENERATED_KEY" : generatedKeyColumn},
+                rows);
+    }
+
+    @Override
+    public ResultSet getResultSet() {
+        return resultSet;
+    }
+
+    @Override
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        closeResultSet();
+        updateCount = -1;
         return false;
     }
 
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return getMoreResults();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        closeResultSet();
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    @Override public int getMaxRows() { return maxRows; }
+    @Override public void setMaxRows(int max) { this.maxRows = max; }
+    @Override public int getFetchSize() { return fetchSize; }
+    @Override public void setFetchSize(int rows) { this.fetchSize = Math.max(rows, 0); }
+    @Override public int getQueryTimeout() { return queryTimeout; }
+    @Override public void setQueryTimeout(int seconds) { this.queryTimeout = seconds; }
+    @Override public boolean isPoolable() { return poolable; }
+    @Override public void setPoolable(boolean poolable) { this.poolable = poolable; }
+    @Override public void closeOnCompletion() { closeOnCompletion = true; }
+    @Override public boolean isCloseOnCompletion() { return closeOnCompletion; }
+    @Override public int getFetchDirection() { return ResultSet.FETCH_FORWARD; }
+    @Override public void setFetchDirection(int direction) {}
+    @Override public int getResultSetConcurrency() { return ResultSet.CONCUR_READ_ONLY; }
+    @Override public int getResultSetHoldability() { return ResultSet.CLOSE_CURSORS_AT_COMMIT; }
+    @Override public int getResultSetType() { return ResultSet.TYPE_FORWARD_ONLY; }
+
     // Implementing the rest of Statement methods with no-op
-    @Override public ResultSet getGeneratedKeys() { return null; }
-    @Override public int[] executeBatch() { return new int[0]; }
-    @Override public void addBatch(String sql) {}
-    @Override public void clearBatch() {}
     @Override public void cancel() {}
     @Override public void clearWarnings() {}
-    @Override public Connection getConnection() { return null; }
-    @Override public int getFetchDirection() { return 0; }
-    @Override public void setFetchDirection(int direction) {}
-    @Override public int getFetchSize() { return 0; }
-    @Override public void setFetchSize(int rows) {}
+    @Override public SQLWarning getWarnings() { return null; }
     @Override public int getMaxFieldSize() { return 0; }
     @Override public void setMaxFieldSize(int max) {}
-    @Override public int getMaxRows() { return 0; }
-    @Override public void setMaxRows(int max) {}
-    @Override public boolean getMoreResults() { return false; }
-    @Override public boolean getMoreResults(int current) { return false; }
-    @Override public int getQueryTimeout() { return 0; }
-    @Override public void setQueryTimeout(int seconds) {}
-    @Override public ResultSet getResultSet() { return null; }
-    @Override public int getResultSetConcurrency() { return 0; }
-    @Override public int getResultSetHoldability() { return 0; }
-    @Override public int getResultSetType() { return 0; }
-    @Override public int getUpdateCount() { return 0; }
-    @Override public SQLWarning getWarnings() { return null; }
     @Override public void setCursorName(String name) {}
     @Override public void setEscapeProcessing(boolean enable) {}
-    @Override public void setPoolable(boolean poolable) {}
-    @Override public boolean isPoolable() { return false; }
-    @Override public void closeOnCompletion() {}
-    @Override public boolean isCloseOnCompletion() { return false; }
-    @Override public <T> T unwrap(Class<T> iface) { return null; }
-    @Override public boolean isWrapperFor(Class<?> iface) { return false; }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
 }
 
 /**
- * Mock PreparedStatement class for demonstration purposes
+ * PreparedStatement on a MockConnection; the SQL is parsed once, when it is prepared
  */
-class MockPreparedStatement implements PreparedStatement {
-    private final String sql;
+class MockPreparedStatement extends MockStatement implements PreparedStatement {
+    private final SqlStatement statement;
+    private final boolean returnGeneratedKeys;
+    private final Object[] parameters;
+    private final boolean[] bound;
+    private final List<Object[]> batch = new ArrayList<>();
+
+    MockPreparedStatement(MockConnection connection, SqlStatement statement, int autoGeneratedKeys) {
+        super(connection);
+        this.statement = statement;
+        this.returnGeneratedKeys = autoGeneratedKeys == RETURN_GENERATED_KEYS;
+        this.parameters = new Object[statement.parameterCount];
+        this.bound = new boolean[statement.parameterCount];
+    }
 
-    public MockPreparedStatement(String sql) {
-        this.sql = sql;
+    private void set(int parameterIndex, Object value) throws SQLException {
+        checkOpen();
+        if (parameterIndex < 1 || parameterIndex > parameters.length) {
+            throw new SQLException("Parameter index " + parameterIndex + " out of range 1.." + parameters.length,
+                    "07009");
+        }
+        parameters[parameterIndex - 1] = value;
+        bound[parameterIndex - 1] = true;
     }
 
-    @Override
-    public ResultSet executeQuery() {
-        return null;
+    private Object[] boundParameters() throws SQLException {
+        for (int i = 0; i < bound.length; i++) {
+            if (!bound[i]) {
+                throw new SQLException("No value specified for parameter " + (i + 1), "07001");
+            }
+        }
+        return parameters;
     }
 
     @Override
-    public int executeUpdate() {
-        return 1;
+    public ResultSet executeQuery() throws SQLException {
+        if (!run(statement, boundParameters(), false)) {
+            throw new SQLException("Statement did not return a result set: " + statement.sql);
+        }
+        return getResultSet();
     }
 
     @Override
-    public void setString(int parameterIndex, String x) {
-        // Do nothing
+    public int executeUpdate() throws SQLException {
+        if (run(statement, boundParameters(), returnGeneratedKeys)) {
+            throw new SQLException("Statement returned a result set; use executeQuery: " + statement.sql);
+        }
+        return getUpdateCount();
     }
 
     @Override
-    public void setLong(int parameterIndex, long x) {
-        // Do nothing
+    public boolean execute() throws SQLException {
+        return run(statement, boundParameters(), returnGeneratedKeys);
     }
 
     @Override
-    public void setDouble(int parameterIndex, double x) {
-        // Do nothing
+    public void addBatch() throws SQLException {
+        checkOpen();
+        batch.add(boundParameters().clone());
     }
 
     @Override
-    public void addBatch() {
-        // Do nothing
+    public void clearBatch() {
+        batch.clear();
     }
 
     @Override
-    public ResultSet getGeneratedKeys() {
-        return null;
+    public int[] executeBatch() throws SQLException {
+        int[] counts = new int[batch.size()];
+        long[] keys = new long[0];
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                try {
+                    run(statement, batch.get(i), returnGeneratedKeys);
+                } catch (SQLException e) {
+                    throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(),
+                            Arrays.copyOf(counts, i), e);
+                }
+                counts[i] = getUpdateCount();
+                if (generatedKeys != null && generatedKeys.length > 0) {
+                    int length = keys.length;
+                    keys = Arrays.copyOf(keys, length + generatedKeys.length);
+                    System.arraycopy(generatedKeys, 0, keys, length, generatedKeys.length);
+                }
+            }
+            if (returnGeneratedKeys) {
+                // Keys of the whole batch, not just of its last row
+                generatedKeys = keys;
+            }
+            return counts;
+        } finally {
+            batch.clear();
+        }
     }
 
     @Override
-    public void close() {
-        // Do nothing
+    public void clearParameters() {
+        Arrays.fill(parameters, null);
+        Arrays.fill(bound, false);
     }
 
-    @Override
-    public boolean isClosed() {
-        return false;
+    @Override public void setNull(int parameterIndex, int sqlType) throws SQLException { set(parameterIndex, null); }
+    @Override public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException { set(parameterIndex, null); }
+    @Override public void setBoolean(int parameterIndex, boolean x) throws SQLException { set(parameterIndex, x ? 1L : 0L); }
+    @Override public void setByte(int parameterIndex, byte x) throws SQLException { set(parameterIndex, (long) x); }
+    @Override public void setShort(int parameterIndex, short x) throws SQLException { set(parameterIndex, (long) x); }
+    @Override public void setInt(int parameterIndex, int x) throws SQLException { set(parameterIndex, (long) x); }
+    @Override public void setLong(int parameterIndex, long x) throws SQLException { set(parameterIndex, x); }
+    @Override public void setFloat(int parameterIndex, float x) throws SQLException { set(parameterIndex, (double) x); }
+    @Override public void setDouble(int parameterIndex, double x) throws SQLException { set(parameterIndex, x); }
+    @Override public void setBigDecimal(int parameterIndex, java.math.BigDecimal x) throws SQLException { set(parameterIndex, x); }
+    @Override public void setString(int parameterIndex, String x) throws SQLException { set(parameterIndex, x); }
+    @Override public void setNString(int parameterIndex, String value) throws SQLException { set(parameterIndex, value); }
+    @Override public void setObject(int parameterIndex, Object x) throws SQLException { set(parameterIndex, x); }
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException { set(parameterIndex, x); }
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException { set(parameterIndex, x); }
+
+    // Plain SQL text cannot be executed on a PreparedStatement
+    @Override public ResultSet executeQuery(String sql) throws SQLException { throw sqlNotAllowed(); }
+    @Override public int executeUpdate(String sql) throws SQLException { throw sqlNotAllowed(); }
+    @Override public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException { throw sqlNotAllowed(); }
+    @Override public int executeUpdate(String sql, int[] columnIndexes) throws SQLException { throw sqlNotAllowed(); }
+    @Override public int executeUpdate(String sql, String[] columnNames) throws SQLException { throw sqlNotAllowed(); }
+    @Override public boolean execute(String sql) throws SQLException { throw sqlNotAllowed(); }
+    @Override public boolean execute(String sql, int autoGeneratedKeys) throws SQLException { throw sqlNotAllowed(); }
+    @Override public boolean execute(String sql, int[] columnIndexes) throws SQLException { throw sqlNotAllowed(); }
+    @Override public boolean execute(String sql, String[] columnNames) throws SQLException { throw sqlNotAllowed(); }
+    @Override public void addBatch(String sql) throws SQLException { throw sqlNotAllowed(); }
+
+    private static SQLException sqlNotAllowed() {
+        return new SQLException("Cannot execute SQL text on a PreparedStatement");
     }
 
-    // Implementing the rest of PreparedStatement methods with no-op
-    @Override public ResultSet executeQuery(String sql) { return null; }
-    @Override public int executeUpdate(String sql) { return 0; }
-    @Override public void addBatch(String sql) {}
-    @Override public void clearBatch() {}
-    @Override public void clearParameters() {}
-    @Override public boolean execute() { return false; }
-    @Override public boolean execute(String sql) { return false; }
-    @Override public int[] executeBatch() { return new int[0]; }
-    @Override public void cancel() {}
-    @Override public void clearWarnings() {}
-    @Override public Connection getConnection() { return null; }
-    @Override public int getFetchDirection() { return 0; }
-    @Override public void setFetchDirection(int direction) {}
-    @Override public int getFetchSize() { return 0; }
-    @Override public void setFetchSize(int rows) {}
-    @Override public int getMaxFieldSize() { return 0; }
-    @Override public void setMaxFieldSize(int max) {}
-    @Override public int getMaxRows() { return 0; }
-    @Override public void setMaxRows(int max) {}
-    @Override public boolean getMoreResults() { return false; }
-    @Override public boolean getMoreResults(int current) { return false; }
-    @Override public int getQueryTimeout() { return 0; }
-    @Override public void setQueryTimeout(int seconds) {}
-    @Override public ResultSet getResultSet() { return null; }
-    @Override public int getResultSetConcurrency() { return 0; }
-    @Override public int getResultSetHoldability() { return 0; }
-    @Override public int getResultSetType() { return 0; }
-    @Override public int getUpdateCount() { return 0; }
-    @Override public SQLWarning getWarnings() { return null; }
-    @Override public void setCursorName(String name) {}
-    @Override public void setEscapeProcessing(boolean enable) {}
-    @Override public void setPoolable(boolean poolable) {}
-    @Override public boolean isPoolable() { return false; }
-    @Override public void closeOnCompletion() {}
-    @Override public boolean isCloseOnCompletion() { return false; }
-    @Override public <T> T unwrap(Class<T> iface) { return null; }
-    @Override public boolean isWrapperFor(Class<?> iface) { return false; }
-    @Override public void setNull(int parameterIndex, int sqlType) {}
-    @Override public void setBoolean(int parameterIndex, boolean x) {}
-    @Override public void setByte(int parameterIndex, byte x) {}
-    @Override public void setShort(int parameterIndex, short x) {}
-    @Override public void setInt(int parameterIndex, int x) {}
-    @Override public void setFloat(int parameterIndex, float x) {}
-    @Override public void setBigDecimal(int parameterIndex, java.math.BigDecimal x) {}
-    @Override public void setBytes(int parameterIndex, byte[] x) {}
-    @Override public void setDate(int parameterIndex, java.sql.Date x) {}
-    @Override public void setTime(int parameterIndex, java.sql.Time x) {}
-    @Override public void setTimestamp(int parameterIndex, java.sql.Timestamp x) {}
-    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x, int length) {}
-    @Override public void setUnicodeStream(int parameterIndex, java.io.InputStream x, int length) {}
-    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x, int length) {}
-    @Override public void setObject(int parameterIndex, Object x, int targetSqlType) {}
-    @Override public void setObject(int parameterIndex, Object x) {}
-    @Override public boolean execute(String sql, int autoGeneratedKeys) { return false; }
-    @Override public boolean execute(String sql, int[] columnIndexes) { return false; }
-    @Override public boolean execute(String sql, String[] columnNames) { return false; }
-    @Override public int executeUpdate(String sql, int autoGeneratedKeys) { return 0; }
-    @Override public int executeUpdate(String sql, int[] columnIndexes) { return 0; }
-    @Override public int executeUpdate(String sql, String[] columnNames) { return 0; }
-    @Override public void setRef(int parameterIndex, Ref x) {}
-    @Override public void setBlob(int parameterIndex, Blob x) {}
-    @Override public void setClob(int parameterIndex, Clob x) {}
-    @Override public void setArray(int parameterIndex, Array x) {}
-    @Override public ResultSetMetaData getMetaData() { return null; }
-    @Override public void setDate(int parameterIndex, java.sql.Date x, Calendar cal) {}
-    @Override public void setTime(int parameterIndex, java.sql.Time x, Calendar cal) {}
-    @Override public void setTimestamp(int parameterIndex, java.sql.Timestamp x, Calendar cal) {}
-    @Override public void setNull(int parameterIndex, int sqlType, String typeName) {}
-    @Override public void setURL(int parameterIndex, java.net.URL x) {}
-    @Override public ParameterMetaData getParameterMetaData() { return null; }
-    @Override public void setRowId(int parameterIndex, RowId x) {}
-    @Override public void setNString(int parameterIndex, String value) {}
-    @Override public void setNCharacterStream(int parameterIndex, java.io.Reader value, long length) {}
-    @Override public void setNClob(int parameterIndex, NClob value) {}
-    @Override public void setClob(int parameterIndex, java.io.Reader reader, long length) {}
-    @Override public void setBlob(int parameterIndex, java.io.InputStream inputStream, long length) {}
-    @Override public void setNClob(int parameterIndex, java.io.Reader reader, long length) {}
-    @Override public void setSQLXML(int parameterIndex, SQLXML xmlObject) {}
-    @Override public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) {}
-    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x, long length) {}
-    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x, long length) {}
-    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader, long length) {}
-    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x) {}
-    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x) {}
-    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader) {}
-    @Override public void setNCharacterStream(int parameterIndex, java.io.Reader value) {}
-    @Override public void setClob(int parameterIndex, java.io.Reader reader) {}
-    @Override public void setBlob(int parameterIndex, java.io.InputStream inputStream) {}
-    @Override public void setNClob(int parameterIndex, java.io.Reader reader) {}
-    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader, int length) {}
+    // Types the in-memory database cannot store
+    @Override public void setBytes(int parameterIndex, byte[] x) throws SQLException { throw unsupported(); }
+    @Override public void setDate(int parameterIndex, java.sql.Date x) throws SQLException { throw unsupported(); }
+    @Override public void setTime(int parameterIndex, java.sql.Time x) throws SQLException { throw unsupported(); }
+    @Override public void setTimestamp(int parameterIndex, java.sql.Timestamp x) throws SQLException { throw unsupported(); }
+    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x, int length) throws SQLException { throw unsupported(); }
+    @Override public void setUnicodeStream(int parameterIndex, java.io.InputStream x, int length) throws SQLException { throw unsupported(); }
+    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x, int length) throws SQLException { throw unsupported(); }
+    @Override public void setRef(int parameterIndex, Ref x) throws SQLException { throw unsupported(); }
+    @Override public void setBlob(int parameterIndex, Blob x) throws SQLException { throw unsupported(); }
+    @Override public void setClob(int parameterIndex, Clob x) throws SQLException { throw unsupported(); }
+    @Override public void setArray(int parameterIndex, Array x) throws SQLException { throw unsupported(); }
+    @Override public ResultSetMetaData getMetaData() throws SQLException { throw unsupported(); }
+    @Override public void setDate(int parameterIndex, java.sql.Date x, Calendar cal) throws SQLException { throw unsupported(); }
+    @Override public void setTime(int parameterIndex, java.sql.Time x, Calendar cal) throws SQLException { throw unsupported(); }
+    @Override public void setTimestamp(int parameterIndex, java.sql.Timestamp x, Calendar cal) throws SQLException { throw unsupported(); }
+    @Override public void setURL(int parameterIndex, java.net.URL x) throws SQLException { throw unsupported(); }
+    @Override public ParameterMetaData getParameterMetaData() throws SQLException { throw unsupported(); }
+    @Override public void setRowId(int parameterIndex, RowId x) throws SQLException { throw unsupported(); }
+    @Override public void setNCharacterStream(int parameterIndex, java.io.Reader value, long length) throws SQLException { throw unsupported(); }
+    @Override public void setNClob(int parameterIndex, NClob value) throws SQLException { throw unsupported(); }
+    @Override public void setClob(int parameterIndex, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void setBlob(int parameterIndex, java.io.InputStream inputStream, long length) throws SQLException { throw unsupported(); }
+    @Override public void setNClob(int parameterIndex, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException { throw unsupported(); }
+    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x, long length) throws SQLException { throw unsupported(); }
+    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x, long length) throws SQLException { throw unsupported(); }
+    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x) throws SQLException { throw unsupported(); }
+    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x) throws SQLException { throw unsupported(); }
+    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void setNCharacterStream(int parameterIndex, java.io.Reader value) throws SQLException { throw unsupported(); }
+    @Override public void setClob(int parameterIndex, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void setBlob(int parameterIndex, java.io.InputStream inputStream) throws SQLException { throw unsupported(); }
+    @Override public void setNClob(int parameterIndex, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader, int length) throws SQLException { throw unsupported(); }
+
+    private static SQLFeatureNotSupportedException unsupported() {
+        return new SQLFeatureNotSupportedException("Not supported by the in-memory database");
+    }
 }
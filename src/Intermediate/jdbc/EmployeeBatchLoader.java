@@ -0,0 +1,276 @@
+package Intermediate.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Bulk insert pipeline for employees
+ *
+ * The calling thread reads the input and cuts it into batches of batchSize rows. A fixed
+ * number of worker threads, each holding one pooled connection with auto-commit off, take
+ * batches from a bounded queue, send each one with a single executeBatch() round trip and
+ * commit every batchesPerCommit batches. Because the queue holds at most one batch per
+ * worker, the reader blocks when the database falls behind, so memory use stays flat no
+ * matter how many rows are loaded.
+ *
+ * When a batch fails, loading stops: workers roll back what they have not committed yet
+ * and load() throws. Rows committed before the failure stay in the table; the exception
+ * message says how many.
+ *
+ * The ids of the new rows are only known once they are inserted, so each worker's open
+ * transaction holds the employee cache's table-wide write (beginWriteAll) from its first
+ * batch until it commits or rolls back. Meanwhile no employee read is cached, so a row that
+ * may still be rolled back never gets into the cache.
+ *
+ * In a real application you would also add rewriteBatchedStatements=true (MySQL) or
+ * reWriteBatchedInserts=true (PostgreSQL) to the JDBC URL so that a batch becomes one
+ * multi-row INSERT instead of one statement per row.
+ */
+class EmployeeBatchLoader {
+    static final String INSERT_SQL = "INSERT INTO employees (name, position, salary) VALUES (?, ?, ?)";
+    private static final long POLL_MILLIS = 50;
+
+    private final ConnectionManager connectionManager;
+    private final EntityCache<Long, Employee> employeeCache;
+    private final int batchSize;
+    private final int parallelism;
+    private final int batchesPerCommit;
+
+    /**
+     * @param parallelism      number of connections used at once; should not exceed the pool's maximum size
+     * @param batchesPerCommit batches sent on a connection between two commits
+     */
+    public EmployeeBatchLoader(ConnectionManager connectionManager, EntityCache<Long, Employee> employeeCache,
+                               int batchSize, int parallelism, int batchesPerCommit) {
+        if (batchSize < 1 || parallelism < 1 || batchesPerCommit < 1) {
+            throw new IllegalArgumentException("batchSize, parallelism and batchesPerCommit must be at least 1");
+        }
+        this.connectionManager = connectionManager;
+        this.employeeCache = employeeCache;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.batchesPerCommit = batchesPerCommit;
+    }
+
+    public BatchLoadResult load(Stream<Employee> employees) throws SQLException {
+        try (Stream<Employee> stream = employees) {
+            return load(stream.iterator());
+        }
+    }
+
+    public BatchLoadResult load(Iterator<Employee> employees) throws SQLException {
+        long start = System.nanoTime();
+        BlockingQueue<List<Employee>> queue = new ArrayBlockingQueue<>(parallelism);
+        Progress progress = new Progress();
+        AtomicInteger workerNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "employee-loader-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < parallelism; i++) {
+            workers.execute(() -> runWorker(queue, progress));
+        }
+
+        try {
+            produce(employees, queue, progress);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.fail(e);
+        } catch (RuntimeException e) {
+            progress.fail(e);
+        } finally {
+            progress.inputDone = true;
+            workers.shutdown();
+        }
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Workers finish once the queue is drained
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.fail(e);
+            workers.shutdownNow();
+        }
+
+        BatchLoadResult result = new BatchLoadResult(progress.committedRows.sum(), progress.batches.sum(),
+                progress.commits.sum(), System.nanoTime() - start);
+        Throwable failure = progress.failure.get();
+        if (failure != null) {
+            throw new SQLException("Bulk load failed after committing " + result.getRows() + " rows: "
+                    + failure.getMessage(), failure);
+        }
+        return result;
+    }
+
+    private void produce(Iterator<Employee> employees, BlockingQueue<List<Employee>> queue, Progress progress)
+            throws InterruptedException {
+        List<Employee> batch = new ArrayList<>(batchSize);
+        while (employees.hasNext() && progress.failure.get() == null) {
+            batch.add(employees.next());
+            if (batch.size() == batchSize) {
+                if (!enqueue(batch, queue, progress)) {
+                    return;
+                }
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            enqueue(batch, queue, progress);
+        }
+    }
+
+    /**
+     * Block until a worker has room for the batch; false if loading was aborted meanwhile
+     */
+    private static boolean enqueue(List<Employee> batch, BlockingQueue<List<Employee>> queue, Progress progress)
+            throws InterruptedException {
+        while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (progress.failure.get() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void runWorker(BlockingQueue<List<Employee>> queue, Progress progress) {
+        // Whether this worker's open transaction holds the cache's table-wide write
+        boolean writing = false;
+        try (Connection conn = connectionManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+                int uncommittedBatches = 0;
+                long uncommittedRows = 0;
+                while (progress.failure.get() == null) {
+                    List<Employee> batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        if (progress.inputDone && queue.isEmpty()) {
+                            break;
+                        }
+                        continue;
+                    }
+
+                    for (Employee employee : batch) {
+                        pstmt.setString(1, employee.getName());
+                        pstmt.setString(2, employee.getPosition());
+                        pstmt.setDouble(3, employee.getSalary());
+                        pstmt.addBatch();
+                    }
+                    if (!writing) {
+                        employeeCache.beginWriteAll();
+                        writing = true;
+                    }
+                    pstmt.executeBatch();
+                    progress.batches.increment();
+                    uncommittedBatches++;
+                    uncommittedRows += batch.size();
+
+                    if (uncommittedBatches == batchesPerCommit) {
+                        commit(conn, uncommittedRows, progress);
+                        employeeCache.endWriteAll();
+                        writing = false;
+                        uncommittedBatches = 0;
+                        uncommittedRows = 0;
+                    }
+                }
+                if (progress.failure.get() != null) {
+                    // Another worker failed; setAutoCommit(true) below would commit what we have
+                    conn.rollback();
+                } else if (uncommittedBatches > 0) {
+                    commit(conn, uncommittedRows, progress);
+                }
+            } catch (SQLException | RuntimeException | InterruptedException e) {
+                progress.fail(e);
+                // If this throws too, setAutoCommit(true) would commit the partial batch; the
+                // connection is closed still in its transaction, and the pool rolls it back or evicts it
+                conn.rollback();
+            }
+            // Only reached once the transaction has been committed or rolled back
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            progress.fail(e);
+        } finally {
+            // The connection is closed by now, so its transaction has ended one way or the other
+            if (writing) {
+                employeeCache.endWriteAll();
+            }
+        }
+    }
+
+    private static void commit(Connection conn, long rows, Progress progress) throws SQLException {
+        conn.commit();
+        progress.commits.increment();
+        progress.committedRows.add(rows);
+    }
+
+    /**
+     * Counters and the first failure, shared between the reader and the workers
+     */
+    private static final class Progress {
+        final LongAdder committedRows = new LongAdder();
+        final LongAdder batches = new LongAdder();
+        final LongAdder commits = new LongAdder();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        volatile boolean inputDone;
+
+        void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+}
+
+/**
+ * Outcome of an EmployeeBatchLoader run
+ */
+class BatchLoadResult {
+    private final long rows;
+    private final long batches;
+    private final long commits;
+    private final long elapsedNanos;
+
+    BatchLoadResult(long rows, long batches, long commits, long elapsedNanos) {
+        this.rows = rows;
+        this.batches = batches;
+        this.commits = commits;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getCommits() {
+        return commits;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1e9;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchLoadResult [rows=%d, batches=%d, commits=%d, elapsed=%.3fs, rows/s=%.0f]",
+                rows, batches, commits, getElapsedSeconds(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,360 @@
+package Intermediate.jdbc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Second-level cache of entities by id, shared by all callers of a repository
+ *
+ * Entries live in segments, each a LinkedHashMap under its own lock, so lookups of different
+ * ids rarely contend. Each segment holds at most maximumSize / segments entries and evicts in
+ * LRU or FIFO order; entries can also expire a fixed time after they were loaded. The cache
+ * stores and hands out copies, so callers may modify what they get.
+ *
+ * Uncommitted state is never cached. A writer calls beginWrite before changing a row and
+ * endWrite after its transaction committed or rolled back; both drop the cached entry.
+ * Loading is stamp-based: take stamp() before reading the database and putIfUnchanged()
+ * after. The put is skipped when a write to the same id (or to the whole table, through
+ * beginWriteAll) was in progress or happened in between, because the row read may be a dirty
+ * or already stale version. Writes that bypass the repository are not seen; in a real
+ * application that is what expireAfterWrite is for.
+ */
+class EntityCache<K, V> {
+    static final long NO_STAMP = -1;
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final Segment<K, V>[] segments;
+    private final UnaryOperator<V> copier;
+    private final long expireAfterWriteNanos;
+    private final boolean enabled;
+    // Writes whose affected ids are unknown (e.g. UPDATE ... WHERE position = ?)
+    private final AtomicInteger tableWriters = new AtomicInteger();
+    private final AtomicLong tableGeneration = new AtomicLong();
+    private final Stats stats = new Stats();
+
+    @SuppressWarnings("unchecked")
+    EntityCache(EntityCacheConfig config, UnaryOperator<V> copier) {
+        this.copier = copier;
+        this.enabled = config.getMaximumSize() > 0;
+        this.expireAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos(config.getExpireAfterWrite());
+        int segmentCount = Math.min(MAX_SEGMENTS,
+                Integer.highestOneBit(Math.max(1, config.getMaximumSize() / MIN_SEGMENT_SIZE)));
+        int segmentSize = (config.getMaximumSize() + segmentCount - 1) / segmentCount;
+        boolean accessOrder = config.getEvictionPolicy() == EntityCacheConfig.EvictionPolicy.LRU;
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentSize, accessOrder, stats);
+        }
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * A copy of the cached entity, or null on a miss
+     */
+    V get(K key) {
+        if (!enabled) {
+            stats.misses.increment();
+            return null;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            CachedValue<V> entry = segment.map.get(key);
+            if (entry != null && expireAfterWriteNanos > 0
+                    && System.nanoTime() - entry.loadedAt >= expireAfterWriteNanos) {
+                segment.map.remove(key);
+                stats.expirations.increment();
+                entry = null;
+            }
+            value = entry == null ? null : entry.value;
+        }
+        if (value == null) {
+            stats.misses.increment();
+            return null;
+        }
+        stats.hits.increment();
+        return copier.apply(value);
+    }
+
+    /**
+     * Stamp to pass to putIfUnchanged after loading the entity, or NO_STAMP while a write is in progress
+     */
+    long stamp(K key) {
+        if (!enabled) {
+            return NO_STAMP;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return stampOf(segment);
+        }
+    }
+
+    // Caller holds the segment lock
+    private long stampOf(Segment<K, V> segment) {
+        if (segment.writers > 0 || tableWriters.get() > 0) {
+            return NO_STAMP;
+        }
+        // Both generations only grow, so their sum changes whenever either does
+        return segment.generation + tableGeneration.get();
+    }
+
+    /**
+     * Cache an entity loaded after stamp() returned the given stamp, unless a write intervened
+     */
+    void putIfUnchanged(K key, V value, long stamp) {
+        if (!enabled) {
+            return;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            if (stamp == NO_STAMP || stampOf(segment) != stamp) {
+                stats.rejectedPuts.increment();
+                return;
+            }
+            segment.map.put(key, new CachedValue<>(copier.apply(value), System.nanoTime()));
+        }
+        stats.puts.increment();
+    }
+
+    /**
+     * Called before changing the entity's row; must be paired with endWrite
+     */
+    void beginWrite(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.writers++;
+            segment.generation++;
+            invalidate(segment, key);
+        }
+    }
+
+    /**
+     * Called once the change has been committed or rolled back
+     */
+    void endWrite(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.generation++;
+            invalidate(segment, key);
+            segment.writers--;
+        }
+    }
+
+    /**
+     * Like beginWrite, for a change that may touch any entity
+     */
+    void beginWriteAll() {
+        tableWriters.incrementAndGet();
+        tableGeneration.incrementAndGet();
+        clear();
+    }
+
+    void endWriteAll() {
+        tableGeneration.incrementAndGet();
+        clear();
+        tableWriters.decrementAndGet();
+    }
+
+    private void invalidate(Segment<K, V> segment, K key) {
+        if (segment.map.remove(key) != null) {
+            stats.invalidations.increment();
+        }
+    }
+
+    private void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                stats.invalidations.add(segment.map.size());
+                segment.map.clear();
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    EntityCacheStats getStats() {
+        return new EntityCacheStats(size(), stats);
+    }
+
+    private static final class CachedValue<V> {
+        final V value;
+        final long loadedAt;
+
+        CachedValue(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        final LinkedHashMap<K, CachedValue<V>> map;
+        // Guarded by the segment's monitor
+        int writers;
+        long generation;
+
+        Segment(int maxSize, boolean accessOrder, Stats stats) {
+            this.map = new LinkedHashMap<K, CachedValue<V>>(16, 0.75f, accessOrder) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+                    if (size() > maxSize) {
+                        stats.evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    static final class Stats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder puts = new LongAdder();
+        final LongAdder rejectedPuts = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder expirations = new LongAdder();
+        final LongAdder invalidations = new LongAdder();
+    }
+}
+
+/**
+ * Settings for an EntityCache; a maximumSize of 0 disables caching
+ */
+class EntityCacheConfig {
+
+    enum EvictionPolicy {
+        // Evict the entry read least recently
+        LRU,
+        // Evict the entry loaded first
+        FIFO
+    }
+
+    private int maximumSize = 10_000;
+    // Milliseconds; 0 keeps entries until they are evicted or invalidated
+    private long expireAfterWrite;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximumSize cannot be negative");
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    public long getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    public void setExpireAfterWrite(long expireAfterWrite) {
+        if (expireAfterWrite < 0) {
+            throw new IllegalArgumentException("expireAfterWrite cannot be negative");
+        }
+        this.expireAfterWrite = expireAfterWrite;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        if (evictionPolicy == null) {
+            throw new IllegalArgumentException("evictionPolicy cannot be null");
+        }
+        this.evictionPolicy = evictionPolicy;
+    }
+}
+
+/**
+ * Point-in-time view of an EntityCache
+ */
+class EntityCacheStats {
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long puts;
+    private final long rejectedPuts;
+    private final long evictions;
+    private final long expirations;
+    private final long invalidations;
+
+    EntityCacheStats(int size, EntityCache.Stats stats) {
+        this.size = size;
+        this.hits = stats.hits.sum();
+        this.misses = stats.misses.sum();
+        this.puts = stats.puts.sum();
+        this.rejectedPuts = stats.rejectedPuts.sum();
+        this.evictions = stats.evictions.sum();
+        this.expirations = stats.expirations.sum();
+        this.invalidations = stats.invalidations.sum();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getPuts() {
+        return puts;
+    }
+
+    /**
+     * Loads not cached because a write to the same entity was in progress or intervened
+     */
+    public long getRejectedPuts() {
+        return rejectedPuts;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EntityCacheStats [size=%d, hits=%d, misses=%d, hitRatio=%.2f, puts=%d, rejectedPuts=%d, "
+                        + "evictions=%d, expirations=%d, invalidations=%d]",
+                size, hits, misses, getHitRatio(), puts, rejectedPuts, evictions, expirations, invalidations);
+    }
+}
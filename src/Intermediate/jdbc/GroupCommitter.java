@@ -0,0 +1,292 @@
+package Intermediate.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Commits small transactions from concurrent threads together, one commit per group
+ *
+ * execute() queues the callback and blocks. The first caller that finds no group in progress
+ * becomes the leader: it waits up to maxDelay for up to maxGroupSize members, runs all queued
+ * callbacks on one connection in one transaction and commits once, so the group pays for a
+ * single commit (one log flush in a real database). Callers arriving meanwhile form the next
+ * group, so groups grow with load even without a delay.
+ *
+ * Every member runs after its own savepoint. A member that throws is rolled back to it and
+ * gets its exception while the rest of the group still commits. If the commit, or a rollback
+ * to a savepoint, fails, the whole group is rolled back and every member fails. Members see
+ * the uncommitted changes of earlier members of their group, and callbacks run on the
+ * leader's thread, not the caller's.
+ *
+ * In a real application the database does this for its own log as well (MySQL's
+ * binlog_group_commit_sync_delay, PostgreSQL's commit_delay); grouping in the application
+ * also saves a round trip per commit.
+ */
+class GroupCommitter {
+    private final ConnectionManager connectionManager;
+    private final int maxGroupSize;
+    private final long maxDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when the queue reaches maxGroupSize, ending the leader's delay
+    private final Condition groupFull = lock.newCondition();
+    // Signalled when a group has finished and when leadership is free
+    private final Condition groupDone = lock.newCondition();
+    private final ArrayDeque<Member<?>> queue = new ArrayDeque<>();
+    private boolean leaderActive;
+
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder rolledBack = new LongAdder();
+    private final LongAdder failedGroups = new LongAdder();
+
+    /**
+     * @param maxDelayMicros how long a leader waits for more members; 0 commits what is queued right away
+     */
+    GroupCommitter(ConnectionManager connectionManager, int maxGroupSize, long maxDelayMicros) {
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("maxGroupSize must be at least 1");
+        }
+        if (maxDelayMicros < 0) {
+            throw new IllegalArgumentException("maxDelayMicros cannot be negative");
+        }
+        this.connectionManager = connectionManager;
+        this.maxGroupSize = maxGroupSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+    }
+
+    /**
+     * Run the callback in the next group commit and return its result once the group has committed
+     */
+    <T> T execute(TransactionCallback<T> callback) throws SQLException {
+        Member<T> member = new Member<>(callback);
+        boolean leader = false;
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            queue.add(member);
+            if (queue.size() >= maxGroupSize) {
+                groupFull.signal();
+            }
+            while (!member.done) {
+                if (!leaderActive) {
+                    leaderActive = true;
+                    leader = true;
+                    break;
+                }
+                try {
+                    groupDone.await();
+                } catch (InterruptedException e) {
+                    if (queue.remove(member)) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a group commit", e);
+                    }
+                    // Already running in a group: its outcome is still reported
+                    interrupted = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            if (leader) {
+                lead(member);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return member.get();
+    }
+
+    // Commit groups until the leader's own member is done, then let a waiting caller take over
+    private void lead(Member<?> own) {
+        try {
+            while (!own.done) {
+                runGroup(takeGroup());
+                lock.lock();
+                try {
+                    groupDone.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            lock.lock();
+            try {
+                leaderActive = false;
+                groupDone.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private List<Member<?>> takeGroup() {
+        lock.lock();
+        try {
+            long remaining = maxDelayNanos;
+            while (queue.size() < maxGroupSize && remaining > 0) {
+                try {
+                    remaining = groupFull.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            List<Member<?>> group = new ArrayList<>(Math.min(queue.size(), maxGroupSize));
+            while (group.size() < maxGroupSize && !queue.isEmpty()) {
+                group.add(queue.poll());
+            }
+            return group;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runGroup(List<Member<?>> group) {
+        groups.increment();
+        transactions.add(group.size());
+        Connection conn = null;
+        try {
+            conn = connectionManager.getConnection();
+            conn.setAutoCommit(false);
+            for (Member<?> member : group) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    member.run(conn);
+                } catch (SQLException | RuntimeException e) {
+                    member.failure = e;
+                    // Undo this member only; a failure here fails the whole group
+                    conn.rollback(savepoint);
+                    rolledBack.increment();
+                }
+            }
+            conn.commit();
+            for (Member<?> member : group) {
+                member.committed = member.failure == null;
+            }
+        } catch (SQLException | RuntimeException e) {
+            failedGroups.increment();
+            if (conn != null) {
+                TransactionTemplate.rollback(conn, e);
+            }
+            for (Member<?> member : group) {
+                if (member.failure == null) {
+                    member.failure = new SQLException("Group commit failed: " + e.getMessage(),
+                            e instanceof SQLException ? ((SQLException) e).getSQLState() : null, e);
+                }
+            }
+        } finally {
+            if (conn != null) {
+                TransactionTemplate.close(conn);
+            }
+            for (Member<?> member : group) {
+                if (!member.committed && member.failure == null) {
+                    // Only reached when an Error escaped the group
+                    member.failure = new SQLException("Group commit did not complete");
+                }
+                if (member.transaction != null) {
+                    member.transaction.complete();
+                }
+                member.done = true;
+            }
+        }
+    }
+
+    GroupCommitStats getStats() {
+        return new GroupCommitStats(groups.sum(), transactions.sum(), rolledBack.sum(), failedGroups.sum());
+    }
+
+    private static final class Member<T> {
+        final TransactionCallback<T> callback;
+        // Written by the leader before done is set
+        Transaction transaction;
+        T result;
+        Exception failure;
+        boolean committed;
+        volatile boolean done;
+
+        Member(TransactionCallback<T> callback) {
+            this.callback = callback;
+        }
+
+        void run(Connection conn) throws SQLException {
+            transaction = new Transaction(conn);
+            result = callback.doInTransaction(transaction);
+        }
+
+        T get() throws SQLException {
+            if (failure instanceof SQLException) {
+                throw (SQLException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            return result;
+        }
+    }
+}
+
+/**
+ * Point-in-time counters of a GroupCommitter
+ */
+class GroupCommitStats {
+    private final long groups;
+    private final long transactions;
+    private final long rolledBack;
+    private final long failedGroups;
+
+    GroupCommitStats(long groups, long transactions, long rolledBack, long failedGroups) {
+        this.groups = groups;
+        this.transactions = transactions;
+        this.rolledBack = rolledBack;
+        this.failedGroups = failedGroups;
+    }
+
+    /**
+     * Commits attempted, one per group
+     */
+    public long getGroups() {
+        return groups;
+    }
+
+    public long getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Members rolled back to their savepoint because they threw
+     */
+    public long getRolledBack() {
+        return rolledBack;
+    }
+
+    /**
+     * Groups rolled back as a whole
+     */
+    public long getFailedGroups() {
+        return failedGroups;
+    }
+
+    public double getAverageGroupSize() {
+        return groups == 0 ? 0 : (double) transactions / groups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GroupCommitStats [groups=%d, transactions=%d, averageGroupSize=%.1f, rolledBack=%d, "
+                        + "failedGroups=%d]",
+                groups, transactions, getAverageGroupSize(), rolledBack, failedGroups);
+    }
+}
@@ -0,0 +1,721 @@
+package Intermediate.jdbc;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embedded in-memory SQL database that MockConnection executes against
+ *
+ * Tables are stored column by column (one primitive array per BIGINT/DOUBLE column) and
+ * primary keys and CREATE INDEX columns get hash indexes, so "WHERE id = ?" and
+ * "WHERE position = ?" are lookups rather than scans. Parsed statements are cached by SQL
+ * text and shared between connections.
+ *
+ * Transactions are atomic (rollback undoes every change) but not isolated: other
+ * connections see uncommitted changes, i.e. READ UNCOMMITTED.
+ *
+ * In a real application this would be a database server reached through its JDBC driver.
+ */
+class InMemoryDatabase {
+    private static final int MAX_CACHED_STATEMENTS = 1024;
+
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    private final Map<String, SqlStatement> statements = new ConcurrentHashMap<>();
+
+    /**
+     * Open a new connection to this database
+     */
+    public Connection connect() {
+        return new MockConnection(this);
+    }
+
+    SqlStatement parse(String sql) throws SQLException {
+        SqlStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = SqlParser.parse(sql);
+            if (statements.size() < MAX_CACHED_STATEMENTS) {
+                statements.putIfAbsent(sql, statement);
+            }
+        }
+        return statement;
+    }
+
+    Table table(String name) throws SQLException {
+        Table table = tables.get(name.toLowerCase(Locale.ROOT));
+        if (table == null) {
+            throw new SQLSyntaxErrorException("Table '" + name + "' doesn't exist", "42S02");
+        }
+        return table;
+    }
+
+    void createTable(Table table, boolean ifNotExists) throws SQLException {
+        if (tables.putIfAbsent(table.name, table) != null && !ifNotExists) {
+            throw new SQLSyntaxErrorException("Table '" + table.name + "' already exists", "42S01");
+        }
+    }
+
+    void dropTable(String name, boolean ifExists) throws SQLException {
+        if (tables.remove(name.toLowerCase(Locale.ROOT)) == null && !ifExists) {
+            throw new SQLSyntaxErrorException("Table '" + name + "' doesn't exist", "42S02");
+        }
+    }
+}
+
+/**
+ * Column types of the in-memory database and the SQL types they accept
+ */
+enum ColumnType {
+    BIGINT, DOUBLE, VARCHAR;
+
+    static ColumnType forSqlType(String sqlType) {
+        switch (sqlType.toUpperCase(Locale.ROOT)) {
+            case "BIGINT":
+            case "INT":
+            case "INTEGER":
+            case "SMALLINT":
+            case "TINYINT":
+                return BIGINT;
+            case "DOUBLE":
+            case "FLOAT":
+            case "REAL":
+            case "DECIMAL":
+            case "NUMERIC":
+                return DOUBLE;
+            case "VARCHAR":
+            case "CHAR":
+            case "TEXT":
+                return VARCHAR;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Convert a value to this column's Java type (Long, Double or String)
+     */
+    Object coerce(Object value, String column) throws SQLException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            switch (this) {
+                case BIGINT:
+                    if (value instanceof Long) {
+                        return value;
+                    }
+                    if (Expression.isIntegral(value)) {
+                        return ((Number) value).longValue();
+                    }
+                    if (value instanceof Number) {
+                        return Math.round(((Number) value).doubleValue());
+                    }
+                    return new BigDecimal(value.toString().trim()).setScale(0, RoundingMode.HALF_UP).longValueExact();
+                case DOUBLE:
+                    if (value instanceof Double) {
+                        return value;
+                    }
+                    if (value instanceof Number) {
+                        return ((Number) value).doubleValue();
+                    }
+                    return Double.parseDouble(value.toString().trim());
+                default:
+                    return value.toString();
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new SQLDataException("Incorrect " + name() + " value '" + value + "' for column " + column, "22018");
+        }
+    }
+}
+
+/**
+ * Column declaration from CREATE TABLE
+ */
+final class ColumnDefinition {
+    final String name;
+    final ColumnType type;
+    final int maxLength;
+    final boolean notNull;
+    final boolean autoIncrement;
+
+    ColumnDefinition(String name, ColumnType type, int maxLength, boolean notNull, boolean autoIncrement) {
+        this.name = name;
+        this.type = type;
+        this.maxLength = maxLength;
+        this.notNull = notNull;
+        this.autoIncrement = autoIncrement;
+    }
+}
+
+/**
+ * Column-oriented table
+ *
+ * Rows live in slots; slot i of every column array holds row i's values. Deleted rows are
+ * marked in a bitmap and skipped, and the table is compacted once more than half of its
+ * slots are dead. Callers hold lock (read lock to read, write lock to change anything).
+ */
+final class Table {
+    private static final int COMPACT_MIN_DELETED = 1024;
+
+    final String name;
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Transactions with undo records and open cursors on this table; slots cannot move while there are any
+    final AtomicInteger openTransactions = new AtomicInteger();
+    final AtomicInteger openCursors = new AtomicInteger();
+
+    private final ColumnDefinition[] definitions;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final Column[] columns;
+    private final HashIndex[] indexes;
+    private final Map<String, Integer> indexNames = new HashMap<>();
+    private final int autoIncrement;
+    private final BitSet deleted = new BitSet();
+    private int slots;
+    private int deletedCount;
+    private long nextId = 1;
+
+    Table(String name, List<ColumnDefinition> definitions, String primaryKey) throws SQLException {
+        this.name = name;
+        this.definitions = definitions.toArray(new ColumnDefinition[0]);
+        this.columns = new Column[this.definitions.length];
+        this.indexes = new HashIndex[this.definitions.length];
+        int autoIncrementColumn = -1;
+        for (int i = 0; i < this.definitions.length; i++) {
+            ColumnDefinition definition = this.definitions[i];
+            if (positions.put(definition.name, i) != null) {
+                throw new SQLSyntaxErrorException("Duplicate column name '" + definition.name + "'", "42S21");
+            }
+            columns[i] = Column.of(definition.type);
+            if (definition.autoIncrement) {
+                if (definition.type != ColumnType.BIGINT) {
+                    throw new SQLSyntaxErrorException("AUTO_INCREMENT column must be an integer", "42000");
+                }
+                autoIncrementColumn = i;
+            }
+        }
+        this.autoIncrement = autoIncrementColumn;
+        if (primaryKey != null) {
+            int column = columnIndex(primaryKey);
+            indexes[column] = new HashIndex(true);
+            indexNames.put("primary", column);
+        }
+    }
+
+    int columnIndex(String column) throws SQLException {
+        Integer position = positions.get(column.toLowerCase(Locale.ROOT));
+        if (position == null) {
+            throw new SQLSyntaxErrorException("Unknown column '" + column + "' in table " + name, "42S22");
+        }
+        return position;
+    }
+
+    int columnCount() {
+        return definitions.length;
+    }
+
+    String columnName(int column) {
+        return definitions[column].name;
+    }
+
+    boolean hasAutoIncrement() {
+        return autoIncrement >= 0;
+    }
+
+    String autoIncrementColumnName() {
+        return autoIncrement < 0 ? null : definitions[autoIncrement].name;
+    }
+
+    long autoIncrementValue(int slot) {
+        return (Long) columns[autoIncrement].get(slot);
+    }
+
+    Object value(int slot, int column) {
+        return columns[column].get(slot);
+    }
+
+    /**
+     * First live slot at or after from, or -1
+     */
+    int nextLive(int from) {
+        int slot = deleted.nextClearBit(from);
+        return slot < slots ? slot : -1;
+    }
+
+    boolean isLive(int slot) {
+        return slot < slots && !deleted.get(slot);
+    }
+
+    int rowCount() {
+        return slots - deletedCount;
+    }
+
+    /**
+     * Slots whose column equals the value, in slot order, or null if the column has no index
+     */
+    int[] lookup(int column, Object value) throws SQLException {
+        HashIndex index = indexes[column];
+        if (index == null) {
+            return null;
+        }
+        Object key = definitions[column].type.coerce(value, definitions[column].name);
+        return key == null ? new int[0] : index.slots(key);
+    }
+
+    void createIndex(String indexName, int column, boolean unique, boolean ifNotExists) throws SQLException {
+        if (indexNames.containsKey(indexName) || indexes[column] != null) {
+            if (ifNotExists) {
+                return;
+            }
+            throw new SQLSyntaxErrorException("Duplicate key name '" + indexName + "'", "42000");
+        }
+        HashIndex index = new HashIndex(unique);
+        for (int slot = nextLive(0); slot >= 0; slot = nextLive(slot + 1)) {
+            Object key = columns[column].get(slot);
+            if (key != null) {
+                if (unique && index.contains(key)) {
+                    throw duplicate(column, key);
+                }
+                index.add(key, slot);
+            }
+        }
+        indexes[column] = index;
+        indexNames.put(indexName, column);
+    }
+
+    /**
+     * Append a row; values holds one entry per column, null where none was given
+     */
+    int insert(Object[] values) throws SQLException {
+        if (autoIncrement >= 0) {
+            if (values[autoIncrement] == null) {
+                values[autoIncrement] = nextId;
+            }
+        }
+        for (int column = 0; column < values.length; column++) {
+            values[column] = checked(column, values[column]);
+            HashIndex index = indexes[column];
+            if (index != null && index.unique && values[column] != null && index.contains(values[column])) {
+                throw duplicate(column, values[column]);
+            }
+        }
+        if (autoIncrement >= 0) {
+            nextId = Math.max(nextId, (Long) values[autoIncrement] + 1);
+        }
+
+        int slot = slots++;
+        for (int column = 0; column < values.length; column++) {
+            columns[column].set(slot, values[column]);
+            if (indexes[column] != null && values[column] != null) {
+                indexes[column].add(values[column], slot);
+            }
+        }
+        return slot;
+    }
+
+    void update(int slot, int column, Object value) throws SQLException {
+        Object newValue = checked(column, value);
+        Object oldValue = columns[column].get(slot);
+        if (newValue == null ? oldValue == null : newValue.equals(oldValue)) {
+            return;
+        }
+        HashIndex index = indexes[column];
+        if (index != null) {
+            if (index.unique && newValue != null && index.contains(newValue)) {
+                throw duplicate(column, newValue);
+            }
+            if (oldValue != null) {
+                index.remove(oldValue, slot);
+            }
+            if (newValue != null) {
+                index.add(newValue, slot);
+            }
+        }
+        columns[column].set(slot, newValue);
+    }
+
+    void delete(int slot) {
+        for (int column = 0; column < columns.length; column++) {
+            Object key = columns[column].get(slot);
+            if (indexes[column] != null && key != null) {
+                indexes[column].remove(key, slot);
+            }
+        }
+        deleted.set(slot);
+        deletedCount++;
+    }
+
+    /**
+     * Bring back a deleted row (rollback of a DELETE)
+     */
+    void restore(int slot) {
+        deleted.clear(slot);
+        deletedCount--;
+        for (int column = 0; column < columns.length; column++) {
+            Object key = columns[column].get(slot);
+            if (indexes[column] != null && key != null) {
+                indexes[column].add(key, slot);
+            }
+        }
+    }
+
+    /**
+     * Squeeze out deleted slots when they are the majority; skipped while undo records or cursors point at slots
+     */
+    void compactIfWorthwhile() {
+        if (deletedCount < COMPACT_MIN_DELETED || deletedCount * 2 < slots || openTransactions.get() > 0
+                || openCursors.get() > 0) {
+            return;
+        }
+        int target = 0;
+        for (int slot = nextLive(0); slot >= 0; slot = nextLive(slot + 1)) {
+            if (slot != target) {
+                for (Column column : columns) {
+                    column.move(slot, target);
+                }
+            }
+            target++;
+        }
+        for (int slot = target; slot < slots; slot++) {
+            for (Column column : columns) {
+                column.set(slot, null);
+            }
+        }
+        slots = target;
+        deleted.clear();
+        deletedCount = 0;
+        for (int column = 0; column < columns.length; column++) {
+            if (indexes[column] != null) {
+                indexes[column].clear();
+                for (int slot = 0; slot < slots; slot++) {
+                    Object key = columns[column].get(slot);
+                    if (key != null) {
+                        indexes[column].add(key, slot);
+                    }
+                }
+            }
+        }
+    }
+
+    private Object checked(int column, Object value) throws SQLException {
+        ColumnDefinition definition = definitions[column];
+        Object converted = definition.type.coerce(value, definition.name);
+        if (converted == null && definition.notNull) {
+            throw new SQLIntegrityConstraintViolationException("Column '" + definition.name + "' cannot be null",
+                    "23000");
+        }
+        if (converted instanceof String && ((String) converted).length() > definition.maxLength) {
+            throw new SQLDataException("Data too long for column '" + definition.name + "'", "22001");
+        }
+        return converted;
+    }
+
+    private SQLException duplicate(int column, Object key) {
+        return new SQLIntegrityConstraintViolationException("Duplicate entry '" + key + "' for key '"
+                + definitions[column].name + "' in table " + name, "23000");
+    }
+
+    /**
+     * Storage for one column; slots beyond the current capacity grow on write
+     */
+    abstract static class Column {
+        static Column of(ColumnType type) {
+            switch (type) {
+                case BIGINT:
+                    return new LongColumn();
+                case DOUBLE:
+                    return new DoubleColumn();
+                default:
+                    return new StringColumn();
+            }
+        }
+
+        abstract Object get(int slot);
+
+        abstract void set(int slot, Object value);
+
+        void move(int from, int to) {
+            set(to, get(from));
+        }
+
+        static int grownCapacity(int current, int slot) {
+            return Math.max(slot + 1, Math.max(16, current + (current >> 1)));
+        }
+    }
+
+    static final class LongColumn extends Column {
+        private long[] values = new long[0];
+        private final BitSet nulls = new BitSet();
+
+        @Override
+        Object get(int slot) {
+            return nulls.get(slot) ? null : values[slot];
+        }
+
+        @Override
+        void set(int slot, Object value) {
+            if (slot >= values.length) {
+                values = Arrays.copyOf(values, grownCapacity(values.length, slot));
+            }
+            nulls.set(slot, value == null);
+            values[slot] = value == null ? 0 : (Long) value;
+        }
+    }
+
+    static final class DoubleColumn extends Column {
+        private double[] values = new double[0];
+        private final BitSet nulls = new BitSet();
+
+        @Override
+        Object get(int slot) {
+            return nulls.get(slot) ? null : values[slot];
+        }
+
+        @Override
+        void set(int slot, Object value) {
+            if (slot >= values.length) {
+                values = Arrays.copyOf(values, grownCapacity(values.length, slot));
+            }
+            nulls.set(slot, value == null);
+            values[slot] = value == null ? 0 : (Double) value;
+        }
+    }
+
+    static final class StringColumn extends Column {
+        private String[] values = new String[0];
+
+        @Override
+        Object get(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void set(int slot, Object value) {
+            if (slot >= values.length) {
+                values = Arrays.copyOf(values, grownCapacity(values.length, slot));
+            }
+            values[slot] = (String) value;
+        }
+    }
+
+    /**
+     * Hash index from column value to the slots holding it; NULLs are not indexed
+     */
+    static final class HashIndex {
+        final boolean unique;
+        // Integer for a single slot, int[] (count in element 0) for several
+        private final HashMap<Object, Object> entries = new HashMap<>();
+
+        HashIndex(boolean unique) {
+            this.unique = unique;
+        }
+
+        boolean contains(Object key) {
+            return entries.containsKey(key);
+        }
+
+        int[] slots(Object key) {
+            Object entry = entries.get(key);
+            if (entry == null) {
+                return new int[0];
+            }
+            if (entry instanceof Integer) {
+                return new int[]{(Integer) entry};
+            }
+            int[] list = (int[]) entry;
+            int[] result = Arrays.copyOfRange(list, 1, list[0] + 1);
+            Arrays.sort(result);
+            return result;
+        }
+
+        void add(Object key, int slot) {
+            Object entry = entries.get(key);
+            if (entry == null) {
+                entries.put(key, slot);
+            } else if (entry instanceof Integer) {
+                entries.put(key, new int[]{2, (Integer) entry, slot, 0});
+            } else {
+                int[] list = (int[]) entry;
+                int count = list[0];
+                if (count + 1 == list.length) {
+                    list = Arrays.copyOf(list, list.length * 2);
+                    entries.put(key, list);
+                }
+                list[count + 1] = slot;
+                list[0] = count + 1;
+            }
+        }
+
+        void remove(Object key, int slot) {
+            Object entry = entries.get(key);
+            if (entry instanceof Integer) {
+                if ((Integer) entry == slot) {
+                    entries.remove(key);
+                }
+            } else if (entry != null) {
+                int[] list = (int[]) entry;
+                int count = list[0];
+                for (int i = 1; i <= count; i++) {
+                    if (list[i] == slot) {
+                        list[i] = list[count];
+                        list[0] = --count;
+                        break;
+                    }
+                }
+                if (count == 1) {
+                    entries.put(key, list[1]);
+                } else if (count == 0) {
+                    entries.remove(key);
+                }
+            }
+        }
+
+        void clear() {
+            entries.clear();
+        }
+    }
+}
+
+/**
+ * Undo records for one statement or one transaction
+ *
+ * Rolling back applies them newest first. Registers with every table it touches, which
+ * keeps those tables from compacting (and so moving slots) until commit or rollback.
+ */
+final class UndoLog {
+    private static final int INSERTED = 0;
+    private static final int DELETED = 1;
+    private static final int UPDATED = 2;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Set<Table> tables = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    void inserted(Table table, int slot) {
+        add(new Entry(table, INSERTED, slot, -1, null));
+    }
+
+    void deleted(Table table, int slot) {
+        add(new Entry(table, DELETED, slot, -1, null));
+    }
+
+    void updated(Table table, int slot, int column, Object oldValue) {
+        add(new Entry(table, UPDATED, slot, column, oldValue));
+    }
+
+    private void add(Entry entry) {
+        if (tables.add(entry.table)) {
+            entry.table.openTransactions.incrementAndGet();
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Move another log's records to the end of this one (a statement joining its transaction)
+     */
+    void append(UndoLog other) {
+        entries.addAll(other.entries);
+        for (Table table : other.tables) {
+            if (!tables.add(table)) {
+                table.openTransactions.decrementAndGet();
+            }
+        }
+        other.entries.clear();
+        other.tables.clear();
+    }
+
+    /**
+     * Keep the changes
+     */
+    void commit() {
+        release();
+    }
+
+    /**
+     * Undo every recorded change, newest first
+     */
+    void rollback() throws SQLException {
+        try {
+            rollbackTo(0);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Position in the log, for a savepoint
+     */
+    int mark() {
+        return entries.size();
+    }
+
+    /**
+     * Undo the changes recorded after mark(), newest first, and keep the earlier ones
+     */
+    void rollbackTo(int mark) throws SQLException {
+        for (int i = entries.size() - 1; i >= mark; i--) {
+            Entry entry = entries.get(i);
+            Lock lock = entry.table.lock.writeLock();
+            lock.lock();
+            try {
+                switch (entry.kind) {
+                    case INSERTED:
+                        entry.table.delete(entry.slot);
+                        break;
+                    case DELETED:
+                        entry.table.restore(entry.slot);
+                        break;
+                    default:
+                        entry.table.update(entry.slot, entry.column, entry.oldValue);
+                }
+            } finally {
+                lock.unlock();
+            }
+            entries.remove(i);
+        }
+    }
+
+    private void release() {
+        for (Table table : tables) {
+            table.openTransactions.decrementAndGet();
+        }
+        tables.clear();
+        entries.clear();
+    }
+
+    private static final class Entry {
+        final Table table;
+        final int kind;
+        final int slot;
+        final int column;
+        final Object oldValue;
+
+        Entry(Table table, int kind, int slot, int column, Object oldValue) {
+            this.table = table;
+            this.kind = kind;
+            this.slot = slot;
+            this.column = column;
+            this.oldValue = oldValue;
+        }
+    }
+}
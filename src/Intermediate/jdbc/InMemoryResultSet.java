@@ -0,0 +1,371 @@
+package Intermediate.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forward-only, read-only ResultSet over rows produced by InMemoryDatabase
+ *
+ * Either holds all rows of the query, or, when opened on a QueryCursor, holds one chunk of
+ * fetch-size rows and fetches the next chunk when next() runs past it. Closing the result
+ * set closes the cursor. Supports the getters repositories use (String, long, int, double, BigDecimal, boolean,
+ * Object) by column index or label, with the usual JDBC conversions between them. Scrolling
+ * and updating throw SQLFeatureNotSupportedException.
+ */
+class InMemoryResultSet implements ResultSet {
+    private final Statement statement;
+    private final String[] columnNames;
+    private final QueryCursor cursor;
+    private List<Object[]> rows;
+    private int row = -1;
+    private int rowNumber;
+    private boolean wasNull;
+    private boolean closed;
+    private int fetchSize;
+
+    InMemoryResultSet(Statement statement, String[] columnNames, List<Object[]> rows) {
+        this.statement = statement;
+        this.columnNames = columnNames;
+        this.rows = rows;
+        this.cursor = null;
+    }
+
+    InMemoryResultSet(Statement statement, QueryCursor cursor, int fetchSize) throws SQLException {
+        this.statement = statement;
+        this.columnNames = cursor.columnNames;
+        this.cursor = cursor;
+        this.fetchSize = fetchSize;
+        // Like a driver, fetch the first chunk while executing the query
+        this.rows = cursor.fetch();
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        checkOpen();
+        if (row < rows.size()) {
+            row++;
+        }
+        if (row == rows.size() && cursor != null && !cursor.isExhausted()) {
+            rows = cursor.fetch();
+            row = 0;
+        }
+        if (row < rows.size()) {
+            rowNumber++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        rows = Collections.emptyList();
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean wasNull() {
+        return wasNull;
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("ResultSet is closed");
+        }
+    }
+
+    private Object value(int columnIndex) throws SQLException {
+        checkOpen();
+        if (row < 0 || row >= rows.size()) {
+            throw new SQLException("No current row; call next() first", "24000");
+        }
+        if (columnIndex < 1 || columnIndex > columnNames.length) {
+            throw new SQLException("Column index " + columnIndex + " out of range 1.." + columnNames.length, "S1002");
+        }
+        Object value = rows.get(row)[columnIndex - 1];
+        wasNull = value == null;
+        return value;
+    }
+
+    private Number number(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new SQLDataException("Cannot convert '" + value + "' in column " + columnIndex + " to a number",
+                    "22018");
+        }
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equalsIgnoreCase(columnLabel)) {
+                return i + 1;
+            }
+        }
+        throw new SQLException("Column '" + columnLabel + "' not found", "S0022");
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        return number(columnIndex).longValue();
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        return number(columnIndex).intValue();
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        return number(columnIndex).doubleValue();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        Number number = number(columnIndex);
+        if (wasNull) {
+            return null;
+        }
+        return number instanceof BigDecimal ? (BigDecimal) number
+                : Expression.isIntegral(number) ? BigDecimal.valueOf(number.longValue())
+                : BigDecimal.valueOf(number.doubleValue());
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value instanceof String) {
+            return value.equals("1") || ((String) value).equalsIgnoreCase("true");
+        }
+        return value != null && ((Number) value).doubleValue() != 0;
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        return value(columnIndex);
+    }
+
+    @Override public String getString(String columnLabel) throws SQLException { return getString(findColumn(columnLabel)); }
+    @Override public long getLong(String columnLabel) throws SQLException { return getLong(findColumn(columnLabel)); }
+    @Override public int getInt(String columnLabel) throws SQLException { return getInt(findColumn(columnLabel)); }
+    @Override public double getDouble(String columnLabel) throws SQLException { return getDouble(findColumn(columnLabel)); }
+    @Override public BigDecimal getBigDecimal(String columnLabel) throws SQLException { return getBigDecimal(findColumn(columnLabel)); }
+    @Override public boolean getBoolean(String columnLabel) throws SQLException { return getBoolean(findColumn(columnLabel)); }
+    @Override public Object getObject(String columnLabel) throws SQLException { return getObject(findColumn(columnLabel)); }
+
+    @Override public boolean isBeforeFirst() { return rowNumber == 0 && !rows.isEmpty(); }
+    @Override public boolean isAfterLast() { return rowNumber > 0 && row >= rows.size(); }
+    @Override public boolean isFirst() { return rowNumber == 1 && row < rows.size(); }
+    @Override public int getRow() { return row >= 0 && row < rows.size() ? rowNumber : 0; }
+    @Override public int getType() { return TYPE_FORWARD_ONLY; }
+    @Override public int getConcurrency() { return CONCUR_READ_ONLY; }
+    @Override public int getHoldability() { return CLOSE_CURSORS_AT_COMMIT; }
+    @Override public int getFetchDirection() { return FETCH_FORWARD; }
+    @Override public void setFetchDirection(int direction) throws SQLException { if (direction != FETCH_FORWARD) throw unsupported(); }
+    @Override public int getFetchSize() { return fetchSize; }
+    @Override public void setFetchSize(int rows) { this.fetchSize = rows; }
+    @Override public Statement getStatement() { return statement; }
+    @Override public ResultSetMetaData getMetaData() throws SQLException { throw unsupported(); }
+    @Override public SQLWarning getWarnings() { return null; }
+    @Override public void clearWarnings() {}
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static SQLFeatureNotSupportedException unsupported() {
+        return new SQLFeatureNotSupportedException("Not supported by the in-memory result set");
+    }
+
+    // Scrolling, updating and the remaining types are not supported
+    @Override public <T> T getObject(String columnLabel, Class<T> type) throws SQLException { throw unsupported(); }
+    @Override public <T> T getObject(int columnIndex, Class<T> type) throws SQLException { throw unsupported(); }
+    @Override public Array getArray(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public Array getArray(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public Blob getBlob(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public Blob getBlob(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public Clob getClob(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public Clob getClob(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public Date getDate(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public Date getDate(String columnLabel, Calendar cal) throws SQLException { throw unsupported(); }
+    @Override public Date getDate(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public Date getDate(int columnIndex, Calendar cal) throws SQLException { throw unsupported(); }
+    @Override public NClob getNClob(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public NClob getNClob(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException { throw unsupported(); }
+    @Override public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException { throw unsupported(); }
+    @Override public Ref getRef(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public Ref getRef(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public RowId getRowId(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public RowId getRowId(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public SQLXML getSQLXML(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public SQLXML getSQLXML(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public String getCursorName() throws SQLException { throw unsupported(); }
+    @Override public String getNString(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public String getNString(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public Time getTime(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public Time getTime(String columnLabel, Calendar cal) throws SQLException { throw unsupported(); }
+    @Override public Time getTime(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public Time getTime(int columnIndex, Calendar cal) throws SQLException { throw unsupported(); }
+    @Override public Timestamp getTimestamp(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException { throw unsupported(); }
+    @Override public Timestamp getTimestamp(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException { throw unsupported(); }
+    @Override public boolean absolute(int rows) throws SQLException { throw unsupported(); }
+    @Override public boolean first() throws SQLException { throw unsupported(); }
+    @Override public boolean isLast() throws SQLException { throw unsupported(); }
+    @Override public boolean last() throws SQLException { throw unsupported(); }
+    @Override public boolean previous() throws SQLException { throw unsupported(); }
+    @Override public boolean relative(int rows) throws SQLException { throw unsupported(); }
+    @Override public boolean rowDeleted() throws SQLException { throw unsupported(); }
+    @Override public boolean rowInserted() throws SQLException { throw unsupported(); }
+    @Override public boolean rowUpdated() throws SQLException { throw unsupported(); }
+    @Override public byte getByte(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public byte getByte(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public byte[] getBytes(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public byte[] getBytes(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public float getFloat(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public float getFloat(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public java.io.InputStream getAsciiStream(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public java.io.InputStream getAsciiStream(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public java.io.InputStream getBinaryStream(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public java.io.InputStream getBinaryStream(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public java.io.InputStream getUnicodeStream(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public java.io.InputStream getUnicodeStream(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public java.io.Reader getCharacterStream(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public java.io.Reader getCharacterStream(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public java.io.Reader getNCharacterStream(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public java.io.Reader getNCharacterStream(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException { throw unsupported(); }
+    @Override public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException { throw unsupported(); }
+    @Override public java.net.URL getURL(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public java.net.URL getURL(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public short getShort(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public short getShort(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public void afterLast() throws SQLException { throw unsupported(); }
+    @Override public void beforeFirst() throws SQLException { throw unsupported(); }
+    @Override public void cancelRowUpdates() throws SQLException { throw unsupported(); }
+    @Override public void deleteRow() throws SQLException { throw unsupported(); }
+    @Override public void insertRow() throws SQLException { throw unsupported(); }
+    @Override public void moveToCurrentRow() throws SQLException { throw unsupported(); }
+    @Override public void moveToInsertRow() throws SQLException { throw unsupported(); }
+    @Override public void refreshRow() throws SQLException { throw unsupported(); }
+    @Override public void updateArray(String columnLabel, Array x) throws SQLException { throw unsupported(); }
+    @Override public void updateArray(int columnIndex, Array x) throws SQLException { throw unsupported(); }
+    @Override public void updateAsciiStream(String columnLabel, java.io.InputStream inputStream) throws SQLException { throw unsupported(); }
+    @Override public void updateAsciiStream(String columnLabel, java.io.InputStream inputStream, int length) throws SQLException { throw unsupported(); }
+    @Override public void updateAsciiStream(String columnLabel, java.io.InputStream inputStream, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateAsciiStream(int columnIndex, java.io.InputStream inputStream) throws SQLException { throw unsupported(); }
+    @Override public void updateAsciiStream(int columnIndex, java.io.InputStream inputStream, int length) throws SQLException { throw unsupported(); }
+    @Override public void updateAsciiStream(int columnIndex, java.io.InputStream inputStream, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException { throw unsupported(); }
+    @Override public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException { throw unsupported(); }
+    @Override public void updateBinaryStream(String columnLabel, java.io.InputStream inputStream) throws SQLException { throw unsupported(); }
+    @Override public void updateBinaryStream(String columnLabel, java.io.InputStream inputStream, int length) throws SQLException { throw unsupported(); }
+    @Override public void updateBinaryStream(String columnLabel, java.io.InputStream inputStream, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateBinaryStream(int columnIndex, java.io.InputStream inputStream) throws SQLException { throw unsupported(); }
+    @Override public void updateBinaryStream(int columnIndex, java.io.InputStream inputStream, int length) throws SQLException { throw unsupported(); }
+    @Override public void updateBinaryStream(int columnIndex, java.io.InputStream inputStream, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateBlob(String columnLabel, Blob x) throws SQLException { throw unsupported(); }
+    @Override public void updateBlob(String columnLabel, java.io.InputStream inputStream) throws SQLException { throw unsupported(); }
+    @Override public void updateBlob(String columnLabel, java.io.InputStream inputStream, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateBlob(int columnIndex, Blob x) throws SQLException { throw unsupported(); }
+    @Override public void updateBlob(int columnIndex, java.io.InputStream inputStream) throws SQLException { throw unsupported(); }
+    @Override public void updateBlob(int columnIndex, java.io.InputStream inputStream, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateBoolean(String columnLabel, boolean x) throws SQLException { throw unsupported(); }
+    @Override public void updateBoolean(int columnIndex, boolean x) throws SQLException { throw unsupported(); }
+    @Override public void updateByte(String columnLabel, byte x) throws SQLException { throw unsupported(); }
+    @Override public void updateByte(int columnIndex, byte x) throws SQLException { throw unsupported(); }
+    @Override public void updateBytes(String columnLabel, byte[] x) throws SQLException { throw unsupported(); }
+    @Override public void updateBytes(int columnIndex, byte[] x) throws SQLException { throw unsupported(); }
+    @Override public void updateCharacterStream(String columnLabel, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void updateCharacterStream(String columnLabel, java.io.Reader reader, int length) throws SQLException { throw unsupported(); }
+    @Override public void updateCharacterStream(String columnLabel, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateCharacterStream(int columnIndex, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void updateCharacterStream(int columnIndex, java.io.Reader reader, int length) throws SQLException { throw unsupported(); }
+    @Override public void updateCharacterStream(int columnIndex, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateClob(String columnLabel, Clob x) throws SQLException { throw unsupported(); }
+    @Override public void updateClob(String columnLabel, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void updateClob(String columnLabel, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateClob(int columnIndex, Clob x) throws SQLException { throw unsupported(); }
+    @Override public void updateClob(int columnIndex, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void updateClob(int columnIndex, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateDate(String columnLabel, Date x) throws SQLException { throw unsupported(); }
+    @Override public void updateDate(int columnIndex, Date x) throws SQLException { throw unsupported(); }
+    @Override public void updateDouble(String columnLabel, double x) throws SQLException { throw unsupported(); }
+    @Override public void updateDouble(int columnIndex, double x) throws SQLException { throw unsupported(); }
+    @Override public void updateFloat(String columnLabel, float x) throws SQLException { throw unsupported(); }
+    @Override public void updateFloat(int columnIndex, float x) throws SQLException { throw unsupported(); }
+    @Override public void updateInt(String columnLabel, int x) throws SQLException { throw unsupported(); }
+    @Override public void updateInt(int columnIndex, int x) throws SQLException { throw unsupported(); }
+    @Override public void updateLong(String columnLabel, long x) throws SQLException { throw unsupported(); }
+    @Override public void updateLong(int columnIndex, long x) throws SQLException { throw unsupported(); }
+    @Override public void updateNCharacterStream(String columnLabel, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void updateNCharacterStream(String columnLabel, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateNCharacterStream(int columnIndex, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void updateNCharacterStream(int columnIndex, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateNClob(String columnLabel, NClob x) throws SQLException { throw unsupported(); }
+    @Override public void updateNClob(String columnLabel, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void updateNClob(String columnLabel, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateNClob(int columnIndex, NClob x) throws SQLException { throw unsupported(); }
+    @Override public void updateNClob(int columnIndex, java.io.Reader reader) throws SQLException { throw unsupported(); }
+    @Override public void updateNClob(int columnIndex, java.io.Reader reader, long length) throws SQLException { throw unsupported(); }
+    @Override public void updateNString(String columnLabel, String x) throws SQLException { throw unsupported(); }
+    @Override public void updateNString(int columnIndex, String x) throws SQLException { throw unsupported(); }
+    @Override public void updateNull(String columnLabel) throws SQLException { throw unsupported(); }
+    @Override public void updateNull(int columnIndex) throws SQLException { throw unsupported(); }
+    @Override public void updateObject(String columnLabel, Object x) throws SQLException { throw unsupported(); }
+    @Override public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException { throw unsupported(); }
+    @Override public void updateObject(int columnIndex, Object x) throws SQLException { throw unsupported(); }
+    @Override public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException { throw unsupported(); }
+    @Override public void updateRef(String columnLabel, Ref x) throws SQLException { throw unsupported(); }
+    @Override public void updateRef(int columnIndex, Ref x) throws SQLException { throw unsupported(); }
+    @Override public void updateRow() throws SQLException { throw unsupported(); }
+    @Override public void updateRowId(String columnLabel, RowId x) throws SQLException { throw unsupported(); }
+    @Override public void updateRowId(int columnIndex, RowId x) throws SQLException { throw unsupported(); }
+    @Override public void updateSQLXML(String columnLabel, SQLXML x) throws SQLException { throw unsupported(); }
+    @Override public void updateSQLXML(int columnIndex, SQLXML x) throws SQLException { throw unsupported(); }
+    @Override public void updateShort(String columnLabel, short x) throws SQLException { throw unsupported(); }
+    @Override public void updateShort(int columnIndex, short x) throws SQLException { throw unsupported(); }
+    @Override public void updateString(String columnLabel, String x) throws SQLException { throw unsupported(); }
+    @Override public void updateString(int columnIndex, String x) throws SQLException { throw unsupported(); }
+    @Override public void updateTime(String columnLabel, Time x) throws SQLException { throw unsupported(); }
+    @Override public void updateTime(int columnIndex, Time x) throws SQLException { throw unsupported(); }
+    @Override public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException { throw unsupported(); }
+    @Override public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException { throw unsupported(); }
+}
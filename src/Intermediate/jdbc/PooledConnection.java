@@ -0,0 +1,168 @@
+package Intermediate.jdbc;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Connection handed out by ConnectionPool
+ *
+ * Delegates to the physical connection. close() does not close it but rolls back any open
+ * transaction, restores auto-commit and returns it to the pool; if that fails, the pool
+ * evicts the connection instead of handing it to the next borrower. prepareStatement goes
+ * through the connection's StatementCache when cachePrepStmts is on. Using the handle after
+ * close() throws, so a connection that went back to the pool cannot be used by two threads.
+ */
+class PooledConnection implements Connection {
+    private final ConnectionPool pool;
+    private final ConnectionPool.PoolEntry entry;
+    private Connection delegate;
+
+    PooledConnection(Connection delegate, ConnectionPool pool, ConnectionPool.PoolEntry entry) {
+        this.delegate = delegate;
+        this.pool = pool;
+        this.entry = entry;
+    }
+
+    private Connection delegate() throws SQLException {
+        Connection connection = delegate;
+        if (connection == null) {
+            throw new SQLException("Connection is closed (already returned to the pool)");
+        }
+        return connection;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        Connection connection = delegate;
+        if (connection == null) {
+            return;
+        }
+        delegate = null;
+        boolean reset = false;
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            reset = true;
+        } finally {
+            if (reset) {
+                pool.release(entry);
+            } else {
+                // Broken, or still in a transaction: not fit for the next borrower
+                pool.evict(entry);
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate == null;
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        return delegate != null && delegate.isValid(timeout);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        Connection connection = delegate();
+        if (entry.statementCache == null) {
+            return StatementCache.prepareUncached(connection, sql, autoGeneratedKeys);
+        }
+        return entry.statementCache.prepare(connection, this, sql, autoGeneratedKeys);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        return delegate().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate().isWrapperFor(iface);
+    }
+
+    // Everything else is passed through to the physical connection
+    @Override public Statement createStatement() throws SQLException { return delegate().createStatement(); }
+    @Override public boolean getAutoCommit() throws SQLException { return delegate().getAutoCommit(); }
+    @Override public void setAutoCommit(boolean autoCommit) throws SQLException { delegate().setAutoCommit(autoCommit); }
+    @Override public void commit() throws SQLException { delegate().commit(); }
+    @Override public void rollback() throws SQLException { delegate().rollback(); }
+    @Override public CallableStatement prepareCall(String sql) throws SQLException { return delegate().prepareCall(sql); }
+    @Override public String nativeSQL(String sql) throws SQLException { return delegate().nativeSQL(sql); }
+    @Override public DatabaseMetaData getMetaData() throws SQLException { return delegate().getMetaData(); }
+    @Override public boolean isReadOnly() throws SQLException { return delegate().isReadOnly(); }
+    @Override public void setReadOnly(boolean readOnly) throws SQLException { delegate().setReadOnly(readOnly); }
+    @Override public String getCatalog() throws SQLException { return delegate().getCatalog(); }
+    @Override public void setCatalog(String catalog) throws SQLException { delegate().setCatalog(catalog); }
+    @Override public int getTransactionIsolation() throws SQLException { return delegate().getTransactionIsolation(); }
+    @Override public void setTransactionIsolation(int level) throws SQLException { delegate().setTransactionIsolation(level); }
+    @Override public SQLWarning getWarnings() throws SQLException { return delegate().getWarnings(); }
+    @Override public void clearWarnings() throws SQLException { delegate().clearWarnings(); }
+    @Override public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException { return delegate().createStatement(resultSetType, resultSetConcurrency); }
+    @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException { return delegate().prepareStatement(sql, resultSetType, resultSetConcurrency); }
+    @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException { return delegate().prepareCall(sql, resultSetType, resultSetConcurrency); }
+    @Override public Map<String, Class<?>> getTypeMap() throws SQLException { return delegate().getTypeMap(); }
+    @Override public void setTypeMap(Map<String, Class<?>> map) throws SQLException { delegate().setTypeMap(map); }
+    @Override public int getHoldability() throws SQLException { return delegate().getHoldability(); }
+    @Override public void setHoldability(int holdability) throws SQLException { delegate().setHoldability(holdability); }
+    @Override public Savepoint setSavepoint() throws SQLException { return delegate().setSavepoint(); }
+    @Override public Savepoint setSavepoint(String name) throws SQLException { return delegate().setSavepoint(name); }
+    @Override public void rollback(Savepoint savepoint) throws SQLException { delegate().rollback(savepoint); }
+    @Override public void releaseSavepoint(Savepoint savepoint) throws SQLException { delegate().releaseSavepoint(savepoint); }
+    @Override public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException { return delegate().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability); }
+    @Override public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException { return delegate().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability); }
+    @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException { return delegate().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability); }
+    @Override public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException { return delegate().prepareStatement(sql, columnIndexes); }
+    @Override public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException { return delegate().prepareStatement(sql, columnNames); }
+    @Override public Clob createClob() throws SQLException { return delegate().createClob(); }
+    @Override public Blob createBlob() throws SQLException { return delegate().createBlob(); }
+    @Override public NClob createNClob() throws SQLException { return delegate().createNClob(); }
+    @Override public SQLXML createSQLXML() throws SQLException { return delegate().createSQLXML(); }
+    @Override public void setClientInfo(String name, String value) throws SQLClientInfoException { connectionForClientInfo().setClientInfo(name, value); }
+    @Override public String getClientInfo(String name) throws SQLException { return delegate().getClientInfo(name); }
+    @Override public Properties getClientInfo() throws SQLException { return delegate().getClientInfo(); }
+    @Override public void setClientInfo(Properties properties) throws SQLClientInfoException { connectionForClientInfo().setClientInfo(properties); }
+    @Override public Array createArrayOf(String typeName, Object[] elements) throws SQLException { return delegate().createArrayOf(typeName, elements); }
+    @Override public Struct createStruct(String typeName, Object[] attributes) throws SQLException { return delegate().createStruct(typeName, attributes); }
+    @Override public String getSchema() throws SQLException { return delegate().getSchema(); }
+    @Override public void setSchema(String schema) throws SQLException { delegate().setSchema(schema); }
+    @Override public void abort(Executor executor) throws SQLException { delegate().abort(executor); }
+    @Override public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException { delegate().setNetworkTimeout(executor, milliseconds); }
+    @Override public int getNetworkTimeout() throws SQLException { return delegate().getNetworkTimeout(); }
+
+    private Connection connectionForClientInfo() throws SQLClientInfoException {
+        Connection connection = delegate;
+        if (connection == null) {
+            throw new SQLClientInfoException("Connection is closed (already returned to the pool)", null);
+        }
+        return connection;
+    }
+}
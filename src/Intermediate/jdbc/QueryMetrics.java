@@ -0,0 +1,471 @@
+package Intermediate.jdbc;
+
+import Intermediate.metrics.LatencyHistogram;
+
+import java.sql.Connection;
+import java.sql.Wrapper;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Per-SQL-template timing of prepare, execute and fetch, with a slow query log
+ *
+ * Connections wrapped by wrap() report every prepareStatement, every execution and the time
+ * spent in ResultSet.next() to the template of the statement's SQL. Literals in plain
+ * Statement SQL are replaced by ? so that "WHERE id = 1" and "WHERE id = 2" are one template.
+ * Each template keeps a LatencyHistogram per phase and a sample of the code locations that
+ * issued it, so snapshot(), sorted by total time, shows which repository calls dominate.
+ *
+ * An execution (execute plus fetching all its rows) or a prepare that takes at least the slow
+ * query threshold is passed to the slow query log as a SlowQuery; the default log writes it as
+ * one JSON line to System.err.
+ *
+ * In a real application this is what p6spy, datasource-proxy or the pool's metrics tracker
+ * (HikariCP's MetricsTrackerFactory) provide.
+ */
+class QueryMetrics {
+    static final String OTHER_TEMPLATE = "(other statements)";
+    private static final int MAX_TEMPLATES = 1000;
+    private static final int MAX_CALLERS_PER_TEMPLATE = 16;
+    // Finding the caller walks the stack, so only every Nth execution is attributed
+    private static final int CALLER_SAMPLE_RATE = 64;
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    // Raw SQL to its template, so that repeated SQL is normalized only once
+    private final Map<String, Template> bySql = new ConcurrentHashMap<>();
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+    private final Template other = new Template(OTHER_TEMPLATE);
+    private final LongAdder slowQueries = new LongAdder();
+    private volatile boolean enabled;
+    private volatile long slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile Consumer<SlowQuery> slowQueryLog = event -> System.err.println(event.toJson());
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes effect for connections obtained afterwards
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getSlowQueryThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos);
+    }
+
+    /**
+     * Milliseconds
+     */
+    public void setSlowQueryThreshold(long slowQueryThreshold) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThreshold);
+    }
+
+    public void setSlowQueryLog(Consumer<SlowQuery> slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public long getSlowQueryCount() {
+        return slowQueries.sum();
+    }
+
+    Connection wrap(Connection connection) {
+        return new TimedConnection(connection, this);
+    }
+
+    Template template(String sql) {
+        Template template = bySql.get(sql);
+        if (template != null) {
+            return template;
+        }
+        String normalized = normalize(sql);
+        template = templates.get(normalized);
+        if (template == null) {
+            if (templates.size() >= MAX_TEMPLATES) {
+                // SQL built by string concatenation must not grow this map forever
+                template = other;
+            } else {
+                template = templates.computeIfAbsent(normalized, Template::new);
+            }
+        }
+        if (bySql.size() < MAX_TEMPLATES * 4) {
+            bySql.putIfAbsent(sql, template);
+        }
+        return template;
+    }
+
+    void recordPrepare(Template template, long nanos) {
+        template.prepare.record(nanos);
+        if (nanos >= slowQueryThresholdNanos) {
+            logSlowQuery(new SlowQuery(template.sql, "prepare", nanos, 0, 0, 0, slowQueryThresholdNanos, caller(),
+                    null));
+        }
+    }
+
+    /**
+     * A finished execution; fetchNanos is negative for statements that return no rows
+     */
+    void recordExecution(Template template, long executeNanos, long fetchNanos, long rows) {
+        template.execute.record(executeNanos);
+        if (fetchNanos >= 0) {
+            template.fetch.record(fetchNanos);
+        }
+        template.rows.add(rows);
+        String caller = null;
+        if (template.executions.getAndIncrement() % CALLER_SAMPLE_RATE == 0) {
+            caller = caller();
+            template.sampleCaller(caller);
+        }
+        long totalNanos = executeNanos + Math.max(fetchNanos, 0);
+        if (totalNanos >= slowQueryThresholdNanos) {
+            logSlowQuery(new SlowQuery(template.sql, "execute", totalNanos, executeNanos, Math.max(fetchNanos, 0),
+                    rows, slowQueryThresholdNanos, caller == null ? caller() : caller, null));
+        }
+    }
+
+    void recordFailure(Template template, long nanos, Exception failure) {
+        template.errors.increment();
+        if (nanos >= slowQueryThresholdNanos) {
+            logSlowQuery(new SlowQuery(template.sql, "execute", nanos, nanos, 0, 0, slowQueryThresholdNanos, caller(),
+                    failure.toString()));
+        }
+    }
+
+    private void logSlowQuery(SlowQuery event) {
+        slowQueries.increment();
+        try {
+            slowQueryLog.accept(event);
+        } catch (RuntimeException e) {
+            System.err.println("Slow query log failed: " + e);
+        }
+    }
+
+    /**
+     * Statistics per template, the one with the most total time first
+     */
+    List<QueryStats> snapshot() {
+        List<QueryStats> stats = new ArrayList<>();
+        for (Template template : templates.values()) {
+            stats.add(new QueryStats(template));
+        }
+        if (other.executions.get() > 0 || other.prepare.count() > 0) {
+            stats.add(new QueryStats(other));
+        }
+        stats.sort(Comparator.comparingDouble(QueryStats::getTotalMillis).reversed());
+        return stats;
+    }
+
+    /**
+     * The top templates by total time, one per line
+     */
+    String report(int limit) {
+        StringBuilder report = new StringBuilder("Query metrics (slow queries: " + getSlowQueryCount() + ")");
+        List<QueryStats> stats = snapshot();
+        for (int i = 0; i < Math.min(limit, stats.size()); i++) {
+            report.append(System.lineSeparator()).append("  ").append(stats.get(i));
+        }
+        return report.toString();
+    }
+
+    void reset() {
+        bySql.clear();
+        templates.clear();
+        slowQueries.reset();
+    }
+
+    /**
+     * SQL with string and number literals replaced by ? and whitespace collapsed
+     */
+    static String normalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i++;
+                while (i < sql.length()) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                out.append('?');
+            } else if (Character.isDigit(c) && (out.length() == 0 || !isIdentifierPart(out.charAt(out.length() - 1)))) {
+                while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                out.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (out.length() > 0 && i < sql.length()) {
+                    out.append(' ');
+                }
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * The first stack frame outside the JDBC layer, e.g. "EmployeeRepository.getEmployeeById"
+     */
+    static String caller() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> !isJdbcLayer(frame.getDeclaringClass()))
+                .findFirst()
+                .map(frame -> frame.getDeclaringClass().getSimpleName() + "." + frame.getMethodName())
+                .orElse("unknown"));
+    }
+
+    private static boolean isJdbcLayer(Class<?> type) {
+        String name = type.getName();
+        int nested = name.indexOf('$');
+        String topLevel = nested < 0 ? name : name.substring(0, nested);
+        return Wrapper.class.isAssignableFrom(type)
+                || topLevel.equals(QueryMetrics.class.getName())
+                || topLevel.equals(ResultSetStream.class.getName())
+                || topLevel.equals(StatementCache.class.getName())
+                || name.startsWith("java.") || name.startsWith("jdk.");
+    }
+
+    /**
+     * Counters of one SQL template
+     */
+    static final class Template {
+        final String sql;
+        final LatencyHistogram prepare = new LatencyHistogram();
+        final LatencyHistogram execute = new LatencyHistogram();
+        final LatencyHistogram fetch = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicLong executions = new AtomicLong();
+        final Map<String, LongAdder> callers = new ConcurrentHashMap<>();
+
+        Template(String sql) {
+            this.sql = sql;
+        }
+
+        void sampleCaller(String caller) {
+            LongAdder count = callers.get(caller);
+            if (count == null && callers.size() < MAX_CALLERS_PER_TEMPLATE) {
+                count = callers.computeIfAbsent(caller, key -> new LongAdder());
+            }
+            if (count != null) {
+                count.increment();
+            }
+        }
+    }
+}
+
+/**
+ * Point-in-time statistics of one SQL template
+ */
+class QueryStats {
+    private final String sql;
+    private final long executions;
+    private final long errors;
+    private final long rows;
+    private final long prepares;
+    private final double meanPrepareMicros;
+    private final double meanExecuteMicros;
+    private final double p99ExecuteMicros;
+    private final double meanFetchMicros;
+    private final double p99FetchMicros;
+    private final double totalMillis;
+    private final Map<String, Long> sampledCallers = new LinkedHashMap<>();
+
+    QueryStats(QueryMetrics.Template template) {
+        this.sql = template.sql;
+        this.executions = template.execute.count();
+        this.errors = template.errors.sum();
+        this.rows = template.rows.sum();
+        this.prepares = template.prepare.count();
+        this.meanPrepareMicros = template.prepare.meanNanos() / 1e3;
+        this.meanExecuteMicros = template.execute.meanNanos() / 1e3;
+        this.p99ExecuteMicros = template.execute.percentileNanos(0.99) / 1e3;
+        this.meanFetchMicros = template.fetch.meanNanos() / 1e3;
+        this.p99FetchMicros = template.fetch.percentileNanos(0.99) / 1e3;
+        this.totalMillis = (template.prepare.totalNanos() + template.execute.totalNanos()
+                + template.fetch.totalNanos()) / 1e6;
+        template.callers.entrySet().stream()
+                .sorted(Map.Entry.<String, LongAdder>comparingByValue(Comparator.comparingLong(LongAdder::sum))
+                        .reversed())
+                .forEach(entry -> sampledCallers.put(entry.getKey(), entry.getValue().sum()));
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getPrepares() {
+        return prepares;
+    }
+
+    public double getMeanPrepareMicros() {
+        return meanPrepareMicros;
+    }
+
+    public double getMeanExecuteMicros() {
+        return meanExecuteMicros;
+    }
+
+    public double getP99ExecuteMicros() {
+        return p99ExecuteMicros;
+    }
+
+    public double getMeanFetchMicros() {
+        return meanFetchMicros;
+    }
+
+    public double getP99FetchMicros() {
+        return p99FetchMicros;
+    }
+
+    /**
+     * Time spent preparing, executing and fetching, over all executions
+     */
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    /**
+     * Code locations that issued this SQL, with how often each was seen in the sampled executions
+     */
+    public Map<String, Long> getSampledCallers() {
+        return sampledCallers;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QueryStats [sql=%s, total=%.1fms, executions=%d, errors=%d, rows=%d, prepares=%d, "
+                        + "prepareMean=%.1fus, executeMean=%.1fus, executeP99=%.1fus, fetchMean=%.1fus, "
+                        + "fetchP99=%.1fus, callers=%s]",
+                sql, totalMillis, executions, errors, rows, prepares, meanPrepareMicros, meanExecuteMicros,
+                p99ExecuteMicros, meanFetchMicros, p99FetchMicros, sampledCallers);
+    }
+}
+
+/**
+ * One entry of the slow query log
+ */
+class SlowQuery {
+    private final Instant timestamp = Instant.now();
+    private final String thread = Thread.currentThread().getName();
+    private final String sql;
+    private final String phase;
+    private final long elapsedNanos;
+    private final long executeNanos;
+    private final long fetchNanos;
+    private final long rows;
+    private final long thresholdNanos;
+    private final String caller;
+    private final String error;
+
+    SlowQuery(String sql, String phase, long elapsedNanos, long executeNanos, long fetchNanos, long rows,
+              long thresholdNanos, String caller, String error) {
+        this.sql = sql;
+        this.phase = phase;
+        this.elapsedNanos = elapsedNanos;
+        this.executeNanos = executeNanos;
+        this.fetchNanos = fetchNanos;
+        this.rows = rows;
+        this.thresholdNanos = thresholdNanos;
+        this.caller = caller;
+        this.error = error;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * "prepare", or "execute" for executing and fetching the rows
+     */
+    public String getPhase() {
+        return phase;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1e6;
+    }
+
+    public String getCaller() {
+        return caller;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"event\":\"slow_query\"");
+        field(json, "timestamp", timestamp.toString());
+        field(json, "thread", thread);
+        field(json, "caller", caller);
+        field(json, "phase", phase);
+        field(json, "sql", sql);
+        json.append(String.format(Locale.ROOT, ",\"elapsedMs\":%.3f,\"executeMs\":%.3f,\"fetchMs\":%.3f,\"thresholdMs\":%.3f",
+                elapsedNanos / 1e6, executeNanos / 1e6, fetchNanos / 1e6, thresholdNanos / 1e6));
+        json.append(",\"rows\":").append(rows);
+        if (error != null) {
+            field(json, "error", error);
+        }
+        return json.append('}').toString();
+    }
+
+    private static void field(StringBuilder json, String name, String value) {
+        json.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
@@ -0,0 +1,116 @@
+package Intermediate.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily maps the rows of a ResultSet to a Stream
+ *
+ * A row is read only when the stream asks for it, so with a fetch size set on the statement
+ * memory use stays flat however many rows the query returns. Closing the stream closes the
+ * result set and then the given resources in reverse order, as try-with-resources would; this
+ * also happens as soon as the last row has been read or reading fails. SQLExceptions thrown
+ * while the stream is consumed are rethrown as UncheckedSQLException.
+ */
+final class ResultSetStream {
+
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+
+    private ResultSetStream() {
+    }
+
+    /**
+     * @param resources closed after the result set, last one first (e.g. connection, statement)
+     */
+    static <T> Stream<T> of(ResultSet resultSet, RowMapper<T> mapper, AutoCloseable... resources) {
+        Closer closer = new Closer(resultSet, resources);
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (closer.closed) {
+                    return false;
+                }
+                T row;
+                try {
+                    if (!resultSet.next()) {
+                        closer.close();
+                        return false;
+                    }
+                    row = mapper.map(resultSet);
+                } catch (SQLException e) {
+                    UncheckedSQLException failure = new UncheckedSQLException(e);
+                    try {
+                        closer.close();
+                    } catch (UncheckedSQLException closeFailure) {
+                        failure.addSuppressed(closeFailure.getCause());
+                    }
+                    throw failure;
+                }
+                action.accept(row);
+                return true;
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(closer::close);
+    }
+
+    private static final class Closer {
+        private final AutoCloseable[] resources;
+        private boolean closed;
+
+        Closer(ResultSet resultSet, AutoCloseable[] resources) {
+            this.resources = new AutoCloseable[resources.length + 1];
+            this.resources[0] = resultSet;
+            System.arraycopy(resources, 0, this.resources, 1, resources.length);
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            SQLException failure = null;
+            // The result set first, then the other resources in reverse order
+            for (int i = 0; i < resources.length; i++) {
+                AutoCloseable resource = resources[i == 0 ? 0 : resources.length - i];
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    SQLException sqlException = e instanceof SQLException ? (SQLException) e
+                            : new SQLException("Error closing " + resource, e);
+                    if (failure == null) {
+                        failure = sqlException;
+                    } else {
+                        failure.addSuppressed(sqlException);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw new UncheckedSQLException(failure);
+            }
+        }
+    }
+}
+
+/**
+ * Wraps an SQLException where only unchecked exceptions may be thrown, such as inside a Stream
+ */
+class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
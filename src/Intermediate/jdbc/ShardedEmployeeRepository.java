@@ -0,0 +1,275 @@
+package Intermediate.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Employees hash-partitioned by id across several databases, each behind its own ConnectionManager
+ *
+ * An employee's shard is a hash of its id modulo the number of shards, so lookups, updates
+ * and deletes by id go to exactly one shard. For that to work ids cannot come from each
+ * shard's AUTO_INCREMENT; they are allocated here, from a counter that starts above the
+ * highest id found on any shard before the first insert, and inserted explicitly. Queries that are
+ * not by id run on every shard in parallel, and the merged rows come back with the latency
+ * of each shard, since the slowest shard decides how long the whole query takes.
+ *
+ * In a real application ids would come from a database sequence or a Snowflake-style
+ * generator rather than an in-process counter, and shards would be found through
+ * consistent hashing or a directory (Vitess, Citus) so that adding one does not move most rows.
+ */
+class ShardedEmployeeRepository implements AutoCloseable {
+    private final List<Shard> shards = new ArrayList<>();
+    private final ExecutorService scatterExecutor;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Object seedLock = new Object();
+    private volatile boolean idsSeeded;
+
+    ShardedEmployeeRepository(List<ConnectionManager> connectionManagers) {
+        if (connectionManagers.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        for (ConnectionManager connectionManager : connectionManagers) {
+            shards.add(new Shard(connectionManager, new EmployeeRepository(connectionManager)));
+        }
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.scatterExecutor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "employee-shard-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Index of the shard that holds the employee with this id
+     */
+    public int shardFor(long id) {
+        // Fibonacci hashing spreads sequential ids evenly over any number of shards
+        return Math.floorMod(Long.hashCode(id * 0x9E3779B97F4A7C15L), shards.size());
+    }
+
+    /**
+     * Create the employees table on every shard
+     */
+    public void createEmployeeTable() throws SQLException {
+        scatter(repository -> {
+            repository.createEmployeeTable();
+            return new ArrayList<>();
+        });
+    }
+
+    /**
+     * Insert a new employee on the shard of its newly allocated id
+     */
+    public long insertEmployee(Employee employee) throws SQLException {
+        String sql = "INSERT INTO employees (id, name, position, salary) VALUES (?, ?, ?, ?)";
+        seedIds();
+        long id = nextId.getAndIncrement();
+
+        try (Connection conn = shards.get(shardFor(id)).connectionManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, id);
+            pstmt.setString(2, employee.getName());
+            pstmt.setString(3, employee.getPosition());
+            pstmt.setDouble(4, employee.getSalary());
+            pstmt.executeUpdate();
+            return id;
+        }
+    }
+
+    /**
+     * Start the id counter above the highest id on any shard, once, so existing rows are not collided with
+     */
+    private void seedIds() throws SQLException {
+        if (idsSeeded) {
+            return;
+        }
+        synchronized (seedLock) {
+            if (idsSeeded) {
+                return;
+            }
+            long highest = 0;
+            for (Shard shard : shards) {
+                try (Connection conn = shard.connectionManager.getConnection();
+                     Statement stmt = conn.createStatement();
+                     // MAX(id), in the dialect every shard understands; served from the primary key index
+                     ResultSet rs = stmt.executeQuery("SELECT id FROM employees ORDER BY id DESC LIMIT 1")) {
+                    if (rs.next()) {
+                        highest = Math.max(highest, rs.getLong(1));
+                    }
+                }
+            }
+            long first = highest + 1;
+            nextId.accumulateAndGet(first, Math::max);
+            idsSeeded = true;
+        }
+    }
+
+    public Employee getEmployeeById(long id) throws SQLException {
+        return shards.get(shardFor(id)).repository.getEmployeeById(id);
+    }
+
+    public void updateEmployee(Employee employee) throws SQLException {
+        shards.get(shardFor(employee.getId())).repository.updateEmployee(employee);
+    }
+
+    public void deleteEmployee(long id) throws SQLException {
+        shards.get(shardFor(id)).repository.deleteEmployee(id);
+    }
+
+    /**
+     * All employees of all shards, in shard order
+     */
+    public ShardedQueryResult getAllEmployees() throws SQLException {
+        return scatter(EmployeeRepository::getAllEmployees);
+    }
+
+    public ShardedQueryResult findEmployeesByPosition(String position) throws SQLException {
+        return scatter(repository -> repository.findEmployeesByPosition(position));
+    }
+
+    // Run the query on every shard at once; fails if any shard fails
+    private ShardedQueryResult scatter(ShardQuery query) throws SQLException {
+        long start = System.nanoTime();
+        long[] shardNanos = new long[shards.size()];
+        List<Future<List<Employee>>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            EmployeeRepository repository = shards.get(i).repository;
+            int shard = i;
+            futures.add(scatterExecutor.submit(() -> {
+                long shardStart = System.nanoTime();
+                try {
+                    return query.run(repository);
+                } finally {
+                    shardNanos[shard] = System.nanoTime() - shardStart;
+                }
+            }));
+        }
+
+        List<List<Employee>> shardRows = new ArrayList<>(shards.size());
+        SQLException failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                shardRows.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                SQLException shardFailure = e.getCause() instanceof SQLException
+                        ? (SQLException) e.getCause()
+                        : new SQLException("Query failed on shard " + i, e.getCause());
+                if (failure == null) {
+                    failure = new SQLException("Query failed on shard " + i + ": " + shardFailure.getMessage(),
+                            shardFailure.getSQLState(), shardFailure);
+                } else {
+                    failure.addSuppressed(shardFailure);
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(future -> future.cancel(false));
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for shard " + i, e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        // Every future has completed, so the shard timings are visible here
+        return new ShardedQueryResult(shardRows, shardNanos, System.nanoTime() - start);
+    }
+
+    /**
+     * Stop the scatter threads; the ConnectionManagers are left to their owner to close
+     */
+    @Override
+    public void close() {
+        scatterExecutor.shutdown();
+    }
+
+    @FunctionalInterface
+    private interface ShardQuery {
+        List<Employee> run(EmployeeRepository repository) throws SQLException;
+    }
+
+    private static final class Shard {
+        final ConnectionManager connectionManager;
+        final EmployeeRepository repository;
+
+        Shard(ConnectionManager connectionManager, EmployeeRepository repository) {
+            this.connectionManager = connectionManager;
+            this.repository = repository;
+        }
+    }
+}
+
+/**
+ * Rows merged from every shard, with how long and how many rows each shard took
+ */
+class ShardedQueryResult {
+    private final List<Employee> employees = new ArrayList<>();
+    private final int[] shardRows;
+    private final long[] shardNanos;
+    private final long elapsedNanos;
+
+    ShardedQueryResult(List<List<Employee>> rowsPerShard, long[] shardNanos, long elapsedNanos) {
+        this.shardRows = new int[rowsPerShard.size()];
+        for (int i = 0; i < rowsPerShard.size(); i++) {
+            employees.addAll(rowsPerShard.get(i));
+            shardRows[i] = rowsPerShard.get(i).size();
+        }
+        this.shardNanos = shardNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public List<Employee> getEmployees() {
+        return employees;
+    }
+
+    public int getShardRows(int shard) {
+        return shardRows[shard];
+    }
+
+    public double getShardMillis(int shard) {
+        return shardNanos[shard] / 1e6;
+    }
+
+    /**
+     * Wall-clock time of the whole query, at least that of the slowest shard
+     */
+    public double getElapsedMillis() {
+        return elapsedNanos / 1e6;
+    }
+
+    public int getSlowestShard() {
+        int slowest = 0;
+        for (int i = 1; i < shardNanos.length; i++) {
+            if (shardNanos[i] > shardNanos[slowest]) {
+                slowest = i;
+            }
+        }
+        return slowest;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder shards = new StringBuilder();
+        for (int i = 0; i < shardNanos.length; i++) {
+            if (i > 0) {
+                shards.append(", ");
+            }
+            shards.append(String.format("%d: %d rows in %.2fms", i, shardRows[i], getShardMillis(i)));
+        }
+        return String.format("ShardedQueryResult [rows=%d, elapsed=%.2fms, slowestShard=%d, shards={%s}]",
+                employees.size(), getElapsedMillis(), getSlowestShard(), shards);
+    }
+}
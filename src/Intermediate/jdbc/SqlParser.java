@@ -0,0 +1,565 @@
+package Intermediate.jdbc;
+
+import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parser for the SQL dialect understood by InMemoryDatabase
+ *
+ * Supported statements:
+ * - CREATE TABLE [IF NOT EXISTS] t (col type [(n)] [NOT NULL] [AUTO_INCREMENT] [PRIMARY KEY], ...)
+ * - CREATE [UNIQUE] INDEX [IF NOT EXISTS] name ON t (col)
+ * - DROP TABLE [IF EXISTS] t
+ * - INSERT INTO t [(cols)] VALUES (exprs) [, (exprs)]...
+ * - SELECT * | cols FROM t [WHERE cond] [ORDER BY col [ASC | DESC]] [LIMIT n]
+ * - UPDATE t SET col = expr [, col = expr]... [WHERE cond]
+ * - DELETE FROM t [WHERE cond]
+ *
+ * A condition is comparisons (=, <>, !=, <, <=, >, >=) joined by AND. Expressions are
+ * ? parameters, numbers, 'strings', NULL, column names, + - * / and parentheses.
+ * Keywords and names are case-insensitive.
+ */
+final class SqlParser {
+    private final String sql;
+    private final List<String> tokens;
+    private int pos;
+    private int parameterCount;
+
+    private SqlParser(String sql) throws SQLException {
+        this.sql = sql;
+        this.tokens = tokenize(sql);
+    }
+
+    static SqlStatement parse(String sql) throws SQLException {
+        SqlParser parser = new SqlParser(sql);
+        SqlStatement statement = parser.statement();
+        parser.accept(";");
+        if (parser.pos != parser.tokens.size()) {
+            throw parser.error("unexpected '" + parser.tokens.get(parser.pos) + "'");
+        }
+        return statement;
+    }
+
+    private SqlStatement statement() throws SQLException {
+        if (acceptKeyword("CREATE")) {
+            boolean unique = acceptKeyword("UNIQUE");
+            if (acceptKeyword("INDEX")) {
+                return createIndex(unique);
+            }
+            if (unique) {
+                throw error("expected INDEX");
+            }
+            expectKeyword("TABLE");
+            return createTable();
+        }
+        if (acceptKeyword("DROP")) {
+            expectKeyword("TABLE");
+            boolean ifExists = acceptKeyword("IF");
+            if (ifExists) {
+                expectKeyword("EXISTS");
+            }
+            return new SqlStatement.DropTable(sql, identifier(), ifExists);
+        }
+        if (acceptKeyword("INSERT")) {
+            return insert();
+        }
+        if (acceptKeyword("SELECT")) {
+            return select();
+        }
+        if (acceptKeyword("UPDATE")) {
+            return update();
+        }
+        if (acceptKeyword("DELETE")) {
+            expectKeyword("FROM");
+            String table = identifier();
+            List<SqlStatement.Comparison> where = where();
+            return new SqlStatement.Delete(sql, parameterCount, table, where);
+        }
+        throw error("unsupported statement");
+    }
+
+    private SqlStatement createTable() throws SQLException {
+        boolean ifNotExists = ifNotExists();
+        String table = identifier();
+        List<ColumnDefinition> columns = new ArrayList<>();
+        String primaryKey = null;
+        expect("(");
+        do {
+            if (acceptKeyword("PRIMARY")) {
+                expectKeyword("KEY");
+                expect("(");
+                primaryKey = identifier();
+                expect(")");
+                continue;
+            }
+            String name = identifier();
+            ColumnType type = ColumnType.forSqlType(identifier());
+            int maxLength = Integer.MAX_VALUE;
+            if (accept("(")) {
+                maxLength = Integer.parseInt(number());
+                if (accept(",")) {
+                    number();
+                }
+                expect(")");
+            }
+            boolean notNull = false;
+            boolean autoIncrement = false;
+            while (true) {
+                if (acceptKeyword("NOT")) {
+                    expectKeyword("NULL");
+                    notNull = true;
+                } else if (acceptKeyword("NULL")) {
+                    notNull = false;
+                } else if (acceptKeyword("AUTO_INCREMENT")) {
+                    autoIncrement = true;
+                } else if (acceptKeyword("PRIMARY")) {
+                    expectKeyword("KEY");
+                    primaryKey = name;
+                } else {
+                    break;
+                }
+            }
+            if (type == null) {
+                throw error("unsupported column type for " + name);
+            }
+            columns.add(new ColumnDefinition(name, type, type == ColumnType.VARCHAR ? maxLength : Integer.MAX_VALUE,
+                    notNull, autoIncrement));
+        } while (accept(","));
+        expect(")");
+        return new SqlStatement.CreateTable(sql, table, columns, primaryKey, ifNotExists);
+    }
+
+    private SqlStatement createIndex(boolean unique) throws SQLException {
+        boolean ifNotExists = ifNotExists();
+        String index = identifier();
+        expectKeyword("ON");
+        String table = identifier();
+        expect("(");
+        String column = identifier();
+        expect(")");
+        return new SqlStatement.CreateIndex(sql, index, table, column, unique, ifNotExists);
+    }
+
+    private boolean ifNotExists() throws SQLException {
+        if (acceptKeyword("IF")) {
+            expectKeyword("NOT");
+            expectKeyword("EXISTS");
+            return true;
+        }
+        return false;
+    }
+
+    private SqlStatement insert() throws SQLException {
+        expectKeyword("INTO");
+        String table = identifier();
+        List<String> columns = null;
+        if (accept("(")) {
+            columns = identifiers();
+            expect(")");
+        }
+        expectKeyword("VALUES");
+        List<List<Expression>> rows = new ArrayList<>();
+        do {
+            expect("(");
+            List<Expression> values = new ArrayList<>();
+            do {
+                values.add(expression());
+            } while (accept(","));
+            expect(")");
+            if (columns != null && values.size() != columns.size()) {
+                throw error("column count does not match value count");
+            }
+            rows.add(values);
+        } while (accept(","));
+        return new SqlStatement.Insert(sql, parameterCount, table, columns, rows);
+    }
+
+    private SqlStatement select() throws SQLException {
+        List<String> columns = null;
+        if (!accept("*")) {
+            columns = identifiers();
+        }
+        expectKeyword("FROM");
+        String table = identifier();
+        List<SqlStatement.Comparison> where = where();
+        String orderBy = null;
+        boolean descending = false;
+        if (acceptKeyword("ORDER")) {
+            expectKeyword("BY");
+            orderBy = identifier();
+            descending = acceptKeyword("DESC");
+            if (!descending) {
+                acceptKeyword("ASC");
+            }
+        }
+        Expression limit = null;
+        if (acceptKeyword("LIMIT")) {
+            limit = primary();
+        }
+        return new SqlStatement.Select(sql, parameterCount, table, columns, where, orderBy, descending, limit);
+    }
+
+    private SqlStatement update() throws SQLException {
+        String table = identifier();
+        expectKeyword("SET");
+        List<String> columns = new ArrayList<>();
+        List<Expression> values = new ArrayList<>();
+        do {
+            columns.add(identifier());
+            expect("=");
+            values.add(expression());
+        } while (accept(","));
+        List<SqlStatement.Comparison> where = where();
+        return new SqlStatement.Update(sql, parameterCount, table, columns, values, where);
+    }
+
+    private List<SqlStatement.Comparison> where() throws SQLException {
+        List<SqlStatement.Comparison> comparisons = new ArrayList<>();
+        if (!acceptKeyword("WHERE")) {
+            return comparisons;
+        }
+        do {
+            Expression left = expression();
+            String operator = pos < tokens.size() ? tokens.get(pos) : "";
+            if (!SqlStatement.Comparison.isOperator(operator)) {
+                throw error("expected a comparison operator");
+            }
+            pos++;
+            comparisons.add(new SqlStatement.Comparison(left, operator, expression()));
+        } while (acceptKeyword("AND"));
+        return comparisons;
+    }
+
+    private Expression expression() throws SQLException {
+        Expression left = term();
+        while (true) {
+            if (accept("+")) {
+                left = new Expression.Arithmetic('+', left, term());
+            } else if (accept("-")) {
+                left = new Expression.Arithmetic('-', left, term());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expression term() throws SQLException {
+        Expression left = primary();
+        while (true) {
+            if (accept("*")) {
+                left = new Expression.Arithmetic('*', left, primary());
+            } else if (accept("/")) {
+                left = new Expression.Arithmetic('/', left, primary());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expression primary() throws SQLException {
+        if (pos >= tokens.size()) {
+            throw error("unexpected end of statement");
+        }
+        String token = tokens.get(pos);
+        if (accept("?")) {
+            return new Expression.Parameter(parameterCount++);
+        }
+        if (accept("(")) {
+            Expression inner = expression();
+            expect(")");
+            return inner;
+        }
+        if (accept("-")) {
+            return new Expression.Arithmetic('-', new Expression.Literal(0L), primary());
+        }
+        if (token.charAt(0) == '\'') {
+            pos++;
+            return new Expression.Literal(token.substring(1, token.length() - 1).replace("''", "'"));
+        }
+        if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '.') {
+            String number = number();
+            return new Expression.Literal(number.contains(".") || number.contains("e") || number.contains("E")
+                    ? (Object) Double.parseDouble(number) : (Object) Long.parseLong(number));
+        }
+        if (acceptKeyword("NULL")) {
+            return new Expression.Literal(null);
+        }
+        return new Expression.ColumnRef(identifier());
+    }
+
+    private List<String> identifiers() throws SQLException {
+        List<String> names = new ArrayList<>();
+        do {
+            names.add(identifier());
+        } while (accept(","));
+        return names;
+    }
+
+    private String identifier() throws SQLException {
+        if (pos >= tokens.size()) {
+            throw error("expected a name");
+        }
+        String token = tokens.get(pos);
+        char first = token.charAt(0);
+        if (first == '`' || first == '"') {
+            pos++;
+            return token.substring(1, token.length() - 1).toLowerCase(Locale.ROOT);
+        }
+        if (!Character.isLetter(first) && first != '_') {
+            throw error("expected a name");
+        }
+        pos++;
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    private String number() throws SQLException {
+        if (pos >= tokens.size()) {
+            throw error("expected a number");
+        }
+        String token = tokens.get(pos);
+        if (!Character.isDigit(token.charAt(0)) && token.charAt(0) != '.') {
+            throw error("expected a number");
+        }
+        pos++;
+        return token;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase(keyword)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(String keyword) throws SQLException {
+        if (!acceptKeyword(keyword)) {
+            throw error("expected " + keyword);
+        }
+    }
+
+    private boolean accept(String symbol) {
+        if (pos < tokens.size() && tokens.get(pos).equals(symbol)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String symbol) throws SQLException {
+        if (!accept(symbol)) {
+            throw error("expected '" + symbol + "'");
+        }
+    }
+
+    private SQLException error(String problem) {
+        String near = pos < tokens.size() ? " near '" + tokens.get(pos) + "'" : " at end of statement";
+        return new SQLSyntaxErrorException("Syntax error" + near + ": " + problem + " in: " + sql, "42000");
+    }
+
+    private static List<String> tokenize(String sql) throws SQLException {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(sql.substring(start, i));
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < sql.length() && Character.isDigit(sql.charAt(i + 1)))) {
+                int start = i;
+                while (i < sql.length() && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                if (i < sql.length() && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+                    i++;
+                    if (i < sql.length() && (sql.charAt(i) == '+' || sql.charAt(i) == '-')) {
+                        i++;
+                    }
+                    while (i < sql.length() && Character.isDigit(sql.charAt(i))) {
+                        i++;
+                    }
+                }
+                tokens.add(sql.substring(start, i));
+            } else if (c == '\'' || c == '`' || c == '"') {
+                int start = i++;
+                while (true) {
+                    if (i >= sql.length()) {
+                        throw new SQLSyntaxErrorException("Unterminated quote in: " + sql, "42000");
+                    }
+                    if (sql.charAt(i) == c) {
+                        if (c == '\'' && i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                tokens.add(sql.substring(start, ++i));
+            } else if ((c == '<' || c == '>' || c == '!') && i + 1 < sql.length()
+                    && (sql.charAt(i + 1) == '=' || (c == '<' && sql.charAt(i + 1) == '>'))) {
+                tokens.add(sql.substring(i, i + 2));
+                i += 2;
+            } else if ("(),?*=<>+-/;".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                throw new SQLSyntaxErrorException("Unexpected character '" + c + "' in: " + sql, "42000");
+            }
+        }
+        return tokens;
+    }
+}
+
+/**
+ * Value expression in a statement, evaluated against one row of a table
+ */
+abstract class Expression {
+    /**
+     * @param table  the table the row belongs to, or null when there is no row (INSERT values, LIMIT)
+     * @param slot   the row's slot in the table
+     * @param params prepared statement parameters
+     */
+    abstract Object evaluate(Table table, int slot, Object[] params) throws SQLException;
+
+    /**
+     * Check column references against the table before any row is touched
+     */
+    void validate(Table table) throws SQLException {
+    }
+
+    static final class Parameter extends Expression {
+        final int index;
+
+        Parameter(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Object evaluate(Table table, int slot, Object[] params) {
+            return params[index];
+        }
+    }
+
+    static final class Literal extends Expression {
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object evaluate(Table table, int slot, Object[] params) {
+            return value;
+        }
+    }
+
+    static final class ColumnRef extends Expression {
+        final String name;
+        // Column position in the table this statement last ran against; statements are shared
+        // between threads, so table and position are published together
+        private volatile Resolved resolved;
+
+        ColumnRef(String name) {
+            this.name = name;
+        }
+
+        @Override
+        Object evaluate(Table table, int slot, Object[] params) throws SQLException {
+            if (table == null) {
+                throw new SQLSyntaxErrorException("Column " + name + " cannot be used here", "42000");
+            }
+            return table.value(slot, columnIndex(table));
+        }
+
+        int columnIndex(Table table) throws SQLException {
+            Resolved current = resolved;
+            if (current == null || current.table != table) {
+                current = new Resolved(table, table.columnIndex(name));
+                resolved = current;
+            }
+            return current.index;
+        }
+
+        @Override
+        void validate(Table table) throws SQLException {
+            columnIndex(table);
+        }
+
+        private static final class Resolved {
+            final Table table;
+            final int index;
+
+            Resolved(Table table, int index) {
+                this.table = table;
+                this.index = index;
+            }
+        }
+    }
+
+    static final class Arithmetic extends Expression {
+        private final char operator;
+        private final Expression left;
+        private final Expression right;
+
+        Arithmetic(char operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate(Table table, int slot, Object[] params) throws SQLException {
+            Object a = left.evaluate(table, slot, params);
+            Object b = right.evaluate(table, slot, params);
+            if (a == null || b == null) {
+                return null;
+            }
+            if (!(a instanceof Number) || !(b instanceof Number)) {
+                throw new SQLSyntaxErrorException("Arithmetic on a non-numeric value", "22018");
+            }
+            if (isIntegral(a) && isIntegral(b) && operator != '/') {
+                long x = ((Number) a).longValue();
+                long y = ((Number) b).longValue();
+                switch (operator) {
+                    case '+':
+                        return x + y;
+                    case '-':
+                        return x - y;
+                    default:
+                        return x * y;
+                }
+            }
+            double x = ((Number) a).doubleValue();
+            double y = ((Number) b).doubleValue();
+            switch (operator) {
+                case '+':
+                    return x + y;
+                case '-':
+                    return x - y;
+                case '*':
+                    return x * y;
+                default:
+                    return y == 0 ? null : x / y;
+            }
+        }
+
+        @Override
+        void validate(Table table) throws SQLException {
+            left.validate(table);
+            right.validate(table);
+        }
+    }
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+}
@@ -0,0 +1,642 @@
+package Intermediate.jdbc;
+
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Parsed SQL statement, executable against an InMemoryDatabase
+ *
+ * Statements are immutable apart from resolved column positions and are shared by every
+ * connection that prepares the same SQL text. Each execution takes the table's read lock
+ * (SELECT) or write lock (INSERT, UPDATE, DELETE), so a statement sees and leaves the table
+ * in a consistent state. Writes record how to undo themselves in the given UndoLog.
+ */
+abstract class SqlStatement {
+    final String sql;
+    final int parameterCount;
+
+    SqlStatement(String sql, int parameterCount) {
+        this.sql = sql;
+        this.parameterCount = parameterCount;
+    }
+
+    boolean isQuery() {
+        return false;
+    }
+
+    abstract ExecutionResult execute(InMemoryDatabase database, Object[] params, UndoLog undo) throws SQLException;
+
+    /**
+     * Open a cursor that produces the rows fetchSize at a time instead of all at once, or
+     * return null if this statement cannot be streamed
+     */
+    QueryCursor openCursor(InMemoryDatabase database, Object[] params, int fetchSize, int maxRows)
+            throws SQLException {
+        return null;
+    }
+
+    /**
+     * Slots of the rows matching all comparisons, in slot order; uses a hash index when one
+     * of the comparisons is column = value on an indexed column
+     */
+    static int[] matchingSlots(Table table, List<Comparison> where, Object[] params, int limit)
+            throws SQLException {
+        for (Comparison comparison : where) {
+            comparison.validate(table);
+        }
+        int[] candidates = indexCandidates(table, where, params);
+
+        int[] matches = new int[16];
+        int count = 0;
+        if (candidates != null) {
+            for (int slot : candidates) {
+                if (count < limit && matchesAll(table, slot, where, params)) {
+                    matches = append(matches, count++, slot);
+                }
+            }
+        } else {
+            for (int slot = table.nextLive(0); slot >= 0 && count < limit; slot = table.nextLive(slot + 1)) {
+                if (matchesAll(table, slot, where, params)) {
+                    matches = append(matches, count++, slot);
+                }
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Slots a hash index narrows the WHERE clause down to, or null if no comparison can use one
+     */
+    static int[] indexCandidates(Table table, List<Comparison> where, Object[] params) throws SQLException {
+        for (Comparison comparison : where) {
+            int[] candidates = comparison.indexLookup(table, params);
+            if (candidates != null) {
+                return candidates;
+            }
+        }
+        return null;
+    }
+
+    static boolean matchesAll(Table table, int slot, List<Comparison> where, Object[] params)
+            throws SQLException {
+        for (Comparison comparison : where) {
+            if (!comparison.matches(table, slot, params)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int[] append(int[] slots, int count, int slot) {
+        if (count == slots.length) {
+            slots = Arrays.copyOf(slots, count * 2);
+        }
+        slots[count] = slot;
+        return slots;
+    }
+
+    /**
+     * One "left op right" term of a WHERE clause
+     */
+    static final class Comparison {
+        private final Expression left;
+        private final String operator;
+        private final Expression right;
+
+        Comparison(Expression left, String operator, Expression right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        static boolean isOperator(String token) {
+            switch (token) {
+                case "=":
+                case "<>":
+                case "!=":
+                case "<":
+                case "<=":
+                case ">":
+                case ">=":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        void validate(Table table) throws SQLException {
+            left.validate(table);
+            right.validate(table);
+        }
+
+        boolean matches(Table table, int slot, Object[] params) throws SQLException {
+            Object a = left.evaluate(table, slot, params);
+            Object b = right.evaluate(table, slot, params);
+            if (a == null || b == null) {
+                // SQL three-valued logic: a comparison with NULL is never true
+                return false;
+            }
+            int order = compare(a, b);
+            switch (operator) {
+                case "=":
+                    return order == 0;
+                case "<>":
+                case "!=":
+                    return order != 0;
+                case "<":
+                    return order < 0;
+                case "<=":
+                    return order <= 0;
+                case ">":
+                    return order > 0;
+                default:
+                    return order >= 0;
+            }
+        }
+
+        /**
+         * Candidate slots from a hash index for "column = value", or null if this comparison cannot use one
+         */
+        int[] indexLookup(Table table, Object[] params) throws SQLException {
+            if (!operator.equals("=")) {
+                return null;
+            }
+            Expression column = left instanceof Expression.ColumnRef ? left : right;
+            Expression value = column == left ? right : left;
+            if (!(column instanceof Expression.ColumnRef) || value instanceof Expression.ColumnRef
+                    || value instanceof Expression.Arithmetic) {
+                return null;
+            }
+            int columnIndex = ((Expression.ColumnRef) column).columnIndex(table);
+            return table.lookup(columnIndex, value.evaluate(null, -1, params));
+        }
+    }
+
+    static int compare(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            if (Expression.isIntegral(a) && Expression.isIntegral(b)) {
+                return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+            }
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof Number || b instanceof Number) {
+            // Compare a string with a number numerically when it is one, as MySQL does
+            try {
+                double x = a instanceof Number ? ((Number) a).doubleValue() : Double.parseDouble(a.toString());
+                double y = b instanceof Number ? ((Number) b).doubleValue() : Double.parseDouble(b.toString());
+                return Double.compare(x, y);
+            } catch (NumberFormatException e) {
+                return a.toString().compareTo(b.toString());
+            }
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    static final class CreateTable extends SqlStatement {
+        private final String table;
+        private final List<ColumnDefinition> columns;
+        private final String primaryKey;
+        private final boolean ifNotExists;
+
+        CreateTable(String sql, String table, List<ColumnDefinition> columns, String primaryKey, boolean ifNotExists) {
+            super(sql, 0);
+            this.table = table;
+            this.columns = columns;
+            this.primaryKey = primaryKey;
+            this.ifNotExists = ifNotExists;
+        }
+
+        @Override
+        ExecutionResult execute(InMemoryDatabase database, Object[] params, UndoLog undo) throws SQLException {
+            database.createTable(new Table(table, columns, primaryKey), ifNotExists);
+            return ExecutionResult.update(0, null, null);
+        }
+    }
+
+    static final class CreateIndex extends SqlStatement {
+        private final String index;
+        private final String table;
+        private final String column;
+        private final boolean unique;
+        private final boolean ifNotExists;
+
+        CreateIndex(String sql, String index, String table, String column, boolean unique, boolean ifNotExists) {
+            super(sql, 0);
+            this.index = index;
+            this.table = table;
+            this.column = column;
+            this.unique = unique;
+            this.ifNotExists = ifNotExists;
+        }
+
+        @Override
+        ExecutionResult execute(InMemoryDatabase database, Object[] params, UndoLog undo) throws SQLException {
+            Table target = database.table(table);
+            Lock lock = target.lock.writeLock();
+            lock.lock();
+            try {
+                target.createIndex(index, target.columnIndex(column), unique, ifNotExists);
+            } finally {
+                lock.unlock();
+            }
+            return ExecutionResult.update(0, null, null);
+        }
+    }
+
+    static final class DropTable extends SqlStatement {
+        private final String table;
+        private final boolean ifExists;
+
+        DropTable(String sql, String table, boolean ifExists) {
+            super(sql, 0);
+            this.table = table;
+            this.ifExists = ifExists;
+        }
+
+        @Override
+        ExecutionResult execute(InMemoryDatabase database, Object[] params, UndoLog undo) throws SQLException {
+            database.dropTable(table, ifExists);
+            return ExecutionResult.update(0, null, null);
+        }
+    }
+
+    static final class Insert extends SqlStatement {
+        private final String table;
+        private final List<String> columns;
+        private final List<List<Expression>> rows;
+
+        Insert(String sql, int parameterCount, String table, List<String> columns, List<List<Expression>> rows) {
+            super(sql, parameterCount);
+            this.table = table;
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        @Override
+        ExecutionResult execute(InMemoryDatabase database, Object[] params, UndoLog undo) throws SQLException {
+            Table target = database.table(table);
+            int[] positions = new int[columns == null ? target.columnCount() : columns.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = columns == null ? i : target.columnIndex(columns.get(i));
+            }
+            long[] keys = target.hasAutoIncrement() ? new long[rows.size()] : null;
+
+            Lock lock = target.lock.writeLock();
+            lock.lock();
+            try {
+                for (int r = 0; r < rows.size(); r++) {
+                    List<Expression> expressions = rows.get(r);
+                    if (expressions.size() != positions.length) {
+                        throw new SQLDataException("Column count does not match value count", "21S01");
+                    }
+                    Object[] values = new Object[target.columnCount()];
+                    for (int i = 0; i < positions.length; i++) {
+                        values[positions[i]] = expressions.get(i).evaluate(null, -1, params);
+                    }
+                    int slot = target.insert(values);
+                    undo.inserted(target, slot);
+                    if (keys != null) {
+                        keys[r] = target.autoIncrementValue(slot);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            return ExecutionResult.update(rows.size(), keys, keys == null ? null : target.autoIncrementColumnName());
+        }
+    }
+
+    static final class Select extends SqlStatement {
+        private final String table;
+        private final List<String> columns;
+        private final List<Comparison> where;
+        private final String orderBy;
+        private final boolean descending;
+        private final Expression limit;
+
+        Select(String sql, int parameterCount, String table, List<String> columns, List<Comparison> where,
+               String orderBy, boolean descending, Expression limit) {
+            super(sql, parameterCount);
+            this.table = table;
+            this.columns = columns;
+            this.where = where;
+            this.orderBy = orderBy;
+            this.descending = descending;
+            this.limit = limit;
+        }
+
+        @Override
+        boolean isQuery() {
+            return true;
+        }
+
+        @Override
+        QueryCursor openCursor(InMemoryDatabase database, Object[] params, int fetchSize, int maxRows)
+                throws SQLException {
+            if (orderBy != null) {
+                // Sorting needs every row first
+                return null;
+            }
+            Table source = database.table(table);
+            int[] positions = positions(source);
+            for (Comparison comparison : where) {
+                comparison.validate(source);
+            }
+            int rowLimit = maxRows > 0 ? Math.min(maxRows, limit(params)) : limit(params);
+            return new QueryCursor(source, names(source, positions), positions, where, params, fetchSize, rowLimit);
+        }
+
+        private int[] positions(Table source) throws SQLException {
+            int[] positions = new int[columns == null ? source.columnCount() : columns.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = columns == null ? i : source.columnIndex(columns.get(i));
+            }
+            return positions;
+        }
+
+        private static String[] names(Table source, int[] positions) {
+            String[] names = new String[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                names[i] = source.columnName(positions[i]);
+            }
+            return names;
+        }
+
+        private int limit(Object[] params) throws SQLException {
+            if (limit == null) {
+                return Integer.MAX_VALUE;
+            }
+            Object value = limit.evaluate(null, -1, params);
+            if (!(value instanceof Number) || ((Number) value).longValue() < 0) {
+                throw new SQLDataException("LIMIT must be a non-negative integer", "22023");
+            }
+            return (int) Math.min(Integer.MAX_VALUE, ((Number) value).longValue());
+        }
+
+        @Override
+        ExecutionResult execute(InMemoryDatabase database, Object[] params, UndoLog undo) throws SQLException {
+            Table source = database.table(table);
+            int[] positions = positions(source);
+            String[] names = names(source, positions);
+            int maxRows = limit(params);
+            int orderColumn = orderBy == null ? -1 : source.columnIndex(orderBy);
+
+            List<Object[]> rows;
+            Lock lock = source.lock.readLock();
+            lock.lock();
+            try {
+                int[] slots = matchingSlots(source, where, params, orderColumn < 0 ? maxRows : Integer.MAX_VALUE);
+                rows = new ArrayList<>(slots.length);
+                for (int slot : slots) {
+                    Object[] row = new Object[positions.length + (orderColumn < 0 ? 0 : 1)];
+                    for (int i = 0; i < positions.length; i++) {
+                        row[i] = source.value(slot, positions[i]);
+                    }
+                    if (orderColumn >= 0) {
+                        row[positions.length] = source.value(slot, orderColumn);
+                    }
+                    rows.add(row);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (orderColumn >= 0) {
+                int sortKey = positions.length;
+                Comparator<Object[]> order = (a, b) -> {
+                    // NULLs first in ascending order, as in MySQL
+                    if (a[sortKey] == null || b[sortKey] == null) {
+                        return a[sortKey] == null ? (b[sortKey] == null ? 0 : -1) : 1;
+                    }
+                    return compare(a[sortKey], b[sortKey]);
+                };
+                rows.sort(descending ? order.reversed() : order);
+                if (rows.size() > maxRows) {
+                    rows = new ArrayList<>(rows.subList(0, maxRows));
+                }
+                for (int i = 0; i < rows.size(); i++) {
+                    rows.set(i, Arrays.copyOf(rows.get(i), positions.length));
+                }
+            }
+            return ExecutionResult.query(names, rows);
+        }
+    }
+
+    static final class Update extends SqlStatement {
+        private final String table;
+        private final List<String> columns;
+        private final List<Expression> values;
+        private final List<Comparison> where;
+
+        Update(String sql, int parameterCount, String table, List<String> columns, List<Expression> values,
+               List<Comparison> where) {
+            super(sql, parameterCount);
+            this.table = table;
+            this.columns = columns;
+            this.values = values;
+            this.where = where;
+        }
+
+        @Override
+        ExecutionResult execute(InMemoryDatabase database, Object[] params, UndoLog undo) throws SQLException {
+            Table target = database.table(table);
+            int[] positions = new int[columns.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = target.columnIndex(columns.get(i));
+                values.get(i).validate(target);
+            }
+
+            Lock lock = target.lock.writeLock();
+            lock.lock();
+            try {
+                int[] slots = matchingSlots(target, where, params, Integer.MAX_VALUE);
+                Object[] newValues = new Object[positions.length];
+                for (int slot : slots) {
+                    // All right-hand sides see the row as it was before this statement
+                    for (int i = 0; i < positions.length; i++) {
+                        newValues[i] = values.get(i).evaluate(target, slot, params);
+                    }
+                    for (int i = 0; i < positions.length; i++) {
+                        Object old = target.value(slot, positions[i]);
+                        target.update(slot, positions[i], newValues[i]);
+                        undo.updated(target, slot, positions[i], old);
+                    }
+                }
+                return ExecutionResult.update(slots.length, null, null);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    static final class Delete extends SqlStatement {
+        private final String table;
+        private final List<Comparison> where;
+
+        Delete(String sql, int parameterCount, String table, List<Comparison> where) {
+            super(sql, parameterCount);
+            this.table = table;
+            this.where = where;
+        }
+
+        @Override
+        ExecutionResult execute(InMemoryDatabase database, Object[] params, UndoLog undo) throws SQLException {
+            Table target = database.table(table);
+            Lock lock = target.lock.writeLock();
+            lock.lock();
+            try {
+                target.compactIfWorthwhile();
+                int[] slots = matchingSlots(target, where, params, Integer.MAX_VALUE);
+                for (int slot : slots) {
+                    target.delete(slot);
+                    undo.deleted(target, slot);
+                }
+                return ExecutionResult.update(slots.length, null, null);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
+
+/**
+ * Open SELECT producing its rows a chunk at a time, for result sets with a fetch size
+ *
+ * Each fetch() takes the table's read lock only for the rows it returns and remembers where
+ * it stopped, so memory use depends on the fetch size, not on the table size. While the
+ * cursor is open the table is not compacted, so slot positions stay valid between fetches.
+ * Like everything else in InMemoryDatabase this is READ UNCOMMITTED: rows changed after the
+ * cursor passed them are not seen again, rows deleted before it got there are skipped. The
+ * cursor closes itself once it is exhausted.
+ */
+final class QueryCursor {
+    private final Table table;
+    final String[] columnNames;
+    private final int[] positions;
+    private final List<SqlStatement.Comparison> where;
+    private final Object[] params;
+    private final int fetchSize;
+    private int remaining;
+    // Index candidates are looked up once; for a scan, candidates is null and nextSlot is the scan position
+    private int[] candidates;
+    private boolean started;
+    private int nextSlot;
+    private boolean closed;
+
+    QueryCursor(Table table, String[] columnNames, int[] positions, List<SqlStatement.Comparison> where,
+                Object[] params, int fetchSize, int limit) {
+        this.table = table;
+        this.columnNames = columnNames;
+        this.positions = positions;
+        this.where = where;
+        this.params = params;
+        this.fetchSize = fetchSize;
+        this.remaining = limit;
+        table.openCursors.incrementAndGet();
+    }
+
+    boolean isExhausted() {
+        return closed;
+    }
+
+    /**
+     * The next chunk of at most fetchSize rows; empty once the cursor is exhausted
+     */
+    List<Object[]> fetch() throws SQLException {
+        if (closed) {
+            return Collections.emptyList();
+        }
+        int wanted = Math.min(fetchSize, remaining);
+        List<Object[]> rows = new ArrayList<>(wanted);
+        boolean more;
+        Lock lock = table.lock.readLock();
+        lock.lock();
+        try {
+            if (!started) {
+                candidates = SqlStatement.indexCandidates(table, where, params);
+                started = true;
+            }
+            if (candidates != null) {
+                while (rows.size() < wanted && nextSlot < candidates.length) {
+                    int slot = candidates[nextSlot++];
+                    if (table.isLive(slot) && SqlStatement.matchesAll(table, slot, where, params)) {
+                        rows.add(row(slot));
+                    }
+                }
+                more = nextSlot < candidates.length;
+            } else {
+                int slot = table.nextLive(nextSlot);
+                while (rows.size() < wanted && slot >= 0) {
+                    if (SqlStatement.matchesAll(table, slot, where, params)) {
+                        rows.add(row(slot));
+                    }
+                    slot = table.nextLive(slot + 1);
+                }
+                more = slot >= 0;
+                if (more) {
+                    nextSlot = slot;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        remaining -= rows.size();
+        if (!more || remaining == 0) {
+            close();
+        }
+        return rows;
+    }
+
+    private Object[] row(int slot) {
+        Object[] row = new Object[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            row[i] = table.value(slot, positions[i]);
+        }
+        return row;
+    }
+
+    void close() {
+        if (!closed) {
+            closed = true;
+            table.openCursors.decrementAndGet();
+        }
+    }
+}
+
+/**
+ * What executing a statement produced: rows for a query, an update count and generated keys otherwise
+ */
+final class ExecutionResult {
+    final String[] columnNames;
+    final List<Object[]> rows;
+    final int updateCount;
+    final long[] generatedKeys;
+    final String generatedKeyColumn;
+
+    private ExecutionResult(String[] columnNames, List<Object[]> rows, int updateCount, long[] generatedKeys,
+                            String generatedKeyColumn) {
+        this.columnNames = columnNames;
+        this.rows = rows;
+        this.updateCount = updateCount;
+        this.generatedKeys = generatedKeys;
+        this.generatedKeyColumn = generatedKeyColumn;
+    }
+
+    static ExecutionResult query(String[] columnNames, List<Object[]> rows) {
+        return new ExecutionResult(columnNames, rows, -1, null, null);
+    }
+
+    static ExecutionResult update(int updateCount, long[] generatedKeys, String generatedKeyColumn) {
+        return new ExecutionResult(null, Collections.emptyList(), updateCount, generatedKeys, generatedKeyColumn);
+    }
+
+    boolean isQuery() {
+        return columnNames != null;
+    }
+}
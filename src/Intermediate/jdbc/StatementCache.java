@@ -0,0 +1,334 @@
+package Intermediate.jdbc;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of prepared statements for one physical connection, keyed by SQL text
+ *
+ * Does what cachePrepStmts / prepStmtCacheSize / prepStmtCacheSqlLimit do in the MySQL driver.
+ * A statement is taken out of the cache while it is in use and put back when the caller
+ * closes it, with its parameters and batch cleared. If the same SQL is prepared twice
+ * before the first one is closed, the second one is a miss and gets its own statement.
+ * Statements pushed out by the size limit are closed.
+ *
+ * Not thread-safe: like the connection it belongs to, it is used by one thread at a time.
+ */
+class StatementCache {
+    private final int maxSize;
+    private final int sqlLimit;
+    private final Stats stats;
+    // Insertion order is LRU order: a statement is removed on use and re-inserted when closed
+    private final LinkedHashMap<Key, PreparedStatement> statements = new LinkedHashMap<>();
+
+    StatementCache(int maxSize, int sqlLimit, Stats stats) {
+        this.maxSize = maxSize;
+        this.sqlLimit = sqlLimit;
+        this.stats = stats;
+    }
+
+    /**
+     * Return a cached statement for this SQL, or prepare a new one on the physical connection
+     *
+     * @param handle the connection the caller sees, returned by getConnection() of the statement
+     */
+    PreparedStatement prepare(Connection physical, Connection handle, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        if (sql.length() > sqlLimit) {
+            stats.misses.increment();
+            return prepareUncached(physical, sql, autoGeneratedKeys);
+        }
+        Key key = new Key(sql, autoGeneratedKeys);
+        PreparedStatement statement = statements.remove(key);
+        if (statement != null) {
+            stats.hits.increment();
+        } else {
+            stats.misses.increment();
+            statement = prepareUncached(physical, sql, autoGeneratedKeys);
+        }
+        return new CachedPreparedStatement(statement, key, this, handle);
+    }
+
+    static PreparedStatement prepareUncached(Connection connection, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        return autoGeneratedKeys == Statement.NO_GENERATED_KEYS
+                ? connection.prepareStatement(sql)
+                : connection.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    /**
+     * Put a statement back after use; it is closed instead if it cannot be reset
+     */
+    void giveBack(Key key, PreparedStatement statement) {
+        try {
+            ResultSet resultSet = statement.getResultSet();
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+            // A fetch size switches queries to cursor mode; the next borrower must not inherit it
+            statement.setFetchSize(0);
+            statement.setMaxRows(0);
+        } catch (SQLException e) {
+            closeQuietly(statement);
+            return;
+        }
+
+        PreparedStatement previous = statements.put(key, statement);
+        if (previous != null) {
+            closeQuietly(previous);
+        }
+        if (statements.size() > maxSize) {
+            Iterator<PreparedStatement> eldest = statements.values().iterator();
+            closeQuietly(eldest.next());
+            eldest.remove();
+            stats.evictions.increment();
+        }
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    /**
+     * Close every cached statement; called when the physical connection is closed
+     */
+    void closeAll() {
+        List<PreparedStatement> cached = new ArrayList<>(statements.values());
+        statements.clear();
+        for (PreparedStatement statement : cached) {
+            closeQuietly(statement);
+        }
+    }
+
+    static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The statement is being discarded anyway
+        }
+    }
+
+    /**
+     * Hit, miss and eviction counters shared by all statement caches of a pool
+     */
+    static final class Stats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+    }
+
+    static final class Key {
+        private final String sql;
+        private final int autoGeneratedKeys;
+
+        Key(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, autoGeneratedKeys);
+        }
+    }
+}
+
+/**
+ * Prepared statement handed out by StatementCache
+ *
+ * Delegates to the cached statement; close() returns it to the cache instead of closing it.
+ * Using the handle after close() throws.
+ */
+class CachedPreparedStatement implements PreparedStatement {
+    private final StatementCache.Key key;
+    private final StatementCache cache;
+    private final Connection connection;
+    private PreparedStatement delegate;
+
+    CachedPreparedStatement(PreparedStatement delegate, StatementCache.Key key, StatementCache cache,
+                            Connection connection) {
+        this.delegate = delegate;
+        this.key = key;
+        this.cache = cache;
+        this.connection = connection;
+    }
+
+    private PreparedStatement delegate() throws SQLException {
+        PreparedStatement statement = delegate;
+        if (statement == null) {
+            throw new SQLException("Statement is closed");
+        }
+        return statement;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        PreparedStatement statement = delegate;
+        if (statement == null) {
+            return;
+        }
+        delegate = null;
+        if (connection.isClosed()) {
+            // The connection already went back to the pool and may belong to another thread now
+            StatementCache.closeQuietly(statement);
+        } else {
+            cache.giveBack(key, statement);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate == null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        delegate();
+        return connection;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        return delegate().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate().isWrapperFor(iface);
+    }
+
+    // Everything else is passed through to the cached statement
+    @Override public ResultSet executeQuery() throws SQLException { return delegate().executeQuery(); }
+    @Override public int executeUpdate() throws SQLException { return delegate().executeUpdate(); }
+    @Override public void setString(int parameterIndex, String x) throws SQLException { delegate().setString(parameterIndex, x); }
+    @Override public void setLong(int parameterIndex, long x) throws SQLException { delegate().setLong(parameterIndex, x); }
+    @Override public void setDouble(int parameterIndex, double x) throws SQLException { delegate().setDouble(parameterIndex, x); }
+    @Override public void addBatch() throws SQLException { delegate().addBatch(); }
+    @Override public ResultSet getGeneratedKeys() throws SQLException { return delegate().getGeneratedKeys(); }
+    @Override public ResultSet executeQuery(String sql) throws SQLException { return delegate().executeQuery(sql); }
+    @Override public int executeUpdate(String sql) throws SQLException { return delegate().executeUpdate(sql); }
+    @Override public void addBatch(String sql) throws SQLException { delegate().addBatch(sql); }
+    @Override public void clearBatch() throws SQLException { delegate().clearBatch(); }
+    @Override public void clearParameters() throws SQLException { delegate().clearParameters(); }
+    @Override public boolean execute() throws SQLException { return delegate().execute(); }
+    @Override public boolean execute(String sql) throws SQLException { return delegate().execute(sql); }
+    @Override public int[] executeBatch() throws SQLException { return delegate().executeBatch(); }
+    @Override public void cancel() throws SQLException { delegate().cancel(); }
+    @Override public void clearWarnings() throws SQLException { delegate().clearWarnings(); }
+    @Override public int getFetchDirection() throws SQLException { return delegate().getFetchDirection(); }
+    @Override public void setFetchDirection(int direction) throws SQLException { delegate().setFetchDirection(direction); }
+    @Override public int getFetchSize() throws SQLException { return delegate().getFetchSize(); }
+    @Override public void setFetchSize(int rows) throws SQLException { delegate().setFetchSize(rows); }
+    @Override public int getMaxFieldSize() throws SQLException { return delegate().getMaxFieldSize(); }
+    @Override public void setMaxFieldSize(int max) throws SQLException { delegate().setMaxFieldSize(max); }
+    @Override public int getMaxRows() throws SQLException { return delegate().getMaxRows(); }
+    @Override public void setMaxRows(int max) throws SQLException { delegate().setMaxRows(max); }
+    @Override public boolean getMoreResults() throws SQLException { return delegate().getMoreResults(); }
+    @Override public boolean getMoreResults(int current) throws SQLException { return delegate().getMoreResults(current); }
+    @Override public int getQueryTimeout() throws SQLException { return delegate().getQueryTimeout(); }
+    @Override public void setQueryTimeout(int seconds) throws SQLException { delegate().setQueryTimeout(seconds); }
+    @Override public ResultSet getResultSet() throws SQLException { return delegate().getResultSet(); }
+    @Override public int getResultSetConcurrency() throws SQLException { return delegate().getResultSetConcurrency(); }
+    @Override public int getResultSetHoldability() throws SQLException { return delegate().getResultSetHoldability(); }
+    @Override public int getResultSetType() throws SQLException { return delegate().getResultSetType(); }
+    @Override public int getUpdateCount() throws SQLException { return delegate().getUpdateCount(); }
+    @Override public SQLWarning getWarnings() throws SQLException { return delegate().getWarnings(); }
+    @Override public void setCursorName(String name) throws SQLException { delegate().setCursorName(name); }
+    @Override public void setEscapeProcessing(boolean enable) throws SQLException { delegate().setEscapeProcessing(enable); }
+    @Override public void setPoolable(boolean poolable) throws SQLException { delegate().setPoolable(poolable); }
+    @Override public boolean isPoolable() throws SQLException { return delegate().isPoolable(); }
+    @Override public void closeOnCompletion() throws SQLException { delegate().closeOnCompletion(); }
+    @Override public boolean isCloseOnCompletion() throws SQLException { return delegate().isCloseOnCompletion(); }
+    @Override public void setNull(int parameterIndex, int sqlType) throws SQLException { delegate().setNull(parameterIndex, sqlType); }
+    @Override public void setBoolean(int parameterIndex, boolean x) throws SQLException { delegate().setBoolean(parameterIndex, x); }
+    @Override public void setByte(int parameterIndex, byte x) throws SQLException { delegate().setByte(parameterIndex, x); }
+    @Override public void setShort(int parameterIndex, short x) throws SQLException { delegate().setShort(parameterIndex, x); }
+    @Override public void setInt(int parameterIndex, int x) throws SQLException { delegate().setInt(parameterIndex, x); }
+    @Override public void setFloat(int parameterIndex, float x) throws SQLException { delegate().setFloat(parameterIndex, x); }
+    @Override public void setBigDecimal(int parameterIndex, java.math.BigDecimal x) throws SQLException { delegate().setBigDecimal(parameterIndex, x); }
+    @Override public void setBytes(int parameterIndex, byte[] x) throws SQLException { delegate().setBytes(parameterIndex, x); }
+    @Override public void setDate(int parameterIndex, java.sql.Date x) throws SQLException { delegate().setDate(parameterIndex, x); }
+    @Override public void setTime(int parameterIndex, java.sql.Time x) throws SQLException { delegate().setTime(parameterIndex, x); }
+    @Override public void setTimestamp(int parameterIndex, java.sql.Timestamp x) throws SQLException { delegate().setTimestamp(parameterIndex, x); }
+    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x, int length) throws SQLException { delegate().setAsciiStream(parameterIndex, x, length); }
+    @Override public void setUnicodeStream(int parameterIndex, java.io.InputStream x, int length) throws SQLException { delegate().setUnicodeStream(parameterIndex, x, length); }
+    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x, int length) throws SQLException { delegate().setBinaryStream(parameterIndex, x, length); }
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException { delegate().setObject(parameterIndex, x, targetSqlType); }
+    @Override public void setObject(int parameterIndex, Object x) throws SQLException { delegate().setObject(parameterIndex, x); }
+    @Override public boolean execute(String sql, int autoGeneratedKeys) throws SQLException { return delegate().execute(sql, autoGeneratedKeys); }
+    @Override public boolean execute(String sql, int[] columnIndexes) throws SQLException { return delegate().execute(sql, columnIndexes); }
+    @Override public boolean execute(String sql, String[] columnNames) throws SQLException { return delegate().execute(sql, columnNames); }
+    @Override public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException { return delegate().executeUpdate(sql, autoGeneratedKeys); }
+    @Override public int executeUpdate(String sql, int[] columnIndexes) throws SQLException { return delegate().executeUpdate(sql, columnIndexes); }
+    @Override public int executeUpdate(String sql, String[] columnNames) throws SQLException { return delegate().executeUpdate(sql, columnNames); }
+    @Override public void setRef(int parameterIndex, Ref x) throws SQLException { delegate().setRef(parameterIndex, x); }
+    @Override public void setBlob(int parameterIndex, Blob x) throws SQLException { delegate().setBlob(parameterIndex, x); }
+    @Override public void setClob(int parameterIndex, Clob x) throws SQLException { delegate().setClob(parameterIndex, x); }
+    @Override public void setArray(int parameterIndex, Array x) throws SQLException { delegate().setArray(parameterIndex, x); }
+    @Override public ResultSetMetaData getMetaData() throws SQLException { return delegate().getMetaData(); }
+    @Override public void setDate(int parameterIndex, java.sql.Date x, Calendar cal) throws SQLException { delegate().setDate(parameterIndex, x, cal); }
+    @Override public void setTime(int parameterIndex, java.sql.Time x, Calendar cal) throws SQLException { delegate().setTime(parameterIndex, x, cal); }
+    @Override public void setTimestamp(int parameterIndex, java.sql.Timestamp x, Calendar cal) throws SQLException { delegate().setTimestamp(parameterIndex, x, cal); }
+    @Override public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException { delegate().setNull(parameterIndex, sqlType, typeName); }
+    @Override public void setURL(int parameterIndex, java.net.URL x) throws SQLException { delegate().setURL(parameterIndex, x); }
+    @Override public ParameterMetaData getParameterMetaData() throws SQLException { return delegate().getParameterMetaData(); }
+    @Override public void setRowId(int parameterIndex, RowId x) throws SQLException { delegate().setRowId(parameterIndex, x); }
+    @Override public void setNString(int parameterIndex, String value) throws SQLException { delegate().setNString(parameterIndex, value); }
+    @Override public void setNCharacterStream(int parameterIndex, java.io.Reader value, long length) throws SQLException { delegate().setNCharacterStream(parameterIndex, value, length); }
+    @Override public void setNClob(int parameterIndex, NClob value) throws SQLException { delegate().setNClob(parameterIndex, value); }
+    @Override public void setClob(int parameterIndex, java.io.Reader reader, long length) throws SQLException { delegate().setClob(parameterIndex, reader, length); }
+    @Override public void setBlob(int parameterIndex, java.io.InputStream inputStream, long length) throws SQLException { delegate().setBlob(parameterIndex, inputStream, length); }
+    @Override public void setNClob(int parameterIndex, java.io.Reader reader, long length) throws SQLException { delegate().setNClob(parameterIndex, reader, length); }
+    @Override public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException { delegate().setSQLXML(parameterIndex, xmlObject); }
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException { delegate().setObject(parameterIndex, x, targetSqlType, scaleOrLength); }
+    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x, long length) throws SQLException { delegate().setAsciiStream(parameterIndex, x, length); }
+    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x, long length) throws SQLException { delegate().setBinaryStream(parameterIndex, x, length); }
+    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader, long length) throws SQLException { delegate().setCharacterStream(parameterIndex, reader, length); }
+    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x) throws SQLException { delegate().setAsciiStream(parameterIndex, x); }
+    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x) throws SQLException { delegate().setBinaryStream(parameterIndex, x); }
+    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader) throws SQLException { delegate().setCharacterStream(parameterIndex, reader); }
+    @Override public void setNCharacterStream(int parameterIndex, java.io.Reader value) throws SQLException { delegate().setNCharacterStream(parameterIndex, value); }
+    @Override public void setClob(int parameterIndex, java.io.Reader reader) throws SQLException { delegate().setClob(parameterIndex, reader); }
+    @Override public void setBlob(int parameterIndex, java.io.InputStream inputStream) throws SQLException { delegate().setBlob(parameterIndex, inputStream); }
+    @Override public void setNClob(int parameterIndex, java.io.Reader reader) throws SQLException { delegate().setNClob(parameterIndex, reader); }
+    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader, int length) throws SQLException { delegate().setCharacterStream(parameterIndex, reader, length); }
+}
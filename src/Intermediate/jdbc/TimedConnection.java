@@ -0,0 +1,759 @@
+package Intermediate.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Connection handed out by ConnectionManager while QueryMetrics are enabled
+ *
+ * Times prepareStatement and hands out statements that time their executions and the rows
+ * read from their result sets, all reported to QueryMetrics under the statement's SQL
+ * template. Everything else, including close(), is passed through to the wrapped connection.
+ */
+class TimedConnection implements Connection {
+    private final Connection delegate;
+    private final QueryMetrics metrics;
+
+    TimedConnection(Connection delegate, QueryMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return new TimedStatement(delegate.createStatement(), this, metrics);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new TimedStatement(delegate.createStatement(resultSetType, resultSetConcurrency), this, metrics);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        return new TimedStatement(delegate.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability),
+                this, metrics);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepare(sql, () -> delegate.prepareStatement(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return prepare(sql, () -> delegate.prepareStatement(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return prepare(sql, () -> delegate.prepareStatement(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return prepare(sql, () -> delegate.prepareStatement(sql, columnNames));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return prepare(sql, () -> delegate.prepareStatement(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+                                              int resultSetHoldability) throws SQLException {
+        return prepare(sql,
+                () -> delegate.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    private PreparedStatement prepare(String sql, SqlCall<PreparedStatement> prepare) throws SQLException {
+        QueryMetrics.Template template = metrics.template(sql);
+        long start = System.nanoTime();
+        PreparedStatement statement;
+        try {
+            statement = prepare.call();
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordFailure(template, System.nanoTime() - start, e);
+            throw e;
+        }
+        metrics.recordPrepare(template, System.nanoTime() - start);
+        return new TimedPreparedStatement(statement, this, metrics, template);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    // Everything else is passed through to the wrapped connection
+    @Override public void close() throws SQLException { delegate.close(); }
+    @Override public boolean isClosed() throws SQLException { return delegate.isClosed(); }
+    @Override public boolean isValid(int timeout) throws SQLException { return delegate.isValid(timeout); }
+    @Override public boolean getAutoCommit() throws SQLException { return delegate.getAutoCommit(); }
+    @Override public void setAutoCommit(boolean autoCommit) throws SQLException { delegate.setAutoCommit(autoCommit); }
+    @Override public void commit() throws SQLException { delegate.commit(); }
+    @Override public void rollback() throws SQLException { delegate.rollback(); }
+    @Override public CallableStatement prepareCall(String sql) throws SQLException { return delegate.prepareCall(sql); }
+    @Override public String nativeSQL(String sql) throws SQLException { return delegate.nativeSQL(sql); }
+    @Override public DatabaseMetaData getMetaData() throws SQLException { return delegate.getMetaData(); }
+    @Override public boolean isReadOnly() throws SQLException { return delegate.isReadOnly(); }
+    @Override public void setReadOnly(boolean readOnly) throws SQLException { delegate.setReadOnly(readOnly); }
+    @Override public String getCatalog() throws SQLException { return delegate.getCatalog(); }
+    @Override public void setCatalog(String catalog) throws SQLException { delegate.setCatalog(catalog); }
+    @Override public int getTransactionIsolation() throws SQLException { return delegate.getTransactionIsolation(); }
+    @Override public void setTransactionIsolation(int level) throws SQLException { delegate.setTransactionIsolation(level); }
+    @Override public SQLWarning getWarnings() throws SQLException { return delegate.getWarnings(); }
+    @Override public void clearWarnings() throws SQLException { delegate.clearWarnings(); }
+    @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException { return delegate.prepareCall(sql, resultSetType, resultSetConcurrency); }
+    @Override public Map<String, Class<?>> getTypeMap() throws SQLException { return delegate.getTypeMap(); }
+    @Override public void setTypeMap(Map<String, Class<?>> map) throws SQLException { delegate.setTypeMap(map); }
+    @Override public int getHoldability() throws SQLException { return delegate.getHoldability(); }
+    @Override public void setHoldability(int holdability) throws SQLException { delegate.setHoldability(holdability); }
+    @Override public Savepoint setSavepoint() throws SQLException { return delegate.setSavepoint(); }
+    @Override public Savepoint setSavepoint(String name) throws SQLException { return delegate.setSavepoint(name); }
+    @Override public void rollback(Savepoint savepoint) throws SQLException { delegate.rollback(savepoint); }
+    @Override public void releaseSavepoint(Savepoint savepoint) throws SQLException { delegate.releaseSavepoint(savepoint); }
+    @Override public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException { return delegate.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability); }
+    @Override public Clob createClob() throws SQLException { return delegate.createClob(); }
+    @Override public Blob createBlob() throws SQLException { return delegate.createBlob(); }
+    @Override public NClob createNClob() throws SQLException { return delegate.createNClob(); }
+    @Override public SQLXML createSQLXML() throws SQLException { return delegate.createSQLXML(); }
+    @Override public Array createArrayOf(String typeName, Object[] elements) throws SQLException { return delegate.createArrayOf(typeName, elements); }
+    @Override public Struct createStruct(String typeName, Object[] attributes) throws SQLException { return delegate.createStruct(typeName, attributes); }
+    @Override public String getSchema() throws SQLException { return delegate.getSchema(); }
+    @Override public void setSchema(String schema) throws SQLException { delegate.setSchema(schema); }
+    @Override public void abort(Executor executor) throws SQLException { delegate.abort(executor); }
+    @Override public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException { delegate.setNetworkTimeout(executor, milliseconds); }
+    @Override public int getNetworkTimeout() throws SQLException { return delegate.getNetworkTimeout(); }
+    @Override public void setClientInfo(String name, String value) throws SQLClientInfoException { delegate.setClientInfo(name, value); }
+    @Override public String getClientInfo(String name) throws SQLException { return delegate.getClientInfo(name); }
+    @Override public Properties getClientInfo() throws SQLException { return delegate.getClientInfo(); }
+    @Override public void setClientInfo(Properties properties) throws SQLClientInfoException { delegate.setClientInfo(properties); }
+}
+
+@FunctionalInterface
+interface SqlCall<T> {
+    T call() throws SQLException;
+}
+
+/**
+ * Statement handed out by TimedConnection
+ *
+ * Each execution is timed and reported under the template of its SQL. A query's result set is
+ * wrapped so that the time spent in next() is reported with it, once all rows have been read
+ * or the result set is closed, whichever comes first.
+ */
+class TimedStatement implements Statement {
+    private final Statement delegate;
+    private final TimedConnection connection;
+    final QueryMetrics metrics;
+    private TimedResultSet current;
+    // A batch of SQL strings is reported under the template of the first one
+    private QueryMetrics.Template batchTemplate;
+
+    TimedStatement(Statement delegate, TimedConnection connection, QueryMetrics metrics) {
+        this.delegate = delegate;
+        this.connection = connection;
+        this.metrics = metrics;
+    }
+
+    ResultSet timedQuery(QueryMetrics.Template template, SqlCall<ResultSet> query) throws SQLException {
+        finishCurrent();
+        long start = System.nanoTime();
+        ResultSet resultSet;
+        try {
+            resultSet = query.call();
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordFailure(template, System.nanoTime() - start, e);
+            throw e;
+        }
+        current = new TimedResultSet(resultSet, this, metrics, template, System.nanoTime() - start);
+        return current;
+    }
+
+    int timedUpdate(QueryMetrics.Template template, SqlCall<Integer> update) throws SQLException {
+        finishCurrent();
+        long start = System.nanoTime();
+        int count;
+        try {
+            count = update.call();
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordFailure(template, System.nanoTime() - start, e);
+            throw e;
+        }
+        metrics.recordExecution(template, System.nanoTime() - start, -1, Math.max(count, 0));
+        return count;
+    }
+
+    boolean timedExecute(QueryMetrics.Template template, SqlCall<Boolean> execute) throws SQLException {
+        finishCurrent();
+        long start = System.nanoTime();
+        boolean hasResultSet;
+        try {
+            hasResultSet = execute.call();
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordFailure(template, System.nanoTime() - start, e);
+            throw e;
+        }
+        long executeNanos = System.nanoTime() - start;
+        if (hasResultSet) {
+            current = new TimedResultSet(delegate.getResultSet(), this, metrics, template, executeNanos);
+        } else {
+            metrics.recordExecution(template, executeNanos, -1, Math.max(delegate.getUpdateCount(), 0));
+        }
+        return hasResultSet;
+    }
+
+    int[] timedBatch(QueryMetrics.Template template, SqlCall<int[]> batch) throws SQLException {
+        finishCurrent();
+        long start = System.nanoTime();
+        int[] counts;
+        try {
+            counts = batch.call();
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordFailure(template, System.nanoTime() - start, e);
+            throw e;
+        }
+        long rows = 0;
+        for (int count : counts) {
+            rows += Math.max(count, 0);
+        }
+        metrics.recordExecution(template, System.nanoTime() - start, -1, rows);
+        return counts;
+    }
+
+    // Reports the previous result set if it was neither read to the end nor closed
+    void finishCurrent() {
+        if (current != null) {
+            current.finish();
+            current = null;
+        }
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        return timedQuery(metrics.template(sql), () -> delegate.executeQuery(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        return timedUpdate(metrics.template(sql), () -> delegate.executeUpdate(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return timedUpdate(metrics.template(sql), () -> delegate.executeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return timedUpdate(metrics.template(sql), () -> delegate.executeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return timedUpdate(metrics.template(sql), () -> delegate.executeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return timedExecute(metrics.template(sql), () -> delegate.execute(sql));
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return timedExecute(metrics.template(sql), () -> delegate.execute(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return timedExecute(metrics.template(sql), () -> delegate.execute(sql, columnIndexes));
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return timedExecute(metrics.template(sql), () -> delegate.execute(sql, columnNames));
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        delegate.addBatch(sql);
+        if (batchTemplate == null) {
+            batchTemplate = metrics.template(sql);
+        }
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        delegate.clearBatch();
+        batchTemplate = null;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        QueryMetrics.Template template = batchTemplate != null ? batchTemplate : metrics.template("");
+        batchTemplate = null;
+        return timedBatch(template, delegate::executeBatch);
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return current;
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        finishCurrent();
+        return delegate.getMoreResults();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        finishCurrent();
+        return delegate.getMoreResults(current);
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        finishCurrent();
+        delegate.close();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    // Everything else is passed through to the wrapped statement
+    @Override public ResultSet getGeneratedKeys() throws SQLException { return delegate.getGeneratedKeys(); }
+    @Override public void cancel() throws SQLException { delegate.cancel(); }
+    @Override public void clearWarnings() throws SQLException { delegate.clearWarnings(); }
+    @Override public int getFetchDirection() throws SQLException { return delegate.getFetchDirection(); }
+    @Override public void setFetchDirection(int direction) throws SQLException { delegate.setFetchDirection(direction); }
+    @Override public int getFetchSize() throws SQLException { return delegate.getFetchSize(); }
+    @Override public void setFetchSize(int rows) throws SQLException { delegate.setFetchSize(rows); }
+    @Override public int getMaxFieldSize() throws SQLException { return delegate.getMaxFieldSize(); }
+    @Override public void setMaxFieldSize(int max) throws SQLException { delegate.setMaxFieldSize(max); }
+    @Override public int getMaxRows() throws SQLException { return delegate.getMaxRows(); }
+    @Override public void setMaxRows(int max) throws SQLException { delegate.setMaxRows(max); }
+    @Override public int getQueryTimeout() throws SQLException { return delegate.getQueryTimeout(); }
+    @Override public void setQueryTimeout(int seconds) throws SQLException { delegate.setQueryTimeout(seconds); }
+    @Override public int getResultSetConcurrency() throws SQLException { return delegate.getResultSetConcurrency(); }
+    @Override public int getResultSetHoldability() throws SQLException { return delegate.getResultSetHoldability(); }
+    @Override public int getResultSetType() throws SQLException { return delegate.getResultSetType(); }
+    @Override public int getUpdateCount() throws SQLException { return delegate.getUpdateCount(); }
+    @Override public SQLWarning getWarnings() throws SQLException { return delegate.getWarnings(); }
+    @Override public void setCursorName(String name) throws SQLException { delegate.setCursorName(name); }
+    @Override public void setEscapeProcessing(boolean enable) throws SQLException { delegate.setEscapeProcessing(enable); }
+    @Override public void setPoolable(boolean poolable) throws SQLException { delegate.setPoolable(poolable); }
+    @Override public boolean isPoolable() throws SQLException { return delegate.isPoolable(); }
+    @Override public void closeOnCompletion() throws SQLException { delegate.closeOnCompletion(); }
+    @Override public boolean isCloseOnCompletion() throws SQLException { return delegate.isCloseOnCompletion(); }
+    @Override public boolean isClosed() throws SQLException { return delegate.isClosed(); }
+}
+
+/**
+ * Prepared statement handed out by TimedConnection; all executions share the template it was prepared with
+ */
+class TimedPreparedStatement extends TimedStatement implements PreparedStatement {
+    private final PreparedStatement delegate;
+    private final QueryMetrics.Template template;
+
+    TimedPreparedStatement(PreparedStatement delegate, TimedConnection connection, QueryMetrics metrics,
+                           QueryMetrics.Template template) {
+        super(delegate, connection, metrics);
+        this.delegate = delegate;
+        this.template = template;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        return timedQuery(template, delegate::executeQuery);
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        return timedUpdate(template, delegate::executeUpdate);
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        return timedExecute(template, delegate::execute);
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        return timedBatch(template, delegate::executeBatch);
+    }
+
+    @Override public void addBatch() throws SQLException { delegate.addBatch(); }
+    @Override public void setString(int parameterIndex, String x) throws SQLException { delegate.setString(parameterIndex, x); }
+    @Override public void setLong(int parameterIndex, long x) throws SQLException { delegate.setLong(parameterIndex, x); }
+    @Override public void setDouble(int parameterIndex, double x) throws SQLException { delegate.setDouble(parameterIndex, x); }
+    @Override public void clearParameters() throws SQLException { delegate.clearParameters(); }
+    @Override public void setNull(int parameterIndex, int sqlType) throws SQLException { delegate.setNull(parameterIndex, sqlType); }
+    @Override public void setBoolean(int parameterIndex, boolean x) throws SQLException { delegate.setBoolean(parameterIndex, x); }
+    @Override public void setByte(int parameterIndex, byte x) throws SQLException { delegate.setByte(parameterIndex, x); }
+    @Override public void setShort(int parameterIndex, short x) throws SQLException { delegate.setShort(parameterIndex, x); }
+    @Override public void setInt(int parameterIndex, int x) throws SQLException { delegate.setInt(parameterIndex, x); }
+    @Override public void setFloat(int parameterIndex, float x) throws SQLException { delegate.setFloat(parameterIndex, x); }
+    @Override public void setBigDecimal(int parameterIndex, java.math.BigDecimal x) throws SQLException { delegate.setBigDecimal(parameterIndex, x); }
+    @Override public void setBytes(int parameterIndex, byte[] x) throws SQLException { delegate.setBytes(parameterIndex, x); }
+    @Override public void setDate(int parameterIndex, java.sql.Date x) throws SQLException { delegate.setDate(parameterIndex, x); }
+    @Override public void setTime(int parameterIndex, java.sql.Time x) throws SQLException { delegate.setTime(parameterIndex, x); }
+    @Override public void setTimestamp(int parameterIndex, java.sql.Timestamp x) throws SQLException { delegate.setTimestamp(parameterIndex, x); }
+    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x, int length) throws SQLException { delegate.setAsciiStream(parameterIndex, x, length); }
+    @Override public void setUnicodeStream(int parameterIndex, java.io.InputStream x, int length) throws SQLException { delegate.setUnicodeStream(parameterIndex, x, length); }
+    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x, int length) throws SQLException { delegate.setBinaryStream(parameterIndex, x, length); }
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException { delegate.setObject(parameterIndex, x, targetSqlType); }
+    @Override public void setObject(int parameterIndex, Object x) throws SQLException { delegate.setObject(parameterIndex, x); }
+    @Override public void setRef(int parameterIndex, Ref x) throws SQLException { delegate.setRef(parameterIndex, x); }
+    @Override public void setBlob(int parameterIndex, Blob x) throws SQLException { delegate.setBlob(parameterIndex, x); }
+    @Override public void setClob(int parameterIndex, Clob x) throws SQLException { delegate.setClob(parameterIndex, x); }
+    @Override public void setArray(int parameterIndex, Array x) throws SQLException { delegate.setArray(parameterIndex, x); }
+    @Override public ResultSetMetaData getMetaData() throws SQLException { return delegate.getMetaData(); }
+    @Override public void setDate(int parameterIndex, java.sql.Date x, Calendar cal) throws SQLException { delegate.setDate(parameterIndex, x, cal); }
+    @Override public void setTime(int parameterIndex, java.sql.Time x, Calendar cal) throws SQLException { delegate.setTime(parameterIndex, x, cal); }
+    @Override public void setTimestamp(int parameterIndex, java.sql.Timestamp x, Calendar cal) throws SQLException { delegate.setTimestamp(parameterIndex, x, cal); }
+    @Override public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException { delegate.setNull(parameterIndex, sqlType, typeName); }
+    @Override public void setURL(int parameterIndex, java.net.URL x) throws SQLException { delegate.setURL(parameterIndex, x); }
+    @Override public ParameterMetaData getParameterMetaData() throws SQLException { return delegate.getParameterMetaData(); }
+    @Override public void setRowId(int parameterIndex, RowId x) throws SQLException { delegate.setRowId(parameterIndex, x); }
+    @Override public void setNString(int parameterIndex, String value) throws SQLException { delegate.setNString(parameterIndex, value); }
+    @Override public void setNCharacterStream(int parameterIndex, java.io.Reader value, long length) throws SQLException { delegate.setNCharacterStream(parameterIndex, value, length); }
+    @Override public void setNClob(int parameterIndex, NClob value) throws SQLException { delegate.setNClob(parameterIndex, value); }
+    @Override public void setClob(int parameterIndex, java.io.Reader reader, long length) throws SQLException { delegate.setClob(parameterIndex, reader, length); }
+    @Override public void setBlob(int parameterIndex, java.io.InputStream inputStream, long length) throws SQLException { delegate.setBlob(parameterIndex, inputStream, length); }
+    @Override public void setNClob(int parameterIndex, java.io.Reader reader, long length) throws SQLException { delegate.setNClob(parameterIndex, reader, length); }
+    @Override public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException { delegate.setSQLXML(parameterIndex, xmlObject); }
+    @Override public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException { delegate.setObject(parameterIndex, x, targetSqlType, scaleOrLength); }
+    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x, long length) throws SQLException { delegate.setAsciiStream(parameterIndex, x, length); }
+    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x, long length) throws SQLException { delegate.setBinaryStream(parameterIndex, x, length); }
+    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader, long length) throws SQLException { delegate.setCharacterStream(parameterIndex, reader, length); }
+    @Override public void setAsciiStream(int parameterIndex, java.io.InputStream x) throws SQLException { delegate.setAsciiStream(parameterIndex, x); }
+    @Override public void setBinaryStream(int parameterIndex, java.io.InputStream x) throws SQLException { delegate.setBinaryStream(parameterIndex, x); }
+    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader) throws SQLException { delegate.setCharacterStream(parameterIndex, reader); }
+    @Override public void setNCharacterStream(int parameterIndex, java.io.Reader value) throws SQLException { delegate.setNCharacterStream(parameterIndex, value); }
+    @Override public void setClob(int parameterIndex, java.io.Reader reader) throws SQLException { delegate.setClob(parameterIndex, reader); }
+    @Override public void setBlob(int parameterIndex, java.io.InputStream inputStream) throws SQLException { delegate.setBlob(parameterIndex, inputStream); }
+    @Override public void setNClob(int parameterIndex, java.io.Reader reader) throws SQLException { delegate.setNClob(parameterIndex, reader); }
+    @Override public void setCharacterStream(int parameterIndex, java.io.Reader reader, int length) throws SQLException { delegate.setCharacterStream(parameterIndex, reader, length); }
+}
+
+/**
+ * Result set handed out by TimedStatement
+ *
+ * Times next() and counts the rows read. The execution is reported to QueryMetrics once, when
+ * next() returns false, the result set is closed or its statement moves on.
+ */
+class TimedResultSet implements ResultSet {
+    private final ResultSet delegate;
+    private final TimedStatement statement;
+    private final QueryMetrics metrics;
+    private final QueryMetrics.Template template;
+    private final long executeNanos;
+    private long fetchNanos;
+    private long rows;
+    private boolean finished;
+
+    TimedResultSet(ResultSet delegate, TimedStatement statement, QueryMetrics metrics, QueryMetrics.Template template,
+                   long executeNanos) {
+        this.delegate = delegate;
+        this.statement = statement;
+        this.metrics = metrics;
+        this.template = template;
+        this.executeNanos = executeNanos;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        long start = System.nanoTime();
+        boolean hasRow;
+        try {
+            hasRow = delegate.next();
+        } finally {
+            fetchNanos += System.nanoTime() - start;
+        }
+        if (hasRow) {
+            rows++;
+        } else {
+            finish();
+        }
+        return hasRow;
+    }
+
+    void finish() {
+        if (!finished) {
+            finished = true;
+            metrics.recordExecution(template, executeNanos, fetchNanos, rows);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        finish();
+        delegate.close();
+    }
+
+    @Override
+    public Statement getStatement() {
+        return statement;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    // Everything else is passed through to the wrapped result set
+    @Override public <T> T getObject(String columnLabel, Class<T> type) throws SQLException { return delegate.getObject(columnLabel, type); }
+    @Override public <T> T getObject(int columnIndex, Class<T> type) throws SQLException { return delegate.getObject(columnIndex, type); }
+    @Override public Array getArray(String columnLabel) throws SQLException { return delegate.getArray(columnLabel); }
+    @Override public Array getArray(int columnIndex) throws SQLException { return delegate.getArray(columnIndex); }
+    @Override public Blob getBlob(String columnLabel) throws SQLException { return delegate.getBlob(columnLabel); }
+    @Override public Blob getBlob(int columnIndex) throws SQLException { return delegate.getBlob(columnIndex); }
+    @Override public Clob getClob(String columnLabel) throws SQLException { return delegate.getClob(columnLabel); }
+    @Override public Clob getClob(int columnIndex) throws SQLException { return delegate.getClob(columnIndex); }
+    @Override public Date getDate(String columnLabel) throws SQLException { return delegate.getDate(columnLabel); }
+    @Override public Date getDate(String columnLabel, Calendar cal) throws SQLException { return delegate.getDate(columnLabel, cal); }
+    @Override public Date getDate(int columnIndex) throws SQLException { return delegate.getDate(columnIndex); }
+    @Override public Date getDate(int columnIndex, Calendar cal) throws SQLException { return delegate.getDate(columnIndex, cal); }
+    @Override public NClob getNClob(String columnLabel) throws SQLException { return delegate.getNClob(columnLabel); }
+    @Override public NClob getNClob(int columnIndex) throws SQLException { return delegate.getNClob(columnIndex); }
+    @Override public Object getObject(String columnLabel) throws SQLException { return delegate.getObject(columnLabel); }
+    @Override public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException { return delegate.getObject(columnLabel, map); }
+    @Override public Object getObject(int columnIndex) throws SQLException { return delegate.getObject(columnIndex); }
+    @Override public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException { return delegate.getObject(columnIndex, map); }
+    @Override public Ref getRef(String columnLabel) throws SQLException { return delegate.getRef(columnLabel); }
+    @Override public Ref getRef(int columnIndex) throws SQLException { return delegate.getRef(columnIndex); }
+    @Override public ResultSetMetaData getMetaData() throws SQLException { return delegate.getMetaData(); }
+    @Override public RowId getRowId(String columnLabel) throws SQLException { return delegate.getRowId(columnLabel); }
+    @Override public RowId getRowId(int columnIndex) throws SQLException { return delegate.getRowId(columnIndex); }
+    @Override public SQLWarning getWarnings() throws SQLException { return delegate.getWarnings(); }
+    @Override public SQLXML getSQLXML(String columnLabel) throws SQLException { return delegate.getSQLXML(columnLabel); }
+    @Override public SQLXML getSQLXML(int columnIndex) throws SQLException { return delegate.getSQLXML(columnIndex); }
+    @Override public String getCursorName() throws SQLException { return delegate.getCursorName(); }
+    @Override public String getNString(String columnLabel) throws SQLException { return delegate.getNString(columnLabel); }
+    @Override public String getNString(int columnIndex) throws SQLException { return delegate.getNString(columnIndex); }
+    @Override public String getString(String columnLabel) throws SQLException { return delegate.getString(columnLabel); }
+    @Override public String getString(int columnIndex) throws SQLException { return delegate.getString(columnIndex); }
+    @Override public Time getTime(String columnLabel) throws SQLException { return delegate.getTime(columnLabel); }
+    @Override public Time getTime(String columnLabel, Calendar cal) throws SQLException { return delegate.getTime(columnLabel, cal); }
+    @Override public Time getTime(int columnIndex) throws SQLException { return delegate.getTime(columnIndex); }
+    @Override public Time getTime(int columnIndex, Calendar cal) throws SQLException { return delegate.getTime(columnIndex, cal); }
+    @Override public Timestamp getTimestamp(String columnLabel) throws SQLException { return delegate.getTimestamp(columnLabel); }
+    @Override public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException { return delegate.getTimestamp(columnLabel, cal); }
+    @Override public Timestamp getTimestamp(int columnIndex) throws SQLException { return delegate.getTimestamp(columnIndex); }
+    @Override public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException { return delegate.getTimestamp(columnIndex, cal); }
+    @Override public boolean absolute(int row) throws SQLException { return delegate.absolute(row); }
+    @Override public boolean first() throws SQLException { return delegate.first(); }
+    @Override public boolean getBoolean(String columnLabel) throws SQLException { return delegate.getBoolean(columnLabel); }
+    @Override public boolean getBoolean(int columnIndex) throws SQLException { return delegate.getBoolean(columnIndex); }
+    @Override public boolean isAfterLast() throws SQLException { return delegate.isAfterLast(); }
+    @Override public boolean isBeforeFirst() throws SQLException { return delegate.isBeforeFirst(); }
+    @Override public boolean isClosed() throws SQLException { return delegate.isClosed(); }
+    @Override public boolean isFirst() throws SQLException { return delegate.isFirst(); }
+    @Override public boolean isLast() throws SQLException { return delegate.isLast(); }
+    @Override public boolean last() throws SQLException { return delegate.last(); }
+    @Override public boolean previous() throws SQLException { return delegate.previous(); }
+    @Override public boolean relative(int rows) throws SQLException { return delegate.relative(rows); }
+    @Override public boolean rowDeleted() throws SQLException { return delegate.rowDeleted(); }
+    @Override public boolean rowInserted() throws SQLException { return delegate.rowInserted(); }
+    @Override public boolean rowUpdated() throws SQLException { return delegate.rowUpdated(); }
+    @Override public boolean wasNull() throws SQLException { return delegate.wasNull(); }
+    @Override public byte getByte(String columnLabel) throws SQLException { return delegate.getByte(columnLabel); }
+    @Override public byte getByte(int columnIndex) throws SQLException { return delegate.getByte(columnIndex); }
+    @Override public byte[] getBytes(String columnLabel) throws SQLException { return delegate.getBytes(columnLabel); }
+    @Override public byte[] getBytes(int columnIndex) throws SQLException { return delegate.getBytes(columnIndex); }
+    @Override public double getDouble(String columnLabel) throws SQLException { return delegate.getDouble(columnLabel); }
+    @Override public double getDouble(int columnIndex) throws SQLException { return delegate.getDouble(columnIndex); }
+    @Override public float getFloat(String columnLabel) throws SQLException { return delegate.getFloat(columnLabel); }
+    @Override public float getFloat(int columnIndex) throws SQLException { return delegate.getFloat(columnIndex); }
+    @Override public int findColumn(String columnLabel) throws SQLException { return delegate.findColumn(columnLabel); }
+    @Override public int getConcurrency() throws SQLException { return delegate.getConcurrency(); }
+    @Override public int getFetchDirection() throws SQLException { return delegate.getFetchDirection(); }
+    @Override public int getFetchSize() throws SQLException { return delegate.getFetchSize(); }
+    @Override public int getHoldability() throws SQLException { return delegate.getHoldability(); }
+    @Override public int getInt(String columnLabel) throws SQLException { return delegate.getInt(columnLabel); }
+    @Override public int getInt(int columnIndex) throws SQLException { return delegate.getInt(columnIndex); }
+    @Override public int getRow() throws SQLException { return delegate.getRow(); }
+    @Override public int getType() throws SQLException { return delegate.getType(); }
+    @Override public java.io.InputStream getAsciiStream(String columnLabel) throws SQLException { return delegate.getAsciiStream(columnLabel); }
+    @Override public java.io.InputStream getAsciiStream(int columnIndex) throws SQLException { return delegate.getAsciiStream(columnIndex); }
+    @Override public java.io.InputStream getBinaryStream(String columnLabel) throws SQLException { return delegate.getBinaryStream(columnLabel); }
+    @Override public java.io.InputStream getBinaryStream(int columnIndex) throws SQLException { return delegate.getBinaryStream(columnIndex); }
+    @Override public java.io.InputStream getUnicodeStream(String columnLabel) throws SQLException { return delegate.getUnicodeStream(columnLabel); }
+    @Override public java.io.InputStream getUnicodeStream(int columnIndex) throws SQLException { return delegate.getUnicodeStream(columnIndex); }
+    @Override public java.io.Reader getCharacterStream(String columnLabel) throws SQLException { return delegate.getCharacterStream(columnLabel); }
+    @Override public java.io.Reader getCharacterStream(int columnIndex) throws SQLException { return delegate.getCharacterStream(columnIndex); }
+    @Override public java.io.Reader getNCharacterStream(String columnLabel) throws SQLException { return delegate.getNCharacterStream(columnLabel); }
+    @Override public java.io.Reader getNCharacterStream(int columnIndex) throws SQLException { return delegate.getNCharacterStream(columnIndex); }
+    @Override public java.math.BigDecimal getBigDecimal(String columnLabel) throws SQLException { return delegate.getBigDecimal(columnLabel); }
+    @Override public java.math.BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException { return delegate.getBigDecimal(columnLabel, scale); }
+    @Override public java.math.BigDecimal getBigDecimal(int columnIndex) throws SQLException { return delegate.getBigDecimal(columnIndex); }
+    @Override public java.math.BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException { return delegate.getBigDecimal(columnIndex, scale); }
+    @Override public java.net.URL getURL(String columnLabel) throws SQLException { return delegate.getURL(columnLabel); }
+    @Override public java.net.URL getURL(int columnIndex) throws SQLException { return delegate.getURL(columnIndex); }
+    @Override public long getLong(String columnLabel) throws SQLException { return delegate.getLong(columnLabel); }
+    @Override public long getLong(int columnIndex) throws SQLException { return delegate.getLong(columnIndex); }
+    @Override public short getShort(String columnLabel) throws SQLException { return delegate.getShort(columnLabel); }
+    @Override public short getShort(int columnIndex) throws SQLException { return delegate.getShort(columnIndex); }
+    @Override public void afterLast() throws SQLException { delegate.afterLast(); }
+    @Override public void beforeFirst() throws SQLException { delegate.beforeFirst(); }
+    @Override public void cancelRowUpdates() throws SQLException { delegate.cancelRowUpdates(); }
+    @Override public void clearWarnings() throws SQLException { delegate.clearWarnings(); }
+    @Override public void deleteRow() throws SQLException { delegate.deleteRow(); }
+    @Override public void insertRow() throws SQLException { delegate.insertRow(); }
+    @Override public void moveToCurrentRow() throws SQLException { delegate.moveToCurrentRow(); }
+    @Override public void moveToInsertRow() throws SQLException { delegate.moveToInsertRow(); }
+    @Override public void refreshRow() throws SQLException { delegate.refreshRow(); }
+    @Override public void setFetchDirection(int direction) throws SQLException { delegate.setFetchDirection(direction); }
+    @Override public void setFetchSize(int rows) throws SQLException { delegate.setFetchSize(rows); }
+    @Override public void updateArray(String columnLabel, Array x) throws SQLException { delegate.updateArray(columnLabel, x); }
+    @Override public void updateArray(int columnIndex, Array x) throws SQLException { delegate.updateArray(columnIndex, x); }
+    @Override public void updateAsciiStream(String columnLabel, java.io.InputStream inputStream) throws SQLException { delegate.updateAsciiStream(columnLabel, inputStream); }
+    @Override public void updateAsciiStream(String columnLabel, java.io.InputStream inputStream, int length) throws SQLException { delegate.updateAsciiStream(columnLabel, inputStream, length); }
+    @Override public void updateAsciiStream(String columnLabel, java.io.InputStream inputStream, long length) throws SQLException { delegate.updateAsciiStream(columnLabel, inputStream, length); }
+    @Override public void updateAsciiStream(int columnIndex, java.io.InputStream inputStream) throws SQLException { delegate.updateAsciiStream(columnIndex, inputStream); }
+    @Override public void updateAsciiStream(int columnIndex, java.io.InputStream inputStream, int length) throws SQLException { delegate.updateAsciiStream(columnIndex, inputStream, length); }
+    @Override public void updateAsciiStream(int columnIndex, java.io.InputStream inputStream, long length) throws SQLException { delegate.updateAsciiStream(columnIndex, inputStream, length); }
+    @Override public void updateBigDecimal(String columnLabel, java.math.BigDecimal x) throws SQLException { delegate.updateBigDecimal(columnLabel, x); }
+    @Override public void updateBigDecimal(int columnIndex, java.math.BigDecimal x) throws SQLException { delegate.updateBigDecimal(columnIndex, x); }
+    @Override public void updateBinaryStream(String columnLabel, java.io.InputStream inputStream) throws SQLException { delegate.updateBinaryStream(columnLabel, inputStream); }
+    @Override public void updateBinaryStream(String columnLabel, java.io.InputStream inputStream, int length) throws SQLException { delegate.updateBinaryStream(columnLabel, inputStream, length); }
+    @Override public void updateBinaryStream(String columnLabel, java.io.InputStream inputStream, long length) throws SQLException { delegate.updateBinaryStream(columnLabel, inputStream, length); }
+    @Override public void updateBinaryStream(int columnIndex, java.io.InputStream inputStream) throws SQLException { delegate.updateBinaryStream(columnIndex, inputStream); }
+    @Override public void updateBinaryStream(int columnIndex, java.io.InputStream inputStream, int length) throws SQLException { delegate.updateBinaryStream(columnIndex, inputStream, length); }
+    @Override public void updateBinaryStream(int columnIndex, java.io.InputStream inputStream, long length) throws SQLException { delegate.updateBinaryStream(columnIndex, inputStream, length); }
+    @Override public void updateBlob(String columnLabel, Blob x) throws SQLException { delegate.updateBlob(columnLabel, x); }
+    @Override public void updateBlob(String columnLabel, java.io.InputStream inputStream) throws SQLException { delegate.updateBlob(columnLabel, inputStream); }
+    @Override public void updateBlob(String columnLabel, java.io.InputStream inputStream, long length) throws SQLException { delegate.updateBlob(columnLabel, inputStream, length); }
+    @Override public void updateBlob(int columnIndex, Blob x) throws SQLException { delegate.updateBlob(columnIndex, x); }
+    @Override public void updateBlob(int columnIndex, java.io.InputStream inputStream) throws SQLException { delegate.updateBlob(columnIndex, inputStream); }
+    @Override public void updateBlob(int columnIndex, java.io.InputStream inputStream, long length) throws SQLException { delegate.updateBlob(columnIndex, inputStream, length); }
+    @Override public void updateBoolean(String columnLabel, boolean x) throws SQLException { delegate.updateBoolean(columnLabel, x); }
+    @Override public void updateBoolean(int columnIndex, boolean x) throws SQLException { delegate.updateBoolean(columnIndex, x); }
+    @Override public void updateByte(String columnLabel, byte x) throws SQLException { delegate.updateByte(columnLabel, x); }
+    @Override public void updateByte(int columnIndex, byte x) throws SQLException { delegate.updateByte(columnIndex, x); }
+    @Override public void updateBytes(String columnLabel, byte[] x) throws SQLException { delegate.updateBytes(columnLabel, x); }
+    @Override public void updateBytes(int columnIndex, byte[] x) throws SQLException { delegate.updateBytes(columnIndex, x); }
+    @Override public void updateCharacterStream(String columnLabel, java.io.Reader reader) throws SQLException { delegate.updateCharacterStream(columnLabel, reader); }
+    @Override public void updateCharacterStream(String columnLabel, java.io.Reader reader, int length) throws SQLException { delegate.updateCharacterStream(columnLabel, reader, length); }
+    @Override public void updateCharacterStream(String columnLabel, java.io.Reader reader, long length) throws SQLException { delegate.updateCharacterStream(columnLabel, reader, length); }
+    @Override public void updateCharacterStream(int columnIndex, java.io.Reader reader) throws SQLException { delegate.updateCharacterStream(columnIndex, reader); }
+    @Override public void updateCharacterStream(int columnIndex, java.io.Reader reader, int length) throws SQLException { delegate.updateCharacterStream(columnIndex, reader, length); }
+    @Override public void updateCharacterStream(int columnIndex, java.io.Reader reader, long length) throws SQLException { delegate.updateCharacterStream(columnIndex, reader, length); }
+    @Override public void updateClob(String columnLabel, Clob x) throws SQLException { delegate.updateClob(columnLabel, x); }
+    @Override public void updateClob(String columnLabel, java.io.Reader reader) throws SQLException { delegate.updateClob(columnLabel, reader); }
+    @Override public void updateClob(String columnLabel, java.io.Reader reader, long length) throws SQLException { delegate.updateClob(columnLabel, reader, length); }
+    @Override public void updateClob(int columnIndex, Clob x) throws SQLException { delegate.updateClob(columnIndex, x); }
+    @Override public void updateClob(int columnIndex, java.io.Reader reader) throws SQLException { delegate.updateClob(columnIndex, reader); }
+    @Override public void updateClob(int columnIndex, java.io.Reader reader, long length) throws SQLException { delegate.updateClob(columnIndex, reader, length); }
+    @Override public void updateDate(String columnLabel, Date x) throws SQLException { delegate.updateDate(columnLabel, x); }
+    @Override public void updateDate(int columnIndex, Date x) throws SQLException { delegate.updateDate(columnIndex, x); }
+    @Override public void updateDouble(String columnLabel, double x) throws SQLException { delegate.updateDouble(columnLabel, x); }
+    @Override public void updateDouble(int columnIndex, double x) throws SQLException { delegate.updateDouble(columnIndex, x); }
+    @Override public void updateFloat(String columnLabel, float x) throws SQLException { delegate.updateFloat(columnLabel, x); }
+    @Override public void updateFloat(int columnIndex, float x) throws SQLException { delegate.updateFloat(columnIndex, x); }
+    @Override public void updateInt(String columnLabel, int x) throws SQLException { delegate.updateInt(columnLabel, x); }
+    @Override public void updateInt(int columnIndex, int x) throws SQLException { delegate.updateInt(columnIndex, x); }
+    @Override public void updateLong(String columnLabel, long x) throws SQLException { delegate.updateLong(columnLabel, x); }
+    @Override public void updateLong(int columnIndex, long x) throws SQLException { delegate.updateLong(columnIndex, x); }
+    @Override public void updateNCharacterStream(String columnLabel, java.io.Reader reader) throws SQLException { delegate.updateNCharacterStream(columnLabel, reader); }
+    @Override public void updateNCharacterStream(String columnLabel, java.io.Reader reader, long length) throws SQLException { delegate.updateNCharacterStream(columnLabel, reader, length); }
+    @Override public void updateNCharacterStream(int columnIndex, java.io.Reader reader) throws SQLException { delegate.updateNCharacterStream(columnIndex, reader); }
+    @Override public void updateNCharacterStream(int columnIndex, java.io.Reader reader, long length) throws SQLException { delegate.updateNCharacterStream(columnIndex, reader, length); }
+    @Override public void updateNClob(String columnLabel, NClob x) throws SQLException { delegate.updateNClob(columnLabel, x); }
+    @Override public void updateNClob(String columnLabel, java.io.Reader reader) throws SQLException { delegate.updateNClob(columnLabel, reader); }
+    @Override public void updateNClob(String columnLabel, java.io.Reader reader, long length) throws SQLException { delegate.updateNClob(columnLabel, reader, length); }
+    @Override public void updateNClob(int columnIndex, NClob x) throws SQLException { delegate.updateNClob(columnIndex, x); }
+    @Override public void updateNClob(int columnIndex, java.io.Reader reader) throws SQLException { delegate.updateNClob(columnIndex, reader); }
+    @Override public void updateNClob(int columnIndex, java.io.Reader reader, long length) throws SQLException { delegate.updateNClob(columnIndex, reader, length); }
+    @Override public void updateNString(String columnLabel, String x) throws SQLException { delegate.updateNString(columnLabel, x); }
+    @Override public void updateNString(int columnIndex, String x) throws SQLException { delegate.updateNString(columnIndex, x); }
+    @Override public void updateNull(String columnLabel) throws SQLException { delegate.updateNull(columnLabel); }
+    @Override public void updateNull(int columnIndex) throws SQLException { delegate.updateNull(columnIndex); }
+    @Override public void updateObject(String columnLabel, Object x) throws SQLException { delegate.updateObject(columnLabel, x); }
+    @Override public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException { delegate.updateObject(columnLabel, x, scaleOrLength); }
+    @Override public void updateObject(int columnIndex, Object x) throws SQLException { delegate.updateObject(columnIndex, x); }
+    @Override public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException { delegate.updateObject(columnIndex, x, scaleOrLength); }
+    @Override public void updateRef(String columnLabel, Ref x) throws SQLException { delegate.updateRef(columnLabel, x); }
+    @Override public void updateRef(int columnIndex, Ref x) throws SQLException { delegate.updateRef(columnIndex, x); }
+    @Override public void updateRow() throws SQLException { delegate.updateRow(); }
+    @Override public void updateRowId(String columnLabel, RowId x) throws SQLException { delegate.updateRowId(columnLabel, x); }
+    @Override public void updateRowId(int columnIndex, RowId x) throws SQLException { delegate.updateRowId(columnIndex, x); }
+    @Override public void updateSQLXML(String columnLabel, SQLXML x) throws SQLException { delegate.updateSQLXML(columnLabel, x); }
+    @Override public void updateSQLXML(int columnIndex, SQLXML x) throws SQLException { delegate.updateSQLXML(columnIndex, x); }
+    @Override public void updateShort(String columnLabel, short x) throws SQLException { delegate.updateShort(columnLabel, x); }
+    @Override public void updateShort(int columnIndex, short x) throws SQLException { delegate.updateShort(columnIndex, x); }
+    @Override public void updateString(String columnLabel, String x) throws SQLException { delegate.updateString(columnLabel, x); }
+    @Override public void updateString(int columnIndex, String x) throws SQLException { delegate.updateString(columnIndex, x); }
+    @Override public void updateTime(String columnLabel, Time x) throws SQLException { delegate.updateTime(columnLabel, x); }
+    @Override public void updateTime(int columnIndex, Time x) throws SQLException { delegate.updateTime(columnIndex, x); }
+    @Override public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException { delegate.updateTimestamp(columnLabel, x); }
+    @Override public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException { delegate.updateTimestamp(columnIndex, x); }
+}
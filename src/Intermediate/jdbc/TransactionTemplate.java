@@ -0,0 +1,111 @@
+package Intermediate.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a callback as one transaction on a pooled connection
+ *
+ * The transaction commits when the callback returns and rolls back when it throws. Repository
+ * operations that take a Transaction run on its connection instead of borrowing their own, so
+ * any number of them compose into one unit of work.
+ *
+ * In a real application this is Spring's TransactionTemplate or @Transactional.
+ */
+class TransactionTemplate {
+    private final ConnectionManager connectionManager;
+
+    TransactionTemplate(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    <T> T execute(TransactionCallback<T> callback) throws SQLException {
+        Connection conn = connectionManager.getConnection();
+        Transaction transaction = new Transaction(conn);
+        try {
+            conn.setAutoCommit(false);
+            T result = callback.doInTransaction(transaction);
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            rollback(conn, e);
+            throw e;
+        } finally {
+            close(conn);
+            transaction.complete();
+        }
+    }
+
+    /**
+     * Roll back after failure, keeping a rollback error as suppressed by it
+     */
+    static void rollback(Connection conn, Exception failure) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Hand the connection back to the pool, which restores auto-commit
+     */
+    static void close(Connection conn) {
+        // Not setAutoCommit(true): after a failed rollback that would commit whatever is left
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+}
+
+/**
+ * Work to run in a transaction; it must not commit, roll back or close the connection itself
+ */
+@FunctionalInterface
+interface TransactionCallback<T> {
+    T doInTransaction(Transaction transaction) throws SQLException;
+}
+
+/**
+ * A transaction in progress, handed to a TransactionCallback
+ */
+class Transaction {
+    private final Connection connection;
+    private List<Runnable> completionCallbacks;
+
+    Transaction(Connection connection) {
+        this.connection = connection;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Run the callback once the transaction has committed or rolled back
+     */
+    public void afterCompletion(Runnable callback) {
+        if (completionCallbacks == null) {
+            completionCallbacks = new ArrayList<>();
+        }
+        completionCallbacks.add(callback);
+    }
+
+    void complete() {
+        if (completionCallbacks == null) {
+            return;
+        }
+        for (Runnable callback : completionCallbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error in transaction completion callback: " + e.getMessage());
+            }
+        }
+        completionCallbacks = null;
+    }
+}
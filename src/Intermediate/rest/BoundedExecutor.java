@@ -0,0 +1,231 @@
+package Intermediate.rest;
+
+import Intermediate.metrics.LatencyHistogram;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Fixed pool of daemon worker threads behind a bounded queue, with queue depth and latency metrics
+ *
+ * When every worker is busy and the queue is full, submit() fails the returned future with
+ * RejectedExecutionException right away instead of piling up work. Each call has a timeout,
+ * counted from submission or, for callers that pace their own submissions, from the moment a
+ * worker starts the call. When it expires, or when the future is cancelled, only the
+ * caller's future fails: a call still in the queue is dropped, but a running one is left to
+ * finish and its result is discarded. It is not interrupted, because it may be work that
+ * other callers share, such as the single GET that RestTemplateClient coalesces concurrent
+ * lookups of one user into.
+ */
+class BoundedExecutor {
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    // From submission to completion, whatever the outcome
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    BoundedExecutor(String name, int threads, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @param timeoutMillis 0 for no timeout; counted from submission, so time spent queued counts
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> task, long timeoutMillis) {
+        return submit(task, timeoutMillis, true);
+    }
+
+    /**
+     * @param timeoutMillis   0 for no timeout
+     * @param countQueuedTime whether the timeout starts at submission rather than when a worker starts the call
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> task, long timeoutMillis, boolean countQueuedTime) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long submittedAt = System.nanoTime();
+        FutureTask<Void> work = new FutureTask<>(() -> {
+            // Timed out or cancelled just as a worker took it from the queue
+            if (result.isDone()) {
+                return;
+            }
+            if (timeoutMillis > 0 && !countQueuedTime) {
+                result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, null);
+        try {
+            executor.execute(work);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(e);
+            return result;
+        }
+        submitted.increment();
+        int depth = executor.getQueue().size();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+
+        if (timeoutMillis > 0 && countQueuedTime) {
+            result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        result.whenComplete((value, failure) -> {
+            latency.record(System.nanoTime() - submittedAt);
+            if (failure == null) {
+                succeeded.increment();
+                return;
+            }
+            if (failure instanceof TimeoutException || failure instanceof CancellationException) {
+                if (failure instanceof TimeoutException) {
+                    timedOut.increment();
+                } else {
+                    cancelled.increment();
+                }
+                // Nobody waits for this result any more; drop the call if it has not started
+                if (executor.remove(work)) {
+                    work.cancel(false);
+                }
+            } else {
+                failed.increment();
+            }
+        });
+        return result;
+    }
+
+    AsyncMetrics getMetrics() {
+        return new AsyncMetrics(executor.getQueue().size(), maxQueueDepth.get(), executor.getActiveCount(),
+                submitted.sum(), succeeded.sum(), failed.sum(), timedOut.sum(), cancelled.sum(), rejected.sum(),
+                latency);
+    }
+
+    /**
+     * Stop accepting calls; queued ones still run
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
+
+/**
+ * Point-in-time view of a BoundedExecutor
+ */
+class AsyncMetrics {
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final int active;
+    private final long submitted;
+    private final long succeeded;
+    private final long failed;
+    private final long timedOut;
+    private final long cancelled;
+    private final long rejected;
+    private final double meanLatencyMillis;
+    private final double p99LatencyMillis;
+    private final double maxLatencyMillis;
+
+    AsyncMetrics(int queueDepth, int maxQueueDepth, int active, long submitted, long succeeded, long failed,
+                 long timedOut, long cancelled, long rejected, LatencyHistogram latency) {
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.active = active;
+        this.submitted = submitted;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.timedOut = timedOut;
+        this.cancelled = cancelled;
+        this.rejected = rejected;
+        this.meanLatencyMillis = latency.meanNanos() / 1e6;
+        this.p99LatencyMillis = latency.percentileNanos(0.99) / 1e6;
+        this.maxLatencyMillis = latency.maxNanos() / 1e6;
+    }
+
+    /**
+     * Calls waiting for a worker
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getTimedOut() {
+        return timedOut;
+    }
+
+    public long getCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Calls turned away because the queue was full
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * From submission to completion, including time in the queue
+     */
+    public double getMeanLatencyMillis() {
+        return meanLatencyMillis;
+    }
+
+    public double getP99LatencyMillis() {
+        return p99LatencyMillis;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AsyncMetrics [queueDepth=%d, maxQueueDepth=%d, active=%d, submitted=%d, succeeded=%d, "
+                        + "failed=%d, timedOut=%d, cancelled=%d, rejected=%d, latencyMean=%.1fms, latencyP99=%.1fms, "
+                        + "latencyMax=%.1fms]",
+                queueDepth, maxQueueDepth, active, submitted, succeeded, failed, timedOut, cancelled, rejected,
+                meanLatencyMillis, p99LatencyMillis, maxLatencyMillis);
+    }
+}
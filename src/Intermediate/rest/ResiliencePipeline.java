@@ -0,0 +1,405 @@
+package Intermediate.rest;
+
+import Intermediate.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Retry, circuit breaker and bulkhead around each remote call, kept separately per endpoint
+ *
+ * A call passes through them in that order, as in Resilience4j's default decoration:
+ * - Retry: an idempotent call that failed with a network error, a timeout or a 5xx status is
+ *   tried again up to maxAttempts times in total. The backoff doubles with every attempt up
+ *   to maxBackoff and is drawn at random below that ("full jitter"), so clients that failed
+ *   together do not retry in lockstep. POST is never retried.
+ * - Circuit breaker: once failureRateThreshold percent of the last slidingWindowSize calls
+ *   (and at least minimumCalls) have failed, calls fail right away with
+ *   CallNotPermittedException for openDuration. Then a single trial call decides whether the
+ *   breaker closes again or stays open for another openDuration. Errors with a 4xx status
+ *   count as successes: the server answered and is healthy.
+ * - Bulkhead: at most maxConcurrentCalls run at once per endpoint. A call that cannot get a
+ *   slot within maxWait fails with CallNotPermittedException instead of tying up its thread
+ *   behind a slow upstream.
+ *
+ * A rejected call is not retried: retrying would only add load to what is already overloaded.
+ */
+class ResiliencePipeline {
+    private final RestClientConfig config;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    ResiliencePipeline(RestClientConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Run the call for the endpoint, e.g. "GET /users/{id}", through the pipeline
+     *
+     * @param idempotent whether the call may be repeated after a failure
+     */
+    <T> T execute(String endpoint, boolean idempotent, Supplier<T> call) {
+        Endpoint target = endpoints.computeIfAbsent(endpoint, name -> new Endpoint(name, config));
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    T result = target.attempt(call);
+                    target.succeeded.increment();
+                    return result;
+                } catch (RuntimeException e) {
+                    if (!idempotent || attempt >= config.getMaxAttempts() || !isRetryable(e)
+                            || Thread.currentThread().isInterrupted()) {
+                        target.failed.increment();
+                        throw e;
+                    }
+                    target.retries.increment();
+                    backOff(attempt);
+                }
+            }
+        } finally {
+            target.latency.record(System.nanoTime() - start);
+        }
+    }
+
+    // Full jitter: a random delay up to initialBackoff * 2^(attempt - 1), capped at maxBackoff
+    private void backOff(int attempt) {
+        long ceiling = Math.min(config.getMaxBackoff(), config.getInitialBackoff() << Math.min(attempt - 1, 30));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestClientException("Interrupted", 0, e);
+        }
+    }
+
+    // The server did not answer, or answered that it is failing
+    static boolean isUpstreamFailure(RuntimeException e) {
+        if (e instanceof CallNotPermittedException) {
+            return false;
+        }
+        if (e instanceof RestClientException) {
+            int statusCode = ((RestClientException) e).getStatusCode();
+            return statusCode == 0 || statusCode >= 500;
+        }
+        return true;
+    }
+
+    private static boolean isRetryable(RuntimeException e) {
+        return e instanceof RestClientException && isUpstreamFailure(e);
+    }
+
+    /**
+     * Breaker state, outcomes and latency of every endpoint called so far, by endpoint
+     */
+    List<EndpointStats> getStats() {
+        List<EndpointStats> stats = new ArrayList<>();
+        for (Endpoint endpoint : endpoints.values()) {
+            stats.add(endpoint.getStats());
+        }
+        stats.sort((a, b) -> a.getEndpoint().compareTo(b.getEndpoint()));
+        return stats;
+    }
+
+    private static final class Endpoint {
+        final String name;
+        final CircuitBreaker circuitBreaker;
+        final Semaphore bulkhead;
+        final int maxConcurrentCalls;
+        final long maxWait;
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder bulkheadRejected = new LongAdder();
+        // Per call, from the first attempt to the final outcome, backoff included
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Endpoint(String name, RestClientConfig config) {
+            this.name = name;
+            this.circuitBreaker = new CircuitBreaker(name, config);
+            this.maxConcurrentCalls = config.getMaxConcurrentCalls();
+            this.bulkhead = new Semaphore(maxConcurrentCalls);
+            this.maxWait = config.getMaxWait();
+        }
+
+        <T> T attempt(Supplier<T> call) {
+            boolean trial = circuitBreaker.acquirePermission();
+            boolean recorded = false;
+            try {
+                boolean admitted;
+                try {
+                    admitted = bulkhead.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RestClientException("Interrupted", 0, e);
+                }
+                if (!admitted) {
+                    bulkheadRejected.increment();
+                    throw new CallNotPermittedException("Too many concurrent calls to " + name);
+                }
+                try {
+                    T result = call.get();
+                    circuitBreaker.onResult(trial, false);
+                    recorded = true;
+                    return result;
+                } catch (RuntimeException e) {
+                    // An interrupted call says nothing about the server
+                    if (!Thread.currentThread().isInterrupted()) {
+                        circuitBreaker.onResult(trial, isUpstreamFailure(e));
+                        recorded = true;
+                    }
+                    throw e;
+                } finally {
+                    bulkhead.release();
+                }
+            } finally {
+                if (!recorded) {
+                    circuitBreaker.releasePermission(trial);
+                }
+            }
+        }
+
+        EndpointStats getStats() {
+            return new EndpointStats(name, circuitBreaker.getState(), succeeded.sum(), failed.sum(), retries.sum(),
+                    circuitBreaker.getRejected(), bulkheadRejected.sum(),
+                    maxConcurrentCalls - bulkhead.availablePermits(), latency);
+        }
+    }
+}
+
+/**
+ * Counts the outcomes of recent calls to one endpoint and stops calls while too many fail
+ */
+class CircuitBreaker {
+
+    enum State {
+        // Calls go through; outcomes are counted
+        CLOSED,
+        // Calls are rejected until openDuration has passed
+        OPEN,
+        // One trial call goes through and decides whether to close or open again
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    // Guarded by this: the outcomes of the last calls, true for a failure
+    private final boolean[] window;
+    private int next;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInProgress;
+    private final LongAdder rejected = new LongAdder();
+
+    CircuitBreaker(String name, RestClientConfig config) {
+        this.name = name;
+        this.failureRateThreshold = config.getFailureRateThreshold();
+        this.window = new boolean[config.getSlidingWindowSize()];
+        this.minimumCalls = Math.min(config.getMinimumCalls(), window.length);
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(config.getOpenDuration());
+    }
+
+    /**
+     * Let a call through or throw CallNotPermittedException; true if the call is the half-open trial
+     */
+    synchronized boolean acquirePermission() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+            state = State.HALF_OPEN;
+            trialInProgress = false;
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && trialInProgress)) {
+            rejected.increment();
+            throw new CallNotPermittedException("Circuit breaker for " + name + " is " + state);
+        }
+        if (state == State.HALF_OPEN) {
+            trialInProgress = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record the outcome of a call let through by acquirePermission
+     */
+    synchronized void onResult(boolean trial, boolean failure) {
+        if (trial) {
+            trialInProgress = false;
+            if (failure) {
+                open();
+            } else {
+                close();
+            }
+            return;
+        }
+        // A call that started before the breaker opened
+        if (state != State.CLOSED) {
+            return;
+        }
+        if (recorded == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+        if (recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+            open();
+        }
+    }
+
+    /**
+     * For a call that was let through but never reached the server
+     */
+    synchronized void releasePermission(boolean trial) {
+        if (trial) {
+            trialInProgress = false;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recorded = 0;
+        failures = 0;
+        next = 0;
+    }
+
+    synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+}
+
+/**
+ * A call turned away by an open circuit breaker or a full bulkhead, without reaching the server
+ */
+class CallNotPermittedException extends RestClientException {
+    private static final long serialVersionUID = 1L;
+
+    public CallNotPermittedException(String message) {
+        super(message, 0);
+    }
+}
+
+/**
+ * Point-in-time view of one endpoint of a ResiliencePipeline
+ */
+class EndpointStats {
+    private final String endpoint;
+    private final CircuitBreaker.State state;
+    private final long succeeded;
+    private final long failed;
+    private final long retries;
+    private final long breakerRejected;
+    private final long bulkheadRejected;
+    private final int activeCalls;
+    private final double meanLatencyMillis;
+    private final double p99LatencyMillis;
+    private final double maxLatencyMillis;
+
+    EndpointStats(String endpoint, CircuitBreaker.State state, long succeeded, long failed, long retries,
+                  long breakerRejected, long bulkheadRejected, int activeCalls, LatencyHistogram latency) {
+        this.endpoint = endpoint;
+        this.state = state;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.retries = retries;
+        this.breakerRejected = breakerRejected;
+        this.bulkheadRejected = bulkheadRejected;
+        this.activeCalls = activeCalls;
+        this.meanLatencyMillis = latency.meanNanos() / 1e6;
+        this.p99LatencyMillis = latency.percentileNanos(0.99) / 1e6;
+        this.maxLatencyMillis = latency.maxNanos() / 1e6;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public CircuitBreaker.State getState() {
+        return state;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Calls that failed after their last attempt, rejections included
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * Attempts rejected because the circuit breaker was open
+     */
+    public long getBreakerRejected() {
+        return breakerRejected;
+    }
+
+    /**
+     * Attempts rejected because maxConcurrentCalls were already running
+     */
+    public long getBulkheadRejected() {
+        return bulkheadRejected;
+    }
+
+    public int getActiveCalls() {
+        return activeCalls;
+    }
+
+    /**
+     * Per call, from the first attempt to the final outcome
+     */
+    public double getMeanLatencyMillis() {
+        return meanLatencyMillis;
+    }
+
+    public double getP99LatencyMillis() {
+        return p99LatencyMillis;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EndpointStats [endpoint=%s, state=%s, succeeded=%d, failed=%d, retries=%d, "
+                        + "breakerRejected=%d, bulkheadRejected=%d, activeCalls=%d, latencyMean=%.1fms, "
+                        + "latencyP99=%.1fms, latencyMax=%.1fms]",
+                endpoint, state, succeeded, failed, retries, breakerRejected, bulkheadRejected, activeCalls,
+                meanLatencyMillis, p99LatencyMillis, maxLatencyMillis);
+    }
+}
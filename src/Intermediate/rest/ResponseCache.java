@@ -0,0 +1,324 @@
+package Intermediate.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Client-side cache of GET responses by URL, following the HTTP caching rules of the server
+ *
+ * A response is stored for as long as its Cache-Control max-age says and served from memory
+ * until then. Once it is stale the next request carries its ETag in If-None-Match, and a 304
+ * Not Modified answer makes it fresh again without transferring the body. Responses with
+ * no-store are never stored; no-cache ones are stored but revalidated on every use. The cache
+ * holds at most maximumSize responses and evicts the least recently used one beyond that. It
+ * stores and hands out copies, so callers may modify what they get.
+ *
+ * The client invalidates a URL after its own writes to it. A response that was being fetched
+ * while an invalidation happened is not stored, since it may show the state before the write.
+ * Writes by other clients are only seen once the response goes stale.
+ *
+ * In a real application this is the job of an HTTP client cache such as Apache HttpClient's
+ * CachingHttpClientBuilder or OkHttp's Cache.
+ */
+class ResponseCache<T> {
+    private final LinkedHashMap<String, CachedResponse<T>> responses;
+    private final UnaryOperator<T> copier;
+    private final boolean enabled;
+    // Guarded by this; grows with every invalidation
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder rejectedStores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maximumSize 0 disables caching
+     */
+    ResponseCache(int maximumSize, UnaryOperator<T> copier) {
+        this.copier = copier;
+        this.enabled = maximumSize > 0;
+        this.responses = new LinkedHashMap<String, CachedResponse<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse<T>> eldest) {
+                if (size() > maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * A copy of the cached body if it is still fresh, otherwise null
+     */
+    T getIfFresh(String url) {
+        if (!enabled) {
+            return null;
+        }
+        CachedResponse<T> cached;
+        synchronized (this) {
+            cached = responses.get(url);
+        }
+        if (cached == null || !cached.isFresh(System.nanoTime())) {
+            return null;
+        }
+        hits.increment();
+        return copier.apply(cached.body);
+    }
+
+    /**
+     * GET the URL through the cache: a fresh response is served from memory, a stale one is revalidated
+     *
+     * The request throws for errors other than 304, and those are passed on unchanged.
+     */
+    T get(String url, ConditionalRequest<T> request) {
+        if (!enabled) {
+            return request.execute(null).getBody();
+        }
+        CachedResponse<T> cached;
+        long stamp;
+        synchronized (this) {
+            cached = responses.get(url);
+            stamp = generation;
+        }
+        long now = System.nanoTime();
+        if (cached != null && cached.isFresh(now)) {
+            hits.increment();
+            return copier.apply(cached.body);
+        }
+
+        RestResponse<T> response = request.execute(cached == null ? null : cached.etag);
+        T body;
+        String etag;
+        if (response.getStatusCode() == RestResponse.NOT_MODIFIED && cached != null) {
+            revalidations.increment();
+            body = cached.body;
+            etag = response.getEtag() != null ? response.getEtag() : cached.etag;
+        } else {
+            fetches.increment();
+            body = copier.apply(response.getBody());
+            etag = response.getEtag();
+        }
+        store(url, body, etag, response.getCacheControl(), now, stamp);
+        return copier.apply(body);
+    }
+
+    private void store(String url, T body, String etag, String cacheControl, long requestedAt, long stamp) {
+        long maxAgeSeconds = maxAgeSeconds(cacheControl);
+        // A response that can neither be reused nor revalidated is not worth keeping
+        if (maxAgeSeconds < 0 || (maxAgeSeconds == 0 && etag == null)) {
+            return;
+        }
+        // Age counts from the request, so a slow response is not considered fresh for longer
+        long expiresAt = requestedAt + TimeUnit.SECONDS.toNanos(maxAgeSeconds);
+        synchronized (this) {
+            if (generation != stamp) {
+                rejectedStores.increment();
+                return;
+            }
+            responses.put(url, new CachedResponse<>(body, etag, expiresAt));
+        }
+    }
+
+    /**
+     * Seconds the response may be reused without revalidation; -1 if it must not be stored
+     */
+    static long maxAgeSeconds(String cacheControl) {
+        if (cacheControl == null) {
+            return 0;
+        }
+        long maxAge = 0;
+        for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+            directive = directive.trim();
+            if (directive.equals("no-store")) {
+                return -1;
+            }
+            if (directive.equals("no-cache")) {
+                return 0;
+            }
+            if (directive.startsWith("max-age=")) {
+                try {
+                    maxAge = Math.max(0, Long.parseLong(directive.substring("max-age=".length()).trim()));
+                } catch (NumberFormatException e) {
+                    // A malformed max-age makes the response stale right away (RFC 9111, 4.2.1)
+                    maxAge = 0;
+                }
+            }
+        }
+        return maxAge;
+    }
+
+    /**
+     * Drop the cached response, and keep responses already being fetched from being stored
+     */
+    void invalidate(String url) {
+        synchronized (this) {
+            generation++;
+            if (responses.remove(url) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    synchronized int size() {
+        return responses.size();
+    }
+
+    ResponseCacheStats getStats() {
+        return new ResponseCacheStats(size(), hits.sum(), revalidations.sum(), fetches.sum(), rejectedStores.sum(),
+                evictions.sum(), invalidations.sum());
+    }
+
+    /**
+     * The request to send on a cache miss or for revalidation
+     */
+    @FunctionalInterface
+    interface ConditionalRequest<T> {
+        /**
+         * @param ifNoneMatch ETag of the stale cached response, or null for an unconditional GET
+         */
+        RestResponse<T> execute(String ifNoneMatch);
+    }
+
+    private static final class CachedResponse<T> {
+        final T body;
+        final String etag;
+        final long expiresAt;
+
+        CachedResponse(T body, String etag, long expiresAt) {
+            this.body = body;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh(long now) {
+            return now - expiresAt < 0;
+        }
+    }
+}
+
+/**
+ * Status, caching headers and body of a response
+ *
+ * In a real application this is Spring's ResponseEntity, with the headers read through
+ * getHeaders().getETag() and getHeaders().getCacheControl().
+ */
+class RestResponse<T> {
+    static final int OK = 200;
+    static final int NOT_MODIFIED = 304;
+
+    private final int statusCode;
+    private final T body;
+    private final String etag;
+    private final String cacheControl;
+
+    RestResponse(int statusCode, T body, String etag, String cacheControl) {
+        this.statusCode = statusCode;
+        this.body = body;
+        this.etag = etag;
+        this.cacheControl = cacheControl;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Null for 304 Not Modified
+     */
+    public T getBody() {
+        return body;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getCacheControl() {
+        return cacheControl;
+    }
+}
+
+/**
+ * Point-in-time view of a ResponseCache
+ */
+class ResponseCacheStats {
+    private final int size;
+    private final long hits;
+    private final long revalidations;
+    private final long fetches;
+    private final long rejectedStores;
+    private final long evictions;
+    private final long invalidations;
+
+    ResponseCacheStats(int size, long hits, long revalidations, long fetches, long rejectedStores, long evictions,
+                       long invalidations) {
+        this.size = size;
+        this.hits = hits;
+        this.revalidations = revalidations;
+        this.fetches = fetches;
+        this.rejectedStores = rejectedStores;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Requests served from memory without contacting the server
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Stale responses the server confirmed with 304 Not Modified
+     */
+    public long getRevalidations() {
+        return revalidations;
+    }
+
+    /**
+     * Requests the server answered with a full body
+     */
+    public long getFetches() {
+        return fetches;
+    }
+
+    /**
+     * Responses not stored because the URL was invalidated while they were fetched
+     */
+    public long getRejectedStores() {
+        return rejectedStores;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public double getHitRatio() {
+        long requests = hits + revalidations + fetches;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResponseCacheStats [size=%d, hits=%d, revalidations=%d, fetches=%d, hitRatio=%.2f, "
+                        + "rejectedStores=%d, evictions=%d, invalidations=%d]",
+                size, hits, revalidations, fetches, getHitRatio(), rejectedStores, evictions, invalidations);
+    }
+}
@@ -2,10 +2,24 @@ package Intermediate.rest;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -84,6 +98,141 @@ public class RestTemplateDemo {
         client.getUserByIdAsync(4, user4 -> {
             System.out.println("Async callback received user: " + user4);
         });
+        client.getUserByIdAsync(999, new RestTemplateClient.UserCallback() {
+            @Override
+            public void onUserReceived(User user) {
+                System.out.println("Async callback received user: " + user);
+            }
+
+            @Override
+            public void onError(RestClientException e) {
+                System.out.println("Async callback received error: " + e.getMessage() + " (" + e.getStatusCode() + ")");
+            }
+        });
+
+        // Batched GET example: one call per user, run in parallel
+        System.out.println("\n10. Batched GET Request Example:");
+        long start = System.nanoTime();
+        List<User> batch = client.getUsersByIds(Arrays.asList(1, 3, 4, 999, 1));
+        System.out.printf("Retrieved %d users in %d ms:%n", batch.size(), (System.nanoTime() - start) / 1_000_000);
+        for (User u : batch) {
+            System.out.println("  - " + u);
+        }
+
+        // Concurrent GETs for the same user share one remote call
+        System.out.println("\n11. Request Coalescing Example:");
+        // A user not read before, so the calls are not served from the response cache
+        int coalescedId = createdUser.getId();
+        int callers = 10;
+        long fetchesBefore = client.getFetchCount();
+        ExecutorService burst = Executors.newFixedThreadPool(callers);
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<User>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(burst.submit(() -> {
+                startGate.await();
+                return client.getUserById(coalescedId);
+            }));
+        }
+        startGate.countDown();
+        try {
+            for (Future<User> result : results) {
+                result.get();
+            }
+        } catch (Exception e) {
+            System.out.println("Error occurred: " + e.getMessage());
+        } finally {
+            burst.shutdown();
+        }
+        System.out.println(callers + " concurrent calls for user " + coalescedId + " made " + (client.getFetchCount() - fetchesBefore)
+                + " remote call(s); " + client.getCoalescedCount() + " call(s) coalesced so far");
+
+        // Async API returning CompletableFuture, with a timeout per call
+        System.out.println("\n12. CompletableFuture Async Example:");
+        List<CompletableFuture<User>> futures = new ArrayList<>();
+        for (int id : Arrays.asList(1, 3, 4, 999)) {
+            futures.add(client.getUserByIdAsync(id));
+        }
+        for (CompletableFuture<User> future : futures) {
+            try {
+                System.out.println("  - " + future.join());
+            } catch (CompletionException e) {
+                System.out.println("  - failed: " + e.getCause().getMessage());
+            }
+        }
+        RestClientConfig impatientConfig = new RestClientConfig();
+        impatientConfig.setAsyncTimeout(50);
+        RestTemplateClient impatientClient = new RestTemplateClient(impatientConfig);
+        try {
+            impatientClient.getUserByIdAsync(1).join();
+        } catch (CompletionException e) {
+            System.out.println("Call with a 50 ms timeout failed: " + e.getCause());
+        }
+        System.out.println(client.getAsyncMetrics());
+
+        // Response cache: fresh responses come from memory, stale ones are revalidated by ETag
+        System.out.println("\n13. Response Cache Example:");
+        RestTemplateClient cachingClient = new RestTemplateClient();
+        for (int i = 1; i <= 2; i++) {
+            start = System.nanoTime();
+            cachingClient.getUserById(4);
+            System.out.printf("GET user 4 (max-age=60), call %d: %d ms%n", i, (System.nanoTime() - start) / 1_000_000);
+        }
+        cachingClient.setSimulatedCacheControl("no-cache");
+        cachingClient.getUserById(3);
+        long fetchesBeforeRevalidation = cachingClient.getResponseCacheStats().getFetches();
+        User revalidated = cachingClient.getUserById(3);
+        System.out.println("GET user 3 (no-cache) again: " + revalidated + ", body transferred: "
+                + (cachingClient.getResponseCacheStats().getFetches() > fetchesBeforeRevalidation));
+        cachingClient.updateUser(new User(3, "Bob Johnson", "bob.johnson@example.com", "active"));
+        System.out.println("GET user 3 after updating it: " + cachingClient.getUserById(3));
+        System.out.println(cachingClient.getResponseCacheStats());
+
+        // Retry, circuit breaker and bulkhead against a failing and then a slow server
+        System.out.println("\n14. Resilience Example:");
+        RestClientConfig resilientConfig = new RestClientConfig();
+        resilientConfig.setSlidingWindowSize(10);
+        resilientConfig.setMinimumCalls(4);
+        resilientConfig.setOpenDuration(500);
+        resilientConfig.setInitialBackoff(20);
+        resilientConfig.setMaxConcurrentCalls(2);
+        RestTemplateClient resilientClient = new RestTemplateClient(resilientConfig);
+        resilientClient.setSimulatedErrorStatus(503);
+        for (int i = 1; i <= 3; i++) {
+            start = System.nanoTime();
+            try {
+                resilientClient.getUserById(1);
+            } catch (RestClientException e) {
+                System.out.printf("GET user 1 while the server returns 503, call %d: %s after %d ms%n",
+                        i, e.getMessage(), (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+        resilientClient.setSimulatedErrorStatus(0);
+        try {
+            Thread.sleep(resilientConfig.getOpenDuration());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("GET user 1 once the server has recovered: " + resilientClient.getUserById(1));
+
+        resilientClient.setSimulatedLatency(300);
+        ExecutorService slowCallers = Executors.newFixedThreadPool(4);
+        List<Future<List<User>>> searches = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            searches.add(slowCallers.submit(() -> resilientClient.searchUsers("John", "active")));
+        }
+        for (Future<List<User>> search : searches) {
+            try {
+                search.get();
+                System.out.println("Search against the slow server succeeded");
+            } catch (Exception e) {
+                System.out.println("Search against the slow server failed: " + e.getCause().getMessage());
+            }
+        }
+        slowCallers.shutdown();
+        for (EndpointStats endpointStats : resilientClient.getResilienceStats()) {
+            System.out.println(endpointStats);
+        }
 
         System.out.println("\nAll examples completed. In a real application, these would make actual HTTP requests.");
     }
@@ -101,13 +250,39 @@ class RestTemplateClient {
 
     // Simulate a database of users
     private Map<Integer, User> userDatabase;
+    // Cache-Control header the simulated server sends with each user
+    private volatile String simulatedCacheControl = "max-age=60";
+    // Round trip of a simulated request, and the error status the simulated server fails with (0 for none)
+    private volatile long simulatedLatencyMillis = 100;
+    private volatile int simulatedErrorStatus;
+
+    // GETs in progress by user id, shared by concurrent callers for the same user
+    private final Map<Integer, CompletableFuture<User>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final RestClientConfig config;
+    private final ResponseCache<User> responseCache;
+    private final ResiliencePipeline resilience;
+    // Runs the async calls, including those of getUsersByIds
+    private final BoundedExecutor asyncExecutor;
 
     public RestTemplateClient() {
+        this(new RestClientConfig());
+    }
+
+    public RestTemplateClient(RestClientConfig config) {
         // In a real application:
-        // this.restTemplate = new RestTemplate();
+        // SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        // requestFactory.setReadTimeout((int) config.getReadTimeout());
+        // this.restTemplate = new RestTemplate(requestFactory);
+
+        this.config = config;
+        resilience = new ResiliencePipeline(config);
+        responseCache = new ResponseCache<>(config.getCacheMaximumSize(), RestTemplateClient::copyOf);
+        asyncExecutor = new BoundedExecutor("rest-client", config.getAsyncThreads(), config.getAsyncQueueCapacity());
 
         // Initialize our mock database
-        userDatabase = new HashMap<>();
+        userDatabase = new ConcurrentHashMap<>();
         userDatabase.put(1, new User(1, "John Smith", "john.smith@example.com", "active"));
         userDatabase.put(2, new User(2, "Jane Doe", "jane.doe@example.com", "active"));
         userDatabase.put(3, new User(3, "Bob Johnson", "bob.johnson@example.com", "inactive"));
@@ -116,17 +291,225 @@ class RestTemplateClient {
 
     /**
      * GET request to retrieve a user by ID
+     *
+     * A fresh cached response is returned without a remote call. Otherwise concurrent calls for
+     * the same ID are coalesced: only the first one goes to the server and the others wait for
+     * its result or its exception. Each caller gets its own copy of the user, so one caller's
+     * changes are not seen by the others.
      */
     public User getUserById(int id) {
+        User cached = responseCache.getIfFresh(userUrl(id));
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<User> call = new CompletableFuture<>();
+        CompletableFuture<User> existing = inFlight.putIfAbsent(id, call);
+        if (existing != null) {
+            coalesced.increment();
+            return copyOf(join(existing));
+        }
+        try {
+            User user = fetchUser(id);
+            call.complete(user);
+            return user;
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, call);
+        }
+    }
+
+    private User fetchUser(int id) {
         // In a real application:
-        // return restTemplate.getForObject(BASE_URL + "/users/" + id, User.class);
+        // return responseCache.get(userUrl(id), ifNoneMatch -> {
+        //     HttpHeaders headers = new HttpHeaders();
+        //     if (ifNoneMatch != null) {
+        //         headers.setIfNoneMatch(ifNoneMatch);
+        //     }
+        //     ResponseEntity<User> response = restTemplate.exchange(
+        //         userUrl(id), HttpMethod.GET, new HttpEntity<>(headers), User.class);
+        //     return new RestResponse<>(response.getStatusCodeValue(), response.getBody(),
+        //         response.getHeaders().getETag(), response.getHeaders().getCacheControl());
+        // });
 
         // Simulated implementation
+        return responseCache.get(userUrl(id),
+                ifNoneMatch -> resilience.execute("GET /users/{id}", true, () -> serveUser(id, ifNoneMatch)));
+    }
+
+    // What the server would answer to GET /users/{id}
+    private RestResponse<User> serveUser(int id, String ifNoneMatch) {
+        fetches.increment();
+        simulateRoundTrip();
         User user = userDatabase.get(id);
         if (user == null) {
             throw new RestClientException("User not found", 404);
         }
-        return user;
+        String etag = "\"" + Integer.toHexString(
+                Objects.hash(user.getId(), user.getName(), user.getEmail(), user.getStatus())) + "\"";
+        if (etag.equals(ifNoneMatch)) {
+            return new RestResponse<>(RestResponse.NOT_MODIFIED, null, etag, simulatedCacheControl);
+        }
+        return new RestResponse<>(RestResponse.OK, user, etag, simulatedCacheControl);
+    }
+
+    private static User copyOf(User user) {
+        return new User(user.getId(), user.getName(), user.getEmail(), user.getStatus());
+    }
+
+    private static String userUrl(int id) {
+        return BASE_URL + "/users/" + id;
+    }
+
+    /**
+     * GET each user in parallel on the async executor
+     *
+     * Duplicate IDs are fetched once and users that do not exist (404) are left out; the
+     * users come back in the order of their first ID. Any other error, including a timeout or
+     * a full async queue, fails the whole call.
+     *
+     * At most asyncThreads calls of the batch are submitted at a time; the next one waits for
+     * a free slot, so a large batch neither fills the queue nor waits in it. Each call's async
+     * timeout starts when a worker picks it up, so the batch may take as long as its size needs.
+     */
+    public List<User> getUsersByIds(Collection<Integer> ids) {
+        Semaphore slots = new Semaphore(config.getAsyncThreads());
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<User>> calls = new ArrayList<>();
+        for (int id : new LinkedHashSet<>(ids)) {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                calls.forEach(pending -> pending.cancel(false));
+                throw new RestClientException("Interrupted", 0, e);
+            }
+            // The batch fails anyway; the join below throws the failure
+            if (failed.get()) {
+                slots.release();
+                break;
+            }
+            CompletableFuture<User> call =
+                    asyncExecutor.submit(() -> getUserById(id), config.getAsyncTimeout(), false);
+            call.whenComplete((user, failure) -> {
+                if (failure != null && !isNotFound(failure)) {
+                    failed.set(true);
+                }
+                slots.release();
+            });
+            calls.add(call);
+        }
+
+        List<User> users = new ArrayList<>(calls.size());
+        for (CompletableFuture<User> call : calls) {
+            try {
+                users.add(join(call));
+            } catch (RestClientException e) {
+                if (e.getStatusCode() != 404) {
+                    // The remaining calls are not needed any more
+                    calls.forEach(pending -> pending.cancel(false));
+                    throw e;
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Remote GETs made, including revalidations; coalesced calls and cache hits make none
+     */
+    public long getFetchCount() {
+        return fetches.sum();
+    }
+
+    /**
+     * Calls that shared another call's GET instead of making their own
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    private static boolean isNotFound(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure instanceof RestClientException && ((RestClientException) failure).getStatusCode() == 404;
+    }
+
+    // Wait for a call and rethrow its RestClientException as is
+    private static User join(CompletableFuture<User> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            throw toRestClientException(e.getCause());
+        }
+    }
+
+    // Failures of async calls as the RestClientException a synchronous call would have thrown
+    private static RestClientException toRestClientException(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure instanceof RestClientException) {
+            return (RestClientException) failure;
+        }
+        if (failure instanceof TimeoutException) {
+            return new RestClientException("Request timed out", 0, failure);
+        }
+        if (failure instanceof RejectedExecutionException) {
+            return new RestClientException("Too many requests in progress", 0, failure);
+        }
+        return new RestClientException("Request failed: " + failure, 0, failure);
+    }
+
+    public ResponseCacheStats getResponseCacheStats() {
+        return responseCache.getStats();
+    }
+
+    /**
+     * Change the Cache-Control header the simulated server sends, e.g. "max-age=300" or "no-cache"
+     */
+    void setSimulatedCacheControl(String cacheControl) {
+        this.simulatedCacheControl = cacheControl;
+    }
+
+    /**
+     * Breaker state, outcomes and latency of each endpoint called so far
+     */
+    public List<EndpointStats> getResilienceStats() {
+        return resilience.getStats();
+    }
+
+    void setSimulatedLatency(long millis) {
+        this.simulatedLatencyMillis = millis;
+    }
+
+    /**
+     * Make the simulated server fail every request with this status, e.g. 503; 0 makes it healthy again
+     */
+    void setSimulatedErrorStatus(int statusCode) {
+        this.simulatedErrorStatus = statusCode;
+    }
+
+    // Wait for the simulated server, giving up after the read timeout as a real client would
+    private void simulateRoundTrip() {
+        long latency = simulatedLatencyMillis;
+        long readTimeout = config.getReadTimeout();
+        boolean timedOut = readTimeout > 0 && latency > readTimeout;
+        try {
+            Thread.sleep(timedOut ? readTimeout : latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestClientException("Interrupted", 0);
+        }
+        if (timedOut) {
+            throw new RestClientException("Read timed out", 0);
+        }
+        int errorStatus = simulatedErrorStatus;
+        if (errorStatus != 0) {
+            throw new RestClientException("Server error", errorStatus);
+        }
     }
 
     /**
@@ -141,9 +524,12 @@ class RestTemplateClient {
         // return restTemplate.getForObject(url, List.class, params);
 
         // Simulated implementation
-        return userDatabase.values().stream()
-                .filter(user -> user.getName().contains(name) && user.getStatus().equals(status))
-                .collect(Collectors.toList());
+        return resilience.execute("GET /users", true, () -> {
+            simulateRoundTrip();
+            return userDatabase.values().stream()
+                    .filter(user -> user.getName().contains(name) && user.getStatus().equals(status))
+                    .collect(Collectors.toList());
+        });
     }
 
     /**
@@ -153,11 +539,15 @@ class RestTemplateClient {
         // In a real application:
         // return restTemplate.postForObject(BASE_URL + "/users", user, User.class);
 
-        // Simulated implementation
-        int newId = userDatabase.size() + 1;
-        User newUser = new User(newId, user.getName(), user.getEmail(), user.getStatus());
-        userDatabase.put(newId, newUser);
-        return newUser;
+        // Simulated implementation; not idempotent, so never retried
+        return resilience.execute("POST /users", false, () -> {
+            simulateRoundTrip();
+            int newId = userDatabase.size() + 1;
+            User newUser = new User(newId, user.getName(), user.getEmail(), user.getStatus());
+            userDatabase.put(newId, newUser);
+            responseCache.invalidate(userUrl(newId));
+            return newUser;
+        });
     }
 
     /**
@@ -169,11 +559,17 @@ class RestTemplateClient {
         // return user;
 
         // Simulated implementation
-        if (!userDatabase.containsKey(user.getId())) {
-            throw new RestClientException("User not found", 404);
-        }
-        userDatabase.put(user.getId(), user);
-        return user;
+        return resilience.execute("PUT /users/{id}", true, () -> {
+            simulateRoundTrip();
+            if (!userDatabase.containsKey(user.getId())) {
+                throw new RestClientException("User not found", 404);
+            }
+            userDatabase.put(user.getId(), user);
+            // Calls from now on must not get a response that may hold the old version
+            responseCache.invalidate(userUrl(user.getId()));
+            inFlight.remove(user.getId());
+            return user;
+        });
     }
 
     /**
@@ -185,11 +581,16 @@ class RestTemplateClient {
         // return true;
 
         // Simulated implementation
-        if (!userDatabase.containsKey(id)) {
-            return false;
-        }
-        userDatabase.remove(id);
-        return true;
+        return resilience.execute("DELETE /users/{id}", true, () -> {
+            simulateRoundTrip();
+            if (!userDatabase.containsKey(id)) {
+                return false;
+            }
+            userDatabase.remove(id);
+            responseCache.invalidate(userUrl(id));
+            inFlight.remove(id);
+            return true;
+        });
     }
 
     /**
@@ -229,10 +630,30 @@ class RestTemplateClient {
         // return Arrays.asList(response.getBody());
 
         // Simulated implementation
-        if (authToken.contains("admin")) {
-            return new ArrayList<>(userDatabase.values());
-        }
-        return Collections.emptyList();
+        return resilience.execute("GET /users/admin", true, () -> {
+            simulateRoundTrip();
+            if (authToken.contains("admin")) {
+                return new ArrayList<>(userDatabase.values());
+            }
+            return Collections.<User>emptyList();
+        });
+    }
+
+    /**
+     * Asynchronous GET on the client's bounded executor
+     *
+     * The future fails with the call's RestClientException, with TimeoutException once the
+     * configured async timeout has passed (counted from submission, so time spent queued
+     * counts), or right away with RejectedExecutionException when the queue is full.
+     * A timeout or cancellation drops the call if it has not started yet; a GET already in
+     * progress is never interrupted, since concurrent calls for the same user share it.
+     */
+    public CompletableFuture<User> getUserByIdAsync(int id) {
+        // In a real application with WebClient:
+        // return webClient.get().uri("/users/{id}", id).retrieve().bodyToMono(User.class)
+        //     .timeout(Duration.ofMillis(timeout)).toFuture();
+
+        return asyncExecutor.submit(() -> getUserById(id), config.getAsyncTimeout());
     }
 
     /**
@@ -245,20 +666,23 @@ class RestTemplateClient {
         //     BASE_URL + "/users/" + id, User.class);
         // futureEntity.addCallback(
         //     response -> callback.onUserReceived(response.getBody()),
-        //     ex -> System.err.println("Error retrieving user: " + ex.getMessage())
+        //     ex -> callback.onError(ex)
         // );
 
-        // Simulated implementation with a thread
-        new Thread(() -> {
-            try {
-                // Simulate network delay
-                Thread.sleep(500);
-                User user = getUserById(id);
+        getUserByIdAsync(id).whenComplete((user, failure) -> {
+            if (failure == null) {
                 callback.onUserReceived(user);
-            } catch (Exception e) {
-                System.err.println("Error retrieving user: " + e.getMessage());
+            } else {
+                callback.onError(toRestClientException(failure));
             }
-        }).start();
+        });
+    }
+
+    /**
+     * Queue depth, outcomes and latency of the async calls
+     */
+    public AsyncMetrics getAsyncMetrics() {
+        return asyncExecutor.getMetrics();
     }
 
     /**
@@ -266,6 +690,196 @@ class RestTemplateClient {
      */
     interface UserCallback {
         void onUserReceived(User user);
+
+        default void onError(RestClientException e) {
+            System.err.println("Error retrieving user: " + e.getMessage());
+        }
+    }
+}
+
+/**
+ * Settings for RestTemplateClient
+ */
+class RestClientConfig {
+    private int asyncThreads = 8;
+    private int asyncQueueCapacity = 1000;
+    // Milliseconds; 0 waits indefinitely
+    private long asyncTimeout = 2000;
+    // Responses kept by the response cache; 0 disables it
+    private int cacheMaximumSize = 1000;
+    // Resilience settings; durations in milliseconds, readTimeout 0 waits indefinitely
+    private long readTimeout = 1000;
+    private int maxAttempts = 3;
+    private long initialBackoff = 50;
+    private long maxBackoff = 1000;
+    private int failureRateThreshold = 50;
+    private int slidingWindowSize = 20;
+    private int minimumCalls = 10;
+    private long openDuration = 5000;
+    private int maxConcurrentCalls = 25;
+    private long maxWait;
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public void setAsyncThreads(int asyncThreads) {
+        if (asyncThreads < 1) {
+            throw new IllegalArgumentException("asyncThreads must be at least 1");
+        }
+        this.asyncThreads = asyncThreads;
+    }
+
+    public int getAsyncQueueCapacity() {
+        return asyncQueueCapacity;
+    }
+
+    public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+        if (asyncQueueCapacity < 1) {
+            throw new IllegalArgumentException("asyncQueueCapacity must be at least 1");
+        }
+        this.asyncQueueCapacity = asyncQueueCapacity;
+    }
+
+    public long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    public void setAsyncTimeout(long asyncTimeout) {
+        if (asyncTimeout < 0) {
+            throw new IllegalArgumentException("asyncTimeout cannot be negative");
+        }
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    public int getCacheMaximumSize() {
+        return cacheMaximumSize;
+    }
+
+    public void setCacheMaximumSize(int cacheMaximumSize) {
+        if (cacheMaximumSize < 0) {
+            throw new IllegalArgumentException("cacheMaximumSize cannot be negative");
+        }
+        this.cacheMaximumSize = cacheMaximumSize;
+    }
+
+    public long getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(long readTimeout) {
+        if (readTimeout < 0) {
+            throw new IllegalArgumentException("readTimeout cannot be negative");
+        }
+        this.readTimeout = readTimeout;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Attempts per idempotent call, the first one included; 1 disables retries
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(long initialBackoff) {
+        if (initialBackoff < 0) {
+            throw new IllegalArgumentException("initialBackoff cannot be negative");
+        }
+        this.initialBackoff = initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(long maxBackoff) {
+        if (maxBackoff < 0) {
+            throw new IllegalArgumentException("maxBackoff cannot be negative");
+        }
+        this.maxBackoff = maxBackoff;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Percentage of failed calls in the sliding window at which the circuit breaker opens
+     */
+    public void setFailureRateThreshold(int failureRateThreshold) {
+        if (failureRateThreshold < 1 || failureRateThreshold > 100) {
+            throw new IllegalArgumentException("failureRateThreshold must be between 1 and 100");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public void setSlidingWindowSize(int slidingWindowSize) {
+        if (slidingWindowSize < 1) {
+            throw new IllegalArgumentException("slidingWindowSize must be at least 1");
+        }
+        this.slidingWindowSize = slidingWindowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        if (minimumCalls < 1) {
+            throw new IllegalArgumentException("minimumCalls must be at least 1");
+        }
+        this.minimumCalls = minimumCalls;
+    }
+
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    public void setOpenDuration(long openDuration) {
+        if (openDuration < 0) {
+            throw new IllegalArgumentException("openDuration cannot be negative");
+        }
+        this.openDuration = openDuration;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * Calls per endpoint that may run at once; maxWait is how long another call waits for a slot
+     */
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be at least 1");
+        }
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(long maxWait) {
+        if (maxWait < 0) {
+            throw new IllegalArgumentException("maxWait cannot be negative");
+        }
+        this.maxWait = maxWait;
     }
 }
 
@@ -273,6 +887,8 @@ class RestTemplateClient {
  * Custom exception for REST client errors
  */
 class RestClientException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
     private final int statusCode;
 
     public RestClientException(String message, int statusCode) {
@@ -280,6 +896,11 @@ class RestClientException extends RuntimeException {
         this.statusCode = statusCode;
     }
 
+    public RestClientException(String message, int statusCode, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+    }
+
     public int getStatusCode() {
         return statusCode;
     }
@@ -0,0 +1,234 @@
+package Intermediate.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Caching rules of ResponseCache, against a stub server that records each request's If-None-Match
+ */
+public class ResponseCacheTest {
+    private static final String URL = "https://api.example.com/users/1";
+
+    private StubServer server;
+    private ResponseCache<StringBuilder> cache;
+
+    @Before
+    public void setUp() {
+        server = new StubServer();
+        cache = new ResponseCache<>(100, StringBuilder::new);
+    }
+
+    @Test
+    public void freshResponseIsServedFromMemory() {
+        server.respond("John", "\"v1\"", "max-age=60");
+
+        assertEquals("John", cache.get(URL, server).toString());
+        assertEquals("John", cache.get(URL, server).toString());
+        assertEquals("John", cache.getIfFresh(URL).toString());
+
+        assertEquals(1, server.requests.size());
+        assertEquals(2, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getFetches());
+    }
+
+    @Test
+    public void staleResponseIsRevalidatedWithItsEtag() {
+        server.respond("John", "\"v1\"", "max-age=0");
+        cache.get(URL, server);
+        assertNull(cache.getIfFresh(URL));
+
+        assertEquals("John", cache.get(URL, server).toString());
+
+        assertEquals(2, server.requests.size());
+        assertNull(server.requests.get(0));
+        assertEquals("\"v1\"", server.requests.get(1));
+        assertEquals(1, cache.getStats().getRevalidations());
+        assertEquals(1, cache.getStats().getFetches());
+    }
+
+    @Test
+    public void revalidationWithNewMaxAgeMakesResponseFreshAgain() {
+        server.respond("John", "\"v1\"", "no-cache");
+        cache.get(URL, server);
+
+        server.respond("John", "\"v1\"", "max-age=60");
+        cache.get(URL, server);
+        cache.get(URL, server);
+
+        assertEquals(2, server.requests.size());
+        assertEquals(1, cache.getStats().getRevalidations());
+        assertEquals(1, cache.getStats().getHits());
+    }
+
+    @Test
+    public void changedResponseReplacesStaleOne() {
+        server.respond("John", "\"v1\"", "max-age=0");
+        cache.get(URL, server);
+
+        server.respond("Johnny", "\"v2\"", "max-age=0");
+        assertEquals("Johnny", cache.get(URL, server).toString());
+
+        cache.get(URL, server);
+        assertEquals("\"v2\"", server.requests.get(2));
+        assertEquals(2, cache.getStats().getFetches());
+        assertEquals(1, cache.getStats().getRevalidations());
+    }
+
+    @Test
+    public void noStoreResponseIsNeverStored() {
+        server.respond("John", "\"v1\"", "no-store, max-age=60");
+
+        cache.get(URL, server);
+        cache.get(URL, server);
+
+        assertEquals(2, server.requests.size());
+        assertNull(server.requests.get(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void responseWithoutMaxAgeOrEtagIsNotStored() {
+        server.respond("John", null, null);
+
+        cache.get(URL, server);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedResponseIsEvictedBeyondMaximumSize() {
+        cache = new ResponseCache<>(2, StringBuilder::new);
+        server.respond("body", "\"v1\"", "max-age=60");
+
+        cache.get(URL + "/a", server);
+        cache.get(URL + "/b", server);
+        // Makes b the least recently used
+        cache.get(URL + "/a", server);
+        cache.get(URL + "/c", server);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStats().getEvictions());
+        assertEquals("body", cache.getIfFresh(URL + "/a").toString());
+        assertNull(cache.getIfFresh(URL + "/b"));
+        assertEquals("body", cache.getIfFresh(URL + "/c").toString());
+    }
+
+    @Test
+    public void invalidatedResponseIsFetchedAgain() {
+        server.respond("John", "\"v1\"", "max-age=60");
+        cache.get(URL, server);
+
+        cache.invalidate(URL);
+        server.respond("Johnny", "\"v2\"", "max-age=60");
+
+        assertNull(cache.getIfFresh(URL));
+        assertEquals("Johnny", cache.get(URL, server).toString());
+        // An unconditional GET: the old ETag is gone with the response
+        assertNull(server.requests.get(1));
+        assertEquals(1, cache.getStats().getInvalidations());
+    }
+
+    @Test
+    public void responseFetchedDuringInvalidationIsNotStored() {
+        server.respond("John", "\"v1\"", "max-age=60");
+        // A write by this client lands while the GET is on the wire
+        server.duringRequest = () -> cache.invalidate(URL);
+
+        assertEquals("John", cache.get(URL, server).toString());
+
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getStats().getRejectedStores());
+
+        server.duringRequest = null;
+        cache.get(URL, server);
+        assertEquals(2, server.requests.size());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void callersGetCopies() {
+        server.respond("John", "\"v1\"", "max-age=60");
+
+        StringBuilder first = cache.get(URL, server);
+        first.append(" (modified)");
+        StringBuilder second = cache.get(URL, server);
+
+        assertEquals("John", second.toString());
+        assertNotSame(first, second);
+        assertNotSame(server.body, second);
+    }
+
+    @Test
+    public void zeroMaximumSizeDisablesCaching() {
+        cache = new ResponseCache<>(0, StringBuilder::new);
+        server.respond("John", "\"v1\"", "max-age=60");
+
+        cache.get(URL, server);
+        cache.get(URL, server);
+
+        assertEquals(2, server.requests.size());
+        assertNull(server.requests.get(1));
+        assertNull(cache.getIfFresh(URL));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void maxAgeIsReadFromCacheControl() {
+        assertEquals(60, ResponseCache.maxAgeSeconds("public, max-age=60"));
+        assertEquals(60, ResponseCache.maxAgeSeconds("Max-Age=60"));
+        assertEquals(0, ResponseCache.maxAgeSeconds(null));
+        assertEquals(0, ResponseCache.maxAgeSeconds("max-age=soon"));
+        assertEquals(0, ResponseCache.maxAgeSeconds("max-age=60, no-cache"));
+        assertEquals(-1, ResponseCache.maxAgeSeconds("max-age=60, no-store"));
+    }
+
+    @Test
+    public void errorsArePassedOnAndNotStored() {
+        RestClientException notFound = new RestClientException("User not found", 404);
+        ResponseCache.ConditionalRequest<StringBuilder> failing = ifNoneMatch -> {
+            throw notFound;
+        };
+
+        assertSame(notFound, assertThrows(RestClientException.class, () -> cache.get(URL, failing)));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Answers like a server holding one resource: 304 when the ETag matches, 200 otherwise
+     */
+    private static final class StubServer implements ResponseCache.ConditionalRequest<StringBuilder> {
+        // If-None-Match of every request received, null for an unconditional one
+        final List<String> requests = new ArrayList<>();
+        StringBuilder body;
+        String etag;
+        String cacheControl;
+        Runnable duringRequest;
+
+        void respond(String body, String etag, String cacheControl) {
+            this.body = new StringBuilder(body);
+            this.etag = etag;
+            this.cacheControl = cacheControl;
+        }
+
+        @Override
+        public RestResponse<StringBuilder> execute(String ifNoneMatch) {
+            requests.add(ifNoneMatch);
+            if (duringRequest != null) {
+                duringRequest.run();
+            }
+            if (etag != null && etag.equals(ifNoneMatch)) {
+                return new RestResponse<>(RestResponse.NOT_MODIFIED, null, etag, cacheControl);
+            }
+            return new RestResponse<>(RestResponse.OK, body, etag, cacheControl);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package Intermediate.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * The response cache of RestTemplateClient, against its local stub server
+ */
+public class RestTemplateClientCacheTest {
+    private RestTemplateClient client;
+
+    @Before
+    public void setUp() {
+        client = new RestTemplateClient();
+        client.setSimulatedLatency(0);
+    }
+
+    @Test
+    public void freshUserIsNotFetchedAgain() {
+        client.getUserById(1);
+        client.getUserById(1);
+        client.getUserWithExchange(1);
+
+        assertEquals(1, client.getFetchCount());
+        assertEquals(2, client.getResponseCacheStats().getHits());
+    }
+
+    @Test
+    public void staleUserIsRevalidated() {
+        client.setSimulatedCacheControl("no-cache");
+
+        client.getUserById(1);
+        User user = client.getUserById(1);
+
+        assertEquals("John Smith", user.getName());
+        assertEquals(2, client.getFetchCount());
+        assertEquals(1, client.getResponseCacheStats().getRevalidations());
+        assertEquals(1, client.getResponseCacheStats().getFetches());
+    }
+
+    @Test
+    public void noStoreUserIsFetchedEveryTime() {
+        client.setSimulatedCacheControl("no-store");
+
+        client.getUserById(1);
+        client.getUserById(1);
+
+        assertEquals(2, client.getFetchCount());
+        assertEquals(0, client.getResponseCacheStats().getSize());
+    }
+
+    @Test
+    public void cacheHoldsAtMostMaximumSizeUsers() {
+        RestClientConfig config = new RestClientConfig();
+        config.setCacheMaximumSize(2);
+        client = new RestTemplateClient(config);
+        client.setSimulatedLatency(0);
+
+        client.getUserById(1);
+        client.getUserById(2);
+        client.getUserById(3);
+        client.getUserById(1);
+
+        assertEquals(2, client.getResponseCacheStats().getSize());
+        assertEquals(2, client.getResponseCacheStats().getEvictions());
+        assertEquals(4, client.getFetchCount());
+    }
+
+    @Test
+    public void updateInvalidatesCachedUser() {
+        client.getUserById(3);
+
+        client.updateUser(new User(3, "Bob Johnson", "bob.johnson@example.com", "active"));
+
+        assertEquals("active", client.getUserById(3).getStatus());
+        assertEquals(2, client.getFetchCount());
+        assertEquals(1, client.getResponseCacheStats().getInvalidations());
+    }
+
+    @Test
+    public void deleteInvalidatesCachedUser() {
+        client.getUserById(2);
+
+        client.deleteUser(2);
+
+        RestClientException e = assertThrows(RestClientException.class, () -> client.getUserById(2));
+        assertEquals(404, e.getStatusCode());
+        assertEquals(1, client.getResponseCacheStats().getInvalidations());
+    }
+
+    @Test
+    public void changesToReturnedUserDoNotReachCache() {
+        client.getUserById(1).setName("Changed");
+
+        assertEquals("John Smith", client.getUserById(1).getName());
+    }
+
+    @Test
+    public void coalescedCallersGetTheirOwnCopy() throws Exception {
+        client.setSimulatedLatency(200);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<User> leader = callers.submit(() -> client.getUserById(1));
+            Thread.sleep(50);
+            Future<User> waiter = callers.submit(() -> client.getUserById(1));
+
+            User first = leader.get();
+            User second = waiter.get();
+            first.setName("Changed");
+
+            assertEquals(1, client.getCoalescedCount());
+            assertNotSame(first, second);
+            assertEquals("John Smith", second.getName());
+        } finally {
+            callers.shutdown();
+        }
+    }
+}